@@ -467,7 +467,8 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
         private final String[] SUMMARIES_TO_UPDATE = {
                 Constants.KEY_PREF_LOCATION_AUTO_UPDATE_PERIOD,
                 Constants.KEY_PREF_LOCATION_UPDATE_PERIOD,
-                Constants.KEY_PREF_LOCATION_GEOCODER_SOURCE
+                Constants.KEY_PREF_LOCATION_GEOCODER_SOURCE,
+                Constants.KEY_PREF_WEATHER_REQUEST_GRID
         };
 
         @Override
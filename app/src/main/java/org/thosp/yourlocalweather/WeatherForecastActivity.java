@@ -101,7 +101,7 @@ public class WeatherForecastActivity extends ForecastingActivity {
 
         localityView.setText(Utils.getCityAndCountry(this, currentLocation.getOrderId()));
 
-        if (weatherForecastList.get(locationId) == null) {
+        if (weatherForecastRecord == null) {
             return;
         }
 
@@ -115,14 +115,14 @@ public class WeatherForecastActivity extends ForecastingActivity {
         }
         if (forecastType.isChecked()) {
             LongWeatherForecastAdapter adapter = new LongWeatherForecastAdapter(this,
-                    weatherForecastList.get(locationId),
+                    weatherForecastRecord,
                     currentLocation.getLatitude(),
                     currentLocation.getLocale(),
                     visibleColumns);
             mRecyclerView.setAdapter(adapter);
         } else {
             WeatherForecastAdapter adapter = new WeatherForecastAdapter(this,
-                    weatherForecastList.get(locationId),
+                    weatherForecastRecord,
                     currentLocation.getLatitude(),
                     currentLocation.getLocale(),
                     visibleColumns);
@@ -0,0 +1,225 @@
+package org.thosp.yourlocalweather;
+
+import org.json.JSONException;
+import org.thosp.yourlocalweather.licence.LicenseNotValidException;
+import org.thosp.yourlocalweather.licence.TooEarlyUpdateException;
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+import org.thosp.yourlocalweather.utils.JsonByteReader;
+
+/**
+ * Streaming counterpart of {@link WeatherJSONParser} for forecast responses. Fills
+ * DetailedWeatherForecast objects directly from the response bytes without building a JSONObject tree.
+ */
+public class WeatherJSONStreamParser {
+
+    private static final byte[][] SERVER_RESULT_NAMES = JsonByteReader.options("result", "token", "owm");
+    private static final byte[][] RESPONSE_NAMES = JsonByteReader.options("list");
+    private static final byte[][] FORECAST_NAMES = JsonByteReader.options(
+            "dt", "main", "wind", "clouds", "rain", "snow", "weather");
+    private static final byte[][] LONG_FORECAST_NAMES = JsonByteReader.options(
+            "dt", "temp", "pressure", "humidity", "speed", "deg", "clouds", "weather");
+    private static final byte[][] MAIN_NAMES = JsonByteReader.options(
+            "temp", "temp_min", "temp_max", "pressure", "humidity");
+    private static final byte[][] TEMP_NAMES = JsonByteReader.options("min", "max", "day");
+    private static final byte[][] WIND_NAMES = JsonByteReader.options("speed", "deg");
+    private static final byte[][] CLOUDS_NAMES = JsonByteReader.options("all");
+    private static final byte[][] PRECIPITATION_NAMES = JsonByteReader.options("3h");
+    private static final byte[][] CONDITION_NAMES = JsonByteReader.options("id", "icon", "description");
+
+    public static WeatherJSONParser.JSONParseResult parseServerResult(byte[] serverResult) throws JSONException,
+                                                                                                   LicenseNotValidException,
+                                                                                                   TooEarlyUpdateException {
+        JsonByteReader reader = new JsonByteReader(serverResult);
+        String result = null;
+        String token = null;
+        String owm = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(SERVER_RESULT_NAMES)) {
+                case 0: result = reader.nextString(); break;
+                case 1: token = reader.nextString(); break;
+                case 2: owm = reader.nextString(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (result == null) {
+            throw new JSONException("No value for result");
+        }
+        switch (result) {
+            case "TOO_EARLY_UPDATE": throw new TooEarlyUpdateException();
+            case "OK":
+                if ((token == null) || (owm == null)) {
+                    throw new JSONException("No value for token or owm");
+                }
+                return new WeatherJSONParser.JSONParseResult(token, owm);
+        }
+        throw new LicenseNotValidException("Result is not OK. Result = " + result);
+    }
+
+    public static CompleteWeatherForecast getWeatherForecast(byte[] weatherForecastResponse) throws JSONException {
+        return parseForecastList(weatherForecastResponse, false);
+    }
+
+    public static CompleteWeatherForecast getLongWeatherForecast(byte[] weatherForecastResponse) throws JSONException {
+        return parseForecastList(weatherForecastResponse, true);
+    }
+
+    private static CompleteWeatherForecast parseForecastList(byte[] weatherForecastResponse,
+                                                             boolean longForecast) throws JSONException {
+        CompleteWeatherForecast completeWeatherForecast = null;
+        JsonByteReader reader = new JsonByteReader(weatherForecastResponse);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(RESPONSE_NAMES) != 0) {
+                reader.skipValue();
+                continue;
+            }
+            completeWeatherForecast = new CompleteWeatherForecast();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (longForecast) {
+                    completeWeatherForecast.addDetailedWeatherForecast(readLongForecastCase(reader));
+                } else {
+                    completeWeatherForecast.addDetailedWeatherForecast(readForecastCase(reader));
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        if (completeWeatherForecast == null) {
+            throw new JSONException("No value for list");
+        }
+        return completeWeatherForecast;
+    }
+
+    private static DetailedWeatherForecast readForecastCase(JsonByteReader reader) throws JSONException {
+        DetailedWeatherForecast weatherForecast = new DetailedWeatherForecast();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(FORECAST_NAMES)) {
+                case 0: weatherForecast.setDateTime(reader.nextLong()); break;
+                case 1: readMain(reader, weatherForecast); break;
+                case 2: readWind(reader, weatherForecast); break;
+                case 3: weatherForecast.setCloudiness(readClouds(reader)); break;
+                case 4: weatherForecast.setRain(readPrecipitation(reader)); break;
+                case 5: weatherForecast.setSnow(readPrecipitation(reader)); break;
+                case 6: readWeatherConditions(reader, weatherForecast); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return weatherForecast;
+    }
+
+    private static DetailedWeatherForecast readLongForecastCase(JsonByteReader reader) throws JSONException {
+        DetailedWeatherForecast weatherForecast = new DetailedWeatherForecast();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(LONG_FORECAST_NAMES)) {
+                case 0: weatherForecast.setDateTime(reader.nextLong()); break;
+                case 1: readTemp(reader, weatherForecast); break;
+                case 2: weatherForecast.setPressure(reader.nextDouble()); break;
+                case 3: weatherForecast.setHumidity(reader.nextInt()); break;
+                case 4: weatherForecast.setWindSpeed(reader.nextDouble()); break;
+                case 5: weatherForecast.setWindDegree(reader.nextDouble()); break;
+                case 6: weatherForecast.setCloudiness(reader.nextInt()); break;
+                case 7: readWeatherConditions(reader, weatherForecast); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return weatherForecast;
+    }
+
+    private static void readMain(JsonByteReader reader, DetailedWeatherForecast weatherForecast) throws JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(MAIN_NAMES)) {
+                case 0: weatherForecast.setTemperature(reader.nextDouble()); break;
+                case 1: weatherForecast.setTemperatureMin(reader.nextDouble()); break;
+                case 2: weatherForecast.setTemperatureMax(reader.nextDouble()); break;
+                case 3: weatherForecast.setPressure(reader.nextDouble()); break;
+                case 4: weatherForecast.setHumidity(reader.nextInt()); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readTemp(JsonByteReader reader, DetailedWeatherForecast weatherForecast) throws JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(TEMP_NAMES)) {
+                case 0: weatherForecast.setTemperatureMin(reader.nextDouble()); break;
+                case 1: weatherForecast.setTemperatureMax(reader.nextDouble()); break;
+                case 2: weatherForecast.setTemperature(reader.nextDouble()); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readWind(JsonByteReader reader, DetailedWeatherForecast weatherForecast) throws JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(WIND_NAMES)) {
+                case 0: weatherForecast.setWindSpeed(reader.nextDouble()); break;
+                case 1: weatherForecast.setWindDegree(reader.nextDouble()); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int readClouds(JsonByteReader reader) throws JSONException {
+        int cloudiness = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(CLOUDS_NAMES) == 0) {
+                cloudiness = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cloudiness;
+    }
+
+    private static double readPrecipitation(JsonByteReader reader) throws JSONException {
+        double value = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(PRECIPITATION_NAMES) == 0) {
+                value = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private static void readWeatherConditions(JsonByteReader reader,
+                                              DetailedWeatherForecast weatherForecast) throws JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Integer weatherId = null;
+            String icon = null;
+            String description = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.selectName(CONDITION_NAMES)) {
+                    case 0: weatherId = reader.nextInt(); break;
+                    case 1: icon = reader.nextString(); break;
+                    case 2: description = reader.nextString(); break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+            weatherForecast.addWeatherCondition(weatherId, icon, description);
+        }
+        reader.endArray();
+    }
+}
@@ -425,7 +425,7 @@ public class WidgetSettingsDialogue extends Activity {
                         if (saveLocationSetting) {
                             widgetSettingsDbHelper.saveParamBoolean(widgetId, "showLocation", showLocationSwitchListener.isChecked());
                         }
-                        GraphUtils.invalidateGraph();
+                        GraphUtils.invalidateGraphForWidget(widgetId);
                         Intent intent = new Intent(Constants.ACTION_APPWIDGET_CHANGE_SETTINGS);
                         intent.setPackage("org.thosp.yourlocalweather");
                         intent.putExtra("widgetId", widgetId);
@@ -613,7 +613,7 @@ public class WidgetSettingsDialogue extends Activity {
 
                         widgetSettingsDbHelper.saveParamString(widgetId, "combinedGraphValues", valuesToStore.toString());
                         widgetSettingsDbHelper.saveParamBoolean(widgetId, "combinedGraphShowLegend", showLegendSwitchListener.isChecked());
-                        GraphUtils.invalidateGraph();
+                        GraphUtils.invalidateGraphForWidget(widgetId);
                         Intent refreshWidgetIntent = new Intent(Constants.ACTION_APPWIDGET_CHANGE_GRAPH_SCALE);
                         refreshWidgetIntent.setPackage("org.thosp.yourlocalweather");
                         sendBroadcast(refreshWidgetIntent);
@@ -14,6 +14,7 @@ import android.preference.PreferenceManager;
 import org.thosp.yourlocalweather.service.StartAutoLocationJob;
 import org.thosp.yourlocalweather.utils.AppPreference;
 import org.thosp.yourlocalweather.utils.Constants;
+import org.thosp.yourlocalweather.utils.GraphUtils;
 import org.thosp.yourlocalweather.utils.LanguageUtil;
 import org.thosp.yourlocalweather.utils.PreferenceUtil;
 import org.thosp.yourlocalweather.utils.PreferenceUtil.Theme;
@@ -61,6 +62,18 @@ public class YourLocalWeather extends Application {
         LanguageUtil.setLanguage(this, PreferenceUtil.getLanguage(this));
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        GraphUtils.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        GraphUtils.invalidateGraph();
+    }
+
     @Override
     protected void attachBaseContext(Context base) {
         super.attachBaseContext(LanguageUtil.setLanguage(base, PreferenceUtil.getLanguage(base)));
@@ -9,6 +9,8 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.thosp.yourlocalweather.R;
 import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
+import org.thosp.yourlocalweather.utils.TemperatureUtil;
 
 import java.util.List;
 import java.util.Locale;
@@ -19,19 +21,19 @@ public class LongWeatherForecastAdapter extends RecyclerView.Adapter<LongWeather
     private final Context mContext;
     private final Set<Integer> visibleColumns;
     private final List<DetailedWeatherForecast> mWeatherList;
-    private double latitude;
+    private final float[] apparentTemperatures;
     private Locale locale;
 
     public LongWeatherForecastAdapter(Context context,
-                                      List<DetailedWeatherForecast> weatherForecastList,
+                                      WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord,
                                       double latitude,
                                       Locale locale,
                                       Set<Integer> visibleColumns) {
         this.mContext = context;
         this.visibleColumns = visibleColumns;
-        this.latitude = latitude;
         this.locale = locale;
-        this.mWeatherList = weatherForecastList;
+        this.mWeatherList = weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList();
+        this.apparentTemperatures = TemperatureUtil.getApparentTemperatures(weatherForecastRecord, latitude);
     }
 
     @Override
@@ -43,7 +45,7 @@ public class LongWeatherForecastAdapter extends RecyclerView.Adapter<LongWeather
 
     @Override
     public void onBindViewHolder(LongWeatherForecastViewHolder holder, int position) {
-        holder.bindWeather(mContext, latitude, locale, mWeatherList);
+        holder.bindWeather(mContext, apparentTemperatures, locale, mWeatherList);
     }
 
     @Override
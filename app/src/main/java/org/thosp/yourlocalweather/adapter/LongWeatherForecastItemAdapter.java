@@ -19,18 +19,18 @@ public class LongWeatherForecastItemAdapter extends RecyclerView.Adapter<LongWea
     private Context mContext;
     private Set<Integer> visibleColumns;
     private List<DetailedWeatherForecast> mWeatherList;
-    private double latitude;
+    private float[] apparentTemperatures;
     private Locale locale;
 
     public LongWeatherForecastItemAdapter(Context context,
                                           List<DetailedWeatherForecast> weather,
-                                          double latitude,
+                                          float[] apparentTemperatures,
                                           Locale locale,
                                           Set<Integer> visibleColumns) {
         mContext = context;
         mWeatherList = weather;
         this.visibleColumns = visibleColumns;
-        this.latitude = latitude;
+        this.apparentTemperatures = apparentTemperatures;
         this.locale = locale;
     }
 
@@ -44,7 +44,7 @@ public class LongWeatherForecastItemAdapter extends RecyclerView.Adapter<LongWea
     @Override
     public void onBindViewHolder(LongWeatherForecastItemViewHolder holder, int position) {
         DetailedWeatherForecast weather = mWeatherList.get(position);
-        holder.bindWeather(mContext, latitude, locale, weather, visibleColumns);
+        holder.bindWeather(mContext, apparentTemperatures[position], locale, weather, visibleColumns);
     }
 
     @Override
@@ -59,7 +59,7 @@ public class LongWeatherForecastItemViewHolder extends RecyclerView.ViewHolder {
     }
 
     void bindWeather(Context context,
-                     double latitude,
+                     float apparentTemperature,
                      Locale locale,
                      DetailedWeatherForecast weather,
                      Set<Integer> visibleColumns) {
@@ -108,7 +108,7 @@ public class LongWeatherForecastItemViewHolder extends RecyclerView.ViewHolder {
         if (visibleColumns.contains(5)) {
             mApparentTemperature.setVisibility(View.VISIBLE);
             String apparentTemperature = mContext.getString(R.string.temperature_with_degree,
-                    TemperatureUtil.getForecastedApparentTemperatureWithUnit(mContext, latitude, weather, locale));
+                    TemperatureUtil.getForecastedApparentTemperatureWithUnit(mContext, apparentTemperature, locale));
             mApparentTemperature.setText(apparentTemperature);
         } else {
             mApparentTemperature.setVisibility(View.GONE);
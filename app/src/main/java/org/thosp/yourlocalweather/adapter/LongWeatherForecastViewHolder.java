@@ -81,7 +81,10 @@ public class LongWeatherForecastViewHolder extends RecyclerView.ViewHolder {
         mRecyclerView.setLayoutManager(new LinearLayoutManager(mContext));
     }
 
-    void bindWeather(Context context, double latitude, Locale locale, List<DetailedWeatherForecast> weather) {
+    void bindWeather(Context context,
+                     float[] apparentTemperatures,
+                     Locale locale,
+                     List<DetailedWeatherForecast> weather) {
 
         Typeface typeface = Typeface.createFromAsset(mContext.getAssets(),
                 "fonts/weathericons-regular-webfont.ttf");
@@ -192,14 +195,16 @@ public class LongWeatherForecastViewHolder extends RecyclerView.ViewHolder {
             headerPressure.setVisibility(View.GONE);
             headerPressureUnit.setVisibility(View.GONE);
         }
-        updateUI(latitude, locale, weather);
+        updateUI(apparentTemperatures, locale, weather);
     }
 
-    private void updateUI(double latitude, Locale locale, List<DetailedWeatherForecast> detailedWeatherForecast) {
+    private void updateUI(float[] apparentTemperatures,
+                          Locale locale,
+                          List<DetailedWeatherForecast> detailedWeatherForecast) {
         LongWeatherForecastItemAdapter adapter = new LongWeatherForecastItemAdapter(
                 mContext,
                 detailedWeatherForecast,
-                latitude,
+                apparentTemperatures,
                 locale,
                 visibleColumns);
         mRecyclerView.setAdapter(adapter);
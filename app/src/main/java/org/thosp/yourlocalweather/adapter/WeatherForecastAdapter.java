@@ -9,46 +9,45 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.thosp.yourlocalweather.R;
 import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
+import org.thosp.yourlocalweather.utils.ForecastDayBuckets;
+import org.thosp.yourlocalweather.utils.TemperatureUtil;
 
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 
 public class WeatherForecastAdapter extends RecyclerView.Adapter<WeatherForecastViewHolder> {
 
     private final Context mContext;
     private final Set<Integer> visibleColumns;
-    private final Map<Integer, List<DetailedWeatherForecast>> mWeatherList;
-    double latitude;
+    private final List<List<DetailedWeatherForecast>> mWeatherList;
+    private final int[] firstIndexes;
+    private final float[] apparentTemperatures;
     Locale locale;
-    private final List<Integer> keys;
 
     public WeatherForecastAdapter(Context context,
-                                  List<DetailedWeatherForecast> weatherForecastList,
+                                  WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord,
                                   double latitude,
                                   Locale locale,
                                   Set<Integer> visibleColumns) {
         mContext = context;
         this.visibleColumns = visibleColumns;
-        this.latitude = latitude;
         this.locale = locale;
+        this.apparentTemperatures = TemperatureUtil.getApparentTemperatures(weatherForecastRecord, latitude);
 
-        mWeatherList = new HashMap<>();
-        keys = new ArrayList<>();
-        Calendar forecastCalendar = Calendar.getInstance();
-        for (DetailedWeatherForecast forecast: weatherForecastList) {
-            forecastCalendar.setTimeInMillis(forecast.getDateTime() * 1000);
-            int forecastDay = forecastCalendar.get(Calendar.DAY_OF_YEAR);
-            if (!mWeatherList.keySet().contains(forecastDay)) {
-                List<DetailedWeatherForecast> dayForecastList = new ArrayList<>();
-                mWeatherList.put(forecastDay, dayForecastList);
-                keys.add(forecastDay);
-            }
-            mWeatherList.get(forecastDay).add(forecast);
+        List<DetailedWeatherForecast> weatherForecastList =
+                weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList();
+        mWeatherList = new ArrayList<>();
+        ForecastDayBuckets dayBuckets = new ForecastDayBuckets(TimeZone.getDefault());
+        int days = dayBuckets.bucket(weatherForecastList);
+        firstIndexes = new int[days];
+        for (int day = 0; day < days; day++) {
+            firstIndexes[day] = dayBuckets.getFirstIndex(day);
+            mWeatherList.add(new ArrayList<>(
+                    weatherForecastList.subList(dayBuckets.getFirstIndex(day), dayBuckets.getEndIndex(day))));
         }
     }
 
@@ -61,13 +60,13 @@ public class WeatherForecastAdapter extends RecyclerView.Adapter<WeatherForecast
 
     @Override
     public void onBindViewHolder(WeatherForecastViewHolder holder, int position) {
-        List<DetailedWeatherForecast> weather = mWeatherList.get(keys.get(position));
-        holder.bindWeather(mContext, latitude, locale, weather);
+        List<DetailedWeatherForecast> weather = mWeatherList.get(position);
+        holder.bindWeather(mContext, apparentTemperatures, firstIndexes[position], locale, weather);
     }
 
     @Override
     public int getItemCount() {
-        return (mWeatherList != null ? mWeatherList.keySet().size() : 0);
+        return (mWeatherList != null ? mWeatherList.size() : 0);
     }
 }
 
@@ -19,19 +19,26 @@ public class WeatherForecastItemAdapter extends RecyclerView.Adapter<WeatherFore
     private Context mContext;
     private Set<Integer> visibleColumns;
     private List<DetailedWeatherForecast> mWeatherList;
-    private double latitude;
+    private float[] apparentTemperatures;
+    private int firstIndex;
     private Locale locale;
     double minTemp, maxTemp;
 
+    /**
+     * @param apparentTemperatures apparent temperatures of the whole forecast the entries are part of
+     * @param firstIndex index of the first entry in the whole forecast
+     */
     public WeatherForecastItemAdapter(Context context,
                                       List<DetailedWeatherForecast> weather,
-                                      double latitude,
+                                      float[] apparentTemperatures,
+                                      int firstIndex,
                                       Locale locale,
                                       Set<Integer> visibleColumns) {
         mContext = context;
         mWeatherList = weather;
         this.visibleColumns = visibleColumns;
-        this.latitude = latitude;
+        this.apparentTemperatures = apparentTemperatures;
+        this.firstIndex = firstIndex;
         this.locale = locale;
 
         minTemp = Integer.MAX_VALUE;
@@ -56,7 +63,7 @@ public class WeatherForecastItemAdapter extends RecyclerView.Adapter<WeatherFore
         double temp = weather.getTemperature();
         boolean isMin = temp == minTemp;
         boolean isMax = temp == maxTemp;
-        holder.bindWeather(mContext, latitude, locale, weather, visibleColumns, isMin, isMax);
+        holder.bindWeather(mContext, apparentTemperatures[firstIndex + position], locale, weather, visibleColumns, isMin, isMax);
     }
 
     @Override
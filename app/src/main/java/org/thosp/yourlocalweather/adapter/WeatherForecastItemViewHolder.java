@@ -55,7 +55,7 @@ public class WeatherForecastItemViewHolder extends RecyclerView.ViewHolder {
         mDescription = (TextView) itemView.findViewById(R.id.forecast_description);
     }
 
-    void bindWeather(Context context, double latitude, Locale locale, DetailedWeatherForecast weather, Set<Integer> visibleColumns, boolean isMin, boolean isMax) {
+    void bindWeather(Context context, float apparentTemperature, Locale locale, DetailedWeatherForecast weather, Set<Integer> visibleColumns, boolean isMin, boolean isMax) {
         mWeatherForecast = weather;
 
         Typeface typeface = Typeface.createFromAsset(mContext.getAssets(), "fonts/weathericons-regular-webfont.ttf");
@@ -106,7 +106,7 @@ public class WeatherForecastItemViewHolder extends RecyclerView.ViewHolder {
         }
         if (visibleColumns.contains(5)) {
             mApparentTemperature.setVisibility(View.VISIBLE);
-            String apparentTemperature = mContext.getString(R.string.temperature_with_degree, TemperatureUtil.getForecastedApparentTemperatureWithUnit(mContext, latitude, weather, locale));
+            String apparentTemperature = mContext.getString(R.string.temperature_with_degree, TemperatureUtil.getForecastedApparentTemperatureWithUnit(mContext, apparentTemperature, locale));
             mApparentTemperature.setText(apparentTemperature);
         } else {
             mApparentTemperature.setVisibility(View.GONE);
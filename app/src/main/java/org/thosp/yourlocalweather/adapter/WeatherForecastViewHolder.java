@@ -86,7 +86,15 @@ public class WeatherForecastViewHolder extends RecyclerView.ViewHolder {
         mRecyclerView.setLayoutManager(new LinearLayoutManager(mContext));
     }
 
-    void bindWeather(Context context, double latitude, Locale locale, List<DetailedWeatherForecast> weather) {
+    /**
+     * @param apparentTemperatures apparent temperatures of the whole forecast
+     * @param firstIndex index of the first entry of the day in the whole forecast
+     */
+    void bindWeather(Context context,
+                     float[] apparentTemperatures,
+                     int firstIndex,
+                     Locale locale,
+                     List<DetailedWeatherForecast> weather) {
         SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMMM", locale);
         Date date = new Date(weather.get(0).getDateTime() * 1000);
         Calendar currentRowDate = Calendar.getInstance();
@@ -202,14 +210,18 @@ public class WeatherForecastViewHolder extends RecyclerView.ViewHolder {
             headerPressure.setVisibility(View.GONE);
             headerPressureUnit.setVisibility(View.GONE);
         }
-        updateUI(latitude, locale, weather);
+        updateUI(apparentTemperatures, firstIndex, locale, weather);
     }
 
-    private void updateUI(double latitude, Locale locale, List<DetailedWeatherForecast> detailedWeatherForecast) {
+    private void updateUI(float[] apparentTemperatures,
+                          int firstIndex,
+                          Locale locale,
+                          List<DetailedWeatherForecast> detailedWeatherForecast) {
         WeatherForecastItemAdapter adapter = new WeatherForecastItemAdapter(
                 mContext,
                 detailedWeatherForecast,
-                latitude,
+                apparentTemperatures,
+                firstIndex,
                 locale,
                 visibleColumns);
         mRecyclerView.setAdapter(adapter);
@@ -8,16 +8,25 @@ import android.database.sqlite.SQLiteDatabaseLockedException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Parcel;
 
+import java.util.Map;
+
 import static org.thosp.yourlocalweather.model.CurrentWeatherContract.SQL_CREATE_TABLE_CURRENT_WEATHER;
 import static org.thosp.yourlocalweather.model.CurrentWeatherContract.SQL_DELETE_TABLE_CURRENT_WEATHER;
 
 public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
 
-    public static final int DATABASE_VERSION = 1;
+    private static final String TAG = "CurrentWeatherDbHelper";
+
+    public static final int DATABASE_VERSION = 2;
+    private static final int PARCEL_BLOB_DATABASE_VERSION = 1;
     public static final String DATABASE_NAME = "CurrentWeather.db";
     private static int GET_READABLE_DATABASE_RETRIES = 3;
     private static int GET_READABLE_DATABASE_WAIT_TIME_MS = 500;
+    private static final int MAX_CACHED_RECORDS = 32;
+    private static final int CURRENT_WEATHER_RECORD_TYPE = 0;
     private static CurrentWeatherDbHelper instance;
+    private final DbRecordCache<WeatherRecord> weatherCache;
+    private Context context;
 
     public synchronized static CurrentWeatherDbHelper getInstance(Context ctx) {
         if (instance == null) {
@@ -28,6 +37,8 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
 
     private CurrentWeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        weatherCache = new DbRecordCache<>(context, TAG, MAX_CACHED_RECORDS);
     }
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -35,6 +46,10 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
     }
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if ((oldVersion == PARCEL_BLOB_DATABASE_VERSION) && (newVersion == DATABASE_VERSION)) {
+            migrateParcelBlobs(db);
+            return;
+        }
         db.execSQL(SQL_DELETE_TABLE_CURRENT_WEATHER);
         onCreate(db);
     }
@@ -69,6 +84,7 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
         String selection = CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID + " = ?";
         String[] selectionArgs = {location.getId().toString()};
         db.delete(CurrentWeatherContract.CurrentWeather.TABLE_NAME, selection, selectionArgs);
+        weatherCache.invalidate(getCacheKey(location.getId()));
     }
 
     public void deleteRecordFromTable(Integer recordId) {
@@ -76,9 +92,57 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
         String selection = CurrentWeatherContract.CurrentWeather._ID + " = ?";
         String[] selectionArgs = {recordId.toString()};
         db.delete(CurrentWeatherContract.CurrentWeather.TABLE_NAME, selection, selectionArgs);
+        weatherCache.invalidateAll();
     }
 
+    private void migrateParcelBlobs(SQLiteDatabase db) {
+        String[] projection = {
+                CurrentWeatherContract.CurrentWeather._ID,
+                CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER
+        };
+        Cursor cursor = null;
+        try {
+            cursor = db.query(CurrentWeatherContract.CurrentWeather.TABLE_NAME, projection, null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                long recordId = cursor.getLong(cursor.getColumnIndexOrThrow(CurrentWeatherContract.CurrentWeather._ID));
+                Weather weather = null;
+                try {
+                    weather = getWeatherFromBytes(
+                            cursor.getBlob(cursor.getColumnIndexOrThrow(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER)));
+                } catch (Exception e) {
+                    //
+                }
+                if (weather == null) {
+                    db.delete(CurrentWeatherContract.CurrentWeather.TABLE_NAME,
+                            CurrentWeatherContract.CurrentWeather._ID + "=" + recordId,
+                            null);
+                    continue;
+                }
+                ContentValues values = new ContentValues();
+                values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER, getWeatherAsBytes(weather));
+                db.update(CurrentWeatherContract.CurrentWeather.TABLE_NAME,
+                        values,
+                        CurrentWeatherContract.CurrentWeather._ID + "=" + recordId,
+                        null);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Decoded weather or null when the blob is corrupt, so that the row reads as a miss.
+     */
     public static Weather getWeatherFromBytes(byte[] addressBytes) {
+        if (WeatherBinaryCodec.isWeather(addressBytes)) {
+            try {
+                return WeatherBinaryCodec.decodeWeather(addressBytes);
+            } catch (Exception e) {
+                return null;
+            }
+        }
         final Parcel parcel = Parcel.obtain();
         parcel.unmarshall(addressBytes, 0, addressBytes.length);
         parcel.setDataPosition(0);
@@ -88,57 +152,105 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
     }
 
     public byte[] getWeatherAsBytes(Weather weather) {
-        final Parcel parcel = Parcel.obtain();
-        weather.writeToParcel(parcel, 0);
-        byte[] weatherBytes = parcel.marshall();
-        parcel.recycle();
-        return weatherBytes;
+        return WeatherBinaryCodec.encodeWeather(weather);
     }
 
     public void saveWeather(final long locationId,
                             final long weatherUpdateTime,
                             final Weather weather) {
-        new Thread(new Runnable() {
-            public void run() {
-                SQLiteDatabase db = getWritableDatabase();
-
-                WeatherRecord oldWeather = getWeather(locationId);
+        weatherCache.invalidate(getCacheKey(locationId));
+        final byte[] weatherBytes = getWeatherAsBytes(weather);
+        DbWriteExecutor.getInstance(context).submit(this, "saveWeather:" + locationId, new DbWriteExecutor.DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+                saveWeather(db, locationId, weatherUpdateTime, weatherBytes);
+            }
 
-                ContentValues values = new ContentValues();
-                values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER, getWeatherAsBytes(weather));
-                values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID, locationId);
-                values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LAST_UPDATED_IN_MS, weatherUpdateTime);
-                if (oldWeather == null) {
-                    db.insert(CurrentWeatherContract.CurrentWeather.TABLE_NAME, null, values);
-                } else {
-                    db.updateWithOnConflict(CurrentWeatherContract.CurrentWeather.TABLE_NAME,
-                            values,
-                            CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID + "=" + locationId,
-                            null,
-                            SQLiteDatabase.CONFLICT_IGNORE);
-                }
+            @Override
+            public void onCommitted() {
+                weatherCache.invalidate(getCacheKey(locationId));
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Saves the weathers in the transaction of the DbWriteExecutor, the caller invalidates the cache once
+     * the transaction is committed.
+     */
+    public void saveWeathers(SQLiteDatabase db, Map<Long, Weather> weathers, long weatherUpdateTime) {
+        for (Map.Entry<Long, Weather> weather: weathers.entrySet()) {
+            saveWeather(db, weather.getKey(), weatherUpdateTime, getWeatherAsBytes(weather.getValue()));
+        }
+    }
+
+    private void saveWeather(SQLiteDatabase db, long locationId, long weatherUpdateTime, byte[] weatherBytes) {
+        ContentValues values = new ContentValues();
+        values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER, weatherBytes);
+        values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID, locationId);
+        values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LAST_UPDATED_IN_MS, weatherUpdateTime);
+        int updatedRows = db.updateWithOnConflict(CurrentWeatherContract.CurrentWeather.TABLE_NAME,
+                values,
+                CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID + "=" + locationId,
+                null,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        if (updatedRows == 0) {
+            db.insert(CurrentWeatherContract.CurrentWeather.TABLE_NAME, null, values);
+        }
     }
 
     public void updateLastUpdatedTime(final long locationId, final long weatherUpdateTime) {
-        new Thread(new Runnable() {
-            public void run() {
-                SQLiteDatabase db = getWritableDatabase();
-                ContentValues values = new ContentValues();
-                values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LAST_UPDATED_IN_MS, weatherUpdateTime);
+        weatherCache.invalidate(getCacheKey(locationId));
+        DbWriteExecutor.getInstance(context).submit(this, "updateLastUpdatedTime:" + locationId, new DbWriteExecutor.DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+                updateLastUpdatedTime(db, locationId, weatherUpdateTime);
+            }
 
-                db.updateWithOnConflict(
-                        CurrentWeatherContract.CurrentWeather.TABLE_NAME,
-                        values,
-                        CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID + "=" + locationId,
-                        null,
-                        SQLiteDatabase.CONFLICT_IGNORE);
+            @Override
+            public void onCommitted() {
+                weatherCache.invalidate(getCacheKey(locationId));
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Updates the time in the transaction of the DbWriteExecutor, the caller invalidates the cache once
+     * the transaction is committed.
+     */
+    public void updateLastUpdatedTime(SQLiteDatabase db, long locationId, long weatherUpdateTime) {
+        ContentValues values = new ContentValues();
+        values.put(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LAST_UPDATED_IN_MS, weatherUpdateTime);
+
+        db.updateWithOnConflict(
+                CurrentWeatherContract.CurrentWeather.TABLE_NAME,
+                values,
+                CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LOCATION_ID + "=" + locationId,
+                null,
+                SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    public DbRecordCache<WeatherRecord> getWeatherCache() {
+        return weatherCache;
     }
 
+    /**
+     * The cached record is shared, so the caller gets a copy with the weather decoded again from its bytes.
+     */
     public WeatherRecord getWeather(long locationId) {
+        long cacheKey = getCacheKey(locationId);
+        WeatherRecord weatherRecord = weatherCache.get(cacheKey);
+        if (weatherRecord == null) {
+            long cacheVersion = weatherCache.getVersion();
+            weatherRecord = readWeather(locationId);
+            if (weatherRecord == null) {
+                return null;
+            }
+            weatherCache.put(cacheKey, weatherRecord, cacheVersion);
+        }
+        return createWeatherRecord(weatherRecord.lastUpdatedTime, weatherRecord.weatherBytes);
+    }
+
+    private WeatherRecord readWeather(long locationId) {
         SQLiteDatabase db = getReadableDatabase();
 
         String[] projection = {
@@ -159,10 +271,9 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
             );
 
             if (cursor.moveToNext()) {
-                Weather weather = getWeatherFromBytes(cursor.getBlob(cursor.getColumnIndexOrThrow(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER)));
-                return new WeatherRecord(
+                return createWeatherRecord(
                         cursor.getLong(cursor.getColumnIndexOrThrow(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_LAST_UPDATED_IN_MS)),
-                        weather);
+                        cursor.getBlob(cursor.getColumnIndexOrThrow(CurrentWeatherContract.CurrentWeather.COLUMN_NAME_WEATHER)));
             } else {
                 return null;
             }
@@ -173,9 +284,25 @@ public class CurrentWeatherDbHelper extends SQLiteOpenHelper {
         }
     }
 
+    private WeatherRecord createWeatherRecord(long lastUpdatedTime, byte[] weatherBytes) {
+        Weather weather = getWeatherFromBytes(weatherBytes);
+        if (weather == null) {
+            return null;
+        }
+        WeatherRecord weatherRecord = new WeatherRecord(lastUpdatedTime, weather);
+        weatherRecord.weatherBytes = weatherBytes;
+        return weatherRecord;
+    }
+
+    private static long getCacheKey(long locationId) {
+        return DbRecordCache.getKey(locationId, CURRENT_WEATHER_RECORD_TYPE);
+    }
+
     public class WeatherRecord {
         long lastUpdatedTime;
         Weather weather;
+        // stored bytes the weather is decoded from, copies of a cached record are decoded from them
+        byte[] weatherBytes;
 
         public WeatherRecord(long lastUpdatedTime, Weather weather) {
             this.lastUpdatedTime = lastUpdatedTime;
@@ -0,0 +1,100 @@
+package org.thosp.yourlocalweather.model;
+
+import android.content.Context;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
+
+/**
+ * Bounded LRU cache of decoded DB records keyed by (locationId, type). Every write bumps the version,
+ * a record read from DB is only cached when no write happened since the read started. Cached records
+ * are shared, the DbHelpers hand out copies of them. The hit and miss counters are logged when a record
+ * is evicted or the whole cache is invalidated.
+ */
+public class DbRecordCache<V> {
+
+    private static final String TAG = "DbRecordCache";
+
+    private final Context context;
+    private final String name;
+    private final Map<Long, V> records;
+    private long version;
+    private long hits;
+    private long misses;
+
+    public DbRecordCache(int maxRecords) {
+        this(null, null, maxRecords);
+    }
+
+    public DbRecordCache(Context context, String name, final int maxRecords) {
+        this.context = context;
+        this.name = name;
+        records = new LinkedHashMap<Long, V>(maxRecords, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                if (size() <= maxRecords) {
+                    return false;
+                }
+                logStatistics("evicted");
+                return true;
+            }
+        };
+    }
+
+    public static long getKey(long locationId, int type) {
+        return (locationId << 4) | type;
+    }
+
+    public synchronized V get(long key) {
+        V record = records.get(key);
+        if (record != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return record;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void put(long key, V record, long versionOfRead) {
+        if ((record == null) || (versionOfRead != version)) {
+            return;
+        }
+        records.put(key, record);
+    }
+
+    public synchronized void invalidate(long key) {
+        version++;
+        records.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        records.clear();
+        logStatistics("invalidatedAll");
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void logStatistics(String event) {
+        if (context != null) {
+            appendLog(context, TAG, name, ":", event, ":", toString());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DbRecordCache:size=" + records.size() + ", version=" + version + ", hits=" + hits + ", misses=" + misses;
+    }
+}
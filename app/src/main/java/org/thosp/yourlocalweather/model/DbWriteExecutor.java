@@ -0,0 +1,271 @@
+package org.thosp.yourlocalweather.model;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
+
+/**
+ * Single background writer shared by the DbHelpers. Writes are queued in submission order, flushed after
+ * a short debounce and committed in one transaction per database. A write submitted with the key of a
+ * pending write replaces it and moves to the end of the queue, so writes with the same key never overtake.
+ * The replaced write is not run, it gets the callback of the write replacing it.
+ * A write that throws is left out of the transaction, which is then committed with the other writes. Only
+ * writes of a committed transaction get onCommitted, the others get onFailed.
+ */
+public class DbWriteExecutor {
+
+    private static final String TAG = "DbWriteExecutor";
+
+    private static final long DEBOUNCE_IN_MS = 100;
+
+    private static DbWriteExecutor instance;
+
+    private final Context context;
+    private final ScheduledExecutorService executor;
+    private final Executor callbackExecutor;
+    private final LinkedList<PendingWrite> pendingWrites = new LinkedList<>();
+    private boolean flushScheduled;
+    private long lastSequence;
+    // sequence of the last write whose callback is run, guarded by pendingWrites
+    private long lastFinishedSequence;
+    // sequence of the last failed write, used by the flush task only
+    private long lastFailedSequence;
+
+    public synchronized static DbWriteExecutor getInstance(Context ctx) {
+        if (instance == null) {
+            instance = new DbWriteExecutor(ctx.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DbWriteExecutor(Context context) {
+        this(context, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        }), new Executor() {
+            private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable callback) {
+                mainHandler.post(callback);
+            }
+        });
+    }
+
+    DbWriteExecutor(Context context, ScheduledExecutorService executor, Executor callbackExecutor) {
+        this.context = context;
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public abstract static class DbWrite {
+        public abstract void write(SQLiteDatabase db);
+
+        public void onCommitted() {
+        }
+
+        public void onFailed(Exception e) {
+        }
+    }
+
+    public void submit(SQLiteOpenHelper dbHelper, String key, DbWrite write) {
+        synchronized (pendingWrites) {
+            PendingWrite newWrite = new PendingWrite(dbHelper, key, write, ++lastSequence);
+            if (key != null) {
+                Iterator<PendingWrite> iterator = pendingWrites.iterator();
+                while (iterator.hasNext()) {
+                    PendingWrite pendingWrite = iterator.next();
+                    if ((pendingWrite.dbHelper == dbHelper) && key.equals(pendingWrite.key)) {
+                        iterator.remove();
+                        newWrite.replacedWrites.addAll(pendingWrite.replacedWrites);
+                        newWrite.replacedWrites.add(pendingWrite.write);
+                        break;
+                    }
+                }
+            }
+            pendingWrites.add(newWrite);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask, DEBOUNCE_IN_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs callback on the main thread once all writes submitted so far are committed, or failureCallback
+     * when any of the writes not finished yet at submission has failed.
+     */
+    public void executeAfterPendingWrites(final Runnable callback, final Runnable failureCallback) {
+        final long firstPendingSequence;
+        synchronized (pendingWrites) {
+            firstPendingSequence = lastFinishedSequence + 1;
+        }
+        submit(null, null, new DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+            }
+
+            @Override
+            public void onCommitted() {
+                if (lastFailedSequence >= firstPendingSequence) {
+                    callbackExecutor.execute(failureCallback);
+                } else {
+                    callbackExecutor.execute(callback);
+                }
+            }
+        });
+        flush();
+    }
+
+    public void flush() {
+        executor.execute(flushTask);
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            List<PendingWrite> writes;
+            synchronized (pendingWrites) {
+                flushScheduled = false;
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                writes = new ArrayList<>(pendingWrites);
+                pendingWrites.clear();
+            }
+            Map<SQLiteOpenHelper, List<PendingWrite>> writesByDb = new LinkedHashMap<>();
+            for (PendingWrite pendingWrite: writes) {
+                if (pendingWrite.dbHelper == null) {
+                    continue;
+                }
+                List<PendingWrite> dbWrites = writesByDb.get(pendingWrite.dbHelper);
+                if (dbWrites == null) {
+                    dbWrites = new ArrayList<>();
+                    writesByDb.put(pendingWrite.dbHelper, dbWrites);
+                }
+                dbWrites.add(pendingWrite);
+            }
+            for (Map.Entry<SQLiteOpenHelper, List<PendingWrite>> dbWrites: writesByDb.entrySet()) {
+                commit(dbWrites.getKey(), dbWrites.getValue());
+            }
+            int failedWrites = 0;
+            for (PendingWrite pendingWrite: writes) {
+                synchronized (pendingWrites) {
+                    lastFinishedSequence = pendingWrite.sequence;
+                }
+                if (pendingWrite.failure != null) {
+                    failedWrites++;
+                    lastFailedSequence = pendingWrite.sequence;
+                }
+                for (DbWrite replacedWrite: pendingWrite.replacedWrites) {
+                    runCallback(replacedWrite, pendingWrite.failure);
+                }
+                runCallback(pendingWrite.write, pendingWrite.failure);
+            }
+            appendLog(context, TAG, "flushed writes:", writes.size(), ", failed:", failedWrites);
+        }
+    };
+
+    private void runCallback(DbWrite write, Exception failure) {
+        try {
+            if (failure != null) {
+                write.onFailed(failure);
+            } else {
+                write.onCommitted();
+            }
+        } catch (Exception e) {
+            appendLog(context, TAG, "Exception in write callback:", e);
+        }
+    }
+
+    /**
+     * Commits the writes in one transaction. A write that throws is marked failed and the transaction is
+     * rolled back and repeated without it, as its partial changes can not be undone alone.
+     */
+    private void commit(SQLiteOpenHelper dbHelper, List<PendingWrite> dbWrites) {
+        SQLiteDatabase db;
+        try {
+            db = dbHelper.getWritableDatabase();
+        } catch (Exception e) {
+            appendLog(context, TAG, "Database is not writable:", e);
+            setFailure(dbWrites, e);
+            return;
+        }
+        List<PendingWrite> remainingWrites = new ArrayList<>(dbWrites);
+        while (!remainingWrites.isEmpty()) {
+            PendingWrite failedWrite = null;
+            try {
+                db.beginTransaction();
+                try {
+                    for (PendingWrite pendingWrite: remainingWrites) {
+                        try {
+                            pendingWrite.write.write(db);
+                        } catch (Exception e) {
+                            appendLog(context, TAG, "Exception during write:", e);
+                            pendingWrite.failure = e;
+                            failedWrite = pendingWrite;
+                            break;
+                        }
+                    }
+                    if (failedWrite == null) {
+                        db.setTransactionSuccessful();
+                    }
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (Exception e) {
+                appendLog(context, TAG, "Transaction not committed:", e);
+                setFailure(remainingWrites, e);
+                return;
+            }
+            if (failedWrite == null) {
+                return;
+            }
+            remainingWrites.remove(failedWrite);
+        }
+    }
+
+    private static void setFailure(List<PendingWrite> writes, Exception e) {
+        for (PendingWrite pendingWrite: writes) {
+            if (pendingWrite.failure == null) {
+                pendingWrite.failure = e;
+            }
+        }
+    }
+
+    private static class PendingWrite {
+        private final SQLiteOpenHelper dbHelper;
+        private final String key;
+        private final DbWrite write;
+        private final long sequence;
+        private final List<DbWrite> replacedWrites = new ArrayList<>();
+        private Exception failure;
+
+        PendingWrite(SQLiteOpenHelper dbHelper, String key, DbWrite write, long sequence) {
+            this.dbHelper = dbHelper;
+            this.key = key;
+            this.write = write;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -117,6 +117,10 @@ public class DetailedWeatherForecast implements Parcelable {
         weatherConditions.add(new WeatherCondition(weatherId, icon, description));
     }
 
+    public List<WeatherCondition> getWeatherConditions() {
+        return weatherConditions;
+    }
+
     public WeatherCondition getFirstWeatherCondition() {
         if (weatherConditions.isEmpty()) {
             return null;
@@ -0,0 +1,94 @@
+package org.thosp.yourlocalweather.model;
+
+/**
+ * Fixed lat/lon grid used as spatial key of the reverse geocoding cache. A cell spans CELL_SIZE_IN_DEGREES
+ * in both directions, the id packs the latitude row in the upper and the longitude column in the lower 32 bits.
+ */
+public class GeoCell {
+
+    public static final double CELL_SIZE_IN_DEGREES = 0.001;
+    public static final int MAX_CELLS_IN_LOOKUP = 256;
+
+    private static final double EARTH_RADIUS_IN_METERS = 6371008.8;
+    private static final double METERS_PER_DEGREE_OF_LATITUDE = Math.PI * EARTH_RADIUS_IN_METERS / 180;
+    private static final int LONGITUDE_COLUMNS = (int) Math.round(360 / CELL_SIZE_IN_DEGREES);
+    private static final int LATITUDE_ROWS = (int) Math.round(180 / CELL_SIZE_IN_DEGREES);
+
+    private GeoCell() {
+    }
+
+    public static long getCell(double latitude, double longitude) {
+        return getCell(getRow(latitude), getColumn(longitude));
+    }
+
+    /**
+     * Ids of all cells intersecting the bounding box of the circle, ordered ring by ring outward from the
+     * cell of the center, so that at most MAX_CELLS_IN_LOOKUP of them keep the cells nearest to the center.
+     */
+    public static long[] getCellsInRadius(double latitude, double longitude, double radiusInMeters) {
+        double latitudeSpan = radiusInMeters / METERS_PER_DEGREE_OF_LATITUDE;
+        double cosLatitude = Math.cos(Math.toRadians(Math.min(89.9, Math.abs(latitude) + latitudeSpan)));
+        double longitudeSpan = Math.min(180, latitudeSpan / cosLatitude);
+        int centerRow = getRow(latitude);
+        int rowsBefore = centerRow - getRow(latitude - latitudeSpan);
+        int rowsAfter = getRow(latitude + latitudeSpan) - centerRow;
+        int centerColumn = getColumn(longitude);
+        int columnsBefore = centerColumn - getColumn(longitude - longitudeSpan);
+        if (columnsBefore < 0) {
+            columnsBefore += LONGITUDE_COLUMNS;
+        }
+        int columnsAfter = getColumn(longitude + longitudeSpan) - centerColumn;
+        if (columnsAfter < 0) {
+            columnsAfter += LONGITUDE_COLUMNS;
+        }
+        int rows = rowsBefore + rowsAfter + 1;
+        int columns = columnsBefore + columnsAfter + 1;
+        int cellsCount = (int) Math.min(MAX_CELLS_IN_LOOKUP, (long) rows * columns);
+        long[] cells = new long[cellsCount];
+        int cellIndex = 0;
+        for (int ring = 0; cellIndex < cellsCount; ring++) {
+            int firstRow = Math.max(-ring, -rowsBefore);
+            int lastRow = Math.min(ring, rowsAfter);
+            int firstColumn = Math.max(-ring, -columnsBefore);
+            int lastColumn = Math.min(ring, columnsAfter);
+            for (int row = firstRow; (row <= lastRow) && (cellIndex < cellsCount); row++) {
+                boolean rowOfRing = (row == -ring) || (row == ring);
+                // inside the ring only its first and last column belong to it
+                int columnStep = rowOfRing ? 1 : 2 * ring;
+                for (int column = rowOfRing ? firstColumn : -ring;
+                     (column <= lastColumn) && (cellIndex < cellsCount);
+                     column += Math.max(1, columnStep)) {
+                    if (column < firstColumn) {
+                        continue;
+                    }
+                    cells[cellIndex++] = getCell(centerRow + row,
+                            (centerColumn + column + LONGITUDE_COLUMNS) % LONGITUDE_COLUMNS);
+                }
+            }
+        }
+        return cells;
+    }
+
+    public static double distanceInMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+        double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2) +
+                Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) *
+                Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+        return 2 * EARTH_RADIUS_IN_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private static long getCell(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    private static int getRow(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_SIZE_IN_DEGREES);
+        return Math.max(0, Math.min(LATITUDE_ROWS - 1, row));
+    }
+
+    private static int getColumn(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / CELL_SIZE_IN_DEGREES) % LONGITUDE_COLUMNS;
+        return (column < 0) ? column + LONGITUDE_COLUMNS : column;
+    }
+}
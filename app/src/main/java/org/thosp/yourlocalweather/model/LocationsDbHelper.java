@@ -13,6 +13,7 @@ import org.thosp.yourlocalweather.utils.PreferenceUtil;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.thosp.yourlocalweather.model.LocationsContract.SQL_CREATE_TABLE_LOCATIONS;
 import static org.thosp.yourlocalweather.model.LocationsContract.SQL_DELETE_TABLE_LOCATIONS;
@@ -572,7 +573,36 @@ public class LocationsDbHelper extends SQLiteOpenHelper {
                                                    final long updateTime,
                                                    final String locationSource) {
         appendLog(context, TAG, "updateLocationSource:entered:", locationId, ":", locationSource);
-        SQLiteDatabase db = getWritableDatabase();
+        DbWriteExecutor.getInstance(context).submit(this, "updateLastUpdatedAndLocationSource:" + locationId, new DbWriteExecutor.DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+                updateLastUpdatedAndLocationSource(db, locationId, updateTime, locationSource);
+            }
+
+            @Override
+            public void onCommitted() {
+                appendLog(context, TAG, "updateLocationSource:updated:", locationId);
+            }
+        });
+    }
+
+    /**
+     * Updates the locations in the transaction of the DbWriteExecutor.
+     */
+    public void updateLastUpdatedAndLocationSources(SQLiteDatabase db,
+                                                    Map<Long, String> locationSources,
+                                                    long updateTime) {
+        appendLog(context, TAG, "updateLocationSources:entered:", locationSources.size());
+        for (Map.Entry<Long, String> locationSource: locationSources.entrySet()) {
+            updateLastUpdatedAndLocationSource(db, locationSource.getKey(), updateTime, locationSource.getValue());
+        }
+        appendLog(context, TAG, "updateLocationSources:updated");
+    }
+
+    private void updateLastUpdatedAndLocationSource(SQLiteDatabase db,
+                                                    long locationId,
+                                                    long updateTime,
+                                                    String locationSource) {
         ContentValues values = new ContentValues();
         values.put(LocationsContract.Locations.COLUMN_NAME_LOCATION_UPDATE_SOURCE, locationSource);
         values.put(LocationsContract.Locations.COLUMN_NAME_LAST_UPDATE_TIME_IN_MS, updateTime);
@@ -583,7 +613,6 @@ public class LocationsDbHelper extends SQLiteOpenHelper {
                 LocationsContract.Locations._ID + "=" + locationId,
                 null,
                 SQLiteDatabase.CONFLICT_IGNORE);
-        appendLog(context, TAG, "updateLocationSource:updated");
     }
 
     public long getLastUpdateLocationTime() {
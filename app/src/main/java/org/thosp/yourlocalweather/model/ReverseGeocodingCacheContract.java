@@ -13,7 +13,22 @@ public final class ReverseGeocodingCacheContract {
         LocationAddressCache.COLUMN_NAME_LATITUDE + " double," +
         LocationAddressCache.COLUMN_NAME_LOCALE + " text," +
         LocationAddressCache.COLUMN_NAME_CREATED + " integer," +
-        LocationAddressCache.COLUMN_NAME_ADDRESS + " blob)";
+        LocationAddressCache.COLUMN_NAME_ADDRESS + " blob," +
+        LocationAddressCache.COLUMN_NAME_CELL + " integer)";
+
+    protected static final String SQL_ADD_COLUMN_CELL =
+        "ALTER TABLE " + LocationAddressCache.TABLE_NAME + " ADD COLUMN " +
+        LocationAddressCache.COLUMN_NAME_CELL + " integer";
+
+    protected static final String SQL_CREATE_INDEX_CREATED =
+        "CREATE INDEX IF NOT EXISTS " + LocationAddressCache.INDEX_NAME_CREATED + " ON " +
+        LocationAddressCache.TABLE_NAME + " (" + LocationAddressCache.COLUMN_NAME_CREATED + ")";
+
+    protected static final String SQL_CREATE_INDEX_CELL_LOCALE =
+        "CREATE INDEX IF NOT EXISTS " + LocationAddressCache.INDEX_NAME_CELL_LOCALE + " ON " +
+        LocationAddressCache.TABLE_NAME + " (" +
+        LocationAddressCache.COLUMN_NAME_CELL + "," +
+        LocationAddressCache.COLUMN_NAME_LOCALE + ")";
 
     protected static final String SQL_DELETE_TABLE_LOCATION_ADDRESS_CACHE =
         "DROP TABLE IF EXISTS " + LocationAddressCache.TABLE_NAME;
@@ -25,5 +40,8 @@ public final class ReverseGeocodingCacheContract {
         public static final String COLUMN_NAME_LOCALE = "locale";
         public static final String COLUMN_NAME_ADDRESS = "address";
         public static final String COLUMN_NAME_CREATED = "created";
+        public static final String COLUMN_NAME_CELL = "cell";
+        public static final String INDEX_NAME_CELL_LOCALE = "location_address_cache_cell_locale";
+        public static final String INDEX_NAME_CREATED = "location_address_cache_created";
     }
 }
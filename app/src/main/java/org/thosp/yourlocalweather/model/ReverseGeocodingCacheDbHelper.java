@@ -1,19 +1,38 @@
 package org.thosp.yourlocalweather.model;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.location.Address;
 import android.os.Parcel;
+import android.os.SystemClock;
 
+import static org.thosp.yourlocalweather.model.ReverseGeocodingCacheContract.SQL_ADD_COLUMN_CELL;
+import static org.thosp.yourlocalweather.model.ReverseGeocodingCacheContract.SQL_CREATE_INDEX_CELL_LOCALE;
+import static org.thosp.yourlocalweather.model.ReverseGeocodingCacheContract.SQL_CREATE_INDEX_CREATED;
 import static org.thosp.yourlocalweather.model.ReverseGeocodingCacheContract.SQL_CREATE_TABLE_LOCATION_ADDRESS_CACHE;
 import static org.thosp.yourlocalweather.model.ReverseGeocodingCacheContract.SQL_DELETE_TABLE_LOCATION_ADDRESS_CACHE;
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
 
 public class ReverseGeocodingCacheDbHelper extends SQLiteOpenHelper {
-    
-    public static final int DATABASE_VERSION = 1;
+
+    private static final String TAG = "ReverseGeocodingCacheDbHelper";
+
+    public static final int DATABASE_VERSION = 3;
+    private static final int WITHOUT_CELL_DATABASE_VERSION = 1;
+    private static final int WITHOUT_CREATED_INDEX_DATABASE_VERSION = 2;
+    public static final double DEFAULT_LOOKUP_RADIUS_IN_METERS = 11;
+    public static final long TIME_TO_LIVE_RECORDS_IN_CACHE_IN_MS = 8760L * 3600000;
+    public static final long EXPIRY_SWEEP_INTERVAL_IN_MS = 6 * 3600000;
     public static final String DATABASE_NAME = "ReverseGeocodingCache.db";
     private static ReverseGeocodingCacheDbHelper instance;
+    private Context context;
+    private long nextExpirySweepTime;
+    private long expirySweeps;
+    private long purgedRecords;
+    private long lastExpirySweepDurationInMs;
 
     public synchronized static ReverseGeocodingCacheDbHelper getInstance(Context ctx) {
         if (instance == null) {
@@ -24,14 +43,28 @@ public class ReverseGeocodingCacheDbHelper extends SQLiteOpenHelper {
 
     private ReverseGeocodingCacheDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
     }
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_TABLE_LOCATION_ADDRESS_CACHE);
+        db.execSQL(SQL_CREATE_INDEX_CELL_LOCALE);
+        db.execSQL(SQL_CREATE_INDEX_CREATED);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if ((oldVersion >= WITHOUT_CELL_DATABASE_VERSION) && (oldVersion < newVersion) && (newVersion == DATABASE_VERSION)) {
+            if (oldVersion == WITHOUT_CELL_DATABASE_VERSION) {
+                db.execSQL(SQL_ADD_COLUMN_CELL);
+                fillCellColumn(db);
+                db.execSQL(SQL_CREATE_INDEX_CELL_LOCALE);
+            }
+            if (oldVersion <= WITHOUT_CREATED_INDEX_DATABASE_VERSION) {
+                db.execSQL(SQL_CREATE_INDEX_CREATED);
+            }
+            return;
+        }
         db.execSQL(SQL_DELETE_TABLE_LOCATION_ADDRESS_CACHE);
         onCreate(db);
     }
@@ -47,6 +80,153 @@ public class ReverseGeocodingCacheDbHelper extends SQLiteOpenHelper {
         db.delete(ReverseGeocodingCacheContract.LocationAddressCache.TABLE_NAME, selection, selectionArgs);
     }
 
+    /**
+     * Schedules deletion of expired records on the DB write executor, at most once per EXPIRY_SWEEP_INTERVAL_IN_MS.
+     */
+    public void sweepExpiredRecordsIfNeeded() {
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now < nextExpirySweepTime) {
+                return;
+            }
+            nextExpirySweepTime = now + EXPIRY_SWEEP_INTERVAL_IN_MS;
+        }
+        DbWriteExecutor.getInstance(context).submit(this, "sweepExpiredRecords", new DbWriteExecutor.DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+                deleteRecordsCreatedBefore(db, now - TIME_TO_LIVE_RECORDS_IN_CACHE_IN_MS);
+            }
+        });
+    }
+
+    private void deleteRecordsCreatedBefore(SQLiteDatabase db, long createdBefore) {
+        long sweepStart = SystemClock.elapsedRealtime();
+        int purged = db.delete(ReverseGeocodingCacheContract.LocationAddressCache.TABLE_NAME,
+                ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_CREATED + " < ?",
+                new String[] { String.valueOf(createdBefore) });
+        long sweepDuration = SystemClock.elapsedRealtime() - sweepStart;
+        long purgedTotal;
+        synchronized (this) {
+            expirySweeps++;
+            purgedRecords += purged;
+            lastExpirySweepDurationInMs = sweepDuration;
+            purgedTotal = purgedRecords;
+        }
+        appendLog(context, TAG, "expiry sweep purged:", purged, ", durationInMs:", sweepDuration, ", purgedTotal:", purgedTotal);
+    }
+
+    public synchronized long getExpirySweeps() {
+        return expirySweeps;
+    }
+
+    public synchronized long getPurgedRecords() {
+        return purgedRecords;
+    }
+
+    public synchronized long getLastExpirySweepDurationInMs() {
+        return lastExpirySweepDurationInMs;
+    }
+
+    private void fillCellColumn(SQLiteDatabase db) {
+        String[] projection = {
+                ReverseGeocodingCacheContract.LocationAddressCache._ID,
+                ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LATITUDE,
+                ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LONGITUDE
+        };
+        Cursor cursor = null;
+        try {
+            cursor = db.query(ReverseGeocodingCacheContract.LocationAddressCache.TABLE_NAME, projection, null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                ContentValues values = new ContentValues();
+                values.put(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_CELL, GeoCell.getCell(
+                        cursor.getDouble(cursor.getColumnIndexOrThrow(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LATITUDE)),
+                        cursor.getDouble(cursor.getColumnIndexOrThrow(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LONGITUDE))));
+                db.update(ReverseGeocodingCacheContract.LocationAddressCache.TABLE_NAME,
+                        values,
+                        ReverseGeocodingCacheContract.LocationAddressCache._ID + "=" +
+                                cursor.getLong(cursor.getColumnIndexOrThrow(ReverseGeocodingCacheContract.LocationAddressCache._ID)),
+                        null);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    public Address getNearestAddress(double latitude, double longitude, String locale) {
+        return getNearestAddress(latitude, longitude, locale, DEFAULT_LOOKUP_RADIUS_IN_METERS);
+    }
+
+    /**
+     * Nearest cached address within radiusInMeters. Only the rows of the grid cells covering the radius
+     * are read through the (cell, locale) index, expired rows not swept yet are skipped.
+     */
+    public Address getNearestAddress(double latitude, double longitude, String locale, double radiusInMeters) {
+        SQLiteDatabase db = getReadableDatabase();
+
+        String[] projection = {
+                ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LATITUDE,
+                ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LONGITUDE,
+                ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_ADDRESS
+        };
+
+        long[] cells = GeoCell.getCellsInRadius(latitude, longitude, radiusInMeters);
+        StringBuilder selection = new StringBuilder();
+        selection.append(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_CELL);
+        selection.append(" IN (");
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                selection.append(",");
+            }
+            selection.append(cells[i]);
+        }
+        selection.append(") AND ");
+        selection.append(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LOCALE);
+        selection.append(" = ? AND ");
+        selection.append(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_CREATED);
+        selection.append(" >= ?");
+        long createdAfter = System.currentTimeMillis() - TIME_TO_LIVE_RECORDS_IN_CACHE_IN_MS;
+        String[] selectionArgs = { locale, String.valueOf(createdAfter) };
+
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                    ReverseGeocodingCacheContract.LocationAddressCache.TABLE_NAME,
+                    projection,
+                    selection.toString(),
+                    selectionArgs,
+                    null,
+                    null,
+                    null
+            );
+
+            int latitudeIndex = cursor.getColumnIndexOrThrow(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LATITUDE);
+            int longitudeIndex = cursor.getColumnIndexOrThrow(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_LONGITUDE);
+            int addressIndex = cursor.getColumnIndexOrThrow(ReverseGeocodingCacheContract.LocationAddressCache.COLUMN_NAME_ADDRESS);
+            byte[] nearestAddressBytes = null;
+            double nearestDistance = radiusInMeters;
+            while (cursor.moveToNext()) {
+                double distance = GeoCell.distanceInMeters(latitude,
+                        longitude,
+                        cursor.getDouble(latitudeIndex),
+                        cursor.getDouble(longitudeIndex));
+                if (distance <= nearestDistance) {
+                    nearestDistance = distance;
+                    nearestAddressBytes = cursor.getBlob(addressIndex);
+                }
+            }
+            if (nearestAddressBytes == null) {
+                return null;
+            }
+            return getAddressFromBytes(nearestAddressBytes);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     public static Address getAddressFromBytes(byte[] addressBytes) {
         final Parcel parcel = Parcel.obtain();
         parcel.unmarshall(addressBytes, 0, addressBytes.length);
@@ -0,0 +1,536 @@
+package org.thosp.yourlocalweather.model;
+
+import org.thosp.yourlocalweather.utils.ForecastUtil;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary format of the weather blobs stored in CurrentWeather.db and WeatherForecast.db.
+ * Forecasts are written column by column: timestamps and quantized values as zigzag varint deltas,
+ * weather conditions as indexes into a dictionary stored once per blob. Version 2 stores the weather ids of
+ * the conditions as nullable values, version 1 blobs are still read.
+ */
+public class WeatherBinaryCodec {
+
+    public static final int VERSION = 2;
+
+    private static final int NOT_NULL_WEATHER_ID_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte MAGIC_FIRST = 'Y';
+    private static final byte MAGIC_SECOND = 'W';
+    private static final byte TYPE_WEATHER = 'C';
+    private static final byte TYPE_WEATHER_FORECAST = 'F';
+    private static final byte TYPE_WEATHER_FOR_DAYS = 'D';
+    private static final byte TYPE_WEATHER_CONDITIONS = 'W';
+    private static final int HEADER_LENGTH = 4;
+    private static final int VALUE_SCALE = 1000;
+    private static final int COORDINATE_SCALE = 1000000;
+    private static final int DOUBLE_COLUMNS = 8;
+
+    private WeatherBinaryCodec() {
+    }
+
+    public static boolean isWeather(byte[] bytes) {
+        return hasHeader(bytes, TYPE_WEATHER);
+    }
+
+    public static boolean isCompleteWeatherForecast(byte[] bytes) {
+        return hasHeader(bytes, TYPE_WEATHER_FORECAST);
+    }
+
+    public static byte[] encodeWeather(Weather weather) {
+        ByteWriter writer = new ByteWriter(64);
+        writeHeader(writer, TYPE_WEATHER);
+        writer.writeSignedLong(quantize(weather.getTemperature(), VALUE_SCALE));
+        writer.writeSignedLong(quantize(weather.getLon(), COORDINATE_SCALE));
+        writer.writeSignedLong(quantize(weather.getLat(), COORDINATE_SCALE));
+        writer.writeSignedLong(quantize(weather.getWindSpeed(), VALUE_SCALE));
+        writer.writeSignedLong(quantize(weather.getWindDirection(), VALUE_SCALE));
+        writer.writeSignedLong(quantize(weather.getPressure(), VALUE_SCALE));
+        writer.writeSignedLong(weather.getHumidity());
+        writer.writeSignedLong(weather.getClouds());
+        writer.writeSignedLong(weather.getSunrise());
+        writer.writeSignedLong(weather.getSunset() - weather.getSunrise());
+        List<CurrentWeather> currentWeathers = weather.getCurrentWeathers();
+        writer.writeUnsignedLong(currentWeathers.size());
+        for (CurrentWeather currentWeather: currentWeathers) {
+            writer.writeNullableLong(currentWeather.getWeatherId());
+            writer.writeString(currentWeather.getDescription());
+            writer.writeString(currentWeather.getIdIcon());
+        }
+        return writer.toByteArray();
+    }
+
+    public static Weather decodeWeather(byte[] bytes) {
+        ByteReader reader = new ByteReader(bytes);
+        int version = readHeader(reader, TYPE_WEATHER);
+        Weather weather = new Weather();
+        weather.setTemperature((float) dequantize(reader.readSignedLong(), VALUE_SCALE));
+        weather.setLon((float) dequantize(reader.readSignedLong(), COORDINATE_SCALE));
+        weather.setLat((float) dequantize(reader.readSignedLong(), COORDINATE_SCALE));
+        weather.setWindSpeed((float) dequantize(reader.readSignedLong(), VALUE_SCALE));
+        weather.setWindDirection((float) dequantize(reader.readSignedLong(), VALUE_SCALE));
+        weather.setPressure((float) dequantize(reader.readSignedLong(), VALUE_SCALE));
+        weather.setHumidity((int) reader.readSignedLong());
+        weather.setClouds((int) reader.readSignedLong());
+        long sunrise = reader.readSignedLong();
+        weather.setSunrise(sunrise);
+        weather.setSunset(sunrise + reader.readSignedLong());
+        int currentWeathersCount = reader.readCount();
+        for (int i = 0; i < currentWeathersCount; i++) {
+            Integer weatherId = readWeatherId(reader, version);
+            String description = reader.readString();
+            String iconId = reader.readString();
+            weather.addCurrentWeather(weatherId, description, iconId);
+        }
+        return weather;
+    }
+
+    public static byte[] encodeCompleteWeatherForecast(CompleteWeatherForecast completeWeatherForecast) {
+        List<DetailedWeatherForecast> forecasts = completeWeatherForecast.getWeatherForecastList();
+        int count = forecasts.size();
+        ByteWriter writer = new ByteWriter(64 + (count * 24));
+        writeHeader(writer, TYPE_WEATHER_FORECAST);
+        writer.writeUnsignedLong(count);
+
+        List<WeatherCondition> dictionary = new ArrayList<>();
+        Map<String, Integer> dictionaryIndexes = new HashMap<>();
+        int[][] conditionIndexes = new int[count][];
+        for (int i = 0; i < count; i++) {
+            List<WeatherCondition> weatherConditions = forecasts.get(i).getWeatherConditions();
+            conditionIndexes[i] = new int[weatherConditions.size()];
+            for (int j = 0; j < weatherConditions.size(); j++) {
+                WeatherCondition weatherCondition = weatherConditions.get(j);
+                String dictionaryKey = weatherCondition.getWeatherId() + "|" +
+                        weatherCondition.getIcon() + "|" + weatherCondition.getDescription();
+                Integer index = dictionaryIndexes.get(dictionaryKey);
+                if (index == null) {
+                    index = dictionary.size();
+                    dictionary.add(weatherCondition);
+                    dictionaryIndexes.put(dictionaryKey, index);
+                }
+                conditionIndexes[i][j] = index;
+            }
+        }
+        writer.writeUnsignedLong(dictionary.size());
+        for (WeatherCondition weatherCondition: dictionary) {
+            writer.writeNullableLong(weatherCondition.getWeatherId());
+            writer.writeString(weatherCondition.getIcon());
+            writer.writeString(weatherCondition.getDescription());
+        }
+
+        long previous = 0;
+        for (DetailedWeatherForecast forecast: forecasts) {
+            writer.writeSignedLong(forecast.getDateTime() - previous);
+            previous = forecast.getDateTime();
+        }
+        for (int column = 0; column < DOUBLE_COLUMNS; column++) {
+            previous = 0;
+            for (DetailedWeatherForecast forecast: forecasts) {
+                long value = quantize(getDoubleColumn(forecast, column), VALUE_SCALE);
+                writer.writeSignedLong(value - previous);
+                previous = value;
+            }
+        }
+        previous = 0;
+        for (DetailedWeatherForecast forecast: forecasts) {
+            writer.writeSignedLong(forecast.getHumidity() - previous);
+            previous = forecast.getHumidity();
+        }
+        previous = 0;
+        for (DetailedWeatherForecast forecast: forecasts) {
+            writer.writeSignedLong(forecast.getCloudiness() - previous);
+            previous = forecast.getCloudiness();
+        }
+        for (int[] indexes: conditionIndexes) {
+            writer.writeUnsignedLong(indexes.length);
+            for (int index: indexes) {
+                writer.writeUnsignedLong(index);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    public static CompleteWeatherForecast decodeCompleteWeatherForecast(byte[] bytes) {
+        ByteReader reader = new ByteReader(bytes);
+        int version = readHeader(reader, TYPE_WEATHER_FORECAST);
+        int count = reader.readCount();
+
+        int dictionarySize = reader.readCount();
+        Integer[] dictionaryWeatherIds = new Integer[dictionarySize];
+        String[] dictionaryIcons = new String[dictionarySize];
+        String[] dictionaryDescriptions = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionaryWeatherIds[i] = readWeatherId(reader, version);
+            dictionaryIcons[i] = reader.readString();
+            dictionaryDescriptions[i] = reader.readString();
+        }
+
+        DetailedWeatherForecast[] forecasts = new DetailedWeatherForecast[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            forecasts[i] = new DetailedWeatherForecast();
+            previous += reader.readSignedLong();
+            forecasts[i].setDateTime(previous);
+        }
+        for (int column = 0; column < DOUBLE_COLUMNS; column++) {
+            previous = 0;
+            for (DetailedWeatherForecast forecast: forecasts) {
+                previous += reader.readSignedLong();
+                setDoubleColumn(forecast, column, dequantize(previous, VALUE_SCALE));
+            }
+        }
+        previous = 0;
+        for (DetailedWeatherForecast forecast: forecasts) {
+            previous += reader.readSignedLong();
+            forecast.setHumidity((int) previous);
+        }
+        previous = 0;
+        for (DetailedWeatherForecast forecast: forecasts) {
+            previous += reader.readSignedLong();
+            forecast.setCloudiness((int) previous);
+        }
+        CompleteWeatherForecast completeWeatherForecast = new CompleteWeatherForecast();
+        for (DetailedWeatherForecast forecast: forecasts) {
+            int conditionsCount = reader.readCount();
+            for (int j = 0; j < conditionsCount; j++) {
+                long index = reader.readUnsignedLong();
+                if (index >= dictionarySize) {
+                    throw new IllegalArgumentException("Weather condition index out of dictionary: " + index);
+                }
+                int dictionaryIndex = (int) index;
+                forecast.addWeatherCondition(dictionaryWeatherIds[dictionaryIndex],
+                        dictionaryIcons[dictionaryIndex],
+                        dictionaryDescriptions[dictionaryIndex]);
+            }
+            completeWeatherForecast.addDetailedWeatherForecast(forecast);
+        }
+        return completeWeatherForecast;
+    }
+
+    /**
+     * All weather conditions of one forecast entry, kept with its item row.
+     */
+    public static byte[] encodeWeatherConditions(List<WeatherCondition> weatherConditions) {
+        ByteWriter writer = new ByteWriter(16 + (weatherConditions.size() * 24));
+        writeHeader(writer, TYPE_WEATHER_CONDITIONS);
+        writer.writeUnsignedLong(weatherConditions.size());
+        for (WeatherCondition weatherCondition: weatherConditions) {
+            writer.writeNullableLong(weatherCondition.getWeatherId());
+            writer.writeString(weatherCondition.getIcon());
+            writer.writeString(weatherCondition.getDescription());
+        }
+        return writer.toByteArray();
+    }
+
+    public static void decodeWeatherConditions(byte[] bytes, DetailedWeatherForecast forecast) {
+        ByteReader reader = new ByteReader(bytes);
+        int version = readHeader(reader, TYPE_WEATHER_CONDITIONS);
+        int count = reader.readCount();
+        for (int i = 0; i < count; i++) {
+            Integer weatherId = readWeatherId(reader, version);
+            String icon = reader.readString();
+            String description = reader.readString();
+            forecast.addWeatherCondition(weatherId, icon, description);
+        }
+    }
+
+    /**
+     * Daily aggregates stamped with the version of the aggregation and the time zone the days were counted in.
+     * Values are stored exactly, so decoded aggregates equal the calculated ones.
+     */
+    public static byte[] encodeWeatherForDays(Set<ForecastUtil.WeatherForecastPerDay> weatherForDays,
+                                              int weatherForDaysVersion,
+                                              String timeZoneId) {
+        ByteWriter writer = new ByteWriter(32 + (weatherForDays.size() * 128));
+        writeHeader(writer, TYPE_WEATHER_FOR_DAYS);
+        writer.writeUnsignedLong(weatherForDaysVersion);
+        writer.writeString(timeZoneId);
+        writer.writeUnsignedLong(weatherForDays.size());
+        for (ForecastUtil.WeatherForecastPerDay weatherForDay: weatherForDays) {
+            writer.writeSignedLong(weatherForDay.dayIndex);
+            writer.writeSignedLong(weatherForDay.dayInYear);
+            writer.writeSignedLong(weatherForDay.year);
+            writer.writeString(weatherForDay.iconId);
+            ForecastUtil.WeatherIdsForDay weatherIds = weatherForDay.weatherIds;
+            writer.writeNullableLong(weatherIds.mainWeatherId);
+            writer.writeNullableLong(weatherIds.warningWeatherId);
+            writer.writeString(weatherIds.mainWeatherDescriptionsFromOwm);
+            writer.writeString(weatherIds.warningWeatherDescriptionsFromOwm);
+            ForecastUtil.WeatherMaxMinForDay maxMin = weatherForDay.weatherMaxMinForDay;
+            writer.writeNullableLong(maxMin.dayOfYear);
+            writer.writeDouble(maxMin.maxTemp);
+            writer.writeNullableLong(maxMin.maxTempTime);
+            writer.writeDouble(maxMin.minTemp);
+            writer.writeNullableLong(maxMin.minTempTime);
+            writer.writeDouble(maxMin.maxWind);
+            writer.writeNullableLong(maxMin.maxWindTime);
+            writer.writeDouble(maxMin.maxRain);
+            writer.writeNullableLong(maxMin.maxRainTime);
+            writer.writeDouble(maxMin.maxSnow);
+            writer.writeNullableLong(maxMin.maxSnowTime);
+            writer.writeDouble(maxMin.windDegree);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decoded daily aggregates or null when the blob is missing or stamped with another version or time zone.
+     */
+    public static Set<ForecastUtil.WeatherForecastPerDay> decodeWeatherForDays(byte[] bytes,
+                                                                              int weatherForDaysVersion,
+                                                                              String timeZoneId) {
+        if (!hasHeader(bytes, TYPE_WEATHER_FOR_DAYS)) {
+            return null;
+        }
+        ByteReader reader = new ByteReader(bytes);
+        readHeader(reader, TYPE_WEATHER_FOR_DAYS);
+        if ((reader.readUnsignedLong() != weatherForDaysVersion) || !timeZoneId.equals(reader.readString())) {
+            return null;
+        }
+        int count = reader.readCount();
+        Set<ForecastUtil.WeatherForecastPerDay> weatherForDays = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            int dayIndex = (int) reader.readSignedLong();
+            int dayInYear = (int) reader.readSignedLong();
+            int year = (int) reader.readSignedLong();
+            String iconId = reader.readString();
+            Long mainWeatherId = reader.readNullableLong();
+            Long warningWeatherId = reader.readNullableLong();
+            ForecastUtil.WeatherIdsForDay weatherIds = new ForecastUtil.WeatherIdsForDay(
+                    toInteger(mainWeatherId),
+                    toInteger(warningWeatherId),
+                    reader.readString(),
+                    reader.readString());
+            Integer dayOfYear = toInteger(reader.readNullableLong());
+            double maxTemp = reader.readDouble();
+            Long maxTempTime = reader.readNullableLong();
+            double minTemp = reader.readDouble();
+            Long minTempTime = reader.readNullableLong();
+            double maxWind = reader.readDouble();
+            Long maxWindTime = reader.readNullableLong();
+            double maxRain = reader.readDouble();
+            Long maxRainTime = reader.readNullableLong();
+            double maxSnow = reader.readDouble();
+            Long maxSnowTime = reader.readNullableLong();
+            double windDegree = reader.readDouble();
+            ForecastUtil.WeatherMaxMinForDay maxMin = new ForecastUtil.WeatherMaxMinForDay(dayOfYear,
+                    maxTemp, maxTempTime, minTemp, minTempTime, maxWind, maxWindTime,
+                    maxRain, maxRainTime, maxSnow, maxSnowTime, windDegree);
+            weatherForDays.add(new ForecastUtil.WeatherForecastPerDay(dayIndex, weatherIds, maxMin, iconId, dayInYear, year));
+        }
+        return weatherForDays;
+    }
+
+    private static Integer readWeatherId(ByteReader reader, int version) {
+        if (version == NOT_NULL_WEATHER_ID_VERSION) {
+            return (int) reader.readSignedLong();
+        }
+        return toInteger(reader.readNullableLong());
+    }
+
+    private static Integer toInteger(Long value) {
+        return (value != null) ? (int) value.longValue() : null;
+    }
+
+    private static double getDoubleColumn(DetailedWeatherForecast forecast, int column) {
+        switch (column) {
+            case 0: return forecast.getTemperature();
+            case 1: return forecast.getTemperatureMin();
+            case 2: return forecast.getTemperatureMax();
+            case 3: return forecast.getPressure();
+            case 4: return forecast.getWindSpeed();
+            case 5: return forecast.getWindDegree();
+            case 6: return forecast.getRain();
+            default: return forecast.getSnow();
+        }
+    }
+
+    private static void setDoubleColumn(DetailedWeatherForecast forecast, int column, double value) {
+        switch (column) {
+            case 0: forecast.setTemperature(value); break;
+            case 1: forecast.setTemperatureMin(value); break;
+            case 2: forecast.setTemperatureMax(value); break;
+            case 3: forecast.setPressure(value); break;
+            case 4: forecast.setWindSpeed(value); break;
+            case 5: forecast.setWindDegree(value); break;
+            case 6: forecast.setRain(value); break;
+            default: forecast.setSnow(value); break;
+        }
+    }
+
+    private static long quantize(double value, int scale) {
+        return Math.round(value * scale);
+    }
+
+    private static double dequantize(long value, int scale) {
+        return value / (double) scale;
+    }
+
+    private static boolean hasHeader(byte[] bytes, byte type) {
+        return (bytes != null) &&
+                (bytes.length >= HEADER_LENGTH) &&
+                (bytes[0] == MAGIC_FIRST) &&
+                (bytes[1] == MAGIC_SECOND) &&
+                (bytes[2] == type) &&
+                (bytes[3] > 0) &&
+                (bytes[3] <= VERSION);
+    }
+
+    private static void writeHeader(ByteWriter writer, byte type) {
+        writer.writeByte(MAGIC_FIRST);
+        writer.writeByte(MAGIC_SECOND);
+        writer.writeByte(type);
+        writer.writeByte(VERSION);
+    }
+
+    private static int readHeader(ByteReader reader, byte type) {
+        if (!hasHeader(reader.bytes, type)) {
+            throw new IllegalArgumentException("Not a weather blob of type " + (char) type + " and version <= " + VERSION);
+        }
+        reader.position = HEADER_LENGTH;
+        return reader.bytes[3];
+    }
+
+    private static class ByteWriter {
+        private byte[] bytes;
+        private int length;
+
+        ByteWriter(int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        void writeByte(int value) {
+            if (length == bytes.length) {
+                byte[] newBytes = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, newBytes, 0, length);
+                bytes = newBytes;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeUnsignedLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeSignedLong(long value) {
+            writeUnsignedLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeNullableLong(Number value) {
+            if (value == null) {
+                writeUnsignedLong(0);
+                return;
+            }
+            writeUnsignedLong(1);
+            writeSignedLong(value.longValue());
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 0; shift < 64; shift += 8) {
+                writeByte((int) (bits >>> shift));
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeUnsignedLong(0);
+                return;
+            }
+            byte[] valueBytes = value.getBytes(UTF_8);
+            writeUnsignedLong(valueBytes.length + 1);
+            for (byte valueByte: valueBytes) {
+                writeByte(valueByte);
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[length];
+            System.arraycopy(bytes, 0, result, 0, length);
+            return result;
+        }
+    }
+
+    private static class ByteReader {
+        private final byte[] bytes;
+        private int position;
+
+        ByteReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readUnsignedLong() {
+            long result = 0;
+            int shift = 0;
+            while (shift < 64) {
+                if (position >= bytes.length) {
+                    throw new IllegalArgumentException("Truncated weather blob");
+                }
+                byte current = bytes[position++];
+                result |= (long) (current & 0x7F) << shift;
+                if ((current & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+            throw new IllegalArgumentException("Malformed varint in weather blob at " + position);
+        }
+
+        long readSignedLong() {
+            long value = readUnsignedLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        Long readNullableLong() {
+            if (readUnsignedLong() == 0) {
+                return null;
+            }
+            return readSignedLong();
+        }
+
+        double readDouble() {
+            if ((bytes.length - position) < 8) {
+                throw new IllegalArgumentException("Truncated weather blob");
+            }
+            long bits = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                bits |= (long) (bytes[position++] & 0xFF) << shift;
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        int readCount() {
+            long count = readUnsignedLong();
+            if (count > (bytes.length - position) + 1) {
+                throw new IllegalArgumentException("Invalid count in weather blob: " + count);
+            }
+            return (int) count;
+        }
+
+        String readString() {
+            int length = readCount();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (length > (bytes.length - position)) {
+                throw new IllegalArgumentException("Truncated weather blob");
+            }
+            String value = new String(bytes, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
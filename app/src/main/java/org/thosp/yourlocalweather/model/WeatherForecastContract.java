@@ -12,16 +12,79 @@ public final class WeatherForecastContract {
                     WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID + " integer," +
                     WeatherForecastContract.WeatherForecast.COLUMN_NAME_LAST_UPDATED_IN_MS + " integer," +
                     WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE + " integer," +
-                    WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST + " blob)";
+                    WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST + " blob," +
+                    WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FOR_DAYS + " blob)";
+
+    protected static final String SQL_ADD_COLUMN_WEATHER_FOR_DAYS =
+            "ALTER TABLE " + WeatherForecastContract.WeatherForecast.TABLE_NAME + " ADD COLUMN " +
+                    WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FOR_DAYS + " blob";
+
+    protected static final String SQL_ADD_COLUMN_WEATHER_CONDITIONS =
+            "ALTER TABLE " + WeatherForecastItem.TABLE_NAME + " ADD COLUMN " +
+                    WeatherForecastItem.COLUMN_NAME_WEATHER_CONDITIONS + " blob";
 
     protected static final String SQL_DELETE_TABLE_WEATHER_FORECAST =
             "DROP TABLE IF EXISTS " + WeatherForecastContract.WeatherForecast.TABLE_NAME;
 
+    protected static final String SQL_CREATE_TABLE_WEATHER_FORECAST_ITEM =
+            "CREATE TABLE " + WeatherForecastItem.TABLE_NAME + " (" +
+                    WeatherForecastItem._ID + " INTEGER PRIMARY KEY," +
+                    WeatherForecastItem.COLUMN_NAME_LOCATION_ID + " integer," +
+                    WeatherForecastItem.COLUMN_NAME_FORECAST_TYPE + " integer," +
+                    WeatherForecastItem.COLUMN_NAME_DATE_TIME + " integer," +
+                    WeatherForecastItem.COLUMN_NAME_TEMPERATURE + " real," +
+                    WeatherForecastItem.COLUMN_NAME_TEMPERATURE_MIN + " real," +
+                    WeatherForecastItem.COLUMN_NAME_TEMPERATURE_MAX + " real," +
+                    WeatherForecastItem.COLUMN_NAME_PRESSURE + " real," +
+                    WeatherForecastItem.COLUMN_NAME_HUMIDITY + " integer," +
+                    WeatherForecastItem.COLUMN_NAME_WIND_SPEED + " real," +
+                    WeatherForecastItem.COLUMN_NAME_WIND_DEGREE + " real," +
+                    WeatherForecastItem.COLUMN_NAME_CLOUDINESS + " integer," +
+                    WeatherForecastItem.COLUMN_NAME_RAIN + " real," +
+                    WeatherForecastItem.COLUMN_NAME_SNOW + " real," +
+                    WeatherForecastItem.COLUMN_NAME_WEATHER_ID + " integer," +
+                    WeatherForecastItem.COLUMN_NAME_ICON + " text," +
+                    WeatherForecastItem.COLUMN_NAME_DESCRIPTION + " text," +
+                    WeatherForecastItem.COLUMN_NAME_WEATHER_CONDITIONS + " blob)";
+
+    protected static final String SQL_CREATE_INDEX_WEATHER_FORECAST_ITEM =
+            "CREATE UNIQUE INDEX IF NOT EXISTS " + WeatherForecastItem.INDEX_NAME + " ON " +
+                    WeatherForecastItem.TABLE_NAME + " (" +
+                    WeatherForecastItem.COLUMN_NAME_LOCATION_ID + "," +
+                    WeatherForecastItem.COLUMN_NAME_FORECAST_TYPE + "," +
+                    WeatherForecastItem.COLUMN_NAME_DATE_TIME + ")";
+
+    protected static final String SQL_DELETE_TABLE_WEATHER_FORECAST_ITEM =
+            "DROP TABLE IF EXISTS " + WeatherForecastItem.TABLE_NAME;
+
     public static class WeatherForecast implements BaseColumns {
         public static final String TABLE_NAME = "weather_forecast";
         public static final String COLUMN_NAME_LOCATION_ID = "location_id";
         public static final String COLUMN_NAME_WEATHER_FORECAST = "weather_forecast";
         public static final String COLUMN_NAME_FORECAST_TYPE = "forecast_type";
         public static final String COLUMN_NAME_LAST_UPDATED_IN_MS = "last_updated_in_ms";
+        public static final String COLUMN_NAME_WEATHER_FOR_DAYS = "weather_for_days";
+    }
+
+    public static class WeatherForecastItem implements BaseColumns {
+        public static final String TABLE_NAME = "weather_forecast_item";
+        public static final String INDEX_NAME = "weather_forecast_item_location_type_dt";
+        public static final String COLUMN_NAME_LOCATION_ID = "location_id";
+        public static final String COLUMN_NAME_FORECAST_TYPE = "forecast_type";
+        public static final String COLUMN_NAME_DATE_TIME = "dt";
+        public static final String COLUMN_NAME_TEMPERATURE = "temperature";
+        public static final String COLUMN_NAME_TEMPERATURE_MIN = "temperature_min";
+        public static final String COLUMN_NAME_TEMPERATURE_MAX = "temperature_max";
+        public static final String COLUMN_NAME_PRESSURE = "pressure";
+        public static final String COLUMN_NAME_HUMIDITY = "humidity";
+        public static final String COLUMN_NAME_WIND_SPEED = "wind_speed";
+        public static final String COLUMN_NAME_WIND_DEGREE = "wind_degree";
+        public static final String COLUMN_NAME_CLOUDINESS = "cloudiness";
+        public static final String COLUMN_NAME_RAIN = "rain";
+        public static final String COLUMN_NAME_SNOW = "snow";
+        public static final String COLUMN_NAME_WEATHER_ID = "weather_id";
+        public static final String COLUMN_NAME_ICON = "icon";
+        public static final String COLUMN_NAME_DESCRIPTION = "description";
+        public static final String COLUMN_NAME_WEATHER_CONDITIONS = "weather_conditions";
     }
 }
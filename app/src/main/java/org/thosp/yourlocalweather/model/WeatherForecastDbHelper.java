@@ -7,17 +7,38 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Parcel;
 
+import org.thosp.yourlocalweather.utils.ForecastUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_ADD_COLUMN_WEATHER_CONDITIONS;
+import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_ADD_COLUMN_WEATHER_FOR_DAYS;
+import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_CREATE_INDEX_WEATHER_FORECAST_ITEM;
 import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_CREATE_TABLE_WEATHER_FORECAST;
+import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_CREATE_TABLE_WEATHER_FORECAST_ITEM;
 import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_DELETE_TABLE_WEATHER_FORECAST;
+import static org.thosp.yourlocalweather.model.WeatherForecastContract.SQL_DELETE_TABLE_WEATHER_FORECAST_ITEM;
 import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
 
 public class WeatherForecastDbHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "WeatherForecastDbHelper";
 
-    public static final int DATABASE_VERSION = 2;
+    public static final int DATABASE_VERSION = 6;
+    private static final int PARCEL_BLOB_DATABASE_VERSION = 2;
+    private static final int WITHOUT_WEATHER_CONDITIONS_DATABASE_VERSION = 5;
     public static final String DATABASE_NAME = "WeatherForecast.db";
+    private static final int MAX_CACHED_RECORDS = 32;
     private static WeatherForecastDbHelper instance;
+    private final DbRecordCache<WeatherForecastRecord> weatherForecastCache;
     private Context context;
 
     public synchronized static WeatherForecastDbHelper getInstance(Context ctx) {
@@ -30,13 +51,31 @@ public class WeatherForecastDbHelper extends SQLiteOpenHelper {
     private WeatherForecastDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context;
+        weatherForecastCache = new DbRecordCache<>(context, TAG, MAX_CACHED_RECORDS);
     }
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_TABLE_WEATHER_FORECAST);
+        db.execSQL(SQL_CREATE_TABLE_WEATHER_FORECAST_ITEM);
+        db.execSQL(SQL_CREATE_INDEX_WEATHER_FORECAST_ITEM);
     }
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if ((oldVersion == WITHOUT_WEATHER_CONDITIONS_DATABASE_VERSION) && (newVersion == DATABASE_VERSION)) {
+            // items are written again to keep all weather conditions of the stored forecasts
+            db.execSQL(SQL_ADD_COLUMN_WEATHER_CONDITIONS);
+            migrateWeatherForecasts(db);
+            return;
+        }
+        if ((oldVersion >= PARCEL_BLOB_DATABASE_VERSION) && (oldVersion < newVersion) && (newVersion == DATABASE_VERSION)) {
+            db.execSQL(SQL_ADD_COLUMN_WEATHER_FOR_DAYS);
+            db.execSQL(SQL_DELETE_TABLE_WEATHER_FORECAST_ITEM);
+            db.execSQL(SQL_CREATE_TABLE_WEATHER_FORECAST_ITEM);
+            db.execSQL(SQL_CREATE_INDEX_WEATHER_FORECAST_ITEM);
+            migrateWeatherForecasts(db);
+            return;
+        }
+        db.execSQL(SQL_DELETE_TABLE_WEATHER_FORECAST_ITEM);
         db.execSQL(SQL_DELETE_TABLE_WEATHER_FORECAST);
         onCreate(db);
     }
@@ -50,42 +89,376 @@ public class WeatherForecastDbHelper extends SQLiteOpenHelper {
         String selection = WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID + " = ?";
         String[] selectionArgs = {location.getId().toString()};
         db.delete(WeatherForecastContract.WeatherForecast.TABLE_NAME, selection, selectionArgs);
+        db.delete(WeatherForecastContract.WeatherForecastItem.TABLE_NAME,
+                WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_LOCATION_ID + " = ?",
+                selectionArgs);
+        weatherForecastCache.invalidateAll();
     }
 
-    public void saveWeatherForecast(long locationId, int forecastType, long weatherUpdateTime, CompleteWeatherForecast completeWeatherForecast) {
-        SQLiteDatabase db = getWritableDatabase();
+    /**
+     * Submits the forecast to the DbWriteExecutor. The cached record keeps the stored forecast until the
+     * write is committed, so the items unchanged since it are not written again.
+     */
+    public void saveWeatherForecast(final long locationId,
+                                    final int forecastType,
+                                    final long weatherUpdateTime,
+                                    final CompleteWeatherForecast completeWeatherForecast) {
+        final long cacheKey = DbRecordCache.getKey(locationId, forecastType);
+        DbWriteExecutor.getInstance(context).submit(this, "saveWeatherForecast:" + cacheKey, new DbWriteExecutor.DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+                saveWeatherForecast(db, locationId, forecastType, weatherUpdateTime, completeWeatherForecast,
+                        weatherForecastCache.get(cacheKey));
+            }
 
-        WeatherForecastRecord oldWeatherForecast = getWeatherForecast(locationId, forecastType);
+            @Override
+            public void onCommitted() {
+                weatherForecastCache.invalidate(cacheKey);
+            }
+        });
+    }
 
+    /**
+     * Saves the forecasts in the transaction of the DbWriteExecutor, the caller invalidates the cache once
+     * the transaction is committed.
+     */
+    public void saveWeatherForecasts(SQLiteDatabase db,
+                                     Map<Long, CompleteWeatherForecast> weatherForecasts,
+                                     int forecastType,
+                                     long weatherUpdateTime) {
+        for (Map.Entry<Long, CompleteWeatherForecast> weatherForecast: weatherForecasts.entrySet()) {
+            WeatherForecastRecord previousWeatherForecast =
+                    weatherForecastCache.get(DbRecordCache.getKey(weatherForecast.getKey(), forecastType));
+            saveWeatherForecast(db, weatherForecast.getKey(), forecastType, weatherUpdateTime, weatherForecast.getValue(),
+                    previousWeatherForecast);
+        }
+    }
+
+    private void saveWeatherForecast(SQLiteDatabase db,
+                                     long locationId,
+                                     int forecastType,
+                                     long weatherUpdateTime,
+                                     CompleteWeatherForecast completeWeatherForecast,
+                                     WeatherForecastRecord previousWeatherForecast) {
         ContentValues values = new ContentValues();
         values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST,
                    getCompleteWeatherForecastAsBytes(completeWeatherForecast));
+        values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FOR_DAYS,
+                   getWeatherForDaysAsBytes(completeWeatherForecast));
         values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID, locationId);
         values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_LAST_UPDATED_IN_MS, weatherUpdateTime);
         values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE, forecastType);
-        if (oldWeatherForecast == null) {
+        int updatedRows = db.updateWithOnConflict(WeatherForecastContract.WeatherForecast.TABLE_NAME,
+                values,
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID + "=" + locationId +
+                " AND " + WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE + "=" + forecastType,
+                null,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        if (updatedRows == 0) {
             db.insert(WeatherForecastContract.WeatherForecast.TABLE_NAME, null, values);
-        } else {
-            db.updateWithOnConflict(WeatherForecastContract.WeatherForecast.TABLE_NAME,
+            previousWeatherForecast = null;
+        }
+        saveWeatherForecastItems(db, locationId, forecastType, completeWeatherForecast, previousWeatherForecast);
+        // a later write of the same transaction must not take the cached record for the stored one
+        weatherForecastCache.invalidate(DbRecordCache.getKey(locationId, forecastType));
+    }
+
+    public void updateLastUpdatedTime(final long locationId, final int forecastType, final long weatherUpdateTime) {
+        final long cacheKey = DbRecordCache.getKey(locationId, forecastType);
+        weatherForecastCache.invalidate(cacheKey);
+        DbWriteExecutor.getInstance(context).submit(this, "updateLastUpdatedTime:" + cacheKey, new DbWriteExecutor.DbWrite() {
+            @Override
+            public void write(SQLiteDatabase db) {
+                updateLastUpdatedTime(db, locationId, forecastType, weatherUpdateTime);
+            }
+
+            @Override
+            public void onCommitted() {
+                weatherForecastCache.invalidate(cacheKey);
+            }
+        });
+    }
+
+    /**
+     * Updates the time in the transaction of the DbWriteExecutor, the caller invalidates the cache once
+     * the transaction is committed.
+     */
+    public void updateLastUpdatedTime(SQLiteDatabase db, long locationId, int forecastType, long weatherUpdateTime) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_LAST_UPDATED_IN_MS, weatherUpdateTime);
+
+        db.updateWithOnConflict(
+                WeatherForecastContract.WeatherForecast.TABLE_NAME,
+                values,
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID + "=" + locationId +
+                " AND " + WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE + "=" + forecastType,
+                null,
+                SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * Upserts the item rows of the forecast and deletes the rows of entries it has no more. Entries equal to
+     * the ones of the previous forecast, when it is known, are not written again.
+     * @param previousWeatherForecast forecast stored before, null when it is not known
+     */
+    private void saveWeatherForecastItems(SQLiteDatabase db,
+                                          long locationId,
+                                          int forecastType,
+                                          CompleteWeatherForecast completeWeatherForecast,
+                                          WeatherForecastRecord previousWeatherForecast) {
+        String recordSelection = WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_LOCATION_ID + "=" + locationId +
+                " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_FORECAST_TYPE + "=" + forecastType;
+        Map<Long, DetailedWeatherForecast> previousItems = null;
+        if ((previousWeatherForecast != null)
+                && (previousWeatherForecast.getCompleteWeatherForecast() != completeWeatherForecast)) {
+            previousItems = new HashMap<>();
+            for (DetailedWeatherForecast detailedWeatherForecast:
+                    previousWeatherForecast.getCompleteWeatherForecast().getWeatherForecastList()) {
+                previousItems.put(detailedWeatherForecast.getDateTime(), detailedWeatherForecast);
+            }
+        }
+        StringBuilder dateTimes = new StringBuilder();
+        int keptItems = 0;
+        for (DetailedWeatherForecast detailedWeatherForecast: completeWeatherForecast.getWeatherForecastList()) {
+            if (dateTimes.length() > 0) {
+                dateTimes.append(",");
+            }
+            dateTimes.append(detailedWeatherForecast.getDateTime());
+            ContentValues values = getWeatherForecastItemValues(locationId, forecastType, detailedWeatherForecast);
+            if (previousItems != null) {
+                DetailedWeatherForecast previousItem = previousItems.get(detailedWeatherForecast.getDateTime());
+                if (previousItem != null) {
+                    keptItems++;
+                    if (isUnchanged(values, getWeatherForecastItemValues(locationId, forecastType, previousItem))) {
+                        continue;
+                    }
+                }
+            }
+            int updatedRows = db.update(WeatherForecastContract.WeatherForecastItem.TABLE_NAME,
                     values,
-                    WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID + "=" + locationId +
-                    " AND " + WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE + "=" + forecastType,
-                    null,
-                    SQLiteDatabase.CONFLICT_IGNORE);
+                    recordSelection + " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME +
+                            "=" + detailedWeatherForecast.getDateTime(),
+                    null);
+            if (updatedRows == 0) {
+                db.insert(WeatherForecastContract.WeatherForecastItem.TABLE_NAME, null, values);
+            }
+        }
+        if ((previousItems != null) && (keptItems == previousItems.size())) {
+            return;
+        }
+        db.delete(WeatherForecastContract.WeatherForecastItem.TABLE_NAME,
+                recordSelection + " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME +
+                        " NOT IN (" + dateTimes + ")",
+                null);
+    }
+
+    private ContentValues getWeatherForecastItemValues(long locationId,
+                                                       int forecastType,
+                                                       DetailedWeatherForecast detailedWeatherForecast) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_LOCATION_ID, locationId);
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_FORECAST_TYPE, forecastType);
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME, detailedWeatherForecast.getDateTime());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_TEMPERATURE, detailedWeatherForecast.getTemperature());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_TEMPERATURE_MIN, detailedWeatherForecast.getTemperatureMin());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_TEMPERATURE_MAX, detailedWeatherForecast.getTemperatureMax());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_PRESSURE, detailedWeatherForecast.getPressure());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_HUMIDITY, detailedWeatherForecast.getHumidity());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WIND_SPEED, detailedWeatherForecast.getWindSpeed());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WIND_DEGREE, detailedWeatherForecast.getWindDegree());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_CLOUDINESS, detailedWeatherForecast.getCloudiness());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_RAIN, detailedWeatherForecast.getRain());
+        values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_SNOW, detailedWeatherForecast.getSnow());
+        WeatherCondition weatherCondition = detailedWeatherForecast.getFirstWeatherCondition();
+        if (weatherCondition != null) {
+            values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WEATHER_ID, weatherCondition.getWeatherId());
+            values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_ICON, weatherCondition.getIcon());
+            values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DESCRIPTION, weatherCondition.getDescription());
+        } else {
+            values.putNull(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WEATHER_ID);
+            values.putNull(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_ICON);
+            values.putNull(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DESCRIPTION);
+        }
+        List<WeatherCondition> weatherConditions = detailedWeatherForecast.getWeatherConditions();
+        if (weatherConditions.size() > 1) {
+            values.put(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WEATHER_CONDITIONS,
+                    WeatherBinaryCodec.encodeWeatherConditions(weatherConditions));
+        } else {
+            values.putNull(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WEATHER_CONDITIONS);
+        }
+        return values;
+    }
+
+    private static boolean isUnchanged(ContentValues values, ContentValues previousValues) {
+        if (values.size() != previousValues.size()) {
+            return false;
+        }
+        for (String key: values.keySet()) {
+            Object value = values.get(key);
+            Object previousValue = previousValues.get(key);
+            if ((value instanceof byte[]) && (previousValue instanceof byte[])) {
+                if (!Arrays.equals((byte[]) value, (byte[]) previousValue)) {
+                    return false;
+                }
+            } else if ((value != null) ? !value.equals(previousValue) : (previousValue != null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forecast entries of the first local day of the stored forecast, ordered by dt.
+     */
+    public List<DetailedWeatherForecast> getWeatherForecastForFirstDay(long locationId, int forecastType) {
+        Long firstDateTime = getFirstWeatherForecastItemTime(locationId, forecastType);
+        if (firstDateTime == null) {
+            return new ArrayList<>();
+        }
+        Calendar dayStart = Calendar.getInstance();
+        dayStart.setTimeInMillis(firstDateTime * 1000);
+        dayStart.set(Calendar.HOUR_OF_DAY, 0);
+        dayStart.set(Calendar.MINUTE, 0);
+        dayStart.set(Calendar.SECOND, 0);
+        dayStart.set(Calendar.MILLISECOND, 0);
+        Calendar dayEnd = (Calendar) dayStart.clone();
+        dayEnd.add(Calendar.DAY_OF_YEAR, 1);
+        return getWeatherForecastItems(locationId,
+                forecastType,
+                dayStart.getTimeInMillis() / 1000,
+                dayEnd.getTimeInMillis() / 1000);
+    }
+
+    private Long getFirstWeatherForecastItemTime(long locationId, int forecastType) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                WeatherForecastContract.WeatherForecastItem.TABLE_NAME,
+                new String[] {"MIN(" + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME + ")"},
+                WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_LOCATION_ID + "=" + locationId +
+                    " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_FORECAST_TYPE + "=" + forecastType,
+                null,
+                null,
+                null,
+                null
+            );
+            if (cursor.moveToNext() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
     }
 
+    /**
+     * Forecast entries with fromDateTime <= dt < toDateTime, both in seconds, ordered by dt.
+     */
+    public List<DetailedWeatherForecast> getWeatherForecastItems(long locationId,
+                                                                 int forecastType,
+                                                                 long fromDateTime,
+                                                                 long toDateTime) {
+        List<DetailedWeatherForecast> result = new ArrayList<>();
+        SQLiteDatabase db = getReadableDatabase();
+
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                WeatherForecastContract.WeatherForecastItem.TABLE_NAME,
+                null,
+                WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_LOCATION_ID + "=" + locationId +
+                    " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_FORECAST_TYPE + "=" + forecastType +
+                    " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME + ">=" + fromDateTime +
+                    " AND " + WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME + "<" + toDateTime,
+                null,
+                null,
+                null,
+                WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME
+            );
+
+            int dateTimeIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DATE_TIME);
+            int temperatureIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_TEMPERATURE);
+            int temperatureMinIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_TEMPERATURE_MIN);
+            int temperatureMaxIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_TEMPERATURE_MAX);
+            int pressureIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_PRESSURE);
+            int humidityIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_HUMIDITY);
+            int windSpeedIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WIND_SPEED);
+            int windDegreeIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WIND_DEGREE);
+            int cloudinessIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_CLOUDINESS);
+            int rainIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_RAIN);
+            int snowIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_SNOW);
+            int weatherIdIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WEATHER_ID);
+            int iconIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_ICON);
+            int descriptionIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_DESCRIPTION);
+            int weatherConditionsIndex = cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecastItem.COLUMN_NAME_WEATHER_CONDITIONS);
+            while (cursor.moveToNext()) {
+                DetailedWeatherForecast detailedWeatherForecast = new DetailedWeatherForecast();
+                detailedWeatherForecast.setDateTime(cursor.getLong(dateTimeIndex));
+                detailedWeatherForecast.setTemperature(cursor.getDouble(temperatureIndex));
+                detailedWeatherForecast.setTemperatureMin(cursor.getDouble(temperatureMinIndex));
+                detailedWeatherForecast.setTemperatureMax(cursor.getDouble(temperatureMaxIndex));
+                detailedWeatherForecast.setPressure(cursor.getDouble(pressureIndex));
+                detailedWeatherForecast.setHumidity(cursor.getInt(humidityIndex));
+                detailedWeatherForecast.setWindSpeed(cursor.getDouble(windSpeedIndex));
+                detailedWeatherForecast.setWindDegree(cursor.getDouble(windDegreeIndex));
+                detailedWeatherForecast.setCloudiness(cursor.getInt(cloudinessIndex));
+                detailedWeatherForecast.setRain(cursor.getDouble(rainIndex));
+                detailedWeatherForecast.setSnow(cursor.getDouble(snowIndex));
+                if (!cursor.isNull(weatherConditionsIndex)) {
+                    WeatherBinaryCodec.decodeWeatherConditions(cursor.getBlob(weatherConditionsIndex), detailedWeatherForecast);
+                } else if (!cursor.isNull(weatherIdIndex)) {
+                    detailedWeatherForecast.addWeatherCondition(cursor.getInt(weatherIdIndex),
+                            cursor.getString(iconIndex),
+                            cursor.getString(descriptionIndex));
+                }
+                result.add(detailedWeatherForecast);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
     public WeatherForecastRecord getWeatherForecast(long locationId) {
         return getWeatherForecast(locationId, 1);
     }
 
+    public DbRecordCache<WeatherForecastRecord> getWeatherForecastCache() {
+        return weatherForecastCache;
+    }
+
+    /**
+     * The cached record is shared, so the caller gets a copy with the forecast decoded again from its bytes.
+     */
     public WeatherForecastRecord getWeatherForecast(long locationId, int forecastType) {
+        long cacheKey = DbRecordCache.getKey(locationId, forecastType);
+        WeatherForecastRecord weatherForecastRecord = weatherForecastCache.get(cacheKey);
+        if (weatherForecastRecord == null) {
+            long cacheVersion = weatherForecastCache.getVersion();
+            weatherForecastRecord = readWeatherForecast(locationId, forecastType);
+            if (weatherForecastRecord == null) {
+                return null;
+            }
+            weatherForecastCache.put(cacheKey, weatherForecastRecord, cacheVersion);
+        }
+        return createWeatherForecastRecord(weatherForecastRecord.lastUpdatedTime,
+                weatherForecastRecord.completeWeatherForecastBytes,
+                weatherForecastRecord.weatherForDaysBytes);
+    }
+
+    private WeatherForecastRecord readWeatherForecast(long locationId, int forecastType) {
 
         SQLiteDatabase db = getReadableDatabase();
 
         String[] projection = {
                 WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST,
-                WeatherForecastContract.WeatherForecast.COLUMN_NAME_LAST_UPDATED_IN_MS
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_LAST_UPDATED_IN_MS,
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FOR_DAYS
         };
 
         Cursor cursor = null;
@@ -102,14 +475,10 @@ public class WeatherForecastDbHelper extends SQLiteOpenHelper {
             );
 
             if (cursor.moveToNext()) {
-                CompleteWeatherForecast completeWeatherForecast = getCompleteWeatherForecastFromBytes(
-                        cursor.getBlob(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST)));
-                if (completeWeatherForecast == null) {
-                    return null;
-                }
-                return new WeatherForecastRecord(
+                return createWeatherForecastRecord(
                         cursor.getLong(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_LAST_UPDATED_IN_MS)),
-                        completeWeatherForecast);
+                        cursor.getBlob(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST)),
+                        cursor.getBlob(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FOR_DAYS)));
             } else {
                 return null;
             }
@@ -120,10 +489,90 @@ public class WeatherForecastDbHelper extends SQLiteOpenHelper {
         }
     }
 
+    private WeatherForecastRecord createWeatherForecastRecord(long lastUpdatedTime,
+                                                              byte[] completeWeatherForecastBytes,
+                                                              byte[] weatherForDaysBytes) {
+        CompleteWeatherForecast completeWeatherForecast = getCompleteWeatherForecastFromBytes(completeWeatherForecastBytes);
+        if (completeWeatherForecast == null) {
+            return null;
+        }
+        Set<ForecastUtil.WeatherForecastPerDay> weatherForecastForDays = getWeatherForDaysFromBytes(weatherForDaysBytes);
+        if (weatherForecastForDays == null) {
+            weatherForecastForDays = ForecastUtil.calculateWeatherForDays(completeWeatherForecast);
+        }
+        WeatherForecastRecord weatherForecastRecord = new WeatherForecastRecord(
+                lastUpdatedTime,
+                getForecastVersion(completeWeatherForecastBytes),
+                completeWeatherForecast,
+                weatherForecastForDays);
+        weatherForecastRecord.completeWeatherForecastBytes = completeWeatherForecastBytes;
+        weatherForecastRecord.weatherForDaysBytes = weatherForDaysBytes;
+        return weatherForecastRecord;
+    }
+
+    private void migrateWeatherForecasts(SQLiteDatabase db) {
+        String[] projection = {
+                WeatherForecastContract.WeatherForecast._ID,
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID,
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE,
+                WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST
+        };
+        Cursor cursor = null;
+        try {
+            cursor = db.query(WeatherForecastContract.WeatherForecast.TABLE_NAME, projection, null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                long recordId = cursor.getLong(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast._ID));
+                byte[] completeWeatherForecastBytes =
+                        cursor.getBlob(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST));
+                CompleteWeatherForecast completeWeatherForecast = getCompleteWeatherForecastFromBytes(completeWeatherForecastBytes);
+                if (completeWeatherForecast == null) {
+                    db.delete(WeatherForecastContract.WeatherForecast.TABLE_NAME,
+                            WeatherForecastContract.WeatherForecast._ID + "=" + recordId,
+                            null);
+                    continue;
+                }
+                ContentValues values = new ContentValues();
+                values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FORECAST,
+                           getCompleteWeatherForecastAsBytes(completeWeatherForecast));
+                values.put(WeatherForecastContract.WeatherForecast.COLUMN_NAME_WEATHER_FOR_DAYS,
+                           getWeatherForDaysAsBytes(completeWeatherForecast));
+                db.update(WeatherForecastContract.WeatherForecast.TABLE_NAME,
+                        values,
+                        WeatherForecastContract.WeatherForecast._ID + "=" + recordId,
+                        null);
+                saveWeatherForecastItems(db,
+                        cursor.getLong(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_LOCATION_ID)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(WeatherForecastContract.WeatherForecast.COLUMN_NAME_FORECAST_TYPE)),
+                        completeWeatherForecast,
+                        null);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    static long getForecastVersion(byte[] completeWeatherForecastBytes) {
+        CRC32 checksum = new CRC32();
+        if (completeWeatherForecastBytes != null) {
+            checksum.update(completeWeatherForecastBytes, 0, completeWeatherForecastBytes.length);
+        }
+        return checksum.getValue();
+    }
+
     public CompleteWeatherForecast getCompleteWeatherForecastFromBytes(byte[] addressBytes) {
         if ((addressBytes == null) || (addressBytes.length == 0)) {
             return null;
         }
+        if (WeatherBinaryCodec.isCompleteWeatherForecast(addressBytes)) {
+            try {
+                return WeatherBinaryCodec.decodeCompleteWeatherForecast(addressBytes);
+            } catch (Exception e) {
+                appendLog(context, TAG, e);
+                return null;
+            }
+        }
         final Parcel parcel = Parcel.obtain();
         parcel.unmarshall(addressBytes, 0, addressBytes.length);
         parcel.setDataPosition(0);
@@ -138,29 +587,81 @@ public class WeatherForecastDbHelper extends SQLiteOpenHelper {
     }
 
     public byte[] getCompleteWeatherForecastAsBytes(CompleteWeatherForecast completeWeatherForecast) {
-        final Parcel parcel = Parcel.obtain();
-        completeWeatherForecast.writeToParcel(parcel, 0);
-        byte[] completeWeatherForecastBytes = parcel.marshall();
-        parcel.recycle();
-        return completeWeatherForecastBytes;
+        return WeatherBinaryCodec.encodeCompleteWeatherForecast(completeWeatherForecast);
+    }
+
+    /**
+     * Daily aggregates are stamped with their version and the time zone of the day boundaries,
+     * stale ones are not returned and calculated again.
+     */
+    private Set<ForecastUtil.WeatherForecastPerDay> getWeatherForDaysFromBytes(byte[] weatherForDaysBytes) {
+        try {
+            return WeatherBinaryCodec.decodeWeatherForDays(weatherForDaysBytes,
+                    ForecastUtil.WEATHER_FOR_DAYS_VERSION,
+                    TimeZone.getDefault().getID());
+        } catch (Exception e) {
+            appendLog(context, TAG, e);
+            return null;
+        }
+    }
+
+    private byte[] getWeatherForDaysAsBytes(CompleteWeatherForecast completeWeatherForecast) {
+        return WeatherBinaryCodec.encodeWeatherForDays(ForecastUtil.calculateWeatherForDays(completeWeatherForecast),
+                ForecastUtil.WEATHER_FOR_DAYS_VERSION,
+                TimeZone.getDefault().getID());
     }
 
 
     public class WeatherForecastRecord {
         long lastUpdatedTime;
+        long forecastVersion;
         CompleteWeatherForecast completeWeatherForecast;
+        Set<ForecastUtil.WeatherForecastPerDay> weatherForecastForDays;
+        // stored bytes the forecast is decoded from, copies of a cached record are decoded from them
+        byte[] completeWeatherForecastBytes;
+        byte[] weatherForDaysBytes;
 
         public WeatherForecastRecord(long lastUpdatedTime, CompleteWeatherForecast completeWeatherForecast) {
+            this(lastUpdatedTime, completeWeatherForecast, null);
+        }
+
+        public WeatherForecastRecord(long lastUpdatedTime,
+                                     CompleteWeatherForecast completeWeatherForecast,
+                                     Set<ForecastUtil.WeatherForecastPerDay> weatherForecastForDays) {
+            this(lastUpdatedTime, lastUpdatedTime, completeWeatherForecast, weatherForecastForDays);
+        }
+
+        public WeatherForecastRecord(long lastUpdatedTime,
+                                     long forecastVersion,
+                                     CompleteWeatherForecast completeWeatherForecast,
+                                     Set<ForecastUtil.WeatherForecastPerDay> weatherForecastForDays) {
             this.lastUpdatedTime = lastUpdatedTime;
+            this.forecastVersion = forecastVersion;
             this.completeWeatherForecast = completeWeatherForecast;
+            this.weatherForecastForDays = weatherForecastForDays;
         }
 
         public long getLastUpdatedTime() {
             return lastUpdatedTime;
         }
 
+        /**
+         * Checksum of the stored forecast, it changes with the forecast data but not when only the update
+         * time of an unchanged forecast is refreshed.
+         */
+        public long getForecastVersion() {
+            return forecastVersion;
+        }
+
         public CompleteWeatherForecast getCompleteWeatherForecast() {
             return completeWeatherForecast;
         }
+
+        /**
+         * Daily aggregates calculated when the forecast was saved, null when the record has none.
+         */
+        public Set<ForecastUtil.WeatherForecastPerDay> getWeatherForecastForDays() {
+            return weatherForecastForDays;
+        }
     }
 }
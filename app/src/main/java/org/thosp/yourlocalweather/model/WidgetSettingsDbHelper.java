@@ -6,6 +6,10 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.thosp.yourlocalweather.model.WidgetSettingsContract.SQL_CREATE_TABLE_WIDGET_SETTINGS;
 import static org.thosp.yourlocalweather.model.WidgetSettingsContract.SQL_DELETE_TABLE_WIDGET_SETTINGS;
 
@@ -14,8 +18,10 @@ public class WidgetSettingsDbHelper extends SQLiteOpenHelper {
     public static final int DATABASE_VERSION = 2;
     public static final String DATABASE_NAME = "WidgetSettings.db";
     private static WidgetSettingsDbHelper instance;
+    private volatile long version;
+    private Map<Integer, WidgetParams> widgetParams;
 
-    public static WidgetSettingsDbHelper getInstance(Context ctx) {
+    public synchronized static WidgetSettingsDbHelper getInstance(Context ctx) {
         if (instance == null) {
             instance = new WidgetSettingsDbHelper(ctx.getApplicationContext());
         }
@@ -39,196 +45,230 @@ public class WidgetSettingsDbHelper extends SQLiteOpenHelper {
         onUpgrade(db, oldVersion, newVersion);
     }
 
+    /**
+     * Counter of changes of the widget settings, readers holding derived data compare it to notice changes.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * All settings of the widget. The returned snapshot is immutable and is replaced on every save, once the
+     * row is stored.
+     */
+    public synchronized WidgetParams getAllParams(int widgetId) {
+        WidgetParams params = getWidgetParams().get(widgetId);
+        return (params != null) ? params : WidgetParams.EMPTY;
+    }
+
     public void deleteRecordFromTable(Integer widgetId) {
         SQLiteDatabase db = getWritableDatabase();
-        try {
-            String selection = WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + " = ?";
-            String[] selectionArgs = {widgetId.toString()};
+        String selection = WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + " = ?";
+        String[] selectionArgs = {widgetId.toString()};
+        synchronized (this) {
             db.delete(WidgetSettingsContract.WidgetSettings.TABLE_NAME, selection, selectionArgs);
-        } finally {
+            getWidgetParams().remove(widgetId);
+            version++;
         }
     }
 
     public void saveParamString(int widgetId, String paramName, String value) {
-        SQLiteDatabase db = getWritableDatabase();
-
-        try {
-            String oldValue = getParamString(widgetId, paramName);
-
-            ContentValues values = new ContentValues();
-            values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_STRING, value);
-            if (oldValue == null) {
-                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME, paramName);
-                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID, widgetId);
-                db.insert(WidgetSettingsContract.WidgetSettings.TABLE_NAME, null, values);
-            } else {
-                db.updateWithOnConflict(WidgetSettingsContract.WidgetSettings.TABLE_NAME,
-                        values,
-                        WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + "=" + widgetId +
-                                " AND " + WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + "=\"" + paramName + "\"",
-                        null,
-                        SQLiteDatabase.CONFLICT_IGNORE);
+        ContentValues values = new ContentValues();
+        values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_STRING, value);
+        synchronized (this) {
+            if (!saveParam(widgetId, paramName, values)) {
+                return;
             }
-        } finally {
+            WidgetParams params = getAllParams(widgetId);
+            Param param = params.params.get(paramName);
+            Long longValue = (param != null) ? param.longValue : null;
+            putParam(widgetId, params, paramName, new Param(longValue, value));
         }
     }
 
     public void saveParamBoolean(int widgetId, String paramName, Boolean value) {
-        SQLiteDatabase db = getWritableDatabase();
-
-        try {
-            Boolean oldValue = getParamBoolean(widgetId, paramName);
-
-            ContentValues values = new ContentValues();
-            Long valueToStore;
-            if (value == null) {
-                valueToStore = null;
-            } else if (value) {
-                valueToStore = 1l;
-            } else {
-                valueToStore = 0l;
-            }
-            values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG, valueToStore);
-            if (oldValue == null) {
-                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME, paramName);
-                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID, widgetId);
-                db.insert(WidgetSettingsContract.WidgetSettings.TABLE_NAME, null, values);
-            } else {
-                db.updateWithOnConflict(WidgetSettingsContract.WidgetSettings.TABLE_NAME,
-                        values,
-                        WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + "=" + widgetId +
-                                " AND " + WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + "=\"" + paramName + "\"",
-                        null,
-                        SQLiteDatabase.CONFLICT_IGNORE);
-            }
-        } finally {
+        Long valueToStore;
+        if (value == null) {
+            valueToStore = null;
+        } else if (value) {
+            valueToStore = 1l;
+        } else {
+            valueToStore = 0l;
         }
+        saveParamLong(widgetId, paramName, valueToStore);
     }
 
     public void saveParamLong(int widgetId, String paramName, long value) {
-        SQLiteDatabase db = getWritableDatabase();
-
-        try {
-            Long oldValue = getParamLong(widgetId, paramName);
+        saveParamLong(widgetId, paramName, Long.valueOf(value));
+    }
 
-            ContentValues values = new ContentValues();
-            values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG, value);
-            if (oldValue == null) {
-                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME, paramName);
-                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID, widgetId);
-                db.insert(WidgetSettingsContract.WidgetSettings.TABLE_NAME, null, values);
-            } else {
-                db.updateWithOnConflict(WidgetSettingsContract.WidgetSettings.TABLE_NAME,
-                        values,
-                        WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + "=" + widgetId +
-                        " AND " + WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + "=\"" + paramName + "\"",
-                        null,
-                        SQLiteDatabase.CONFLICT_IGNORE);
+    private void saveParamLong(int widgetId, String paramName, Long value) {
+        ContentValues values = new ContentValues();
+        values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG, value);
+        synchronized (this) {
+            if (!saveParam(widgetId, paramName, values)) {
+                return;
             }
-        } finally {
+            WidgetParams params = getAllParams(widgetId);
+            Param param = params.params.get(paramName);
+            String stringValue = (param != null) ? param.stringValue : null;
+            putParam(widgetId, params, paramName, new Param(value, stringValue));
         }
     }
 
     public Long getParamLong(int widgetId, String paramName) {
-        SQLiteDatabase db = getReadableDatabase();
+        return getAllParams(widgetId).getLong(paramName);
+    }
 
-        String[] projection = {
-                WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG
-        };
+    public String getParamString(int widgetId, String paramName) {
+        return getAllParams(widgetId).getString(paramName);
+    }
 
-        Cursor cursor = null;
-        try {
-            cursor = db.query(
-                    WidgetSettingsContract.WidgetSettings.TABLE_NAME,
-                    projection,
-                    WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + "=" + widgetId +
-                    " AND " + WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + "=\"" + paramName + "\"",
-                    null,
-                    null,
-                    null,
-                    null
-            );
+    public Boolean getParamBoolean(int widgetId, String paramName) {
+        return getAllParams(widgetId).getBoolean(paramName);
+    }
 
-            if (cursor.moveToNext()) {
-                return cursor.getLong(cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG));
-            } else {
-                return null;
+    private void putParam(int widgetId, WidgetParams params, String paramName, Param param) {
+        Map<String, Param> changedParams = new HashMap<>(params.params);
+        changedParams.put(paramName, param);
+        getWidgetParams().put(widgetId, new WidgetParams(changedParams));
+        version++;
+    }
+
+    /**
+     * Updates the stored row of the param or inserts it when there is none, in one transaction.
+     * @return false when the row was not stored
+     */
+    private boolean saveParam(int widgetId, String paramName, ContentValues values) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int updatedRows = db.update(WidgetSettingsContract.WidgetSettings.TABLE_NAME,
+                    values,
+                    WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + " = ? AND " +
+                            WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + " = ?",
+                    new String[] { String.valueOf(widgetId), paramName });
+            if (updatedRows == 0) {
+                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME, paramName);
+                values.put(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID, widgetId);
+                if (db.insert(WidgetSettingsContract.WidgetSettings.TABLE_NAME, null, values) == -1) {
+                    return false;
+                }
             }
+            db.setTransactionSuccessful();
+            return true;
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            db.endTransaction();
         }
     }
 
-    public String getParamString(int widgetId, String paramName) {
+    private Map<Integer, WidgetParams> getWidgetParams() {
+        if (widgetParams == null) {
+            widgetParams = loadWidgetParams();
+        }
+        return widgetParams;
+    }
+
+    private Map<Integer, WidgetParams> loadWidgetParams() {
         SQLiteDatabase db = getReadableDatabase();
 
         String[] projection = {
+                WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID,
+                WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME,
+                WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG,
                 WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_STRING
         };
 
+        Map<Integer, Map<String, Param>> loadedParams = new HashMap<>();
         Cursor cursor = null;
         try {
             cursor = db.query(
                     WidgetSettingsContract.WidgetSettings.TABLE_NAME,
                     projection,
-                    WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + "=" + widgetId +
-                            " AND " + WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + "=\"" + paramName + "\"",
                     null,
                     null,
                     null,
-                    null
+                    null,
+                    WidgetSettingsContract.WidgetSettings._ID
             );
 
-            if (cursor.moveToNext()) {
-                return cursor.getString(cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_STRING));
-            } else {
-                return null;
+            int widgetIdIndex = cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID);
+            int paramNameIndex = cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME);
+            int paramLongIndex = cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG);
+            int paramStringIndex = cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_STRING);
+            while (cursor.moveToNext()) {
+                int widgetId = cursor.getInt(widgetIdIndex);
+                String paramName = cursor.getString(paramNameIndex);
+                Map<String, Param> params = loadedParams.get(widgetId);
+                if (params == null) {
+                    params = new HashMap<>();
+                    loadedParams.put(widgetId, params);
+                }
+                if (params.containsKey(paramName)) {
+                    continue;
+                }
+                params.put(paramName, new Param(
+                        cursor.isNull(paramLongIndex) ? null : cursor.getLong(paramLongIndex),
+                        cursor.getString(paramStringIndex)));
             }
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
+        Map<Integer, WidgetParams> widgetParams = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Param>> params: loadedParams.entrySet()) {
+            widgetParams.put(params.getKey(), new WidgetParams(params.getValue()));
+        }
+        return widgetParams;
     }
 
-    public Boolean getParamBoolean(int widgetId, String paramName) {
-        SQLiteDatabase db = getReadableDatabase();
+    private static class Param {
+        private final Long longValue;
+        private final String stringValue;
 
-        String[] projection = {
-                WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG
-        };
+        Param(Long longValue, String stringValue) {
+            this.longValue = longValue;
+            this.stringValue = stringValue;
+        }
+    }
 
-        Cursor cursor = null;
-        try {
-            cursor = db.query(
-                    WidgetSettingsContract.WidgetSettings.TABLE_NAME,
-                    projection,
-                    WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID + "=" + widgetId +
-                            " AND " + WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME + "=\"" + paramName + "\"",
-                    null,
-                    null,
-                    null,
-                    null
-            );
+    /**
+     * Settings of one widget. A param stored without a numeric value reads as 0 or false, a param that
+     * was never stored reads as null, the same as the values read from the database row.
+     */
+    public static class WidgetParams {
+        static final WidgetParams EMPTY = new WidgetParams(Collections.<String, Param>emptyMap());
 
-            if (cursor.moveToNext()) {
-                Long longValue = cursor.getLong(cursor.getColumnIndexOrThrow(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_LONG));
-                if (longValue == null) {
-                    return null;
-                } else if (longValue > 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else {
+        private final Map<String, Param> params;
+
+        private WidgetParams(Map<String, Param> params) {
+            this.params = params;
+        }
+
+        public Long getLong(String paramName) {
+            Param param = params.get(paramName);
+            if (param == null) {
                 return null;
             }
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+            return (param.longValue != null) ? param.longValue : 0;
+        }
+
+        public Boolean getBoolean(String paramName) {
+            Long longValue = getLong(paramName);
+            if (longValue == null) {
+                return null;
             }
+            return longValue > 0;
+        }
+
+        public String getString(String paramName) {
+            Param param = params.get(paramName);
+            return (param != null) ? param.stringValue : null;
+        }
+
+        public boolean contains(String paramName) {
+            return params.containsKey(paramName);
         }
     }
 }
@@ -16,6 +16,7 @@ import android.os.RemoteException;
 
 import androidx.annotation.Nullable;
 
+import org.thosp.yourlocalweather.model.DbWriteExecutor;
 import org.thosp.yourlocalweather.model.Location;
 import org.thosp.yourlocalweather.model.LocationsDbHelper;
 import org.thosp.yourlocalweather.utils.ForecastUtil;
@@ -62,6 +63,12 @@ public class AbstractCommonService extends Service {
         return false;
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        DbWriteExecutor.getInstance(getBaseContext()).flush();
+    }
+
     protected void updateNetworkLocation(boolean byLastLocationOnly) {
         startRefreshRotation("updateNetworkLocation", 3);
         if (checkIfLocationUpdateServiceIsNotBound()) {
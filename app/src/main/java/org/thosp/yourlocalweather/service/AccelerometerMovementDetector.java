@@ -0,0 +1,167 @@
+package org.thosp.yourlocalweather.service;
+
+/**
+ * Integrates the high pass filtered accelerometer into a moved length and asks for a location update when
+ * the length is over the limit of the time passed since the last update. The time of the last update is
+ * looked up only when the length is over a limit and then at most every few seconds. Nothing is allocated
+ * per event.
+ */
+public class AccelerometerMovementDetector implements MovementDetector {
+
+    private static final float REFERENCE_ACCELEROMETER_RESOLUTION = 104.418936291f;
+    private static final float LENGTH_UPDATE_LOCATION_LIMIT = 1500;
+    private static final float LENGTH_UPDATE_LOCATION_SECOND_LIMIT = 10000;
+    private static final float LENGTH_UPDATE_LOCATION_LIMIT_NO_LOCATION = 200;
+    private static final long ACCELEROMETER_UPDATE_TIME_SPAN = 900000l; //15 min
+    private static final long ACCELEROMETER_UPDATE_TIME_SECOND_SPAN = 300000l; //5 min
+    private static final long ACCELEROMETER_UPDATE_TIME_SPAN_NO_LOCATION = 300000l; //5 min
+    private static final long LAST_UPDATE_TIME_CHECK_INTERVAL = 10000l; //10 s
+
+    private final LocationUpdateTimeSource locationUpdateTimeSource;
+    private float sensorResolutionMultiplayer = 1;
+
+    private long lastUpdate = 0;
+    private float currentLength = 0;
+    private float currentLengthLowPassed = 0;
+    private float gravity[] = new float[3];
+    private boolean gravityMeasured;
+    // high pass filtered acceleration of the previous event
+    private float lastMovementX;
+    private float lastMovementY;
+    private float lastMovementZ;
+    private boolean lastMovementMeasured;
+
+    private long cachedLastUpdatedPosition;
+    private long lastUpdatedPositionCheckTime = Long.MIN_VALUE;
+
+    private float decisionAbsCurrentLength;
+    private float decisionCurrentLengthLowPassed;
+    private long decisionTime;
+    private long decisionLastUpdatedPosition;
+    private boolean decisionAddressFound;
+
+    public AccelerometerMovementDetector(LocationUpdateTimeSource locationUpdateTimeSource) {
+        this.locationUpdateTimeSource = locationUpdateTimeSource;
+    }
+
+    /**
+     * @param sensorResolution resolution of the accelerometer in m/s2
+     */
+    public void setSensorResolution(float sensorResolution) {
+        sensorResolutionMultiplayer = 1 / sensorResolution;
+    }
+
+    @Override
+    public boolean onSensorChanged(long timestamp, float[] values, long nowInMillis, boolean addressFound) {
+        double countedLength;
+        double countedAcc;
+        final float dT = (float) (timestamp - lastUpdate) / 1000000000.0f;
+        lastUpdate = timestamp;
+
+        if (lastMovementMeasured) {
+            countedAcc = (float) Math.sqrt((lastMovementX * lastMovementX) + (lastMovementY * lastMovementY) + (lastMovementZ * lastMovementZ));
+            countedLength = countedAcc * dT *dT;
+
+            float lowPassConst = 0.1f;
+
+            if ((countedAcc < lowPassConst) || (dT > 1000f)) {
+                currentLengthLowPassed += countedLength;
+                highPassFilter(values);
+                return false;
+            }
+            currentLength += countedLength;
+        }
+        highPassFilter(values);
+
+        float absCurrentLength = Math.abs(currentLength) * (REFERENCE_ACCELEROMETER_RESOLUTION + sensorResolutionMultiplayer);
+
+        boolean currentLengthIsUnderLimit = (absCurrentLength < LENGTH_UPDATE_LOCATION_LIMIT);
+        boolean currentLengthIsUnderFastLimit = (absCurrentLength < LENGTH_UPDATE_LOCATION_SECOND_LIMIT);
+        boolean currentLengthIsUnderNoLocationLimit = (absCurrentLength < LENGTH_UPDATE_LOCATION_LIMIT_NO_LOCATION);
+        if (currentLengthIsUnderLimit && currentLengthIsUnderFastLimit && (addressFound || currentLengthIsUnderNoLocationLimit)) {
+            // under every limit whenever the last update has been
+            return false;
+        }
+
+        long lastUpdatedPosition = getLastLocationUpdateTime(nowInMillis);
+        boolean nowIsBeforeTheLastUpdatedAndTimeSpan = (nowInMillis < (lastUpdatedPosition + ACCELEROMETER_UPDATE_TIME_SPAN));
+        boolean nowIsBeforeTheLastUpdatedAndFastTimeSpan = (nowInMillis < (lastUpdatedPosition + ACCELEROMETER_UPDATE_TIME_SECOND_SPAN));
+        boolean nowIsBeforeTheLastUpdatedAndTimeSpanNoLocation = (nowInMillis < (lastUpdatedPosition + ACCELEROMETER_UPDATE_TIME_SPAN_NO_LOCATION));
+
+        if ((nowIsBeforeTheLastUpdatedAndTimeSpan || currentLengthIsUnderLimit)
+                && (nowIsBeforeTheLastUpdatedAndFastTimeSpan || currentLengthIsUnderFastLimit)
+                && (addressFound || nowIsBeforeTheLastUpdatedAndTimeSpanNoLocation || currentLengthIsUnderNoLocationLimit)) {
+            return false;
+        }
+        decisionAbsCurrentLength = absCurrentLength;
+        decisionCurrentLengthLowPassed = currentLengthLowPassed;
+        decisionTime = nowInMillis;
+        decisionLastUpdatedPosition = lastUpdatedPosition;
+        decisionAddressFound = addressFound;
+        return true;
+    }
+
+    @Override
+    public void clearMeasuredLength() {
+        gravity[0] = 0;
+        gravity[1] = 0;
+        gravity[2] = 0;
+        gravityMeasured = false;
+        currentLength = 0;
+        currentLengthLowPassed = 0;
+        lastUpdatedPositionCheckTime = Long.MIN_VALUE;
+    }
+
+    @Override
+    public void reset() {
+        clearMeasuredLength();
+        lastUpdate = 0;
+    }
+
+    @Override
+    public String getDecisionDescription() {
+        return "currentLength = " + decisionAbsCurrentLength +
+                ", currentLengthLowPassed = " + decisionCurrentLengthLowPassed +
+                ", now = " + decisionTime +
+                ", lastUpdatePosition = " + decisionLastUpdatedPosition +
+                ", addressFound = " + decisionAddressFound;
+    }
+
+    public float getCurrentLength() {
+        return currentLength;
+    }
+
+    public float getCurrentLengthLowPassed() {
+        return currentLengthLowPassed;
+    }
+
+    private long getLastLocationUpdateTime(long nowInMillis) {
+        if ((lastUpdatedPositionCheckTime == Long.MIN_VALUE) ||
+                (nowInMillis < lastUpdatedPositionCheckTime) ||
+                (nowInMillis >= (lastUpdatedPositionCheckTime + LAST_UPDATE_TIME_CHECK_INTERVAL))) {
+            cachedLastUpdatedPosition = locationUpdateTimeSource.getLastLocationUpdateTime();
+            lastUpdatedPositionCheckTime = nowInMillis;
+        }
+        return cachedLastUpdatedPosition;
+    }
+
+    private void highPassFilter(float[] values) {
+        final float alpha = 0.8f;
+
+        if (!gravityMeasured) {
+            // starts with the first event instead of zero, gravity itself is no movement
+            gravity[0] = values[0];
+            gravity[1] = values[1];
+            gravity[2] = values[2];
+            gravityMeasured = true;
+        }
+        gravity[0] = alpha * gravity[0] + (1 - alpha) * values[0];
+        gravity[1] = alpha * gravity[1] + (1 - alpha) * values[1];
+        gravity[2] = alpha * gravity[2] + (1 - alpha) * values[2];
+
+        lastMovementX = values[0] - gravity[0];
+        lastMovementY = values[1] - gravity[1];
+        lastMovementZ = values[2] - gravity[2];
+        lastMovementMeasured = true;
+    }
+}
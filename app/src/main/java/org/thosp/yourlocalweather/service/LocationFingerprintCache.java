@@ -0,0 +1,400 @@
+package org.thosp.yourlocalweather.service;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
+
+/**
+ * Locations resolved by MLS keyed by the fingerprint of the radio environment: hashes of the BSSIDs of the
+ * visible Wi-Fi networks and of the ids of the visible cells, no BSSID is stored as it is. A scan with
+ * enough Wi-Fi networks matches a stored fingerprint when the Jaccard similarity of the BSSID sets reaches
+ * WIFI_SIMILARITY_THRESHOLD, a scan without them is matched by the cells. The least recently used
+ * fingerprints are evicted above maxFingerprints, the whole store is written to one file in background.
+ */
+public class LocationFingerprintCache {
+
+    private static final String TAG = "LocationFingerprintCache";
+
+    private static final int FILE_VERSION = 1;
+    private static final int MAX_FINGERPRINTS = 256;
+    private static final long MAX_AGE_IN_MS = 30L * 24 * 3600000;
+    static final double WIFI_SIMILARITY_THRESHOLD = 0.6;
+    static final double CELL_SIMILARITY_THRESHOLD = 0.5;
+    private static final int MIN_COMMON_WIFIS = 2;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static LocationFingerprintCache instance;
+
+    private final Context context;
+    private final File file;
+    private final Executor diskExecutor;
+    private final int maxFingerprints;
+    private List<CachedLocation> locations;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public synchronized static LocationFingerprintCache getInstance(Context ctx) {
+        if (instance == null) {
+            Context context = ctx.getApplicationContext();
+            instance = new LocationFingerprintCache(context,
+                    new File(context.getCacheDir(), "location_fingerprints"),
+                    Executors.newSingleThreadExecutor(),
+                    MAX_FINGERPRINTS);
+        }
+        return instance;
+    }
+
+    LocationFingerprintCache(Context context, File file, Executor diskExecutor, int maxFingerprints) {
+        this.context = context;
+        this.file = file;
+        this.diskExecutor = diskExecutor;
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    public static Fingerprint createFingerprint(List<Cell> cells, List<String> bssids) {
+        long[] cellHashes = new long[(cells != null) ? cells.size() : 0];
+        for (int i = 0; i < cellHashes.length; i++) {
+            Cell cell = cells.get(i);
+            cellHashes[i] = getHash(cell.mcc + "|" + cell.mnc + "|" + cell.area + "|" + cell.cellId);
+        }
+        long[] wifiHashes = new long[(bssids != null) ? bssids.size() : 0];
+        for (int i = 0; i < wifiHashes.length; i++) {
+            String bssid = bssids.get(i);
+            wifiHashes[i] = getHash((bssid != null) ? bssid.toLowerCase(Locale.US) : "");
+        }
+        return new Fingerprint(getSortedUnique(wifiHashes), getSortedUnique(cellHashes));
+    }
+
+    /**
+     * Returns the location of the most similar stored fingerprint, null when none is similar enough.
+     */
+    public synchronized CachedLocation find(Fingerprint fingerprint, long now) {
+        CachedLocation bestLocation = null;
+        double bestSimilarity = 0;
+        Iterator<CachedLocation> iterator = getLocations().iterator();
+        while (iterator.hasNext()) {
+            CachedLocation location = iterator.next();
+            if ((now - location.resolvedTime) > MAX_AGE_IN_MS) {
+                iterator.remove();
+                evictions++;
+                continue;
+            }
+            double similarity = getMatchingSimilarity(fingerprint, location.fingerprint);
+            if ((similarity > bestSimilarity) ||
+                    ((similarity == bestSimilarity) && (bestLocation != null) &&
+                            (location.resolvedTime > bestLocation.resolvedTime))) {
+                bestSimilarity = similarity;
+                bestLocation = location;
+            }
+        }
+        if (bestLocation == null) {
+            misses++;
+            appendLog(context, TAG, "fingerprint not found, ", this);
+            return null;
+        }
+        hits++;
+        bestLocation.lastUsedTime = now;
+        appendLog(context, TAG, "fingerprint found, similarity=", bestSimilarity, ", ", this);
+        return bestLocation;
+    }
+
+    public synchronized void put(Fingerprint fingerprint, double latitude, double longitude, float accuracy, long now) {
+        List<CachedLocation> cachedLocations = getLocations();
+        Iterator<CachedLocation> iterator = cachedLocations.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().fingerprint.equals(fingerprint)) {
+                iterator.remove();
+            }
+        }
+        cachedLocations.add(new CachedLocation(fingerprint, latitude, longitude, accuracy, now, now));
+        while (cachedLocations.size() > maxFingerprints) {
+            removeLeastRecentlyUsed(cachedLocations);
+            evictions++;
+        }
+        final byte[] content = serialize(cachedLocations);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFile(content);
+                } catch (IOException e) {
+                    appendLog(context, TAG, "Fingerprints not written:", e);
+                }
+            }
+        });
+    }
+
+    public synchronized int size() {
+        return getLocations().size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LocationFingerprintCache:size=" + ((locations != null) ? locations.size() : 0) +
+                ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+
+    /**
+     * Similarity of the scan to the stored fingerprint, 0 when they do not match.
+     */
+    static double getMatchingSimilarity(Fingerprint scan, Fingerprint stored) {
+        if (scan.wifiHashes.length >= MIN_COMMON_WIFIS) {
+            // a location found by Wi-Fi is much more precise than by cells, the cells are not used then
+            if (getIntersectionSize(scan.wifiHashes, stored.wifiHashes) < MIN_COMMON_WIFIS) {
+                return 0;
+            }
+            double similarity = getJaccardSimilarity(scan.wifiHashes, stored.wifiHashes);
+            return (similarity >= WIFI_SIMILARITY_THRESHOLD) ? similarity : 0;
+        }
+        if ((scan.cellHashes.length == 0) || (stored.wifiHashes.length >= MIN_COMMON_WIFIS)) {
+            return 0;
+        }
+        double similarity = getJaccardSimilarity(scan.cellHashes, stored.cellHashes);
+        return (similarity >= CELL_SIMILARITY_THRESHOLD) ? similarity : 0;
+    }
+
+    static double getJaccardSimilarity(long[] sortedHashes1, long[] sortedHashes2) {
+        int intersectionSize = getIntersectionSize(sortedHashes1, sortedHashes2);
+        int unionSize = sortedHashes1.length + sortedHashes2.length - intersectionSize;
+        return (unionSize == 0) ? 0 : ((double) intersectionSize) / unionSize;
+    }
+
+    private static int getIntersectionSize(long[] sortedHashes1, long[] sortedHashes2) {
+        int intersectionSize = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < sortedHashes1.length) && (j < sortedHashes2.length)) {
+            if (sortedHashes1[i] == sortedHashes2[j]) {
+                intersectionSize++;
+                i++;
+                j++;
+            } else if (sortedHashes1[i] < sortedHashes2[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return intersectionSize;
+    }
+
+    private static long getHash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long[] getSortedUnique(long[] hashes) {
+        Arrays.sort(hashes);
+        int uniqueHashes = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if ((i == 0) || (hashes[i] != hashes[i - 1])) {
+                hashes[uniqueHashes++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, uniqueHashes);
+    }
+
+    private static void removeLeastRecentlyUsed(List<CachedLocation> cachedLocations) {
+        int leastRecentlyUsed = 0;
+        for (int i = 1; i < cachedLocations.size(); i++) {
+            if (cachedLocations.get(i).lastUsedTime < cachedLocations.get(leastRecentlyUsed).lastUsedTime) {
+                leastRecentlyUsed = i;
+            }
+        }
+        cachedLocations.remove(leastRecentlyUsed);
+    }
+
+    private List<CachedLocation> getLocations() {
+        if (locations == null) {
+            locations = new ArrayList<>();
+            if (file.exists()) {
+                try {
+                    readFile(locations);
+                } catch (IOException e) {
+                    appendLog(context, TAG, "Fingerprints not read:", e);
+                    locations.clear();
+                    file.delete();
+                }
+            }
+        }
+        return locations;
+    }
+
+    private static byte[] serialize(List<CachedLocation> cachedLocations) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(content);
+        try {
+            output.writeInt(FILE_VERSION);
+            output.writeInt(cachedLocations.size());
+            for (CachedLocation location: cachedLocations) {
+                output.writeDouble(location.latitude);
+                output.writeDouble(location.longitude);
+                output.writeFloat(location.accuracy);
+                output.writeLong(location.resolvedTime);
+                output.writeLong(location.lastUsedTime);
+                writeHashes(output, location.fingerprint.wifiHashes);
+                writeHashes(output, location.fingerprint.cellHashes);
+            }
+            output.flush();
+        } catch (IOException e) {
+            // not thrown by the byte array stream
+        }
+        return content.toByteArray();
+    }
+
+    private static void writeHashes(DataOutputStream output, long[] hashes) throws IOException {
+        output.writeShort(hashes.length);
+        for (long hash: hashes) {
+            output.writeLong(hash);
+        }
+    }
+
+    private static long[] readHashes(DataInputStream input) throws IOException {
+        long[] hashes = new long[input.readUnsignedShort()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = input.readLong();
+        }
+        return hashes;
+    }
+
+    private void readFile(List<CachedLocation> cachedLocations) throws IOException {
+        InputStream fileInput = new FileInputStream(file);
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(fileInput));
+            if (input.readInt() != FILE_VERSION) {
+                throw new IOException("Unknown version of fingerprints");
+            }
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                double latitude = input.readDouble();
+                double longitude = input.readDouble();
+                float accuracy = input.readFloat();
+                long resolvedTime = input.readLong();
+                long lastUsedTime = input.readLong();
+                long[] wifiHashes = readHashes(input);
+                long[] cellHashes = readHashes(input);
+                cachedLocations.add(new CachedLocation(new Fingerprint(wifiHashes, cellHashes),
+                        latitude,
+                        longitude,
+                        accuracy,
+                        resolvedTime,
+                        lastUsedTime));
+            }
+        } finally {
+            fileInput.close();
+        }
+    }
+
+    private void writeFile(byte[] content) throws IOException {
+        File directory = file.getParentFile();
+        if ((directory != null) && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cache directory not created: " + directory);
+        }
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        OutputStream output = new FileOutputStream(temporaryFile);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Fingerprints not replaced: " + file);
+        }
+    }
+
+    public static class Fingerprint {
+        private final long[] wifiHashes;
+        private final long[] cellHashes;
+
+        Fingerprint(long[] wifiHashes, long[] cellHashes) {
+            this.wifiHashes = wifiHashes;
+            this.cellHashes = cellHashes;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint fingerprint = (Fingerprint) obj;
+            return Arrays.equals(wifiHashes, fingerprint.wifiHashes) && Arrays.equals(cellHashes, fingerprint.cellHashes);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * Arrays.hashCode(wifiHashes)) + Arrays.hashCode(cellHashes);
+        }
+    }
+
+    public static class CachedLocation {
+        private final Fingerprint fingerprint;
+        private final double latitude;
+        private final double longitude;
+        private final float accuracy;
+        private final long resolvedTime;
+        private long lastUsedTime;
+
+        CachedLocation(Fingerprint fingerprint,
+                       double latitude,
+                       double longitude,
+                       float accuracy,
+                       long resolvedTime,
+                       long lastUsedTime) {
+            this.fingerprint = fingerprint;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.resolvedTime = resolvedTime;
+            this.lastUsedTime = lastUsedTime;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public float getAccuracy() {
+            return accuracy;
+        }
+    }
+}
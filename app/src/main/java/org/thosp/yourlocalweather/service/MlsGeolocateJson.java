@@ -0,0 +1,131 @@
+package org.thosp.yourlocalweather.service;
+
+import org.json.JSONException;
+import org.thosp.yourlocalweather.utils.JsonByteReader;
+import org.thosp.yourlocalweather.utils.JsonByteWriter;
+
+/**
+ * Body of the MLS geolocate request written straight into a reused buffer, in the same order and format
+ * as the JSONObject tree built for it before, and the streaming reader of the response.
+ * Calls of one request must not be interleaved with another one.
+ */
+public class MlsGeolocateJson {
+
+    private static final int INITIAL_REQUEST_CAPACITY = 8192;
+
+    private static final byte[][] RESPONSE_NAMES = JsonByteReader.options("location", "accuracy");
+    private static final byte[][] LOCATION_NAMES = JsonByteReader.options("lat", "lng");
+
+    private final JsonByteWriter writer = new JsonByteWriter(INITIAL_REQUEST_CAPACITY);
+
+    /**
+     * @param radioType radio type of the whole request, null to leave it out
+     */
+    public void beginRequest(String radioType) {
+        writer.reset();
+        writer.beginObject();
+        if (radioType != null) {
+            writer.name("radioType").value(radioType);
+        }
+        writer.name("cellTowers").beginArray();
+    }
+
+    /**
+     * @param psc primary scrambling code, -1 when unknown
+     */
+    public void writeCellTower(String radioType,
+                               int mobileCountryCode,
+                               int mobileNetworkCode,
+                               int locationAreaCode,
+                               int cellId,
+                               int signalStrength,
+                               int psc,
+                               int asu) {
+        writer.beginObject();
+        writer.name("radioType").value(radioType);
+        writer.name("mobileCountryCode").value(mobileCountryCode);
+        writer.name("mobileNetworkCode").value(mobileNetworkCode);
+        writer.name("locationAreaCode").value(locationAreaCode);
+        writer.name("cellId").value(cellId);
+        writer.name("signalStrength").value(signalStrength);
+        if (psc != -1) {
+            writer.name("psc").value(psc);
+        }
+        writer.name("asu").value(asu);
+        writer.endObject();
+    }
+
+    public void beginWifiAccessPoints() {
+        writer.endArray();
+        writer.name("wifiAccessPoints").beginArray();
+    }
+
+    /**
+     * @param macAddress BSSID of the network, left out when null
+     * @param frequency frequency in MHz, -1 when unknown, the channel is left out then too
+     */
+    public void writeWifiAccessPoint(String macAddress, int frequency, int channel, int signalStrength) {
+        writer.beginObject();
+        if (macAddress != null) {
+            writer.name("macAddress").value(macAddress);
+        }
+        if (frequency != -1) {
+            writer.name("channel").value(channel);
+            writer.name("frequency").value(frequency);
+        }
+        writer.name("signalStrength").value(signalStrength);
+        writer.endObject();
+    }
+
+    /**
+     * Finishes the request and returns its body.
+     */
+    public byte[] endRequest() {
+        writer.endArray();
+        writer.name("fallbacks").beginObject();
+        writer.name("lacf").value(true);
+        writer.name("ipf").value(false);
+        writer.endObject();
+        writer.endObject();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Reads latitude, longitude and accuracy of the response, in this order.
+     */
+    public static double[] readLocation(byte[] response) throws JSONException {
+        JsonByteReader reader = new JsonByteReader(response);
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double accuracy = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(RESPONSE_NAMES)) {
+                case 0:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.selectName(LOCATION_NAMES)) {
+                            case 0: latitude = reader.nextDouble(); break;
+                            case 1: longitude = reader.nextDouble(); break;
+                            default: reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case 1:
+                    accuracy = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            throw new JSONException("No location in MLS response");
+        }
+        if (Double.isNaN(accuracy)) {
+            throw new JSONException("No accuracy in MLS response");
+        }
+        return new double[] {latitude, longitude, accuracy};
+    }
+}
@@ -0,0 +1,40 @@
+package org.thosp.yourlocalweather.service;
+
+/**
+ * Decides from the events of one motion sensor whether the device has moved far enough to update the
+ * location. Implementations do not depend on the Android sensor classes, so recorded sensor traces can be
+ * replayed into them.
+ */
+public interface MovementDetector {
+
+    interface LocationUpdateTimeSource {
+        /**
+         * Time of the last update of the current location in milliseconds.
+         */
+        long getLastLocationUpdateTime();
+    }
+
+    /**
+     * @param timestamp time of the event in nanoseconds, as given by the sensor
+     * @param values values of the event
+     * @param nowInMillis wall clock time
+     * @param addressFound whether the current location has got an address already
+     * @return true when the location should be updated
+     */
+    boolean onSensorChanged(long timestamp, float[] values, long nowInMillis, boolean addressFound);
+
+    /**
+     * Starts measuring anew after the location has been updated.
+     */
+    void clearMeasuredLength();
+
+    /**
+     * Forgets everything including the last event, when the sensor is registered again.
+     */
+    void reset();
+
+    /**
+     * State of the last decision to update the location, for the log.
+     */
+    String getDecisionDescription();
+}
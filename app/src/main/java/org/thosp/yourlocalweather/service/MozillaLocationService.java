@@ -16,17 +16,16 @@ import android.util.Log;
 import com.loopj.android.http.AsyncHttpClient;
 import com.loopj.android.http.AsyncHttpResponseHandler;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.thosp.yourlocalweather.utils.PreferenceUtil;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
 import cz.msebera.android.httpclient.Header;
-import cz.msebera.android.httpclient.entity.StringEntity;
+import cz.msebera.android.httpclient.entity.ByteArrayEntity;
 
 import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
 
@@ -40,6 +39,7 @@ public class MozillaLocationService {
     private LocationUpdateService locationUpdateService;
     private Context context;
     private Queue<LocationAndAddressToUpdate> locationUpdateServiceActions = new LinkedList<>();
+    private final MlsGeolocateJson geolocateJson = new MlsGeolocateJson();
 
     private MozillaLocationService() {
     }
@@ -77,10 +77,22 @@ public class MozillaLocationService {
             processUpdateOfLocation(context, null);
             return;
         }
+        final LocationFingerprintCache fingerprintCache = LocationFingerprintCache.getInstance(context);
+        final LocationFingerprintCache.Fingerprint fingerprint =
+                LocationFingerprintCache.createFingerprint(cells, getBssids(wiFis));
+        LocationFingerprintCache.CachedLocation cachedLocation = fingerprintCache.find(fingerprint, System.currentTimeMillis());
+        if (cachedLocation != null) {
+            appendLog(context, TAG, "location found by fingerprint, MLS is not called");
+            processUpdateOfLocation(context, create(PROVIDER,
+                    cachedLocation.getLatitude(),
+                    cachedLocation.getLongitude(),
+                    cachedLocation.getAccuracy()));
+            return;
+        }
         try {
-            final String request = createRequest(cells, wiFis);
-            appendLog(context, TAG, "MLS request = " + request);
-            final StringEntity entity = new StringEntity(request);
+            final byte[] request = createRequest(cells, wiFis);
+            appendLog(context, TAG, "MLS request = ", request);
+            final ByteArrayEntity entity = new ByteArrayEntity(request);
             Handler mainHandler = new Handler(Looper.getMainLooper());
             Runnable myRunnable = new Runnable() {
                 @Override
@@ -100,13 +112,13 @@ public class MozillaLocationService {
                         public void onSuccess(int statusCode, Header[] headers, byte[] httpResponse) {
                             Location response = null;
                             try {
-                                String result = new String(httpResponse);
-                                appendLog(context, TAG, "response: ", result);
-                                JSONObject responseJson = new JSONObject(result);
-                                double lat = responseJson.getJSONObject("location").getDouble("lat");
-                                double lon = responseJson.getJSONObject("location").getDouble("lng");
-                                double acc = responseJson.getDouble("accuracy");
+                                appendLog(context, TAG, "response: ", httpResponse);
+                                double[] location = MlsGeolocateJson.readLocation(httpResponse);
+                                double lat = location[0];
+                                double lon = location[1];
+                                double acc = location[2];
                                 response = create(PROVIDER, lat, lon, (float) acc);
+                                fingerprintCache.put(fingerprint, lat, lon, (float) acc, System.currentTimeMillis());
                                 processUpdateOfLocation(context, response);
                             } catch (JSONException e) {
                                 appendLog(context, TAG, e.toString());
@@ -161,52 +173,54 @@ public class MozillaLocationService {
         reportNewLocation(location, null);
     }
 
-    private static String createRequest(List<Cell> cells, List<ScanResult> wiFis) throws JSONException {
-        JSONObject jsonObject = new JSONObject();
-        JSONArray cellTowers = new JSONArray();
+    private static List<String> getBssids(List<ScanResult> wiFis) {
+        List<String> bssids = new ArrayList<>();
+        if (wiFis != null) {
+            for (ScanResult wiFi : wiFis) {
+                bssids.add(wiFi.BSSID);
+            }
+        }
+        return bssids;
+    }
 
+    /**
+     * Writes the request into the reused buffer of geolocateJson, the caller holds the lock of this service.
+     */
+    private byte[] createRequest(List<Cell> cells, List<ScanResult> wiFis) {
+        // the request keeps the radio type only when the last two cells differ, as the JSONObject did before
+        String requestRadioType = null;
         if (cells != null) {
             String lastType = null;
             for (Cell cell : cells) {
                 String networkType = getRadioType(cell);
-                if (lastType != null && lastType.equals(networkType)) {
-                    // We can't contribute if different cell types are mixed.
-                    jsonObject.put("radioType", null);
-                } else {
-                    jsonObject.put("radioType", getRadioType(cell));
-                }
+                requestRadioType = (lastType != null && lastType.equals(networkType)) ? null : networkType;
                 lastType = networkType;
-                JSONObject cellTower = new JSONObject();
-                cellTower.put("radioType", getRadioType(cell));
-                cellTower.put("mobileCountryCode", cell.mcc);
-                cellTower.put("mobileNetworkCode", cell.mnc);
-                cellTower.put("locationAreaCode", cell.area);
-                cellTower.put("cellId", cell.cellId);
-                cellTower.put("signalStrength", cell.signal);
-                if (cell.psc != -1)
-                    cellTower.put("psc", cell.psc);
-                cellTower.put("asu", calculateAsu(networkType, cell.signal));
-                cellTowers.put(cellTower);
             }
         }
-        JSONArray wifiAccessPoints = new JSONArray();
+        geolocateJson.beginRequest(requestRadioType);
+        if (cells != null) {
+            for (Cell cell : cells) {
+                String networkType = getRadioType(cell);
+                geolocateJson.writeCellTower(networkType,
+                        cell.mcc,
+                        cell.mnc,
+                        cell.area,
+                        cell.cellId,
+                        cell.signal,
+                        cell.psc,
+                        calculateAsu(networkType, cell.signal));
+            }
+        }
+        geolocateJson.beginWifiAccessPoints();
         if (wiFis != null) {
             for (ScanResult wiFi : wiFis) {
-                JSONObject wifiAccessPoint = new JSONObject();
-                wifiAccessPoint.put("macAddress", wiFi.BSSID);
-                //wifiAccessPoint.put("age", age);
-                if (wiFi.frequency != -1) wifiAccessPoint.put("channel", convertFrequencyToChannel(wiFi.frequency));
-                if (wiFi.frequency != -1)
-                    wifiAccessPoint.put("frequency", wiFi.frequency);
-                wifiAccessPoint.put("signalStrength", wiFi.level);
-                //wifiAccessPoint.put("signalToNoiseRatio", signalToNoiseRatio);
-                wifiAccessPoints.put(wifiAccessPoint);
+                geolocateJson.writeWifiAccessPoint(wiFi.BSSID,
+                        wiFi.frequency,
+                        convertFrequencyToChannel(wiFi.frequency),
+                        wiFi.level);
             }
         }
-        jsonObject.put("cellTowers", cellTowers);
-        jsonObject.put("wifiAccessPoints", wifiAccessPoints);
-        jsonObject.put("fallbacks", new JSONObject().put("lacf", true).put("ipf", false));
-        return jsonObject.toString();
+        return geolocateJson.endRequest();
     }
 
     /**
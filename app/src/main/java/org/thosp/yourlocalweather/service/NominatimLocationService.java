@@ -2,14 +2,12 @@ package org.thosp.yourlocalweather.service;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Address;
 import android.location.Location;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcel;
-import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.loopj.android.http.AsyncHttpClient;
@@ -18,12 +16,13 @@ import com.loopj.android.http.AsyncHttpResponseHandler;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.microg.address.Formatter;
+import org.thosp.yourlocalweather.model.DbWriteExecutor;
+import org.thosp.yourlocalweather.model.GeoCell;
 import org.thosp.yourlocalweather.model.ReverseGeocodingCacheDbHelper;
-import org.thosp.yourlocalweather.utils.Constants;
+import org.thosp.yourlocalweather.utils.AppSettings;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -216,7 +215,7 @@ public class NominatimLocationService {
     }
 
     private List<Address> retrieveLocationFromCache(Context context, ReverseGeocodingCacheDbHelper mDbHelper, double latitude, double longitude, String locale) {
-        boolean useCache = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(Constants.APP_SETTINGS_LOCATION_CACHE_ENABLED, false);
+        boolean useCache = AppSettings.get(context).isLocationCacheEnabled();
 
         if (!useCache) {
             return null;
@@ -239,21 +238,20 @@ public class NominatimLocationService {
                                      final String locale,
                                      final Address address) {
 
-        boolean useCache = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(Constants.APP_SETTINGS_LOCATION_CACHE_ENABLED, false);
+        boolean useCache = AppSettings.get(context).isLocationCacheEnabled();
 
         if (!useCache) {
             return;
         }
 
-        Thread thread = new Thread() {
+        DbWriteExecutor.getInstance(context).submit(mDbHelper, null, new DbWriteExecutor.DbWrite() {
             @Override
-            public void run() {
-                SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
+            public void write(SQLiteDatabase db) {
                 ContentValues values = new ContentValues();
                 values.put(LocationAddressCache.COLUMN_NAME_ADDRESS, getAddressAsBytes(address));
                 values.put(LocationAddressCache.COLUMN_NAME_LONGITUDE, longitude);
                 values.put(LocationAddressCache.COLUMN_NAME_LATITUDE, latitude);
+                values.put(LocationAddressCache.COLUMN_NAME_CELL, GeoCell.getCell(latitude, longitude));
                 values.put(LocationAddressCache.COLUMN_NAME_LOCALE, locale);
                 values.put(LocationAddressCache.COLUMN_NAME_CREATED, new Date().getTime());
 
@@ -261,73 +259,12 @@ public class NominatimLocationService {
 
                 appendLog(context, TAG, "storedAddress:", latitude, ", ", longitude, ", ", newLocationRowId, ", ", address);
             }
-        };
-        thread.start();
+        });
+        mDbHelper.sweepExpiredRecordsIfNeeded();
     }
 
     private Address getResultFromCache(ReverseGeocodingCacheDbHelper mDbHelper, double latitude, double longitude, String locale) {
-
-        new DeleteOldRows(mDbHelper).start();
-
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        String[] projection = {
-                LocationAddressCache.COLUMN_NAME_ADDRESS
-        };
-
-        double latitudeLow = latitude - 0.0001;
-        double latitudeHigh = latitude + 0.0001;
-        double longitudeLow = longitude - 0.0001;
-        double longitudeHigh = longitude + 0.0001;
-
-        String selection = LocationAddressCache.COLUMN_NAME_LONGITUDE + " <= ? and " +
-                LocationAddressCache.COLUMN_NAME_LONGITUDE + " >= ? and " +
-                LocationAddressCache.COLUMN_NAME_LATITUDE + " <= ? and " +
-                LocationAddressCache.COLUMN_NAME_LATITUDE + " >= ? and " +
-                LocationAddressCache.COLUMN_NAME_LOCALE + " = ? ";
-        String[] selectionArgs = { String.valueOf(longitudeHigh),
-                String.valueOf(longitudeLow),
-                String.valueOf(latitudeHigh),
-                String.valueOf(latitudeLow),
-                locale };
-
-        Cursor cursor = null;
-        try {
-            cursor = db.query(
-                    LocationAddressCache.TABLE_NAME,
-                    projection,
-                    selection,
-                    selectionArgs,
-                    null,
-                    null,
-                    null
-            );
-
-            if (!cursor.moveToNext()) {
-                cursor.close();
-                return null;
-            }
-
-            byte[] cachedAddressBytes = cursor.getBlob(
-                    cursor.getColumnIndexOrThrow(LocationAddressCache.COLUMN_NAME_ADDRESS));
-            return ReverseGeocodingCacheDbHelper.getAddressFromBytes(cachedAddressBytes);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-    }
-
-    private boolean recordDateIsNotValidOrIsTooOld(long recordCreatedinMilis) {
-        Calendar now = Calendar.getInstance();
-        Calendar calendarRecordCreated = Calendar.getInstance();
-        calendarRecordCreated.setTimeInMillis(recordCreatedinMilis);
-
-        int timeToLiveRecordsInCacheInHours = 8760;/*Integer.parseInt(
-                PreferenceManager.getDefaultSharedPreferences(this).getString(SettingsActivity.LOCATION_CACHE_LASTING_HOURS, "720"))*/;
-
-        calendarRecordCreated.add(Calendar.HOUR_OF_DAY, timeToLiveRecordsInCacheInHours);
-        return calendarRecordCreated.before(now);
+        return mDbHelper.getNearestAddress(latitude, longitude, locale);
     }
 
     private byte[] getAddressAsBytes(Address address) {
@@ -338,54 +275,6 @@ public class NominatimLocationService {
         return addressBytes;
     }
 
-    private class DeleteOldRows extends Thread {
-
-        private ReverseGeocodingCacheDbHelper mDbHelper;
-
-        public DeleteOldRows(ReverseGeocodingCacheDbHelper mDbHelper) {
-            this.mDbHelper = mDbHelper;
-        }
-
-        @Override
-        public void run() {
-            SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
-            String[] projection = {
-                    LocationAddressCache.COLUMN_NAME_CREATED,
-                    LocationAddressCache._ID
-            };
-
-            Cursor cursor = null;
-            try {
-                cursor = db.query(
-                    LocationAddressCache.TABLE_NAME,
-                    projection,
-                    null,
-                    null,
-                    null,
-                    null,
-                    null
-                );
-
-                while (cursor.moveToNext()) {
-                    Integer recordId = cursor.getInt(
-                            cursor.getColumnIndexOrThrow(LocationAddressCache._ID));
-
-                    long recordCreatedInMilis = cursor.getLong(
-                            cursor.getColumnIndexOrThrow(LocationAddressCache.COLUMN_NAME_CREATED));
-
-                    if (recordDateIsNotValidOrIsTooOld(recordCreatedInMilis)) {
-                        mDbHelper.deleteRecordFromTable(recordId);
-                    }
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
-        }
-    }
-
     class IterableIterator<T> implements Iterable<T> {
         Iterator<T> i;
 
@@ -0,0 +1,585 @@
+package org.thosp.yourlocalweather.service;
+
+import android.content.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
+
+/**
+ * On-disk cache of OWM responses keyed by the normalized request: endpoint, coordinates rounded to
+ * COORDINATE_SCALE decimals, units and locale, never the api key. Every entry keeps the validators
+ * for conditional requests, the body and the hash of the body. For every location and endpoint the request
+ * and the hash of the body stored last into the DB are kept, so an unchanged response does not have to be
+ * parsed and saved again, while a location that stored the body of another request meanwhile saves it anew.
+ * A response received within the freshness window is shared without a request by all locations with the same
+ * key, the last parsed result of a few keys is kept in memory so that such locations share it too.
+ * Meta data and stored bodies are read into memory once by the disk executor, which also writes the files and
+ * reads the bodies. Reads are queued behind the pending writes, so a body is never read before it is written.
+ */
+public class OwmResponseCache {
+
+    private static final String TAG = "OwmResponseCache";
+
+    public static final int COORDINATE_SCALE = 4;
+    private static final int MAX_ENTRIES = 64;
+    private static final int MAX_PARSED_RESPONSES = 8;
+    private static final int META_VERSION = 3;
+    private static final int STORED_BODIES_VERSION = 1;
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String STORED_BODIES_FILE = "stored_bodies";
+
+    private static OwmResponseCache instance;
+
+    private final Context context;
+    private final File directory;
+    private final Executor diskExecutor;
+    private final Map<String, CachedResponse> responses = new HashMap<>();
+    // request and body hash stored last into the DB, by location id and endpoint
+    private final Map<String, StoredBody> storedBodies = new HashMap<>();
+    private final Map<String, ParsedResponse> parsedResponses =
+            new LinkedHashMap<String, ParsedResponse>(MAX_PARSED_RESPONSES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ParsedResponse> eldest) {
+                    return size() > MAX_PARSED_RESPONSES;
+                }
+            };
+
+    public synchronized static OwmResponseCache getInstance(Context ctx) {
+        if (instance == null) {
+            Context context = ctx.getApplicationContext();
+            instance = new OwmResponseCache(context,
+                    new File(context.getCacheDir(), "owm"),
+                    Executors.newSingleThreadExecutor());
+        }
+        return instance;
+    }
+
+    OwmResponseCache(Context context, File directory, Executor diskExecutor) {
+        this.context = context;
+        this.directory = directory;
+        this.diskExecutor = diskExecutor;
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public interface BodyCallback {
+        /**
+         * Called on the disk executor, body is null when there is none.
+         */
+        void onBody(byte[] body);
+    }
+
+    public static String getRequestKey(String endpoint,
+                                       double latitude,
+                                       double longitude,
+                                       String units,
+                                       String locale) {
+        return endpoint +
+                "?lat=" + roundCoordinate(latitude) +
+                "&lon=" + roundCoordinate(longitude) +
+                "&units=" + units +
+                "&lang=" + locale;
+    }
+
+    static String roundCoordinate(double coordinate) {
+        long scaledCoordinate = Math.round(coordinate * Math.pow(10, COORDINATE_SCALE));
+        return BigDecimal.valueOf(scaledCoordinate, COORDINATE_SCALE).toPlainString();
+    }
+
+    /**
+     * Validators and body hash of the last response of the request, null when there is none or the cache
+     * is not loaded yet.
+     */
+    public synchronized CachedResponse get(String key) {
+        return responses.get(key);
+    }
+
+    /**
+     * Stores the response received now and returns the hash of the body. Missing validators are taken
+     * over only when the body did not change.
+     */
+    public synchronized String put(String key, String eTag, String lastModified, final byte[] body) {
+        String bodyHash = getHash(body);
+        CachedResponse previousResponse = get(key);
+        boolean bodyChanged = (previousResponse == null) || !bodyHash.equals(previousResponse.bodyHash);
+        if (!bodyChanged) {
+            // a not modified response does not have to repeat the validators
+            eTag = (eTag != null) ? eTag : previousResponse.eTag;
+            lastModified = (lastModified != null) ? lastModified : previousResponse.lastModified;
+        }
+        final CachedResponse cachedResponse = new CachedResponse(key,
+                eTag,
+                lastModified,
+                bodyHash,
+                System.currentTimeMillis());
+        responses.put(key, cachedResponse);
+        final byte[] bodyToWrite = bodyChanged ? body : null;
+        final byte[] meta = getMeta(cachedResponse);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (bodyToWrite != null) {
+                        writeFile(getFile(cachedResponse.key, BODY_SUFFIX), bodyToWrite);
+                    }
+                    writeFile(getFile(cachedResponse.key, META_SUFFIX), meta);
+                    evictOldEntries();
+                } catch (IOException e) {
+                    appendLog(context, TAG, "Response not cached:", e);
+                }
+            }
+        });
+        return bodyHash;
+    }
+
+    /**
+     * Whether the body with the hash of this request is the last one the location stored for the endpoint.
+     */
+    public synchronized boolean isStored(String key, long locationId, String bodyHash) {
+        StoredBody storedBody = storedBodies.get(getStoredBodyKey(key, locationId));
+        return (storedBody != null) && storedBody.key.equals(key) && storedBody.bodyHash.equals(bodyHash);
+    }
+
+    /**
+     * Remembers that the location stored the body into the DB instead of what it stored for the endpoint
+     * before, ignored when a newer body of the request arrived meanwhile.
+     */
+    public synchronized void markStored(String key, long locationId, String bodyHash) {
+        CachedResponse cachedResponse = get(key);
+        if ((cachedResponse == null) || !cachedResponse.bodyHash.equals(bodyHash)) {
+            return;
+        }
+        StoredBody storedBody = new StoredBody(key, bodyHash);
+        StoredBody previousStoredBody = storedBodies.put(getStoredBodyKey(key, locationId), storedBody);
+        if (storedBody.equals(previousStoredBody)) {
+            return;
+        }
+        final byte[] content = getStoredBodiesContent(storedBodies);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFile(new File(directory, STORED_BODIES_FILE), content);
+                } catch (IOException e) {
+                    appendLog(context, TAG, "Stored locations not cached:", e);
+                }
+            }
+        });
+    }
+
+    private static String getStoredBodyKey(String key, long locationId) {
+        int queryStart = key.indexOf('?');
+        return locationId + " " + ((queryStart >= 0) ? key.substring(0, queryStart) : key);
+    }
+
+    /**
+     * Reads the entries written by previous instances, entries put meanwhile are newer and are kept.
+     */
+    private void load() {
+        Map<String, CachedResponse> loadedResponses = new HashMap<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                if (!file.getName().endsWith(META_SUFFIX)) {
+                    continue;
+                }
+                CachedResponse cachedResponse = readMeta(file);
+                if (cachedResponse != null) {
+                    loadedResponses.put(cachedResponse.key, cachedResponse);
+                }
+            }
+        }
+        Map<String, StoredBody> loadedStoredBodies = readStoredBodies();
+        synchronized (this) {
+            for (Map.Entry<String, CachedResponse> loadedResponse: loadedResponses.entrySet()) {
+                if (!responses.containsKey(loadedResponse.getKey())) {
+                    responses.put(loadedResponse.getKey(), loadedResponse.getValue());
+                }
+            }
+            for (Map.Entry<String, StoredBody> loadedStoredBody: loadedStoredBodies.entrySet()) {
+                if (!storedBodies.containsKey(loadedStoredBody.getKey())) {
+                    storedBodies.put(loadedStoredBody.getKey(), loadedStoredBody.getValue());
+                }
+            }
+        }
+    }
+
+    private Map<String, StoredBody> readStoredBodies() {
+        Map<String, StoredBody> readStoredBodies = new HashMap<>();
+        File storedBodiesFile = new File(directory, STORED_BODIES_FILE);
+        if (!storedBodiesFile.exists()) {
+            return readStoredBodies;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(storedBodiesFile));
+            if (input.readInt() != STORED_BODIES_VERSION) {
+                return readStoredBodies;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String storedBodyKey = input.readUTF();
+                readStoredBodies.put(storedBodyKey, new StoredBody(input.readUTF(), input.readUTF()));
+            }
+        } catch (IOException e) {
+            appendLog(context, TAG, "Stored locations not read:", e);
+            readStoredBodies.clear();
+        } finally {
+            closeQuietly(input);
+        }
+        return readStoredBodies;
+    }
+
+    private static byte[] getStoredBodiesContent(Map<String, StoredBody> storedBodies) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(STORED_BODIES_VERSION);
+            output.writeInt(storedBodies.size());
+            for (Map.Entry<String, StoredBody> storedBody: storedBodies.entrySet()) {
+                output.writeUTF(storedBody.getKey());
+                output.writeUTF(storedBody.getValue().key);
+                output.writeUTF(storedBody.getValue().bodyHash);
+            }
+            output.flush();
+        } catch (IOException e) {
+            // writing into memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Passes the body of the last response when it was received less than maxAgeInMs ago, otherwise null.
+     */
+    public void getFreshBody(final String key, long maxAgeInMs, final BodyCallback callback) {
+        CachedResponse cachedResponse = get(key);
+        long age = (cachedResponse != null) ? (System.currentTimeMillis() - cachedResponse.receivedTime) : -1;
+        if ((age < 0) || (age >= maxAgeInMs)) {
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onBody(null);
+                }
+            });
+            return;
+        }
+        getBody(key, callback);
+    }
+
+    /**
+     * Result parsed from the body with the hash, null when it was not kept.
+     */
+    public synchronized Object getParsed(String key, String bodyHash) {
+        ParsedResponse parsedResponse = parsedResponses.get(key);
+        if ((parsedResponse == null) || !parsedResponse.bodyHash.equals(bodyHash)) {
+            return null;
+        }
+        return parsedResponse.result;
+    }
+
+    public synchronized void putParsed(String key, String bodyHash, Object result) {
+        parsedResponses.put(key, new ParsedResponse(bodyHash, result));
+    }
+
+    /**
+     * Passes the body of the last response. When the body is not on disk or does not match the kept hash
+     * the entry is dropped, so that the next request is not conditional, and null is passed.
+     */
+    public void getBody(final String key, final BodyCallback callback) {
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onBody(readBody(key));
+            }
+        });
+    }
+
+    private byte[] readBody(String key) {
+        CachedResponse cachedResponse = get(key);
+        if (cachedResponse == null) {
+            return null;
+        }
+        File bodyFile = getFile(key, BODY_SUFFIX);
+        try {
+            if (bodyFile.exists()) {
+                byte[] body = readFile(bodyFile);
+                if (cachedResponse.bodyHash.equals(getHash(body))) {
+                    return body;
+                }
+            }
+        } catch (IOException e) {
+            appendLog(context, TAG, "Cached response not read:", e);
+        }
+        remove(key, cachedResponse);
+        return null;
+    }
+
+    private synchronized void remove(final String key, CachedResponse cachedResponse) {
+        if (responses.get(key) != cachedResponse) {
+            return;
+        }
+        responses.remove(key);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getFile(key, META_SUFFIX).delete();
+                getFile(key, BODY_SUFFIX).delete();
+            }
+        });
+    }
+
+    private CachedResponse readMeta(File metaFile) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(metaFile));
+            if (input.readInt() != META_VERSION) {
+                return null;
+            }
+            String key = input.readUTF();
+            if (!metaFile.getName().equals(getFileName(key) + META_SUFFIX)) {
+                return null;
+            }
+            String eTag = input.readBoolean() ? input.readUTF() : null;
+            String lastModified = input.readBoolean() ? input.readUTF() : null;
+            String bodyHash = input.readUTF();
+            return new CachedResponse(key, eTag, lastModified, bodyHash, input.readLong());
+        } catch (IOException e) {
+            appendLog(context, TAG, "Cached response meta not read:", e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static byte[] getMeta(CachedResponse cachedResponse) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(META_VERSION);
+            output.writeUTF(cachedResponse.key);
+            writeNullableString(output, cachedResponse.eTag);
+            writeNullableString(output, cachedResponse.lastModified);
+            output.writeUTF(cachedResponse.bodyHash);
+            output.writeLong(cachedResponse.receivedTime);
+            output.flush();
+        } catch (IOException e) {
+            // writing into memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullableString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private void evictOldEntries() {
+        File[] metaFiles = directory.listFiles();
+        if (metaFiles == null) {
+            return;
+        }
+        int entries = 0;
+        for (File file: metaFiles) {
+            if (file.getName().endsWith(META_SUFFIX)) {
+                metaFiles[entries++] = file;
+            }
+        }
+        if (entries <= MAX_ENTRIES) {
+            return;
+        }
+        File[] oldestFirst = Arrays.copyOf(metaFiles, entries);
+        Arrays.sort(oldestFirst, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long lastModified1 = file1.lastModified();
+                long lastModified2 = file2.lastModified();
+                return (lastModified1 < lastModified2) ? -1 : ((lastModified1 == lastModified2) ? 0 : 1);
+            }
+        });
+        Set<String> evictedNames = new HashSet<>();
+        for (int i = 0; i < (entries - MAX_ENTRIES); i++) {
+            String fileName = oldestFirst[i].getName();
+            String name = fileName.substring(0, fileName.length() - META_SUFFIX.length());
+            evictedNames.add(name);
+            oldestFirst[i].delete();
+            new File(directory, name + BODY_SUFFIX).delete();
+        }
+        synchronized (this) {
+            Iterator<String> keys = responses.keySet().iterator();
+            while (keys.hasNext()) {
+                if (evictedNames.contains(getFileName(keys.next()))) {
+                    keys.remove();
+                }
+            }
+        }
+        appendLog(context, TAG, "evicted cached responses:", evictedNames.size());
+    }
+
+    private File getFile(String key, String suffix) {
+        return new File(directory, getFileName(key) + suffix);
+    }
+
+    private static String getFileName(String key) {
+        try {
+            return getHash(key.getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String getHash(byte[] bytes) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] digest = messageDigest.digest(bytes);
+        StringBuilder hash = new StringBuilder(digest.length * 2);
+        for (byte digestByte: digest) {
+            hash.append(Character.forDigit((digestByte >> 4) & 0xf, 16));
+            hash.append(Character.forDigit(digestByte & 0xf, 16));
+        }
+        return hash.toString();
+    }
+
+    private void writeFile(File file, byte[] content) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cache directory not created: " + directory);
+        }
+        File temporaryFile = new File(directory, file.getName() + ".tmp");
+        OutputStream output = new FileOutputStream(temporaryFile);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Cached file not replaced: " + file);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void closeQuietly(InputStream input) {
+        if (input == null) {
+            return;
+        }
+        try {
+            input.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    public static class CachedResponse {
+        private final String key;
+        private final String eTag;
+        private final String lastModified;
+        private final String bodyHash;
+        private final long receivedTime;
+
+        CachedResponse(String key, String eTag, String lastModified, String bodyHash, long receivedTime) {
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.bodyHash = bodyHash;
+            this.receivedTime = receivedTime;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getBodyHash() {
+            return bodyHash;
+        }
+
+        public long getReceivedTime() {
+            return receivedTime;
+        }
+    }
+
+    private static class StoredBody {
+        private final String key;
+        private final String bodyHash;
+
+        StoredBody(String key, String bodyHash) {
+            this.key = key;
+            this.bodyHash = bodyHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof StoredBody)) {
+                return false;
+            }
+            StoredBody otherStoredBody = (StoredBody) other;
+            return key.equals(otherStoredBody.key) && bodyHash.equals(otherStoredBody.bodyHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * key.hashCode()) + bodyHash.hashCode();
+        }
+    }
+
+    private static class ParsedResponse {
+        private final String bodyHash;
+        private final Object result;
+
+        ParsedResponse(String bodyHash, Object result) {
+            this.bodyHash = bodyHash;
+            this.result = result;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.thosp.yourlocalweather.model.Location;
 import org.thosp.yourlocalweather.model.LocationsDbHelper;
 import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 import org.thosp.yourlocalweather.utils.AppPreference;
+import org.thosp.yourlocalweather.utils.AppSettings;
 import org.thosp.yourlocalweather.utils.NotificationUtils;
 import org.thosp.yourlocalweather.utils.Utils;
 import org.thosp.yourlocalweather.utils.WidgetUtils;
@@ -350,11 +351,9 @@ public class ScreenOnOffUpdateService extends AbstractCommonService {
 
             long updatePeriodForLocation;
             if (location.getOrderId() == 0) {
-                String updateAutoPeriodStr = AppPreference.getLocationAutoUpdatePeriod(this);
-                updatePeriodForLocation = Utils.intervalMillisForAlarm(updateAutoPeriodStr);
+                updatePeriodForLocation = AppSettings.get(this).getLocationAutoUpdatePeriodInMs();
             } else {
-                String updatePeriodStr = AppPreference.getLocationUpdatePeriod(this);
-                updatePeriodForLocation = Utils.intervalMillisForAlarm(updatePeriodStr);
+                updatePeriodForLocation = AppSettings.get(this).getLocationUpdatePeriodInMs();
             }
 
             appendLog(this, TAG, "network state changed, location.orderId=",
@@ -5,6 +5,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.hardware.Sensor;
 import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
 import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
@@ -22,6 +24,9 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
     private static final String TAG = "SensorLocationUpdateService";
     
     public static final int SCREEN_OFF_RECEIVER_DELAY = 500;
+
+    // events of a batching accelerometer are held in its FIFO this long, the CPU sleeps meanwhile
+    private static final int MAX_REPORT_LATENCY_US = 60000000;
     
     private final IBinder binder = new SensorLocationUpdateServiceBinder();
 
@@ -30,6 +35,8 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
 
     private SensorManager senSensorManager;
     private Sensor senAccelerometer;
+    private Sensor senSignificantMotion;
+    private TriggerEventListener significantMotionListener;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -69,8 +76,12 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
             }
             appendLog(getBaseContext(), TAG, "STOP_SENSOR_BASED_UPDATES recieved");
             //senSensorManager.unregisterListener(SensorLocationUpdater.getInstance(getBaseContext()));
+            if ((senSignificantMotion != null) && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)) {
+                senSensorManager.cancelTriggerSensor(significantMotionListener, senSignificantMotion);
+            }
             senSensorManager = null;
             senAccelerometer = null;
+            senSignificantMotion = null;
             receiversRegistered = false;
         } finally {
             receiversLock.unlock();
@@ -120,6 +131,9 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
             receiversRegistered = false;
             if (senSensorManager != null) {
                 senSensorManager.unregisterListener(this);
+                if ((senSignificantMotion != null) && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)) {
+                    senSensorManager.cancelTriggerSensor(significantMotionListener, senSignificantMotion);
+                }
             }
         } finally {
             receiversLock.unlock();
@@ -142,7 +156,12 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
             startForeground(android.os.Process.myPid(), notification);
         }
 
-        sensorResolutionMultiplayer = 1 / senAccelerometer.getResolution();
+        if (registerSignificantMotionListener()) {
+            return;
+        }
+        movementDetector = accelerometerMovementDetector;
+        movementDetector.reset();
+        accelerometerMovementDetector.setSensorResolution(senAccelerometer.getResolution());
         int maxDelay = 10000;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             maxDelay = senAccelerometer.getMaxDelay();
@@ -163,11 +182,15 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
                   senAccelerometer.getResolution());
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            int maxReportLatency = maxDelay;
+            if (senAccelerometer.getFifoMaxEventCount() > 0) {
+                maxReportLatency = MAX_REPORT_LATENCY_US;
+            }
             appendLog(getBaseContext(), TAG, "Result of registering (new) sensor listener: " + senSensorManager.registerListener(
                     this,
                     senAccelerometer ,
                     maxDelay,
-                    maxDelay));
+                    maxReportLatency), ", max report latency: " + maxReportLatency);
         } else {
             appendLog(getBaseContext(), TAG, "Result of registering sensor listener: " + senSensorManager.registerListener(
                     this,
@@ -175,7 +198,50 @@ public class SensorLocationUpdateService extends SensorLocationUpdater {
                     maxDelay));
         }
     }
-    
+
+    /**
+     * Uses the significant motion trigger instead of the accelerometer when the device has it.
+     */
+    private boolean registerSignificantMotionListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+        senSignificantMotion = senSensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        if (senSignificantMotion == null) {
+            return false;
+        }
+        if (significantMotionListener == null) {
+            significantMotionListener = new TriggerEventListener() {
+                @Override
+                public void onTrigger(TriggerEvent event) {
+                    processSensorEvent(event.timestamp, event.values);
+                    requestSignificantMotionTrigger();
+                }
+            };
+        }
+        movementDetector = new SignificantMotionDetector(locationUpdateTimeSource);
+        if (requestSignificantMotionTrigger()) {
+            return true;
+        }
+        movementDetector = accelerometerMovementDetector;
+        senSignificantMotion = null;
+        return false;
+    }
+
+    private boolean requestSignificantMotionTrigger() {
+        receiversLock.lock();
+        try {
+            if ((senSensorManager == null) || (senSignificantMotion == null)) {
+                return false;
+            }
+            boolean requested = senSensorManager.requestTriggerSensor(significantMotionListener, senSignificantMotion);
+            appendLog(getBaseContext(), TAG, "Result of requesting significant motion trigger: " + requested);
+            return requested;
+        } finally {
+            receiversLock.unlock();
+        }
+    }
+
     public class SensorLocationUpdateServiceBinder extends Binder {
         SensorLocationUpdateService getService() {
             return SensorLocationUpdateService.this;
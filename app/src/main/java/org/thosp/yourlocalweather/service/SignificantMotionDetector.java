@@ -0,0 +1,46 @@
+package org.thosp.yourlocalweather.service;
+
+/**
+ * Movement reported by the significant motion trigger sensor, which fires once when the user starts walking
+ * or travelling and is handled in the sensor hub without waking the CPU before that. There is no length to
+ * measure, so the location is updated when the last update is older than the shorter time span of the
+ * accelerometer limits. The trigger has to be requested again after every event.
+ */
+public class SignificantMotionDetector implements MovementDetector {
+
+    private static final long MIN_UPDATE_TIME_SPAN = 300000l; //5 min
+
+    private final LocationUpdateTimeSource locationUpdateTimeSource;
+
+    private long decisionTime;
+    private long decisionLastUpdatedPosition;
+
+    public SignificantMotionDetector(LocationUpdateTimeSource locationUpdateTimeSource) {
+        this.locationUpdateTimeSource = locationUpdateTimeSource;
+    }
+
+    @Override
+    public boolean onSensorChanged(long timestamp, float[] values, long nowInMillis, boolean addressFound) {
+        long lastUpdatedPosition = locationUpdateTimeSource.getLastLocationUpdateTime();
+        if (nowInMillis < (lastUpdatedPosition + MIN_UPDATE_TIME_SPAN)) {
+            return false;
+        }
+        decisionTime = nowInMillis;
+        decisionLastUpdatedPosition = lastUpdatedPosition;
+        return true;
+    }
+
+    @Override
+    public void clearMeasuredLength() {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public String getDecisionDescription() {
+        return "significant motion, now = " + decisionTime +
+                ", lastUpdatePosition = " + decisionLastUpdatedPosition;
+    }
+}
@@ -8,6 +8,7 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
@@ -24,10 +25,12 @@ import org.json.JSONException;
 import org.thosp.yourlocalweather.ConnectionDetector;
 import org.thosp.yourlocalweather.R;
 import org.thosp.yourlocalweather.WeatherJSONParser;
+import org.thosp.yourlocalweather.WeatherJSONStreamParser;
 import org.thosp.yourlocalweather.licence.LicenseNotValidException;
 import org.thosp.yourlocalweather.licence.TooEarlyUpdateException;
 import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
 import org.thosp.yourlocalweather.model.CurrentWeatherDbHelper;
+import org.thosp.yourlocalweather.model.DbWriteExecutor;
 import org.thosp.yourlocalweather.model.LicenseKey;
 import org.thosp.yourlocalweather.model.LicenseKeysDbHelper;
 import org.thosp.yourlocalweather.model.Location;
@@ -36,21 +39,32 @@ import org.thosp.yourlocalweather.model.Weather;
 import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 import org.thosp.yourlocalweather.utils.ApiKeys;
 import org.thosp.yourlocalweather.utils.AppPreference;
+import org.thosp.yourlocalweather.utils.AppSettings;
 import org.thosp.yourlocalweather.utils.Constants;
 import org.thosp.yourlocalweather.utils.ForecastUtil;
 import org.thosp.yourlocalweather.utils.GraphUtils;
+import org.thosp.yourlocalweather.utils.JsonByteReader;
 import org.thosp.yourlocalweather.utils.NotificationUtils;
 import org.thosp.yourlocalweather.utils.Utils;
 import org.thosp.yourlocalweather.utils.WidgetUtils;
 import org.thosp.yourlocalweather.widget.WidgetRefreshIconService;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.message.BasicHeader;
 
 import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
 
@@ -75,19 +89,35 @@ public class UpdateWeatherService extends AbstractCommonService {
     public static final int WEATHER_FORECAST_TYPE = 1;
     public static final int LONG_WEATHER_FORECAST_TYPE = 2;
 
+    private static final int PIPELINE_MAX_CONCURRENT_REQUESTS = 3;
+    private static final long PIPELINE_REQUEST_TIMEOUT_IN_MS = 20000;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    // status passed to the response handlers when a fresh cached response is used without a request
+    private static final int FRESH_CACHED_RESPONSE_STATUS = -1;
+    private static final long SHARED_RESPONSE_FRESHNESS_IN_MS = 5 * 60 * 1000;
+    private static final long QUEUE_CONTINUATION_DELAY_IN_MS = 5000;
+    private static final long TOO_EARLY_UPDATE_RETRY_AFTER_IN_MS = 70000;
+    private static final long LICENSED_SERVER_CALL_INTERVAL_IN_MS = 60000;
+
     private static AsyncHttpClient client = new AsyncHttpClient();
+    private static final ExecutorService weatherResponseExecutor = Executors.newSingleThreadExecutor();
 
     private static volatile boolean gettingWeatherStarted;
+    private static final WeatherRetryPolicy retryPolicy = new WeatherRetryPolicy();
+    private static long scheduledQueueProcessingTime;
+
+    private OwmResponseCache owmResponseCache;
 
     private Messenger weatherByVoiceService;
     private Lock weatherByVoiceServiceLock = new ReentrantLock();
     private Queue<Message> weatherByvOiceUnsentMessages = new LinkedList<>();
 
-    protected static final Queue<WeatherRequestDataHolder> updateWeatherUpdateMessages = new LinkedList<>();
+    protected static final WeatherRequestScheduler updateWeatherUpdateMessages = new WeatherRequestScheduler();
 
     final Messenger messenger = new Messenger(new UpdateWeatherMessageHandler());
 
     Handler timerHandler = new Handler();
+    Handler pipelineTimerHandler = new Handler(Looper.getMainLooper());
     Runnable timerRunnable = new Runnable() {
 
         @Override
@@ -128,6 +158,12 @@ public class UpdateWeatherService extends AbstractCommonService {
         }
     };
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        owmResponseCache = OwmResponseCache.getInstance(this);
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return messenger.getBinder();
@@ -177,6 +213,14 @@ public class UpdateWeatherService extends AbstractCommonService {
         if (gettingWeatherStarted) {
             return;
         }
+        if (isPipelineUpdatePossible()) {
+            startPipelineWeatherUpdate();
+            return;
+        }
+        startSingleWeatherUpdate();
+    }
+
+    private void startSingleWeatherUpdate() {
         gettingWeatherStarted = true;
         appendLog(getBaseContext(), TAG, "startCurrentWeatherUpdate");
         final LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(getBaseContext());
@@ -186,7 +230,16 @@ public class UpdateWeatherService extends AbstractCommonService {
                 TAG,
                 "currentWeatherUpdateMessages.size before peek = ", updateWeatherUpdateMessages);
 
-        final WeatherRequestDataHolder updateRequest = updateWeatherUpdateMessages.peek();
+        if (!updateWeatherUpdateMessages.isEmpty() &&
+                !updateWeatherUpdateMessages.moveDueRequestToHead(System.currentTimeMillis())) {
+            appendLog(getBaseContext(), TAG, "no request is due yet");
+            gettingWeatherStarted = false;
+            scheduleQueueProcessing();
+            return;
+        }
+
+        // the request is taken out of the queue, so requests added while it is sent are not merged into it
+        final WeatherRequestDataHolder updateRequest = updateWeatherUpdateMessages.startHeadRequest();
 
         appendLog(getBaseContext(),
                 TAG,
@@ -217,38 +270,7 @@ public class UpdateWeatherService extends AbstractCommonService {
             return;
         }
 
-        boolean readyForUpdate = false;
-        if (isCurrentWeather(updateType)) {
-            CurrentWeatherDbHelper currentWeatherDbHelper = CurrentWeatherDbHelper.getInstance(getBaseContext());
-            CurrentWeatherDbHelper.WeatherRecord weatherRecord = currentWeatherDbHelper.getWeather(locationToCheck.getId());
-
-            long lastUpdateTimeInMilis = (weatherRecord != null)?weatherRecord.getLastUpdatedTime():0;
-            long now = System.currentTimeMillis();
-
-            long updatePeriodForLocation;
-            if (locationToCheck.getOrderId() == 0) {
-                String updateAutoPeriodStr = AppPreference.getLocationAutoUpdatePeriod(this);
-                updatePeriodForLocation = Utils.intervalMillisForAlarm(updateAutoPeriodStr);
-            } else {
-                String updatePeriodStr = AppPreference.getLocationUpdatePeriod(this);
-                updatePeriodForLocation = Utils.intervalMillisForAlarm(updatePeriodStr);
-            }
-
-            appendLog(this.getBaseContext(), TAG,
-                    "Current weather requested for location.orderId=",
-                    locationToCheck.getOrderId(),
-                    ", updatePeriodForLocation=",
-                    updatePeriodForLocation,
-                    ", now=",
-                    now,
-                    ", lastUpdateTimeInMilis=",
-                    lastUpdateTimeInMilis);
-            readyForUpdate =  !(now <= (lastUpdateTimeInMilis + updatePeriodForLocation));
-        } else {
-            boolean longForecast = isLongWeatherForecast(updateRequest.getUpdateType());
-            readyForUpdate = ForecastUtil.shouldUpdateForecast(this, locationToCheck.getId(),
-                    longForecast ? UpdateWeatherService.LONG_WEATHER_FORECAST_TYPE : UpdateWeatherService.WEATHER_FORECAST_TYPE);
-        }
+        boolean readyForUpdate = isReadyForUpdate(locationToCheck, updateType);
 
         if (!updateRequest.isForceUpdate() &&
                         !readyForUpdate &&
@@ -258,7 +280,7 @@ public class UpdateWeatherService extends AbstractCommonService {
                     "Current weather is recent enough");
             updateWeatherUpdateMessages.poll();
             sendMessageToReconciliationDbService(false);
-            WidgetUtils.updateWidgets(this);
+            WidgetUtils.updateWidgets(this, locationToCheck.getId());
             gettingWeatherStarted = false;
             startWeatherUpdate();
             return;
@@ -268,9 +290,8 @@ public class UpdateWeatherService extends AbstractCommonService {
         boolean networkAvailableAndConnected = connectionDetector.isNetworkAvailableAndConnected();
         appendLog(getBaseContext(), TAG, "networkAvailableAndConnected=", networkAvailableAndConnected);
         if (!networkAvailableAndConnected) {
-            int numberOfAttempts = updateRequest.getAttempts();
-            appendLog(getBaseContext(), TAG, "numberOfAttempts=", numberOfAttempts);
-            if (numberOfAttempts > 2) {
+            appendLog(getBaseContext(), TAG, "numberOfAttempts=", updateRequest.getAttempts());
+            if (!deferRequest(updateRequest, WeatherRetryPolicy.FAILURE_OFFLINE, 0)) {
                 if (updateRequest.isUpdateWeatherOnly()) {
                     locationsDbHelper.updateLocationSource(
                             locationToCheck.getId(),
@@ -278,15 +299,12 @@ public class UpdateWeatherService extends AbstractCommonService {
                 }
                 appendLog(getBaseContext(),
                         TAG,
-                        "currentWeatherUpdateMessages.size when attempts is more than 2 = ",
+                        "currentWeatherUpdateMessages.size when retries are used up = ",
                         updateWeatherUpdateMessages);
                 sendResult(ACTION_WEATHER_UPDATE_FAIL, getBaseContext(), updateType);
                 return;
             }
-            updateRequest.increaseAttempts();
-            resendTheIntentInSeveralSeconds(20);
-            gettingWeatherStarted = false;
-            sendResult(ACTION_WEATHER_UPDATE_FAIL, getBaseContext(), updateType);
+            sendResult(ACTION_WEATHER_UPDATE_FAIL, getBaseContext(), null, updateType, false);
             return;
         }
 
@@ -321,11 +339,12 @@ public class UpdateWeatherService extends AbstractCommonService {
         final String license;
         if (!freeWeather) {
             LicenseKey licenseKey = licenseKeysDbHelper.getLicenseKeyByLocationRequestId(requestUri);
-            if ((licenseKey != null) && (System.currentTimeMillis() <= (60000 + licenseKey.getLastCallTimeInMs()))) {
+            if ((licenseKey != null) &&
+                    (System.currentTimeMillis() <= (LICENSED_SERVER_CALL_INTERVAL_IN_MS + licenseKey.getLastCallTimeInMs()))) {
                 appendLog(getBaseContext(), TAG, "Last call to licensed server is too recent.");
-                resendTheIntentInSeveralSeconds(10);
-                gettingWeatherStarted = false;
-                sendResult(ACTION_WEATHER_UPDATE_FAIL, getBaseContext(), updateType);
+                // waiting for the licensed server is not a failure, the request keeps its attempts
+                updateRequest.setRetryTime(LICENSED_SERVER_CALL_INTERVAL_IN_MS + licenseKey.getLastCallTimeInMs());
+                sendResult(ACTION_WEATHER_UPDATE_FAIL, getBaseContext(), null, updateType, false);
                 return;
             }
             license = ApiKeys.getLicenseKey(getBaseContext(), licenseKey);
@@ -349,7 +368,7 @@ public class UpdateWeatherService extends AbstractCommonService {
             startRefreshRotation("START", 1);
         }
 
-        Handler mainHandler = new Handler(Looper.getMainLooper());
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
         Runnable myRunnable = new Runnable() {
             @Override
             public void run() {
@@ -366,150 +385,801 @@ public class UpdateWeatherService extends AbstractCommonService {
                         currentLocation.getLatitude(),
                         ", longitude",
                         currentLocation.getLongitude());
-                try {
-                    if (isCurrentWeather(updateType)) {
-                        sendMessageToWakeUpService(
-                                AppWakeUpManager.WAKE_UP,
-                                AppWakeUpManager.SOURCE_CURRENT_WEATHER
-                        );
-                    } else {
-                        sendMessageToWakeUpService(
-                                AppWakeUpManager.WAKE_UP,
-                                AppWakeUpManager.SOURCE_WEATHER_FORECAST
-                        );
+                if (isCurrentWeather(updateType)) {
+                    sendMessageToWakeUpService(
+                            AppWakeUpManager.WAKE_UP,
+                            AppWakeUpManager.SOURCE_CURRENT_WEATHER
+                    );
+                } else {
+                    sendMessageToWakeUpService(
+                            AppWakeUpManager.WAKE_UP,
+                            AppWakeUpManager.SOURCE_WEATHER_FORECAST
+                    );
+                }
+
+                // licensed responses carry a new token every time, only free API responses are cached
+                final String requestKey = ApiKeys.isWeatherForecastFeaturesFree(context) ?
+                        Utils.getOwmRequestKey(context, serviceURL, currentLocation, "metric", locale) : null;
+                final AsyncHttpResponseHandler responseHandler = new AsyncHttpResponseHandler() {
+
+                    @Override
+                    public void onStart() {
+                        // called before request is started
                     }
 
-                    client.get(Utils.getOwmUrl(
-                            context,
-                            serviceURL,
-                            currentLocation,
-                            "metric",
-                            locale,
-                            license).toString(), null, new AsyncHttpResponseHandler() {
-
-                        @Override
-                        public void onStart() {
-                            // called before request is started
-                        }
+                    @Override
+                    public void onSuccess(int statusCode, Header[] headers, byte[] response) {
+                        try {
+                            appendLog(context, TAG, "weather got, result:", response);
 
-                        @Override
-                        public void onSuccess(int statusCode, Header[] headers, byte[] response) {
-                            try {
-                                String weatherRaw = new String(response);
-                                appendLog(context, TAG, "weather got, result:", weatherRaw);
+                            timerHandler.removeCallbacksAndMessages(null);
 
-                                timerHandler.removeCallbacksAndMessages(null);
+                            String bodyHash = null;
+                            if (requestKey != null) {
+                                bodyHash = cacheResponse(requestKey, statusCode, headers, response);
+                                if (owmResponseCache.isStored(requestKey, currentLocation.getId(), bodyHash) &&
+                                        keepUnchangedWeatherAndSendResult(context, currentLocation, updateType)) {
+                                    return;
+                                }
+                            }
 
-                                final String locale = currentLocation.getLocaleAbbrev();
+                            final String locale = currentLocation.getLocaleAbbrev();
 
-                                appendLog(context, TAG, "Going to store result with updateType:", updateType);
-                                if (isCurrentWeather(updateType)) {
-                                    appendLog(context, TAG, "Current weather type");
-                                    Weather weather;
-                                    if (ApiKeys.isWeatherForecastFeaturesFree(context)) {
+                            appendLog(context, TAG, "Going to store result with updateType:", updateType);
+                            if (isCurrentWeather(updateType)) {
+                                appendLog(context, TAG, "Current weather type");
+                                String weatherRaw = new String(response);
+                                Weather weather;
+                                if (ApiKeys.isWeatherForecastFeaturesFree(context)) {
+                                    weather = (Weather) owmResponseCache.getParsed(requestKey, bodyHash);
+                                    if (weather == null) {
                                         weather = WeatherJSONParser.getWeather(weatherRaw, locale);
-                                    } else {
-                                        WeatherJSONParser.JSONParseResult parseResult = WeatherJSONParser.parseServerResult(weatherRaw);
-                                        licenseKeysDbHelper.updateToken("weather", parseResult.getToken());
-                                        weather = WeatherJSONParser.getWeather(parseResult.getOwmResponse(), locale);
+                                        owmResponseCache.putParsed(requestKey, bodyHash, weather);
                                     }
-                                    saveWeatherAndSendResult(context, weather, currentLocation, updateType);
-                                } else if (isWeatherForecast(updateType)) {
-                                    appendLog(context, TAG, "Weather forecast type");
-                                    CompleteWeatherForecast completeWeatherForecast;
-                                    if (ApiKeys.isWeatherForecastFeaturesFree(context)) {
-                                        completeWeatherForecast = WeatherJSONParser.getWeatherForecast(weatherRaw);
-                                    } else {
-                                        WeatherJSONParser.JSONParseResult parseResult = WeatherJSONParser.parseServerResult(weatherRaw);
-                                        licenseKeysDbHelper.updateToken("forecast", parseResult.getToken());
-                                        completeWeatherForecast = WeatherJSONParser.getWeatherForecast(parseResult.getOwmResponse());
-                                    }
-                                    saveWeatherAndSendResult(context, completeWeatherForecast, WEATHER_FORECAST_TYPE, updateType);
-                                } else if (isLongWeatherForecast(updateType)) {
-                                    appendLog(context, TAG, "Weather long forecast type");
+                                } else {
                                     WeatherJSONParser.JSONParseResult parseResult = WeatherJSONParser.parseServerResult(weatherRaw);
-                                    licenseKeysDbHelper.updateToken("forecast/daily", parseResult.getToken());
-                                    CompleteWeatherForecast completeWeatherForecast = WeatherJSONParser.getLongWeatherForecast(parseResult.getOwmResponse());
-                                    saveWeatherAndSendResult(context, completeWeatherForecast, LONG_WEATHER_FORECAST_TYPE, updateType);
+                                    licenseKeysDbHelper.updateToken("weather", parseResult.getToken());
+                                    weather = WeatherJSONParser.getWeather(parseResult.getOwmResponse(), locale);
+                                }
+                                saveWeatherAndSendResult(context, weather, currentLocation, updateType, requestKey, bodyHash);
+                            } else if (isWeatherForecast(updateType)) {
+                                appendLog(context, TAG, "Weather forecast type");
+                                CompleteWeatherForecast completeWeatherForecast;
+                                if (ApiKeys.isWeatherForecastFeaturesFree(context)) {
+                                    completeWeatherForecast = (CompleteWeatherForecast) owmResponseCache.getParsed(requestKey, bodyHash);
+                                    if (completeWeatherForecast == null) {
+                                        completeWeatherForecast = WeatherJSONStreamParser.getWeatherForecast(response);
+                                        owmResponseCache.putParsed(requestKey, bodyHash, completeWeatherForecast);
+                                    }
                                 } else {
-                                    sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+                                    WeatherJSONParser.JSONParseResult parseResult = WeatherJSONStreamParser.parseServerResult(response);
+                                    licenseKeysDbHelper.updateToken("forecast", parseResult.getToken());
+                                    completeWeatherForecast = WeatherJSONStreamParser.getWeatherForecast(
+                                            parseResult.getOwmResponse().getBytes(JsonByteReader.UTF_8));
                                 }
+                                saveWeatherAndSendResult(context, completeWeatherForecast, WEATHER_FORECAST_TYPE, updateType,
+                                        requestKey, bodyHash);
+                            } else if (isLongWeatherForecast(updateType)) {
+                                appendLog(context, TAG, "Weather long forecast type");
+                                WeatherJSONParser.JSONParseResult parseResult = WeatherJSONStreamParser.parseServerResult(response);
+                                licenseKeysDbHelper.updateToken("forecast/daily", parseResult.getToken());
+                                CompleteWeatherForecast completeWeatherForecast = WeatherJSONStreamParser.getLongWeatherForecast(
+                                        parseResult.getOwmResponse().getBytes(JsonByteReader.UTF_8));
+                                saveWeatherAndSendResult(context, completeWeatherForecast, LONG_WEATHER_FORECAST_TYPE, updateType,
+                                        null, null);
+                            } else {
+                                sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+                            }
 
-                            } catch (TooEarlyUpdateException teue) {
-                                //if (updateRequest.isUpdateWeatherOnly()) {
-                                    locationsDbHelper.updateLocationSource(
-                                            currentLocation.getId(),
-                                            getString(R.string.location_weather_update_status_too_early_update));
-                                //}
+                        } catch (TooEarlyUpdateException teue) {
+                            //if (updateRequest.isUpdateWeatherOnly()) {
+                                locationsDbHelper.updateLocationSource(
+                                        currentLocation.getId(),
+                                        getString(R.string.location_weather_update_status_too_early_update));
+                            //}
+                            timerHandler.removeCallbacksAndMessages(null);
+                            sendFailureResult(context,
+                                    updateRequest,
+                                    updateType,
+                                    WeatherRetryPolicy.FAILURE_RATE_LIMITED,
+                                    TOO_EARLY_UPDATE_RETRY_AFTER_IN_MS);
+                        } catch (LicenseNotValidException lnve) {
+                            if ((license == null) || !license.equals(ApiKeys.getInitialLicenseKey(getBaseContext()))) {
                                 timerHandler.removeCallbacksAndMessages(null);
-                                resendTheIntentInSeveralSeconds(70);
                                 sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
-                            } catch (LicenseNotValidException lnve) {
-                                if ((license == null) || !license.equals(ApiKeys.getInitialLicenseKey(getBaseContext()))) {
-                                    timerHandler.removeCallbacksAndMessages(null);
-                                    sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
-                                } else {
-                                    appendLog(context, TAG, "license not valid, going to try it by initial license key");
-                                    if (isCurrentWeather(updateType)) {
-                                        licenseKeysDbHelper.updateToken("weather", null);
-                                    } else if (isWeatherForecast(updateType)) {
-                                        licenseKeysDbHelper.updateToken("forecast", null);
-                                    } else if (isLongWeatherForecast(updateType)) {
-                                        licenseKeysDbHelper.updateToken("forecast/daily", null);
-                                    }
-                                    timerHandler.removeCallbacksAndMessages(null);
-                                    sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+                            } else {
+                                appendLog(context, TAG, "license not valid, going to try it by initial license key");
+                                if (isCurrentWeather(updateType)) {
+                                    licenseKeysDbHelper.updateToken("weather", null);
+                                } else if (isWeatherForecast(updateType)) {
+                                    licenseKeysDbHelper.updateToken("forecast", null);
+                                } else if (isLongWeatherForecast(updateType)) {
+                                    licenseKeysDbHelper.updateToken("forecast/daily", null);
                                 }
-                            } catch (JSONException e) {
-                                appendLog(context, TAG, "JSONException:", e);
                                 timerHandler.removeCallbacksAndMessages(null);
                                 sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
                             }
+                        } catch (JSONException e) {
+                            appendLog(context, TAG, "JSONException:", e);
+                            timerHandler.removeCallbacksAndMessages(null);
+                            sendFailureResult(context, updateRequest, updateType, WeatherRetryPolicy.FAILURE_PARSE_ERROR, 0);
                         }
+                    }
 
-                        @Override
-                        public void onFailure(int statusCode, Header[] headers, byte[] errorResponse, Throwable e) {
-                            appendLog(context, TAG, "onFailure:", statusCode, ":currentLocation=", currentLocation);
-                            timerHandler.removeCallbacksAndMessages(null);
-                            if (currentLocation != null) {
-                                final LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(getBaseContext());
-                                switch (statusCode) {
-                                    case 401:
-                                        locationsDbHelper.updateLastUpdatedAndLocationSource(currentLocation.getId(),
-                                                System.currentTimeMillis(), getString(R.string.location_weather_update_status_access_expired));
-                                        break;
-                                    case 429:
-                                        locationsDbHelper.updateLastUpdatedAndLocationSource(currentLocation.getId(),
-                                                System.currentTimeMillis(), getString(R.string.location_weather_update_status_access_banned));
-                                        break;
-                                    default:
-                                        locationsDbHelper.updateLastUpdatedAndLocationSource(currentLocation.getId(),
-                                                System.currentTimeMillis(), getString(R.string.location_weather_update_status_location_only));
-                                        break;
+                    @Override
+                    public void onFailure(final int statusCode, final Header[] headers, byte[] errorResponse, final Throwable e) {
+                        if ((statusCode == HTTP_NOT_MODIFIED) && (requestKey != null)) {
+                            owmResponseCache.getBody(requestKey, new OwmResponseCache.BodyCallback() {
+                                @Override
+                                public void onBody(final byte[] cachedResponse) {
+                                    mainHandler.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            if (cachedResponse != null) {
+                                                appendLog(context, TAG, "weather not modified, cached response used");
+                                                onSuccess(statusCode, headers, cachedResponse);
+                                            } else {
+                                                onRequestFailed(statusCode, headers, e);
+                                            }
+                                        }
+                                    });
                                 }
-                            }
-                            sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+                            });
+                            return;
                         }
+                        onRequestFailed(statusCode, headers, e);
+                    }
 
-                        @Override
-                        public void onRetry(int retryNo) {
-                            // called when request is retried
+                    private void onRequestFailed(int statusCode, Header[] headers, Throwable e) {
+                        appendLog(context, TAG, "onFailure:", statusCode, ":currentLocation=", currentLocation);
+                        timerHandler.removeCallbacksAndMessages(null);
+                        if (currentLocation != null) {
+                            updateLocationSourceOnFailure(currentLocation, statusCode);
                         }
-                    });
-                } catch (MalformedURLException mue) {
-                    appendLog(context, TAG, "MalformedURLException:", mue);
-                    sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+                        sendFailureResult(context,
+                                updateRequest,
+                                updateType,
+                                WeatherRetryPolicy.getFailureClass(statusCode, e),
+                                getRetryAfter(headers));
+                    }
+
+                    @Override
+                    public void onRetry(int retryNo) {
+                        // called when request is retried
+                    }
+                };
+                if (requestKey == null) {
+                    sendWeatherRequest(currentLocation, serviceURL, license, null, updateType, responseHandler);
+                    return;
                 }
+                owmResponseCache.getFreshBody(requestKey, SHARED_RESPONSE_FRESHNESS_IN_MS, new OwmResponseCache.BodyCallback() {
+                    @Override
+                    public void onBody(final byte[] freshResponse) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (freshResponse != null) {
+                                    appendLog(context, TAG, "weather shared from fresh response:", requestKey);
+                                    responseHandler.onSuccess(FRESH_CACHED_RESPONSE_STATUS, null, freshResponse);
+                                    return;
+                                }
+                                sendWeatherRequest(currentLocation, serviceURL, license, requestKey, updateType, responseHandler);
+                            }
+                        });
+                    }
+                });
             }
         };
         mainHandler.post(myRunnable);
     }
 
+    private void sendWeatherRequest(Location location,
+                                    String serviceURL,
+                                    String license,
+                                    String requestKey,
+                                    int updateType,
+                                    AsyncHttpResponseHandler responseHandler) {
+        try {
+            client.get(this, Utils.getOwmUrl(
+                    this,
+                    serviceURL,
+                    location,
+                    "metric",
+                    location.getLocaleAbbrev(),
+                    license).toString(), getConditionalHeaders(requestKey), null, responseHandler);
+        } catch (MalformedURLException mue) {
+            appendLog(getBaseContext(), TAG, "MalformedURLException:", mue);
+            sendResult(ACTION_WEATHER_UPDATE_FAIL, this, updateType);
+        }
+    }
+
+    private boolean isPipelineUpdatePossible() {
+        if (!ApiKeys.isWeatherForecastFeaturesFree(getBaseContext())) {
+            // licensed server accepts one call per minute for every request type
+            return false;
+        }
+        int pipelineRequests = updateWeatherUpdateMessages.count(
+                START_CURRENT_WEATHER_UPDATE,
+                START_WEATHER_FORECAST_UPDATE);
+        if (pipelineRequests < 2) {
+            return false;
+        }
+        ConnectionDetector connectionDetector = new ConnectionDetector(this);
+        return connectionDetector.isNetworkAvailableAndConnected();
+    }
+
+    private void startPipelineWeatherUpdate() {
+        gettingWeatherStarted = true;
+        appendLog(getBaseContext(), TAG, "startPipelineWeatherUpdate:", updateWeatherUpdateMessages);
+        final LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(getBaseContext());
+
+        final WeatherUpdateBatch batch = new WeatherUpdateBatch();
+        List<WeatherRequestDataHolder> updateRequests = updateWeatherUpdateMessages.pollAll(
+                START_CURRENT_WEATHER_UPDATE,
+                START_WEATHER_FORECAST_UPDATE);
+        for (WeatherRequestDataHolder updateRequest: updateRequests) {
+            int updateType = updateRequest.getUpdateType();
+            Location location = locationsDbHelper.getLocationById(updateRequest.getLocationId());
+            if (location == null) {
+                continue;
+            }
+            if (!updateRequest.isForceUpdate() &&
+                    (updateRequest.getUpdateSource() == null) &&
+                    !isReadyForUpdate(location, updateType)) {
+                continue;
+            }
+            String serviceURL = isCurrentWeather(updateType) ? Constants.WEATHER_ENDPOINT : Constants.WEATHER_FORECAST_ENDPOINT;
+            batch.addRequest(location,
+                    updateRequest,
+                    isCurrentWeather(updateType),
+                    Utils.getOwmRequestKey(this, serviceURL, location, "metric", location.getLocaleAbbrev()));
+        }
+        appendLog(getBaseContext(), TAG, "pipeline batch size:", batch.size(), ", requests:", batch.getRequestCount());
+
+        if (batch.isEmpty()) {
+            gettingWeatherStarted = false;
+            sendMessageToReconciliationDbService(false);
+            WidgetUtils.updateWidgets(this);
+            startWeatherUpdate();
+            return;
+        }
+
+        for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+            if (entry.isCurrentWeather() && entry.isUpdateWeatherOnly()) {
+                locationsDbHelper.updateLocationSource(entry.getLocation().getId(),
+                        getString(R.string.location_weather_update_status_update_started));
+            }
+        }
+        if (batch.hasCurrentWeatherRequests()) {
+            startRefreshRotation("START", 2);
+            sendMessageToWakeUpService(AppWakeUpManager.WAKE_UP, AppWakeUpManager.SOURCE_CURRENT_WEATHER);
+        }
+        if (batch.hasWeatherForecastRequests()) {
+            startRefreshRotation("START", 1);
+            sendMessageToWakeUpService(AppWakeUpManager.WAKE_UP, AppWakeUpManager.SOURCE_WEATHER_FORECAST);
+        }
+
+        int rounds = (batch.getRequestCount() + PIPELINE_MAX_CONCURRENT_REQUESTS - 1) / PIPELINE_MAX_CONCURRENT_REQUESTS;
+        pipelineTimerHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                appendLog(getBaseContext(), TAG, "pipeline timeout, requests in flight:", batch.getRequestsInFlight());
+                finishPipelineWeatherUpdate(batch);
+            }
+        }, rounds * PIPELINE_REQUEST_TIMEOUT_IN_MS);
+        dispatchPipelineRequests(batch);
+    }
+
+    private void dispatchPipelineRequests(WeatherUpdateBatch batch) {
+        if (batch.isFinished()) {
+            return;
+        }
+        while (batch.hasPendingRequest() && (batch.getRequestsInFlight() < PIPELINE_MAX_CONCURRENT_REQUESTS)) {
+            startPipelineRequest(batch, batch.nextPendingRequest());
+        }
+        if (batch.isCompleted()) {
+            finishPipelineWeatherUpdate(batch);
+        }
+    }
+
+    private void startPipelineRequest(final WeatherUpdateBatch batch, final WeatherUpdateBatch.Entry entry) {
+        owmResponseCache.getFreshBody(entry.getRequestKey(), SHARED_RESPONSE_FRESHNESS_IN_MS, new OwmResponseCache.BodyCallback() {
+            @Override
+            public void onBody(final byte[] freshResponse) {
+                if (freshResponse != null) {
+                    appendLog(getBaseContext(), TAG, "pipeline weather shared from fresh response:", entry.getRequestKey());
+                    processPipelineResponse(batch, entry, FRESH_CACHED_RESPONSE_STATUS, null, freshResponse);
+                    return;
+                }
+                pipelineTimerHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendPipelineRequest(batch, entry);
+                    }
+                });
+            }
+        });
+    }
+
+    private void sendPipelineRequest(final WeatherUpdateBatch batch, final WeatherUpdateBatch.Entry entry) {
+        final Context context = this;
+        final Location location = entry.getLocation();
+        final String locale = location.getLocaleAbbrev();
+        String serviceURL = entry.isCurrentWeather() ? Constants.WEATHER_ENDPOINT : Constants.WEATHER_FORECAST_ENDPOINT;
+        try {
+            client.get(context, Utils.getOwmUrl(
+                    context,
+                    serviceURL,
+                    location,
+                    "metric",
+                    locale,
+                    null).toString(), getConditionalHeaders(entry.getRequestKey()), null, new AsyncHttpResponseHandler() {
+
+                @Override
+                public void onSuccess(int statusCode, Header[] headers, final byte[] response) {
+                    appendLog(context, TAG, "pipeline weather got, result:", response);
+                    processPipelineResponse(batch, entry, statusCode, headers, response);
+                }
+
+                @Override
+                public void onFailure(int statusCode, Header[] headers, byte[] errorResponse, Throwable e) {
+                    if (statusCode == HTTP_NOT_MODIFIED) {
+                        appendLog(context, TAG, "pipeline weather not modified, location=", location);
+                        processPipelineResponse(batch, entry, statusCode, headers, null);
+                        return;
+                    }
+                    appendLog(context, TAG, "pipeline onFailure:", statusCode, ":location=", location);
+                    if (!batch.isFinished()) {
+                        for (WeatherUpdateBatch.Entry entryOfRequest: entry.getEntriesOfRequest()) {
+                            updateLocationSourceOnFailure(entryOfRequest.getLocation(), statusCode);
+                        }
+                    }
+                    deferPipelineRequest(entry, WeatherRetryPolicy.getFailureClass(statusCode, e), getRetryAfter(headers));
+                    pipelineRequestCompleted(batch);
+                }
+            });
+        } catch (MalformedURLException mue) {
+            appendLog(context, TAG, "MalformedURLException:", mue);
+            pipelineRequestCompleted(batch);
+        }
+    }
+
+    /**
+     * Parses the response on the response executor, a not modified response is replaced by the cached body.
+     * The parsed result is set to every entry sharing the request, parsing is skipped for the locations that
+     * already stored the same body and only their update time is refreshed. A body that is missing or can not
+     * be parsed defers the request like a failed one.
+     */
+    private void processPipelineResponse(final WeatherUpdateBatch batch,
+                                         final WeatherUpdateBatch.Entry entry,
+                                         final int statusCode,
+                                         final Header[] headers,
+                                         final byte[] response) {
+        if (statusCode != HTTP_NOT_MODIFIED) {
+            processPipelineBody(batch, entry, statusCode, headers, response);
+            return;
+        }
+        owmResponseCache.getBody(entry.getRequestKey(), new OwmResponseCache.BodyCallback() {
+            @Override
+            public void onBody(byte[] body) {
+                processPipelineBody(batch, entry, statusCode, headers, body);
+            }
+        });
+    }
+
+    private void processPipelineBody(final WeatherUpdateBatch batch,
+                                     final WeatherUpdateBatch.Entry entry,
+                                     final int statusCode,
+                                     final Header[] headers,
+                                     final byte[] body) {
+        final Context context = this;
+        weatherResponseExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (batch.isFinished()) {
+                    return;
+                }
+                String requestKey = entry.getRequestKey();
+                // the cached body is dropped when it is missing, so the retry is not conditional again
+                boolean failed = (body == null);
+                if (!failed) {
+                    try {
+                        String bodyHash = cacheResponse(requestKey, statusCode, headers, body);
+                        Object parsedResponse = null;
+                        for (WeatherUpdateBatch.Entry entryOfRequest: entry.getEntriesOfRequest()) {
+                            long locationId = entryOfRequest.getLocation().getId();
+                            if (owmResponseCache.isStored(requestKey, locationId, bodyHash) &&
+                                    setUnchangedWeather(context, entryOfRequest)) {
+                                continue;
+                            }
+                            if (parsedResponse == null) {
+                                parsedResponse = getParsedResponse(entry, bodyHash, body);
+                            }
+                            if (entryOfRequest.isCurrentWeather()) {
+                                entryOfRequest.setWeather((Weather) parsedResponse);
+                            } else {
+                                entryOfRequest.setCompleteWeatherForecast((CompleteWeatherForecast) parsedResponse);
+                            }
+                            // marked as stored once the batch is committed
+                            entryOfRequest.setBodyHash(bodyHash);
+                        }
+                    } catch (JSONException e) {
+                        appendLog(context, TAG, "JSONException:", e);
+                        failed = true;
+                    }
+                }
+                if (failed) {
+                    for (WeatherUpdateBatch.Entry entryOfRequest: entry.getEntriesOfRequest()) {
+                        updateLocationSourceOnFailure(entryOfRequest.getLocation(), statusCode);
+                    }
+                }
+                final boolean deferRequest = failed;
+                pipelineTimerHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (deferRequest) {
+                            deferPipelineRequest(entry, WeatherRetryPolicy.FAILURE_PARSE_ERROR, 0);
+                        }
+                        pipelineRequestCompleted(batch);
+                    }
+                });
+            }
+        });
+    }
+
+    private Object getParsedResponse(WeatherUpdateBatch.Entry entry, String bodyHash, byte[] body) throws JSONException {
+        Object parsedResponse = owmResponseCache.getParsed(entry.getRequestKey(), bodyHash);
+        if (parsedResponse != null) {
+            return parsedResponse;
+        }
+        if (entry.isCurrentWeather()) {
+            parsedResponse = WeatherJSONParser.getWeather(new String(body), entry.getLocation().getLocaleAbbrev());
+        } else {
+            parsedResponse = WeatherJSONStreamParser.getWeatherForecast(body);
+        }
+        owmResponseCache.putParsed(entry.getRequestKey(), bodyHash, parsedResponse);
+        return parsedResponse;
+    }
+
+    private boolean setUnchangedWeather(Context context, WeatherUpdateBatch.Entry entry) {
+        long locationId = entry.getLocation().getId();
+        if (entry.isCurrentWeather()) {
+            CurrentWeatherDbHelper.WeatherRecord weatherRecord = CurrentWeatherDbHelper.getInstance(context).getWeather(locationId);
+            if (weatherRecord == null) {
+                return false;
+            }
+            entry.setUnchanged(weatherRecord.getWeather());
+        } else {
+            if (WeatherForecastDbHelper.getInstance(context).getWeatherForecast(locationId, WEATHER_FORECAST_TYPE) == null) {
+                return false;
+            }
+            entry.setUnchanged(null);
+        }
+        appendLog(context, TAG, "pipeline weather unchanged, locationId:", locationId);
+        return true;
+    }
+
+    private void pipelineRequestCompleted(WeatherUpdateBatch batch) {
+        batch.requestCompleted();
+        dispatchPipelineRequests(batch);
+    }
+
+    private void finishPipelineWeatherUpdate(final WeatherUpdateBatch batch) {
+        if (batch.isFinished()) {
+            return;
+        }
+        batch.setFinished();
+        pipelineTimerHandler.removeCallbacksAndMessages(null);
+        final Context context = getBaseContext();
+        final long now = System.currentTimeMillis();
+        final Map<Long, String> locationSources = new HashMap<>();
+        for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+            if (entry.isCurrentWeather() && entry.isSucceeded()) {
+                locationSources.put(entry.getLocation().getId(), getLocationSourceAfterWeatherUpdate(entry.getLocation()));
+            }
+        }
+        weatherResponseExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CurrentWeatherDbHelper currentWeatherDbHelper = CurrentWeatherDbHelper.getInstance(context);
+                final WeatherForecastDbHelper weatherForecastDbHelper = WeatherForecastDbHelper.getInstance(context);
+                final LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(context);
+                final Map<Long, Weather> weathers = batch.getWeathers();
+                final Map<Long, CompleteWeatherForecast> weatherForecasts = batch.getWeatherForecasts();
+                final List<Long> unchangedWeathers = new ArrayList<>();
+                final List<Long> unchangedWeatherForecasts = new ArrayList<>();
+                for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+                    if (!entry.isUnchanged()) {
+                        continue;
+                    }
+                    if (entry.isCurrentWeather()) {
+                        unchangedWeathers.add(entry.getLocation().getId());
+                    } else {
+                        unchangedWeatherForecasts.add(entry.getLocation().getId());
+                    }
+                }
+                DbWriteExecutor dbWriteExecutor = DbWriteExecutor.getInstance(context);
+                dbWriteExecutor.submit(currentWeatherDbHelper, null, new DbWriteExecutor.DbWrite() {
+                    @Override
+                    public void write(SQLiteDatabase db) {
+                        currentWeatherDbHelper.saveWeathers(db, weathers, now);
+                        for (Long locationId: unchangedWeathers) {
+                            currentWeatherDbHelper.updateLastUpdatedTime(db, locationId, now);
+                        }
+                    }
+
+                    @Override
+                    public void onCommitted() {
+                        currentWeatherDbHelper.getWeatherCache().invalidateAll();
+                        markPipelineResponsesStored(batch, true);
+                    }
+                });
+                dbWriteExecutor.submit(weatherForecastDbHelper, null, new DbWriteExecutor.DbWrite() {
+                    @Override
+                    public void write(SQLiteDatabase db) {
+                        weatherForecastDbHelper.saveWeatherForecasts(db, weatherForecasts, WEATHER_FORECAST_TYPE, now);
+                        for (Long locationId: unchangedWeatherForecasts) {
+                            weatherForecastDbHelper.updateLastUpdatedTime(db, locationId, WEATHER_FORECAST_TYPE, now);
+                        }
+                    }
+
+                    @Override
+                    public void onCommitted() {
+                        weatherForecastDbHelper.getWeatherForecastCache().invalidateAll();
+                        for (Long locationId: weatherForecasts.keySet()) {
+                            GraphUtils.invalidateGraphForLocation(locationId);
+                        }
+                        markPipelineResponsesStored(batch, false);
+                    }
+                });
+                dbWriteExecutor.submit(locationsDbHelper, null, new DbWriteExecutor.DbWrite() {
+                    @Override
+                    public void write(SQLiteDatabase db) {
+                        locationsDbHelper.updateLastUpdatedAndLocationSources(db, locationSources, now);
+                    }
+                });
+                dbWriteExecutor.executeAfterPendingWrites(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendPipelineResult(batch, now, true);
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        sendPipelineResult(batch, now, false);
+                    }
+                });
+            }
+        });
+    }
+
+    private void markPipelineResponsesStored(WeatherUpdateBatch batch, boolean currentWeather) {
+        for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+            if ((entry.isCurrentWeather() == currentWeather) && (entry.getBodyHash() != null)) {
+                markResponseStored(entry.getRequestKey(), entry.getLocation().getId(), entry.getBodyHash());
+            }
+        }
+    }
+
+    /**
+     * @param saved false when saving the responses of the batch has failed, no update is reported then
+     * and the requests received are retried
+     */
+    private void sendPipelineResult(WeatherUpdateBatch batch, long now, boolean saved) {
+        if (!saved) {
+            deferUnsavedPipelineEntries(batch);
+        }
+        boolean currentWeatherUpdated = false;
+        boolean weatherForecastUpdated = false;
+        Set<Long> updatedLocations = new HashSet<>();
+        for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+            if (!saved || !entry.isSucceeded()) {
+                continue;
+            }
+            Long locationId = entry.getLocation().getId();
+            if (entry.isCurrentWeather()) {
+                currentWeatherUpdated = true;
+                sendMessageToWeatherByVoiceService(entry.getLocation(), entry.getWeather(), now);
+            } else {
+                weatherForecastUpdated = true;
+            }
+            if (updatedLocations.add(locationId)) {
+                weatherNotification(locationId, entry.getUpdateRequest());
+            }
+        }
+        if (batch.hasCurrentWeatherRequests()) {
+            sendIntentToMain(currentWeatherUpdated ? ACTION_WEATHER_UPDATE_OK : ACTION_WEATHER_UPDATE_FAIL);
+            stopRefreshRotation("STOP", 2);
+            sendMessageToWakeUpService(AppWakeUpManager.FALL_DOWN, AppWakeUpManager.SOURCE_CURRENT_WEATHER);
+        }
+        if (batch.hasWeatherForecastRequests()) {
+            String result = weatherForecastUpdated ? ACTION_WEATHER_UPDATE_OK : ACTION_WEATHER_UPDATE_FAIL;
+            sendIntentToForecast(result);
+            sendIntentToGraphs(result);
+            stopRefreshRotation("STOP", 1);
+            sendMessageToWakeUpService(AppWakeUpManager.FALL_DOWN, AppWakeUpManager.SOURCE_WEATHER_FORECAST);
+        }
+        appendLog(getBaseContext(), TAG, "pipeline finished, updated locations:", updatedLocations.size());
+        gettingWeatherStarted = false;
+        for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+            WidgetUtils.updateWidgets(getBaseContext(), entry.getLocation().getId());
+        }
+        if (!WidgetRefreshIconService.isRotationActive) {
+            sendMessageToReconciliationDbService(false);
+        }
+        if (!updateWeatherUpdateMessages.isEmpty()) {
+            startWeatherUpdate();
+        }
+    }
+
+    private Header[] getConditionalHeaders(String requestKey) {
+        if (requestKey == null) {
+            return null;
+        }
+        OwmResponseCache.CachedResponse cachedResponse = owmResponseCache.get(requestKey);
+        if (cachedResponse == null) {
+            return null;
+        }
+        List<Header> headers = new ArrayList<>();
+        if (cachedResponse.getETag() != null) {
+            headers.add(new BasicHeader("If-None-Match", cachedResponse.getETag()));
+        }
+        if (cachedResponse.getLastModified() != null) {
+            headers.add(new BasicHeader("If-Modified-Since", cachedResponse.getLastModified()));
+        }
+        return headers.isEmpty() ? null : headers.toArray(new Header[headers.size()]);
+    }
+
+    /**
+     * Stores the response received from OWM and returns the hash of its body, a fresh cached response
+     * is not stored again so that it does not extend its own freshness.
+     */
+    private String cacheResponse(String requestKey, int statusCode, Header[] headers, byte[] response) {
+        if (statusCode == FRESH_CACHED_RESPONSE_STATUS) {
+            return OwmResponseCache.getHash(response);
+        }
+        return owmResponseCache.put(requestKey,
+                getHeaderValue(headers, "ETag"),
+                getHeaderValue(headers, "Last-Modified"),
+                response);
+    }
+
+    private static String getHeaderValue(Header[] headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Header header: headers) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void markResponseStored(String requestKey, long locationId, String bodyHash) {
+        if (requestKey == null) {
+            return;
+        }
+        owmResponseCache.markStored(requestKey, locationId, bodyHash);
+    }
+
+    /**
+     * Refreshes the update time of the weather stored from the same response instead of saving it again,
+     * returns false when there is no stored weather to keep.
+     */
+    private boolean keepUnchangedWeatherAndSendResult(final Context context, final Location location, final int updateType) {
+        long now = System.currentTimeMillis();
+        if (isCurrentWeather(updateType)) {
+            CurrentWeatherDbHelper currentWeatherDbHelper = CurrentWeatherDbHelper.getInstance(context);
+            CurrentWeatherDbHelper.WeatherRecord weatherRecord = currentWeatherDbHelper.getWeather(location.getId());
+            if (weatherRecord == null) {
+                return false;
+            }
+            appendLog(context, TAG, "weather unchanged, locationId:", location.getId());
+            currentWeatherDbHelper.updateLastUpdatedTime(location.getId(), now);
+            sendMessageToWeatherByVoiceService(location, weatherRecord.getWeather(), now);
+            LocationsDbHelper.getInstance(context).updateLastUpdatedAndLocationSource(location.getId(),
+                    now,
+                    getLocationSourceAfterWeatherUpdate(location));
+            DbWriteExecutor.getInstance(context).executeAfterPendingWrites(new Runnable() {
+                @Override
+                public void run() {
+                    sendResult(ACTION_WEATHER_UPDATE_OK, context, location.getId(), updateType);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    sendResult(ACTION_WEATHER_UPDATE_FAIL, context, location.getId(), updateType);
+                }
+            });
+            return true;
+        } else if (isWeatherForecast(updateType)) {
+            WeatherForecastDbHelper weatherForecastDbHelper = WeatherForecastDbHelper.getInstance(context);
+            if (weatherForecastDbHelper.getWeatherForecast(location.getId(), WEATHER_FORECAST_TYPE) == null) {
+                return false;
+            }
+            appendLog(context, TAG, "weather forecast unchanged, locationId:", location.getId());
+            weatherForecastDbHelper.updateLastUpdatedTime(location.getId(), WEATHER_FORECAST_TYPE, now);
+            DbWriteExecutor.getInstance(context).executeAfterPendingWrites(new Runnable() {
+                @Override
+                public void run() {
+                    sendResult(ACTION_WEATHER_UPDATE_OK, context, updateType);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+                }
+            });
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isReadyForUpdate(Location locationToCheck, int updateType) {
+        if (isCurrentWeather(updateType)) {
+            CurrentWeatherDbHelper currentWeatherDbHelper = CurrentWeatherDbHelper.getInstance(getBaseContext());
+            CurrentWeatherDbHelper.WeatherRecord weatherRecord = currentWeatherDbHelper.getWeather(locationToCheck.getId());
+
+            long lastUpdateTimeInMilis = (weatherRecord != null)?weatherRecord.getLastUpdatedTime():0;
+            long now = System.currentTimeMillis();
+
+            long updatePeriodForLocation;
+            if (locationToCheck.getOrderId() == 0) {
+                updatePeriodForLocation = AppSettings.get(this).getLocationAutoUpdatePeriodInMs();
+            } else {
+                updatePeriodForLocation = AppSettings.get(this).getLocationUpdatePeriodInMs();
+            }
+
+            appendLog(this.getBaseContext(), TAG,
+                    "Current weather requested for location.orderId=",
+                    locationToCheck.getOrderId(),
+                    ", updatePeriodForLocation=",
+                    updatePeriodForLocation,
+                    ", now=",
+                    now,
+                    ", lastUpdateTimeInMilis=",
+                    lastUpdateTimeInMilis);
+            return !(now <= (lastUpdateTimeInMilis + updatePeriodForLocation));
+        } else {
+            boolean longForecast = isLongWeatherForecast(updateType);
+            return ForecastUtil.shouldUpdateForecast(this, locationToCheck.getId(),
+                    longForecast ? UpdateWeatherService.LONG_WEATHER_FORECAST_TYPE : UpdateWeatherService.WEATHER_FORECAST_TYPE);
+        }
+    }
+
+    private void updateLocationSourceOnFailure(Location location, int statusCode) {
+        final LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(getBaseContext());
+        switch (statusCode) {
+            case 401:
+                locationsDbHelper.updateLastUpdatedAndLocationSource(location.getId(),
+                        System.currentTimeMillis(), getString(R.string.location_weather_update_status_access_expired));
+                break;
+            case 429:
+                locationsDbHelper.updateLastUpdatedAndLocationSource(location.getId(),
+                        System.currentTimeMillis(), getString(R.string.location_weather_update_status_access_banned));
+                break;
+            default:
+                locationsDbHelper.updateLastUpdatedAndLocationSource(location.getId(),
+                        System.currentTimeMillis(), getString(R.string.location_weather_update_status_location_only));
+                break;
+        }
+        DbWriteExecutor.getInstance(getBaseContext()).flush();
+    }
+
     private void sendResult(String result, Context context, int updateType) {
         sendResult(result, context, null, updateType);
     }
 
     private void sendResult(String result, Context context, Long locationId, int updateType) {
+        sendResult(result, context, locationId, updateType, true);
+    }
+
+    /**
+     * Sends the result of the request in progress. A request deferred for a retry is not finished and is
+     * put back to the queue.
+     */
+    private void sendResult(String result, Context context, Long locationId, int updateType, boolean requestFinished) {
         if (isCurrentWeather(updateType)) {
             stopRefreshRotation("STOP", 2);
             sendMessageToWakeUpService(
@@ -525,7 +1195,8 @@ public class UpdateWeatherService extends AbstractCommonService {
         }
 
         gettingWeatherStarted = false;
-        WeatherRequestDataHolder updateRequest = updateWeatherUpdateMessages.poll();
+        WeatherRequestDataHolder updateRequest = requestFinished ?
+                updateWeatherUpdateMessages.poll() : updateWeatherUpdateMessages.requeueRequestInProgress();
         appendLog(getBaseContext(),
                   TAG,
                 "Update request: " + updateRequest);
@@ -534,10 +1205,14 @@ public class UpdateWeatherService extends AbstractCommonService {
                 "currentWeatherUpdateMessages.size after pull when sending result = ", updateWeatherUpdateMessages);
         try {
             updateResultInUI(locationId, result, updateRequest);
-            if (!updateWeatherUpdateMessages.isEmpty()) {
-                resendTheIntentInSeveralSeconds(5);
+            scheduleQueueProcessing();
+            if (locationId != null) {
+                WidgetUtils.updateWidgets(getBaseContext(), locationId);
+            } else if (updateRequest != null) {
+                WidgetUtils.updateWidgets(getBaseContext(), updateRequest.getLocationId());
+            } else {
+                WidgetUtils.updateWidgets(getBaseContext());
             }
-            WidgetUtils.updateWidgets(getBaseContext());
             if (WidgetRefreshIconService.isRotationActive) {
                 return;
             }
@@ -560,13 +1235,45 @@ public class UpdateWeatherService extends AbstractCommonService {
             sendIntentToGraphs(result);
         }
         if (ACTION_WEATHER_UPDATE_OK.equals(result)) {
-            weatherNotification(locationId, updateRequest.getUpdateSource());
+            weatherNotification(locationId, updateRequest);
         }
     }
 
-    private void saveWeatherAndSendResult(Context context, Weather weather, Location location, int updateType) {
+    /**
+     * The response is marked as stored for the location once the weather is committed, so that a failed save
+     * does not let the next equal response skip it.
+     */
+    private void saveWeatherAndSendResult(final Context context,
+                                          Weather weather,
+                                          final Location location,
+                                          final int updateType,
+                                          final String requestKey,
+                                          final String bodyHash) {
         final LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(context);
         appendLog(getBaseContext(), TAG, "saveWeatherAndSendResult:locationId:", location.getId());
+        String locationSource = getLocationSourceAfterWeatherUpdate(location);
+
+        long now = System.currentTimeMillis();
+        final CurrentWeatherDbHelper currentWeatherDbHelper = CurrentWeatherDbHelper.getInstance(context);
+        currentWeatherDbHelper.saveWeather(location.getId(), now, weather);
+
+        sendMessageToWeatherByVoiceService(location, weather, now);
+        locationsDbHelper.updateLastUpdatedAndLocationSource(location.getId(), now, locationSource);
+        DbWriteExecutor.getInstance(context).executeAfterPendingWrites(new Runnable() {
+            @Override
+            public void run() {
+                markResponseStored(requestKey, location.getId(), bodyHash);
+                sendResult(ACTION_WEATHER_UPDATE_OK, context, location.getId(), updateType);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                sendResult(ACTION_WEATHER_UPDATE_FAIL, context, location.getId(), updateType);
+            }
+        });
+    }
+
+    private String getLocationSourceAfterWeatherUpdate(Location location) {
         String locationSource = location.getLocationSource();
         appendLog(getBaseContext(), TAG, "saveWeatherAndSendResult:locationSource by location:", locationSource);
         if ((location.getOrderId() > 0) ||
@@ -575,32 +1282,42 @@ public class UpdateWeatherService extends AbstractCommonService {
                 getString(R.string.location_weather_update_status_location_not_reachable).equals(locationSource)) {
             locationSource = getString(R.string.location_weather_update_status_weather_only);
         }
-        appendLog(context,
+        appendLog(getBaseContext(),
                 TAG,
                 "Location source is:", locationSource);
-
-        long now = System.currentTimeMillis();
-        final CurrentWeatherDbHelper currentWeatherDbHelper = CurrentWeatherDbHelper.getInstance(context);
-        currentWeatherDbHelper.saveWeather(location.getId(), now, weather);
-
-        sendMessageToWeatherByVoiceService(location, weather, now);
-        locationsDbHelper.updateLastUpdatedAndLocationSource(location.getId(), now, locationSource);
-        sendResult(ACTION_WEATHER_UPDATE_OK, context, location.getId(), updateType);
+        return locationSource;
     }
 
-    private void saveWeatherAndSendResult(Context context, CompleteWeatherForecast completeWeatherForecast, int forecastType, int updateType) {
+    private void saveWeatherAndSendResult(final Context context,
+                                          CompleteWeatherForecast completeWeatherForecast,
+                                          int forecastType,
+                                          final int updateType,
+                                          final String requestKey,
+                                          final String bodyHash) {
         WeatherForecastDbHelper weatherForecastDbHelper = WeatherForecastDbHelper.getInstance(context);
         long lastUpdate = System.currentTimeMillis();
         WeatherRequestDataHolder updateRequest = updateWeatherUpdateMessages.peek();
         if (updateRequest == null) {
             return;
         }
-        weatherForecastDbHelper.saveWeatherForecast(updateRequest.getLocationId(),
+        final long locationId = updateRequest.getLocationId();
+        weatherForecastDbHelper.saveWeatherForecast(locationId,
                 forecastType,
                 lastUpdate,
                 completeWeatherForecast);
-        GraphUtils.invalidateGraph();
-        sendResult(ACTION_WEATHER_UPDATE_OK, context, updateType);
+        DbWriteExecutor.getInstance(context).executeAfterPendingWrites(new Runnable() {
+            @Override
+            public void run() {
+                markResponseStored(requestKey, locationId, bodyHash);
+                GraphUtils.invalidateGraphForLocation(locationId);
+                sendResult(ACTION_WEATHER_UPDATE_OK, context, updateType);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                sendResult(ACTION_WEATHER_UPDATE_FAIL, context, updateType);
+            }
+        });
     }
 
     private void sendIntentToForecast(String result) {
@@ -625,25 +1342,107 @@ public class UpdateWeatherService extends AbstractCommonService {
         sendBroadcast(intent);
     }
 
-    private void resendTheIntentInSeveralSeconds(int seconds) {
-        appendLog(getBaseContext(), TAG, "resendTheIntentInSeveralSeconds:SDK:", Build.VERSION.SDK_INT);
+    private void sendFailureResult(Context context,
+                                   WeatherRequestDataHolder updateRequest,
+                                   int updateType,
+                                   int failureClass,
+                                   long retryAfterInMs) {
+        boolean retried = deferRequest(updateRequest, failureClass, retryAfterInMs);
+        sendResult(ACTION_WEATHER_UPDATE_FAIL, context, null, updateType, !retried);
+    }
+
+    private boolean deferRequest(WeatherRequestDataHolder updateRequest, int failureClass, long retryAfterInMs) {
+        long retryDelay = retryPolicy.getRetryDelayInMs(failureClass, updateRequest.getAttempts(), retryAfterInMs);
+        appendLog(getBaseContext(), TAG, "failure class:", failureClass, ", retry delay:", retryDelay);
+        if (retryDelay == WeatherRetryPolicy.NO_RETRY) {
+            return false;
+        }
+        updateRequest.increaseAttempts();
+        updateRequest.setRetryTime(System.currentTimeMillis() + retryDelay);
+        return true;
+    }
+
+    /**
+     * Puts the requests of the failed pipeline request back to the queue, all of them are retried at the same
+     * time so that they share the request again.
+     */
+    private void deferPipelineRequest(WeatherUpdateBatch.Entry entry, int failureClass, long retryAfterInMs) {
+        WeatherRequestDataHolder leaderRequest = entry.getUpdateRequest();
+        if (!deferRequest(leaderRequest, failureClass, retryAfterInMs)) {
+            return;
+        }
+        for (WeatherUpdateBatch.Entry entryOfRequest: entry.getEntriesOfRequest()) {
+            WeatherRequestDataHolder updateRequest = entryOfRequest.getUpdateRequest();
+            if (updateRequest != leaderRequest) {
+                updateRequest.increaseAttempts();
+                updateRequest.setRetryTime(leaderRequest.getRetryTime());
+            }
+            updateWeatherUpdateMessages.add(updateRequest);
+        }
+        scheduleQueueProcessing();
+    }
+
+    /**
+     * Puts the requests whose response was received but not saved back to the queue, a failed save is
+     * retried like a request that timed out.
+     */
+    private void deferUnsavedPipelineEntries(WeatherUpdateBatch batch) {
+        for (WeatherUpdateBatch.Entry entry: batch.getEntries()) {
+            if (!entry.isSucceeded()) {
+                continue;
+            }
+            WeatherRequestDataHolder updateRequest = entry.getUpdateRequest();
+            if (deferRequest(updateRequest, WeatherRetryPolicy.FAILURE_TIMEOUT, 0)) {
+                updateWeatherUpdateMessages.add(updateRequest);
+            }
+        }
+        scheduleQueueProcessing();
+    }
+
+    private static long getRetryAfter(Header[] headers) {
+        return WeatherRetryPolicy.parseRetryAfter(getHeaderValue(headers, "Retry-After"), System.currentTimeMillis());
+    }
+
+    /**
+     * Schedules processing of the queue when the next request is due. There is one job for the whole queue,
+     * it is moved only when a request is due earlier than the job runs.
+     */
+    private void scheduleQueueProcessing() {
+        if (updateWeatherUpdateMessages.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long processingTime = Math.max(now + QUEUE_CONTINUATION_DELAY_IN_MS, updateWeatherUpdateMessages.getNextRequestTime());
+        synchronized (UpdateWeatherService.class) {
+            if ((scheduledQueueProcessingTime > now) && (scheduledQueueProcessingTime <= processingTime)) {
+                appendLog(getBaseContext(), TAG, "queue processing already scheduled at ", scheduledQueueProcessingTime);
+                return;
+            }
+            scheduledQueueProcessingTime = processingTime;
+        }
+        scheduleQueueProcessingJob(processingTime - now);
+    }
+
+    private void scheduleQueueProcessingJob(long delayInMs) {
+        appendLog(getBaseContext(), TAG, "scheduleQueueProcessingJob:SDK:", Build.VERSION.SDK_INT, ", delay:", delayInMs);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             ComponentName serviceComponent = new ComponentName(this, UpdateWeatherResendJob.class);
             JobInfo.Builder builder = new JobInfo.Builder(UpdateWeatherResendJob.JOB_ID, serviceComponent);
 
-            builder.setMinimumLatency(seconds * 1000); // wait at least
-            builder.setOverrideDeadline((3 + seconds) * 1000); // maximum delay
+            builder.setMinimumLatency(delayInMs); // wait at least
+            // every queued request needs the network, the job waits for it instead of waking up to fail again
+            builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
             JobScheduler jobScheduler = getSystemService(JobScheduler.class);
             jobScheduler.schedule(builder.build());
-            appendLog(getBaseContext(), TAG, "resendTheIntentInSeveralSeconds: sent");
+            appendLog(getBaseContext(), TAG, "scheduleQueueProcessingJob: sent");
         } else {
             AlarmManager alarmManager = (AlarmManager) getBaseContext().getSystemService(Context.ALARM_SERVICE);
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(getBaseContext(),
+            PendingIntent pendingIntent = PendingIntent.getService(getBaseContext(),
                     0,
                     new Intent(getBaseContext(), UpdateWeatherService.class),
                     PendingIntent.FLAG_CANCEL_CURRENT);
             alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                    SystemClock.elapsedRealtime() + (1000 * seconds), pendingIntent);
+                    SystemClock.elapsedRealtime() + delayInMs, pendingIntent);
         }
     }
 
@@ -659,7 +1458,7 @@ public class UpdateWeatherService extends AbstractCommonService {
         return (START_LONG_WEATHER_FORECAST_UPDATE == updateType) || (START_LONG_WEATHER_FORECAST_RETRY == updateType);
     }
 
-    private void weatherNotification(Long locationId, String updateSource) {
+    private void weatherNotification(Long locationId, WeatherRequestDataHolder updateRequest) {
         Location locationForNotification = NotificationUtils.getLocationForNotification(getBaseContext());
         sendMessageToWakeUpService(
                 AppWakeUpManager.FALL_DOWN,
@@ -673,7 +1472,7 @@ public class UpdateWeatherService extends AbstractCommonService {
             NotificationUtils.weatherNotification(this, locationId);
         } else if ("on_lock_screen".equals(notificationPresence) && NotificationUtils.isScreenLocked(this)) {
             NotificationUtils.weatherNotification(this, locationId);
-        } else if ((updateSource != null) && "NOTIFICATION".equals(updateSource)) {
+        } else if (updateRequest.hasUpdateSource("NOTIFICATION")) {
             NotificationUtils.weatherNotification(this, locationId);
         }
     }
@@ -753,6 +1552,10 @@ public class UpdateWeatherService extends AbstractCommonService {
             WeatherRequestDataHolder weatherRequestDataHolder = (WeatherRequestDataHolder) msg.obj;
             appendLog(getBaseContext(), TAG, "handleMessage:", msg.what, ":", weatherRequestDataHolder);
             if (weatherRequestDataHolder == null) {
+                if (msg.what == START_PROCESS_CURRENT_QUEUE) {
+                    // sent by the job scheduled for the queue
+                    startWeatherUpdate();
+                }
                 return;
             }
             appendLog(getBaseContext(),
@@ -766,9 +1569,7 @@ public class UpdateWeatherService extends AbstractCommonService {
                 case START_WEATHER_FORECAST_UPDATE:
                 case START_CURRENT_WEATHER_UPDATE:
                 case START_LONG_WEATHER_FORECAST_UPDATE:
-                    if (!updateWeatherUpdateMessages.contains(weatherRequestDataHolder)) {
-                        updateWeatherUpdateMessages.add(weatherRequestDataHolder);
-                    }
+                    updateWeatherUpdateMessages.add(weatherRequestDataHolder);
                     startWeatherUpdate();
                     break;
                 default:
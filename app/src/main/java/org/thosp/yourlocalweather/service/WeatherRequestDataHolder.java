@@ -1,19 +1,24 @@
 package org.thosp.yourlocalweather.service;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public class WeatherRequestDataHolder implements Serializable {
     private final long locationId;
     private final String updateSource;
-    private final boolean updateWeatherOnly;
+    private final List<String> updateSources = new ArrayList<>();
+    private boolean updateWeatherOnly;
     private int attempts;
+    private long retryTime;
     private final long timestamp;
-    private final boolean forceUpdate;
+    private boolean forceUpdate;
     private final int updateType;
 
     public WeatherRequestDataHolder(long locationId, String updateSource, int updateType) {
         this.locationId = locationId;
         this.updateSource = updateSource;
+        this.updateSources.add(updateSource);
         this.attempts = 0;
         this.timestamp = System.currentTimeMillis();
         this.forceUpdate = false;
@@ -24,6 +29,7 @@ public class WeatherRequestDataHolder implements Serializable {
     public WeatherRequestDataHolder(long locationId, String updateSource, boolean forceUpdate, int updateType) {
         this.locationId = locationId;
         this.updateSource = updateSource;
+        this.updateSources.add(updateSource);
         this.attempts = 0;
         this.timestamp = System.currentTimeMillis();
         this.forceUpdate = forceUpdate;
@@ -34,6 +40,7 @@ public class WeatherRequestDataHolder implements Serializable {
     public WeatherRequestDataHolder(long locationId, String updateSource, boolean forceUpdate, boolean updateWeatherOnly, int updateType) {
         this.locationId = locationId;
         this.updateSource = updateSource;
+        this.updateSources.add(updateSource);
         this.attempts = 0;
         this.timestamp = System.currentTimeMillis();
         this.forceUpdate = forceUpdate;
@@ -41,6 +48,20 @@ public class WeatherRequestDataHolder implements Serializable {
         this.updateType = updateType;
     }
 
+    public void merge(WeatherRequestDataHolder otherRequest) {
+        if (otherRequest.forceUpdate) {
+            // the user asked for the update, it does not wait for the retry
+            retryTime = 0;
+        }
+        forceUpdate |= otherRequest.forceUpdate;
+        updateWeatherOnly |= otherRequest.updateWeatherOnly;
+        for (String otherUpdateSource: otherRequest.updateSources) {
+            if (!updateSources.contains(otherUpdateSource)) {
+                updateSources.add(otherUpdateSource);
+            }
+        }
+    }
+
     public void increaseAttempts() {
         attempts++;
     }
@@ -49,12 +70,40 @@ public class WeatherRequestDataHolder implements Serializable {
         return attempts;
     }
 
+    public long getRetryTime() {
+        return retryTime;
+    }
+
+    public void setRetryTime(long retryTime) {
+        this.retryTime = retryTime;
+    }
+
+    public boolean isDue(long now) {
+        return retryTime <= now;
+    }
+
     public long getLocationId() {
         return locationId;
     }
 
     public String getUpdateSource() {
-        return updateSource;
+        if (updateSource != null) {
+            return updateSource;
+        }
+        for (String mergedUpdateSource: updateSources) {
+            if (mergedUpdateSource != null) {
+                return mergedUpdateSource;
+            }
+        }
+        return null;
+    }
+
+    public List<String> getUpdateSources() {
+        return updateSources;
+    }
+
+    public boolean hasUpdateSource(String source) {
+        return updateSources.contains(source);
     }
 
     public long getTimestamp() {
@@ -98,8 +147,8 @@ public class WeatherRequestDataHolder implements Serializable {
     
     @Override
     public String toString() {
-        return "WeatherRequestDataHolder:locationId=" + locationId + ", updateSource="
-                + updateSource + ", attempts=" + attempts +
+        return "WeatherRequestDataHolder:locationId=" + locationId + ", updateSources="
+                + updateSources + ", attempts=" + attempts + ", retryTime=" + retryTime +
                 ", forceUpdate=" + forceUpdate + ", updateWeatherOnly=" + updateWeatherOnly
                 + ", updateType=" + updateType;
     }
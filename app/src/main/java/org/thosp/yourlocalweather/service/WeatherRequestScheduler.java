@@ -0,0 +1,187 @@
+package org.thosp.yourlocalweather.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queue of pending weather requests keyed by (locationId, update type). A request for a key that is
+ * already queued is merged into the queued one, so every key results in a single HTTP call.
+ * Requests waiting for a retry stay queued but are not handed out before their retry time. The request being
+ * sent is taken out of the queue, a request for its key added meanwhile is queued on its own and is merged
+ * into it only when the request is put back for a retry.
+ */
+public class WeatherRequestScheduler {
+
+    private final Map<Long, WeatherRequestDataHolder> requests = new LinkedHashMap<>();
+    private WeatherRequestDataHolder requestInProgress;
+
+    public synchronized boolean add(WeatherRequestDataHolder updateRequest) {
+        Long key = getKey(updateRequest);
+        WeatherRequestDataHolder queuedRequest = requests.get(key);
+        if (queuedRequest != null) {
+            queuedRequest.merge(updateRequest);
+            return false;
+        }
+        requests.put(key, updateRequest);
+        return true;
+    }
+
+    /**
+     * Returns the request in progress, or the head of the queue when no request is in progress.
+     */
+    public synchronized WeatherRequestDataHolder peek() {
+        if (requestInProgress != null) {
+            return requestInProgress;
+        }
+        if (requests.isEmpty()) {
+            return null;
+        }
+        return requests.values().iterator().next();
+    }
+
+    /**
+     * Takes the head of the queue out of it as the request in progress, which peek and poll return until it
+     * is finished by poll or put back by requeueRequestInProgress.
+     */
+    public synchronized WeatherRequestDataHolder startHeadRequest() {
+        if (requestInProgress == null) {
+            requestInProgress = poll();
+        }
+        return requestInProgress;
+    }
+
+    /**
+     * Puts the request in progress back to the queue to be retried, a request for the same key added while
+     * it was in progress is merged into it.
+     */
+    public synchronized WeatherRequestDataHolder requeueRequestInProgress() {
+        WeatherRequestDataHolder updateRequest = requestInProgress;
+        if (updateRequest == null) {
+            return null;
+        }
+        requestInProgress = null;
+        Long key = getKey(updateRequest);
+        WeatherRequestDataHolder queuedRequest = requests.remove(key);
+        if (queuedRequest != null) {
+            updateRequest.merge(queuedRequest);
+        }
+        requests.put(key, updateRequest);
+        return updateRequest;
+    }
+
+    public synchronized WeatherRequestDataHolder poll() {
+        if (requestInProgress != null) {
+            WeatherRequestDataHolder updateRequest = requestInProgress;
+            requestInProgress = null;
+            return updateRequest;
+        }
+        if (requests.isEmpty()) {
+            return null;
+        }
+        Iterator<WeatherRequestDataHolder> iterator = requests.values().iterator();
+        WeatherRequestDataHolder updateRequest = iterator.next();
+        iterator.remove();
+        return updateRequest;
+    }
+
+    /**
+     * Moves requests waiting for a retry behind the others, returns false when no request is due.
+     */
+    public synchronized boolean moveDueRequestToHead(long now) {
+        for (int i = 0; i < requests.size(); i++) {
+            Iterator<WeatherRequestDataHolder> iterator = requests.values().iterator();
+            WeatherRequestDataHolder updateRequest = iterator.next();
+            if (updateRequest.isDue(now)) {
+                return true;
+            }
+            iterator.remove();
+            requests.put(getKey(updateRequest), updateRequest);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the earliest time a queued request may be sent, 0 when the queue is empty.
+     */
+    public synchronized long getNextRequestTime() {
+        long nextRequestTime = 0;
+        for (WeatherRequestDataHolder updateRequest: requests.values()) {
+            long retryTime = updateRequest.getRetryTime();
+            if ((nextRequestTime == 0) || (retryTime < nextRequestTime)) {
+                nextRequestTime = retryTime;
+            }
+        }
+        return nextRequestTime;
+    }
+
+    public synchronized List<WeatherRequestDataHolder> pollAll(int... updateTypes) {
+        long now = System.currentTimeMillis();
+        List<WeatherRequestDataHolder> result = new ArrayList<>();
+        Iterator<WeatherRequestDataHolder> iterator = requests.values().iterator();
+        while (iterator.hasNext()) {
+            WeatherRequestDataHolder updateRequest = iterator.next();
+            if (updateRequest.isDue(now) && isOfUpdateType(updateRequest, updateTypes)) {
+                result.add(updateRequest);
+                iterator.remove();
+            }
+        }
+        return result;
+    }
+
+    public synchronized int count(int... updateTypes) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (WeatherRequestDataHolder updateRequest: requests.values()) {
+            if (updateRequest.isDue(now) && isOfUpdateType(updateRequest, updateTypes)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return requests.isEmpty() && (requestInProgress == null);
+    }
+
+    public synchronized int size() {
+        return requests.size() + ((requestInProgress != null) ? 1 : 0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (requestInProgress != null) {
+            return "in progress: " + requestInProgress + ", queued: " + requests.values();
+        }
+        return requests.values().toString();
+    }
+
+    private static boolean isOfUpdateType(WeatherRequestDataHolder updateRequest, int[] updateTypes) {
+        int baseUpdateType = getBaseUpdateType(updateRequest.getUpdateType());
+        for (int updateType: updateTypes) {
+            if (baseUpdateType == getBaseUpdateType(updateType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long getKey(WeatherRequestDataHolder updateRequest) {
+        return (updateRequest.getLocationId() << 4) | getBaseUpdateType(updateRequest.getUpdateType());
+    }
+
+    static int getBaseUpdateType(int updateType) {
+        switch (updateType) {
+            case UpdateWeatherService.START_CURRENT_WEATHER_RETRY:
+                return UpdateWeatherService.START_CURRENT_WEATHER_UPDATE;
+            case UpdateWeatherService.START_WEATHER_FORECAST_RETRY:
+                return UpdateWeatherService.START_WEATHER_FORECAST_UPDATE;
+            case UpdateWeatherService.START_LONG_WEATHER_FORECAST_RETRY:
+                return UpdateWeatherService.START_LONG_WEATHER_FORECAST_UPDATE;
+            default:
+                return updateType;
+        }
+    }
+}
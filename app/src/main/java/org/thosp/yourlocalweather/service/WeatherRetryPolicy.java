@@ -0,0 +1,105 @@
+package org.thosp.yourlocalweather.service;
+
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Retry delays of failed weather requests. Every failure class has its own base delay, ceiling and number of
+ * attempts, the delay doubles with every attempt and half of it is randomized, so that requests failing
+ * together are not retried together. A Retry-After received from the server is never undercut.
+ */
+public class WeatherRetryPolicy {
+
+    public static final int FAILURE_NOT_RETRYABLE = 0;
+    public static final int FAILURE_OFFLINE = 1;
+    public static final int FAILURE_RATE_LIMITED = 2;
+    public static final int FAILURE_UNAUTHORIZED = 3;
+    public static final int FAILURE_TIMEOUT = 4;
+    public static final int FAILURE_PARSE_ERROR = 5;
+
+    public static final long NO_RETRY = -1;
+
+    // indexed by failure class: base delay, maximal delay, maximal number of retries
+    private static final long[] BASE_DELAY_IN_MS = {0, 20000, 60000, 300000, 15000, 60000};
+    private static final long[] MAX_DELAY_IN_MS = {0, 900000, 3600000, 3600000, 600000, 1800000};
+    private static final int[] MAX_RETRIES = {0, 5, 4, 1, 3, 2};
+
+    private static final long MAX_RETRY_AFTER_IN_MS = 6 * 3600000;
+
+    private final Random random;
+
+    public WeatherRetryPolicy() {
+        this(new Random());
+    }
+
+    WeatherRetryPolicy(Random random) {
+        this.random = random;
+    }
+
+    public static int getFailureClass(int statusCode, Throwable error) {
+        if (statusCode == 429) {
+            return FAILURE_RATE_LIMITED;
+        }
+        if ((statusCode == 401) || (statusCode == 403)) {
+            return FAILURE_UNAUTHORIZED;
+        }
+        if (statusCode >= 500) {
+            return FAILURE_TIMEOUT;
+        }
+        if (statusCode == 0) {
+            // no response at all, the connection failed or timed out
+            return (error instanceof UnknownHostException) ? FAILURE_OFFLINE : FAILURE_TIMEOUT;
+        }
+        return FAILURE_NOT_RETRYABLE;
+    }
+
+    /**
+     * Returns the delay before the next attempt or NO_RETRY when the request has used up its retries.
+     * @param attempts number of retries already made for the request
+     * @param retryAfterInMs delay demanded by the server, 0 when there is none
+     */
+    public long getRetryDelayInMs(int failureClass, int attempts, long retryAfterInMs) {
+        if ((failureClass <= FAILURE_NOT_RETRYABLE) ||
+                (failureClass >= MAX_RETRIES.length) ||
+                (attempts >= MAX_RETRIES[failureClass])) {
+            return NO_RETRY;
+        }
+        long maxDelay = MAX_DELAY_IN_MS[failureClass];
+        long delay = BASE_DELAY_IN_MS[failureClass];
+        for (int i = 0; (i < attempts) && (delay < maxDelay); i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        long halfOfDelay = delay / 2;
+        delay = halfOfDelay + (long) (random.nextDouble() * (delay - halfOfDelay));
+        return Math.max(delay, Math.min(retryAfterInMs, MAX_RETRY_AFTER_IN_MS));
+    }
+
+    /**
+     * Parses the Retry-After header given either in seconds or as HTTP date, returns 0 when it is missing.
+     */
+    public static long parseRetryAfter(String retryAfter, long now) {
+        if ((retryAfter == null) || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException nfe) {
+            // not in seconds
+        }
+        SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date retryDate = httpDateFormat.parse(value);
+            return Math.max(0, retryDate.getTime() - now);
+        } catch (ParseException pe) {
+            return 0;
+        }
+    }
+}
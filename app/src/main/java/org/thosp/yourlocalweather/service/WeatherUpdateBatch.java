@@ -0,0 +1,236 @@
+package org.thosp.yourlocalweather.service;
+
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
+import org.thosp.yourlocalweather.model.Location;
+import org.thosp.yourlocalweather.model.Weather;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Weather requests drained from the UpdateWeatherService queue in pipeline mode, keyed by location
+ * and update type. Entries with the same OWM request key share one request, the first entry of the key
+ * is dispatched and the result is fanned out to the others. Bookkeeping runs on the main looper,
+ * parsed results are stored by the response executor.
+ */
+public class WeatherUpdateBatch {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Entry> requestEntries = new HashMap<>();
+    private final Queue<Entry> pendingEntries = new LinkedList<>();
+    private int requestCount;
+    private int requestsInFlight;
+    private int completedRequests;
+    private volatile boolean finished;
+
+    public boolean addRequest(Location location,
+                              WeatherRequestDataHolder updateRequest,
+                              boolean currentWeather,
+                              String requestKey) {
+        String key = getKey(location.getId(), currentWeather);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.updateRequest.merge(updateRequest);
+            return false;
+        }
+        entry = new Entry(location, updateRequest, currentWeather, requestKey);
+        entries.put(key, entry);
+        Entry requestEntry = (requestKey != null) ? requestEntries.get(requestKey) : null;
+        if (requestEntry != null) {
+            requestEntry.entriesOfRequest.add(entry);
+            return true;
+        }
+        if (requestKey != null) {
+            requestEntries.put(requestKey, entry);
+        }
+        pendingEntries.add(entry);
+        requestCount++;
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of requests to send, lower than size when entries share requests.
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public boolean hasPendingRequest() {
+        return !pendingEntries.isEmpty();
+    }
+
+    public Entry nextPendingRequest() {
+        Entry entry = pendingEntries.poll();
+        if (entry != null) {
+            requestsInFlight++;
+        }
+        return entry;
+    }
+
+    public void requestCompleted() {
+        requestsInFlight--;
+        completedRequests++;
+    }
+
+    public int getRequestsInFlight() {
+        return requestsInFlight;
+    }
+
+    public boolean isCompleted() {
+        return completedRequests >= requestCount;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void setFinished() {
+        finished = true;
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public boolean hasCurrentWeatherRequests() {
+        for (Entry entry: entries.values()) {
+            if (entry.currentWeather) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasWeatherForecastRequests() {
+        for (Entry entry: entries.values()) {
+            if (!entry.currentWeather) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<Long, Weather> getWeathers() {
+        Map<Long, Weather> weathers = new HashMap<>();
+        for (Entry entry: entries.values()) {
+            if ((entry.weather != null) && !entry.unchanged) {
+                weathers.put(entry.location.getId(), entry.weather);
+            }
+        }
+        return weathers;
+    }
+
+    public Map<Long, CompleteWeatherForecast> getWeatherForecasts() {
+        Map<Long, CompleteWeatherForecast> weatherForecasts = new HashMap<>();
+        for (Entry entry: entries.values()) {
+            if ((entry.completeWeatherForecast != null) && !entry.unchanged) {
+                weatherForecasts.put(entry.location.getId(), entry.completeWeatherForecast);
+            }
+        }
+        return weatherForecasts;
+    }
+
+    private static String getKey(long locationId, boolean currentWeather) {
+        return locationId + (currentWeather ? ":weather" : ":forecast");
+    }
+
+    public static class Entry {
+        private final Location location;
+        private final boolean currentWeather;
+        private final WeatherRequestDataHolder updateRequest;
+        private final String requestKey;
+        private final List<Entry> entriesOfRequest = new ArrayList<>();
+        private volatile Weather weather;
+        private volatile CompleteWeatherForecast completeWeatherForecast;
+        private volatile boolean unchanged;
+        private volatile String bodyHash;
+
+        Entry(Location location, WeatherRequestDataHolder updateRequest, boolean currentWeather, String requestKey) {
+            this.location = location;
+            this.currentWeather = currentWeather;
+            this.updateRequest = updateRequest;
+            this.requestKey = requestKey;
+            entriesOfRequest.add(this);
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        public boolean isCurrentWeather() {
+            return currentWeather;
+        }
+
+        public WeatherRequestDataHolder getUpdateRequest() {
+            return updateRequest;
+        }
+
+        public String getRequestKey() {
+            return requestKey;
+        }
+
+        /**
+         * This entry followed by the entries sharing its request, filled before the requests are dispatched.
+         */
+        public List<Entry> getEntriesOfRequest() {
+            return entriesOfRequest;
+        }
+
+        public boolean isUpdateWeatherOnly() {
+            return updateRequest.isUpdateWeatherOnly();
+        }
+
+        public boolean isSucceeded() {
+            return (weather != null) || (completeWeatherForecast != null) || unchanged;
+        }
+
+        /**
+         * The response matched the one already stored for the location, only its update time is saved.
+         */
+        public boolean isUnchanged() {
+            return unchanged;
+        }
+
+        public void setUnchanged(Weather storedWeather) {
+            this.weather = storedWeather;
+            this.unchanged = true;
+        }
+
+        public Weather getWeather() {
+            return weather;
+        }
+
+        public void setWeather(Weather weather) {
+            this.weather = weather;
+        }
+
+        public void setCompleteWeatherForecast(CompleteWeatherForecast completeWeatherForecast) {
+            this.completeWeatherForecast = completeWeatherForecast;
+        }
+
+        /**
+         * Hash of the response body saved for the entry, null when nothing is saved.
+         */
+        public String getBodyHash() {
+            return bodyHash;
+        }
+
+        public void setBodyHash(String bodyHash) {
+            this.bodyHash = bodyHash;
+        }
+    }
+}
@@ -21,8 +21,7 @@ import java.util.Set;
 public class AppPreference {
 
     public static String getLocalizedTime(Context context, Date inputTime, Locale locale) {
-        String timeStylePreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TIME_STYLE, "system");
+        String timeStylePreferences = AppSettings.get(context).getTimeStyle();
         if ("system".equals(timeStylePreferences)) {
             return DateFormat.getTimeFormat(context).format(inputTime);
         } else if ("12h".equals(timeStylePreferences)) {
@@ -35,8 +34,7 @@ public class AppPreference {
     }
 
     public static String getLocalizedHour(Context context, Date inputTime, Locale locale) {
-        String timeStylePreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TIME_STYLE, "system");
+        String timeStylePreferences = AppSettings.get(context).getTimeStyle();
         if ("system".equals(timeStylePreferences)) {
             return DateFormat.getTimeFormat(context).format(inputTime);
         } else if ("12h".equals(timeStylePreferences)) {
@@ -49,8 +47,7 @@ public class AppPreference {
     }
 
     public static String getLocalizedDateTime(Context context, Date inputTime, boolean showYear, Locale locale) {
-        String dateStylePreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_DATE_STYLE, "system");
+        String dateStylePreferences = AppSettings.get(context).getDateStyle();
         switch (dateStylePreferences) {
             case "date_style_dots": return getSimpleDateFormatForDate("dd.MM.", "dd.MM.yy", showYear, locale).format(inputTime) +
                                         " " + getLocalizedTime(context, inputTime, locale);
@@ -73,8 +70,7 @@ public class AppPreference {
     }
 
     public static boolean is12TimeStyle(Context context) {
-        String timeStylePreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TIME_STYLE, "system");
+        String timeStylePreferences = AppSettings.get(context).getTimeStyle();
         if ("system".equals(timeStylePreferences)) {
             return !DateFormat.is24HourFormat(context);
         } else if ("12h".equals(timeStylePreferences)) {
@@ -115,8 +111,7 @@ public class AppPreference {
     }
 
     public static WindWithUnit getWindWithUnit(Context context, float value, float direction, Locale locale) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_UNITS, "m_per_second");
+        String unitsFromPreferences = AppSettings.get(context).getWindUnits();
         if (unitsFromPreferences.contains("km_per_hour") ) {
             double kmhValue = 3.6d * value;
             return new WindWithUnit(context, kmhValue, context.getString(R.string.wind_speed_kilometers), direction, locale);
@@ -135,8 +130,7 @@ public class AppPreference {
     }
 
     public static double getRainOrSnow(Context context, double value) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_RAIN_SNOW_UNITS, "mm");
+        String unitsFromPreferences = AppSettings.get(context).getRainSnowUnits();
         if (unitsFromPreferences.contains("inches") ) {
             return 0.03937007874d * value;
         } else {
@@ -145,8 +139,7 @@ public class AppPreference {
     }
 
     public static int getGraphFormatterForRainOrSnow(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_RAIN_SNOW_UNITS, "mm");
+        String unitsFromPreferences = AppSettings.get(context).getRainSnowUnits();
         if (unitsFromPreferences.contains("inches") ) {
             return 3;
         } else {
@@ -155,8 +148,7 @@ public class AppPreference {
     }
 
     public static String getFormatedRainOrSnow(Context context, double value, Locale locale) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_RAIN_SNOW_UNITS, "mm");
+        String unitsFromPreferences = AppSettings.get(context).getRainSnowUnits();
         String format;
         if (unitsFromPreferences.contains("inches") ) {
             format = "%.3f";
@@ -167,8 +159,7 @@ public class AppPreference {
     }
 
     public static int getRainOrSnowUnit(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_RAIN_SNOW_UNITS, "mm");
+        String unitsFromPreferences = AppSettings.get(context).getRainSnowUnits();
         if (unitsFromPreferences.contains("inches") ) {
             return R.string.inches_label;
         } else {
@@ -177,8 +168,7 @@ public class AppPreference {
     }
 
     public static int getRainOrSnowForecastWeadherWidth(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_RAIN_SNOW_UNITS, "mm");
+        String unitsFromPreferences = AppSettings.get(context).getRainSnowUnits();
         if (unitsFromPreferences.contains("inches") ) {
             return 60;
         } else {
@@ -191,8 +181,7 @@ public class AppPreference {
     }
 
     private static String getWindFormat(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_UNITS, "m_per_second");
+        String unitsFromPreferences = AppSettings.get(context).getWindUnits();
         if (unitsFromPreferences.contains("beaufort") ) {
             return "%.0f";
         } else {
@@ -205,8 +194,7 @@ public class AppPreference {
     }
 
     public static double getWind(Context context, double windSpeed) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_UNITS, "m_per_second");
+        String unitsFromPreferences = AppSettings.get(context).getWindUnits();
         if (unitsFromPreferences.contains("km_per_hour") ) {
             return 3.6d * windSpeed;
         } else if (unitsFromPreferences.contains("miles_per_hour") ) {
@@ -221,8 +209,7 @@ public class AppPreference {
     }
 
     public static String getWindUnit(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_UNITS, "m_per_second");
+        String unitsFromPreferences = AppSettings.get(context).getWindUnits();
         if (unitsFromPreferences.contains("km_per_hour") ) {
             return context.getString(R.string.wind_speed_kilometers);
         } else if (unitsFromPreferences.contains("miles_per_hour") ) {
@@ -237,8 +224,7 @@ public class AppPreference {
     }
 
     public static String getPressureUnit(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_PRESSURE_UNITS, "hpa");
+        String unitsFromPreferences = AppSettings.get(context).getPressureUnits();
         switch (unitsFromPreferences) {
             case "mmhg": return context.getString(R.string.pressure_measurement_mmhg);
             case "inhg": return context.getString(R.string.pressure_measurement_inhg);
@@ -249,8 +235,7 @@ public class AppPreference {
     }
 
     public static int getPressureDecimalPlaces(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_PRESSURE_UNITS, "hpa");
+        String unitsFromPreferences = AppSettings.get(context).getPressureUnits();
         switch (unitsFromPreferences) {
             case "mmhg": return 2;
             case "inhg": return 2;
@@ -266,8 +251,7 @@ public class AppPreference {
     }
 
     public static PressureWithUnit getPressureWithUnit(Context context, double value, Locale locale) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_PRESSURE_UNITS, "hpa");
+        String unitsFromPreferences = AppSettings.get(context).getPressureUnits();
         switch (unitsFromPreferences) {
             case "mmhg": return new PressureWithUnit(value * 0.75f,
                                                  context.getString(R.string.pressure_measurement_mmhg), locale);
@@ -282,8 +266,7 @@ public class AppPreference {
     }
 
     public static boolean hideDescription(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
-                Constants.KEY_PREF_HIDE_DESCRIPTION, false);
+        return AppSettings.get(context).isHideDescription();
     }
 
     public static long getLastNotificationTimeInMs(Context context) {
@@ -353,13 +336,11 @@ public class AppPreference {
     }
 
     public static boolean isWidgetGraphNativeScaled(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
-                Constants.KEY_PREF_WIDGET_GRAPH_NATIVE_SCALE, false);
+        return AppSettings.get(context).isWidgetGraphNativeScaled();
     }
 
     public static boolean isShowControls(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
-                Constants.KEY_PREF_WIDGET_SHOW_CONTROLS, false);
+        return AppSettings.get(context).isWidgetShowControls();
     }
 
     public static boolean isUpdateLocationEnabled(Context context, Location currentLocation) {
@@ -382,18 +363,15 @@ public class AppPreference {
     }
 
     public static String getIconSet(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WEATHER_ICON_SET, "weather_icon_set_merlin_the_red");
+        return AppSettings.get(context).getIconSet();
     }
 
     public static boolean showLabelsOnWidget(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context)
-                .getBoolean(Constants.KEY_PREF_WIDGET_SHOW_LABELS, false);
+        return AppSettings.get(context).isWidgetShowLabels();
     }
 
     public static String getWidgetTheme(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIDGET_THEME, "dark");
+        return AppSettings.get(context).getWidgetTheme();
     }
 
     public static Set<Integer> getForecastActivityColumns(Context context) {
@@ -543,13 +521,11 @@ public class AppPreference {
     }
 
     public static String getLocationAutoUpdatePeriod(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_LOCATION_AUTO_UPDATE_PERIOD, "60");
+        return AppSettings.get(context).getLocationAutoUpdatePeriod();
     }
 
     public static String getLocationUpdatePeriod(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_LOCATION_UPDATE_PERIOD, "60");
+        return AppSettings.get(context).getLocationUpdatePeriod();
     }
 
     public static void setCurrentLocationId(Context context, Location currentLocation) {
@@ -0,0 +1,194 @@
+package org.thosp.yourlocalweather.utils;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Immutable snapshot of the preferences read while rendering widgets, notifications and on update checks.
+ * It is built once and rebuilt by a preference change listener, readers get plain fields without touching
+ * SharedPreferences or parsing values.
+ */
+public class AppSettings {
+
+    private static volatile AppSettings current;
+    // SharedPreferences keeps listeners in a weak map, the listener has to be referenced here
+    private static SharedPreferences.OnSharedPreferenceChangeListener preferenceChangeListener;
+
+    private final String temperatureUnits;
+    private final boolean temperatureInFahrenheit;
+    private final String temperatureType;
+    private final String timeStyle;
+    private final String dateStyle;
+    private final String windUnits;
+    private final String windDirectionType;
+    private final String pressureUnits;
+    private final String rainSnowUnits;
+    private final String iconSet;
+    private final boolean hideDescription;
+    private final boolean widgetShowLabels;
+    private final String widgetTheme;
+    private final boolean widgetShowControls;
+    private final boolean widgetGraphNativeScaled;
+    private final String locationUpdatePeriod;
+    private final long locationUpdatePeriodInMs;
+    private final String locationAutoUpdatePeriod;
+    private final long locationAutoUpdatePeriodInMs;
+    private final boolean locationCacheEnabled;
+    private final WeatherRequestGrid weatherRequestGrid;
+
+    public static AppSettings get(Context context) {
+        AppSettings settings = current;
+        if (settings != null) {
+            return settings;
+        }
+        return init(context);
+    }
+
+    private synchronized static AppSettings init(Context context) {
+        if (current != null) {
+            return current;
+        }
+        return init(PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext()));
+    }
+
+    /**
+     * Builds the snapshot of the preferences and rebuilds it on every change of them.
+     */
+    synchronized static AppSettings init(SharedPreferences preferences) {
+        preferenceChangeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                current = new AppSettings(sharedPreferences);
+            }
+        };
+        preferences.registerOnSharedPreferenceChangeListener(preferenceChangeListener);
+        current = new AppSettings(preferences);
+        return current;
+    }
+
+    private AppSettings(SharedPreferences preferences) {
+        temperatureUnits = preferences.getString(Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        temperatureInFahrenheit = temperatureUnits.contains("fahrenheit");
+        temperatureType = preferences.getString(Constants.KEY_PREF_TEMPERATURE_TYPE, "measured_only");
+        timeStyle = preferences.getString(Constants.KEY_PREF_TIME_STYLE, "system");
+        dateStyle = preferences.getString(Constants.KEY_PREF_DATE_STYLE, "system");
+        windUnits = preferences.getString(Constants.KEY_PREF_WIND_UNITS, "m_per_second");
+        windDirectionType = preferences.getString(Constants.KEY_PREF_WIND_DIRECTION, "abbreviation");
+        pressureUnits = preferences.getString(Constants.KEY_PREF_PRESSURE_UNITS, "hpa");
+        rainSnowUnits = preferences.getString(Constants.KEY_PREF_RAIN_SNOW_UNITS, "mm");
+        iconSet = preferences.getString(Constants.KEY_PREF_WEATHER_ICON_SET, "weather_icon_set_merlin_the_red");
+        hideDescription = preferences.getBoolean(Constants.KEY_PREF_HIDE_DESCRIPTION, false);
+        widgetShowLabels = preferences.getBoolean(Constants.KEY_PREF_WIDGET_SHOW_LABELS, false);
+        widgetTheme = preferences.getString(Constants.KEY_PREF_WIDGET_THEME, "dark");
+        widgetShowControls = preferences.getBoolean(Constants.KEY_PREF_WIDGET_SHOW_CONTROLS, false);
+        widgetGraphNativeScaled = preferences.getBoolean(Constants.KEY_PREF_WIDGET_GRAPH_NATIVE_SCALE, false);
+        locationUpdatePeriod = preferences.getString(Constants.KEY_PREF_LOCATION_UPDATE_PERIOD, "60");
+        locationUpdatePeriodInMs = getIntervalInMs(locationUpdatePeriod);
+        locationAutoUpdatePeriod = preferences.getString(Constants.KEY_PREF_LOCATION_AUTO_UPDATE_PERIOD, "60");
+        locationAutoUpdatePeriodInMs = getIntervalInMs(locationAutoUpdatePeriod);
+        locationCacheEnabled = preferences.getBoolean(Constants.APP_SETTINGS_LOCATION_CACHE_ENABLED, false);
+        weatherRequestGrid = new WeatherRequestGrid(getInt(preferences, Constants.KEY_PREF_WEATHER_REQUEST_GRID, "0"));
+    }
+
+    private static int getInt(SharedPreferences preferences, String key, String defaultValue) {
+        try {
+            return Integer.parseInt(preferences.getString(key, defaultValue));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(defaultValue);
+        }
+    }
+
+    private static long getIntervalInMs(String intervalMinutes) {
+        try {
+            return Utils.intervalMillisForAlarm(intervalMinutes);
+        } catch (NumberFormatException e) {
+            return AlarmManager.INTERVAL_HOUR;
+        }
+    }
+
+    public String getTemperatureUnits() {
+        return temperatureUnits;
+    }
+
+    public boolean isTemperatureInFahrenheit() {
+        return temperatureInFahrenheit;
+    }
+
+    public String getTemperatureType() {
+        return temperatureType;
+    }
+
+    public String getTimeStyle() {
+        return timeStyle;
+    }
+
+    public String getDateStyle() {
+        return dateStyle;
+    }
+
+    public String getWindUnits() {
+        return windUnits;
+    }
+
+    public String getWindDirectionType() {
+        return windDirectionType;
+    }
+
+    public String getPressureUnits() {
+        return pressureUnits;
+    }
+
+    public String getRainSnowUnits() {
+        return rainSnowUnits;
+    }
+
+    public String getIconSet() {
+        return iconSet;
+    }
+
+    public boolean isHideDescription() {
+        return hideDescription;
+    }
+
+    public boolean isWidgetShowLabels() {
+        return widgetShowLabels;
+    }
+
+    public String getWidgetTheme() {
+        return widgetTheme;
+    }
+
+    public boolean isWidgetShowControls() {
+        return widgetShowControls;
+    }
+
+    public boolean isWidgetGraphNativeScaled() {
+        return widgetGraphNativeScaled;
+    }
+
+    public String getLocationUpdatePeriod() {
+        return locationUpdatePeriod;
+    }
+
+    public long getLocationUpdatePeriodInMs() {
+        return locationUpdatePeriodInMs;
+    }
+
+    public String getLocationAutoUpdatePeriod() {
+        return locationAutoUpdatePeriod;
+    }
+
+    public long getLocationAutoUpdatePeriodInMs() {
+        return locationAutoUpdatePeriodInMs;
+    }
+
+    public boolean isLocationCacheEnabled() {
+        return locationCacheEnabled;
+    }
+
+    public WeatherRequestGrid getWeatherRequestGrid() {
+        return weatherRequestGrid;
+    }
+}
@@ -0,0 +1,210 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Apparent temperature with solar irradiation of single measurements and of whole forecasts. The local day
+ * and time are taken from the epoch time and the offset of the time zone instead of a Calendar, the sine and
+ * cosine of the latitude are computed once per forecast and the solar declination once per local day.
+ * The results are the same as of the formula evaluated for every entry alone.
+ */
+public class ApparentTemperatures {
+
+    private static final double SOLAR_CONSTANT = 1395; // solar constant (w/m2)
+    private static final double TRANSMISSION_COEFFICIENT_CLEAR_DAY = 0.81;
+    private static final double TRANSMISSION_COEFFICIENT_CLOUDY = 0.62;
+    private static final long MILLIS_IN_DAY = 86400000L;
+    private static final int MILLIS_IN_MINUTE = 60000;
+    private static final int MAX_CACHED_FORECASTS = 8;
+
+    private static final Map<CacheKey, float[]> cache = new LinkedHashMap<CacheKey, float[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, float[]> eldest) {
+            return size() > MAX_CACHED_FORECASTS;
+        }
+    };
+
+    /**
+     * @param timestamp time of the measurement in milliseconds
+     */
+    public static float getApparentTemperature(double dryBulbTemperature,
+                                               int humidity,
+                                               double windSpeed,
+                                               int cloudiness,
+                                               double latitude,
+                                               long timestamp,
+                                               TimeZone timeZone) {
+        double latitudeInRadians = Math.toRadians(latitude);
+        long localTime = timestamp + timeZone.getOffset(timestamp);
+        long localDay = floorDiv(localTime, MILLIS_IN_DAY);
+        double declination = getDeclination(getDayOfYear(localDay));
+        int minuteOfDay = (int) ((localTime - (localDay * MILLIS_IN_DAY)) / MILLIS_IN_MINUTE);
+        return getApparentTemperature(dryBulbTemperature, humidity, windSpeed, cloudiness,
+                Math.sin(latitudeInRadians) * Math.sin(declination),
+                Math.cos(latitudeInRadians) * Math.cos(declination),
+                minuteOfDay);
+    }
+
+    /**
+     * Returns the apparent temperatures of all entries of the forecast in the order of its list. The array
+     * is kept for the version of the stored forecast, the latitude and the time zone, so a forecast decoded
+     * again from the same stored data gets the same array. It must not be modified by the caller.
+     * @param forecastVersion version of the stored forecast, see WeatherForecastRecord.getForecastVersion
+     */
+    public static float[] getApparentTemperatures(CompleteWeatherForecast forecast,
+                                                  long forecastVersion,
+                                                  double latitude) {
+        TimeZone timeZone = TimeZone.getDefault();
+        CacheKey cacheKey = new CacheKey(forecastVersion, latitude, timeZone.getID());
+        synchronized (cache) {
+            float[] cachedTemperatures = cache.get(cacheKey);
+            if (cachedTemperatures != null) {
+                return cachedTemperatures;
+            }
+        }
+        float[] temperatures = getApparentTemperatures(forecast.getWeatherForecastList(), latitude, timeZone, null);
+        synchronized (cache) {
+            cache.put(cacheKey, temperatures);
+        }
+        return temperatures;
+    }
+
+    /**
+     * Computes the apparent temperatures of the entries, their date time is in seconds.
+     * @param result array to write into, a new one is returned when it is null or too short
+     */
+    public static float[] getApparentTemperatures(List<DetailedWeatherForecast> forecasts,
+                                                  double latitude,
+                                                  TimeZone timeZone,
+                                                  float[] result) {
+        int size = forecasts.size();
+        if ((result == null) || (result.length < size)) {
+            result = new float[size];
+        }
+        double latitudeInRadians = Math.toRadians(latitude);
+        double sinOfLatitude = Math.sin(latitudeInRadians);
+        double cosOfLatitude = Math.cos(latitudeInRadians);
+        long lastLocalDay = Long.MIN_VALUE;
+        double sinProduct = 0;
+        double cosProduct = 0;
+        for (int i = 0; i < size; i++) {
+            DetailedWeatherForecast weather = forecasts.get(i);
+            long timestamp = weather.getDateTime() * 1000;
+            long localTime = timestamp + timeZone.getOffset(timestamp);
+            long localDay = floorDiv(localTime, MILLIS_IN_DAY);
+            if (localDay != lastLocalDay) {
+                double declination = getDeclination(getDayOfYear(localDay));
+                sinProduct = sinOfLatitude * Math.sin(declination);
+                cosProduct = cosOfLatitude * Math.cos(declination);
+                lastLocalDay = localDay;
+            }
+            int minuteOfDay = (int) ((localTime - (localDay * MILLIS_IN_DAY)) / MILLIS_IN_MINUTE);
+            result[i] = getApparentTemperature(
+                    weather.getTemperature(),
+                    weather.getHumidity(),
+                    weather.getWindSpeed(),
+                    weather.getCloudiness(),
+                    sinProduct,
+                    cosProduct,
+                    minuteOfDay);
+        }
+        return result;
+    }
+
+    /**
+     * @param sinProduct sine of the latitude multiplied by the sine of the declination
+     * @param cosProduct cosine of the latitude multiplied by the cosine of the declination
+     * @param minuteOfDay local wall clock time in minutes after midnight
+     */
+    private static float getApparentTemperature(double dryBulbTemperature,
+                                                int humidity,
+                                                double windSpeed,
+                                                int cloudiness,
+                                                double sinProduct,
+                                                double cosProduct,
+                                                int minuteOfDay) {
+        double e = (humidity / 100f) * 6.105 * Math.exp((17.27*dryBulbTemperature / (237.7 + dryBulbTemperature)));
+        double hourAngle = ((12 * 60) - minuteOfDay) * 0.25;
+        double cosOfZenithAngle = sinProduct + (cosProduct * Math.cos(Math.toRadians(hourAngle)));
+        double calculatedIrradiation = 0;
+        if (cosOfZenithAngle > 0) {
+            double transmissionCoefficient = TRANSMISSION_COEFFICIENT_CLEAR_DAY -
+                    (TRANSMISSION_COEFFICIENT_CLEAR_DAY - TRANSMISSION_COEFFICIENT_CLOUDY) * (cloudiness/100f);
+            calculatedIrradiation = (SOLAR_CONSTANT * cosOfZenithAngle*Math.pow(transmissionCoefficient, 1/cosOfZenithAngle))/10;
+        }
+        double apparentTemperature = dryBulbTemperature + (0.348 * e) - (0.70 * windSpeed) + ((0.70 * calculatedIrradiation)/(windSpeed + 10)) - 4.25;
+        return (float)apparentTemperature;
+    }
+
+    static double getDeclination(int dayOfYear) {
+        return Math.toRadians(-23.44 * Math.cos(Math.toRadians((360f/365f) * (9 + dayOfYear))));
+    }
+
+    /**
+     * Day of the year starting with 1 of the day counted from 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    static int getDayOfYear(long epochDay) {
+        // days since 0000-03-01, so that the leap day is the last day of a year
+        long days = epochDay + 719468;
+        long era = floorDiv(days, 146097);
+        long dayOfEra = days - (era * 146097);
+        long yearOfEra = (dayOfEra - (dayOfEra / 1460) + (dayOfEra / 36524) - (dayOfEra / 146096)) / 365;
+        long dayOfMarchYear = dayOfEra - ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+        if (dayOfMarchYear >= 306) {
+            // January and February belong to the next calendar year
+            return (int) (dayOfMarchYear - 305);
+        }
+        long year = yearOfEra + (era * 400);
+        boolean leapYear = ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+        return (int) (dayOfMarchYear + (leapYear ? 61 : 60));
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if (((dividend % divisor) != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    private static class CacheKey {
+        private final long forecastVersion;
+        private final double latitude;
+        private final String timeZoneId;
+
+        CacheKey(long forecastVersion, double latitude, String timeZoneId) {
+            this.forecastVersion = forecastVersion;
+            this.latitude = latitude;
+            this.timeZoneId = timeZoneId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return (forecastVersion == other.forecastVersion) &&
+                    (Double.compare(latitude, other.latitude) == 0) &&
+                    timeZoneId.equals(other.timeZoneId);
+        }
+
+        @Override
+        public int hashCode() {
+            long latitudeBits = Double.doubleToLongBits(latitude);
+            int result = (int) (forecastVersion ^ (forecastVersion >>> 32));
+            result = 31 * result + (int) (latitudeBits ^ (latitudeBits >>> 32));
+            result = 31 * result + timeZoneId.hashCode();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.thosp.yourlocalweather.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache bounded by the summed byte size of its values instead of the number of entries.
+ * The least recently used entries are evicted until the new value fits, a value bigger than
+ * the whole cache is not stored.
+ */
+public abstract class ByteSizedLruCache<K, V> {
+
+    public interface KeyFilter<K> {
+        boolean matches(K key);
+    }
+
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSizeInBytes;
+    private long sizeInBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ByteSizedLruCache(long maxSizeInBytes) {
+        if (maxSizeInBytes <= 0) {
+            throw new IllegalArgumentException("maxSizeInBytes has to be positive: " + maxSizeInBytes);
+        }
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    protected abstract long sizeOf(V value);
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            sizeInBytes -= sizeOf(previous);
+        }
+        long size = sizeOf(value);
+        if (size > maxSizeInBytes) {
+            return;
+        }
+        trimToSize(maxSizeInBytes - size);
+        entries.put(key, value);
+        sizeInBytes += size;
+    }
+
+    /**
+     * Value of the first entry accepted by the filter, without counting it as a use.
+     */
+    public synchronized V find(KeyFilter<K> filter) {
+        for (Map.Entry<K, V> entry: entries.entrySet()) {
+            if (filter.matches(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes all entries with keys accepted by the filter and returns their count.
+     */
+    public synchronized int removeAll(KeyFilter<K> filter) {
+        int removed = 0;
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            if (filter.matches(entry.getKey())) {
+                sizeInBytes -= sizeOf(entry.getValue());
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache holds at most targetSizeInBytes.
+     */
+    public synchronized void trimToSize(long targetSizeInBytes) {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while ((sizeInBytes > targetSizeInBytes) && iterator.hasNext()) {
+            Map.Entry<K, V> eldest = iterator.next();
+            sizeInBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
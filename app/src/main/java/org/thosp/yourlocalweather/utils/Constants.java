@@ -59,6 +59,7 @@ public class Constants {
     public static final String PREF_LANGUAGE = "language_pref_key";
     public static final String PREF_OS_LANGUAGE = "os_language_pref_key";
     public static final String KEY_PREF_LOCATION_GEOCODER_SOURCE = "location_geocoder_source";
+    public static final String KEY_PREF_WEATHER_REQUEST_GRID = "weather_request_grid_pref_key";
     public static final String KEY_PREF_WEATHER_ICON_SET = "weather_icon_set_pref_key";
     public static final String KEY_PREF_LOCATION_UPDATE_STRATEGY = "location_update_strategy";
     public static final String KEY_PREF_LOCATION_GPS_ENABLED = "location_gps_enabled";
@@ -0,0 +1,200 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Splits forecast entries sorted by time into the local calendar days of a time zone. The local midnights
+ * around the forecast are precomputed into a table, so every entry is assigned by comparing its epoch seconds
+ * while the list is walked once. Days are returned as index ranges into the list kept in reused arrays,
+ * nothing is allocated per entry. An entry earlier than the one before it is looked up in the table and starts
+ * a new range, so unsorted entries are grouped the way they are listed. An instance is not thread safe.
+ */
+public class ForecastDayBuckets {
+
+    private static final int SECONDS_IN_DAY = 86400;
+    private static final int TABLE_MARGIN_DAYS = 8;
+    private static final int INITIAL_DAYS = 16;
+
+    private TimeZone timeZone;
+
+    // local midnights in epoch seconds, table day i lasts from tableDayStarts[i] to tableDayStarts[i + 1]
+    private long[] tableDayStarts = new long[0];
+    private int[] tableYears = new int[0];
+    private int[] tableDaysOfYear = new int[0];
+    private int tableDays;
+
+    private int[] firstIndexes = new int[INITIAL_DAYS];
+    private int[] endIndexes = new int[INITIAL_DAYS];
+    private int[] dayTableIndexes = new int[INITIAL_DAYS];
+    private int dayCount;
+
+    public ForecastDayBuckets(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Changes the time zone, the table of midnights is kept when the new zone has the same rules.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        if (this.timeZone.getID().equals(timeZone.getID()) && this.timeZone.hasSameRules(timeZone)) {
+            return;
+        }
+        this.timeZone = timeZone;
+        tableDays = 0;
+    }
+
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * Buckets the entries ordered by their date time and returns the number of days.
+     */
+    public int bucket(List<DetailedWeatherForecast> sortedForecasts) {
+        dayCount = 0;
+        int size = sortedForecasts.size();
+        if (size == 0) {
+            return 0;
+        }
+        long firstDateTime = sortedForecasts.get(0).getDateTime();
+        long minDateTime = firstDateTime;
+        long maxDateTime = firstDateTime;
+        for (int i = 1; i < size; i++) {
+            long dateTime = sortedForecasts.get(i).getDateTime();
+            minDateTime = Math.min(minDateTime, dateTime);
+            maxDateTime = Math.max(maxDateTime, dateTime);
+        }
+        ensureTable(minDateTime, maxDateTime);
+        int tableDay = findTableDay(firstDateTime);
+        for (int i = 0; i < size; i++) {
+            long dateTime = sortedForecasts.get(i).getDateTime();
+            if (dateTime < tableDayStarts[tableDay]) {
+                tableDay = findTableDay(dateTime);
+            }
+            while (dateTime >= tableDayStarts[tableDay + 1]) {
+                tableDay++;
+            }
+            if ((dayCount > 0) && (dayTableIndexes[dayCount - 1] == tableDay)) {
+                continue;
+            }
+            if (dayCount > 0) {
+                endIndexes[dayCount - 1] = i;
+            }
+            ensureDayCapacity(dayCount + 1);
+            firstIndexes[dayCount] = i;
+            dayTableIndexes[dayCount] = tableDay;
+            dayCount++;
+        }
+        endIndexes[dayCount - 1] = size;
+        return dayCount;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Index of the first entry of the day in the bucketed list.
+     */
+    public int getFirstIndex(int day) {
+        checkDay(day);
+        return firstIndexes[day];
+    }
+
+    /**
+     * Index after the last entry of the day in the bucketed list.
+     */
+    public int getEndIndex(int day) {
+        checkDay(day);
+        return endIndexes[day];
+    }
+
+    public int getEntryCount(int day) {
+        checkDay(day);
+        return endIndexes[day] - firstIndexes[day];
+    }
+
+    public int getYear(int day) {
+        checkDay(day);
+        return tableYears[dayTableIndexes[day]];
+    }
+
+    public int getDayOfYear(int day) {
+        checkDay(day);
+        return tableDaysOfYear[dayTableIndexes[day]];
+    }
+
+    /**
+     * Local midnight of the day in epoch seconds.
+     */
+    public long getDayStart(int day) {
+        checkDay(day);
+        return tableDayStarts[dayTableIndexes[day]];
+    }
+
+    private void checkDay(int day) {
+        if ((day < 0) || (day >= dayCount)) {
+            throw new IndexOutOfBoundsException("Day " + day + " of " + dayCount);
+        }
+    }
+
+    private int findTableDay(long dateTime) {
+        int low = 0;
+        int high = tableDays - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (tableDayStarts[middle] <= dateTime) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void ensureTable(long firstDateTime, long lastDateTime) {
+        if ((tableDays > 0) && (firstDateTime >= tableDayStarts[0]) && (lastDateTime < tableDayStarts[tableDays])) {
+            return;
+        }
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis((firstDateTime - (TABLE_MARGIN_DAYS * SECONDS_IN_DAY)) * 1000);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        int days = (int) ((lastDateTime - firstDateTime) / SECONDS_IN_DAY) + (2 * TABLE_MARGIN_DAYS) + 2;
+        if (tableDayStarts.length < (days + 1)) {
+            tableDayStarts = new long[days + 1];
+            tableYears = new int[days + 1];
+            tableDaysOfYear = new int[days + 1];
+        }
+        for (int i = 0; i <= days; i++) {
+            tableDayStarts[i] = calendar.getTimeInMillis() / 1000;
+            tableYears[i] = calendar.get(Calendar.YEAR);
+            tableDaysOfYear[i] = calendar.get(Calendar.DAY_OF_YEAR);
+            calendar.add(Calendar.DAY_OF_YEAR, 1);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+        }
+        tableDays = days;
+    }
+
+    private void ensureDayCapacity(int capacity) {
+        if (firstIndexes.length >= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, firstIndexes.length * 2);
+        firstIndexes = copyOf(firstIndexes, newCapacity);
+        endIndexes = copyOf(endIndexes, newCapacity);
+        dayTableIndexes = copyOf(dayTableIndexes, newCapacity);
+    }
+
+    private static int[] copyOf(int[] values, int length) {
+        int[] result = new int[length];
+        System.arraycopy(values, 0, result, 0, values.length);
+        return result;
+    }
+}
@@ -2,18 +2,20 @@ package org.thosp.yourlocalweather.utils;
 
 import android.content.Context;
 
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
 import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
 import org.thosp.yourlocalweather.model.WeatherCondition;
 import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
+import org.thosp.yourlocalweather.service.UpdateWeatherService;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 
 import static org.thosp.yourlocalweather.utils.LogToFile.appendLogLastUpdateTime;
 
@@ -22,6 +24,15 @@ public class ForecastUtil {
     private static final String TAG = "ForecastUtil";
 
     public static long AUTO_FORECAST_UPDATE_TIME_MILIS = 3600000; // 1h
+    // stamp of the stored daily aggregates, increase when calculateWeatherForDays changes its results
+    public static final int WEATHER_FOR_DAYS_VERSION = 2;
+
+    private static final ThreadLocal<ForecastDayBuckets> DAY_BUCKETS = new ThreadLocal<ForecastDayBuckets>() {
+        @Override
+        protected ForecastDayBuckets initialValue() {
+            return new ForecastDayBuckets(TimeZone.getDefault());
+        }
+    };
 
     public static boolean shouldUpdateForecast(Context context, long locationId, int forecastType) {
         WeatherForecastDbHelper weatherForecastDbHelper = WeatherForecastDbHelper.getInstance(context);
@@ -45,60 +56,59 @@ public class ForecastUtil {
         return false;
     }
 
+    /**
+     * Daily aggregates of the forecast, the ones precomputed when the forecast was saved if the record has them.
+     */
     public static Set<WeatherForecastPerDay> calculateWeatherForDays(WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord) {
+        if (weatherForecastRecord == null) {
+            return new HashSet<>();
+        }
+        Set<WeatherForecastPerDay> weatherForecastForDays = weatherForecastRecord.getWeatherForecastForDays();
+        if (weatherForecastForDays != null) {
+            return weatherForecastForDays;
+        }
+        return calculateWeatherForDays(weatherForecastRecord.getCompleteWeatherForecast());
+    }
+
+    public static Set<WeatherForecastPerDay> calculateWeatherForDays(CompleteWeatherForecast completeWeatherForecast) {
         Set<WeatherForecastPerDay> result = new HashSet<>();
-        Calendar forecastCalendar = Calendar.getInstance();
-        int initialYearForTheList = forecastCalendar.get(Calendar.YEAR);
-        Map<Integer, List<DetailedWeatherForecast>> weatherList = createWeatherList(weatherForecastRecord);
-        Integer firstDayOfYear = Collections.min(weatherList.keySet());
+        if (completeWeatherForecast == null) {
+            return result;
+        }
+        List<DetailedWeatherForecast> forecastList = completeWeatherForecast.getWeatherForecastList();
+        ForecastDayBuckets dayBuckets = getDayBuckets();
+        int days = dayBuckets.bucket(forecastList);
         int dayCounter = 0;
-        int daysInList = firstDayOfYear + weatherList.keySet().size();
-        for (int dayInYear = firstDayOfYear; dayInYear < daysInList; dayInYear++) {
-            int dayInYearForList;
-            int yearForList;
-            if (dayInYear > 365) {
-                dayInYearForList = dayInYear - 365;
-                yearForList = initialYearForTheList + 1;
-            } else {
-                dayInYearForList = dayInYear;
-                yearForList = initialYearForTheList;
-            }
-            if ((weatherList.get(dayInYear) == null) || (weatherList.get(dayInYear).size() < 3)) {
+        for (int day = 0; day < days; day++) {
+            if (dayBuckets.getEntryCount(day) < 3) {
                 continue;
             }
             dayCounter++;
-            WeatherMaxMinForDay weatherMaxMinForDay = calculateWeatherMaxMinForDay(weatherList.get(dayInYear));
+            List<DetailedWeatherForecast> forecastListForDay = forecastList.subList(
+                    dayBuckets.getFirstIndex(day),
+                    dayBuckets.getEndIndex(day));
+            WeatherMaxMinForDay weatherMaxMinForDay = calculateWeatherMaxMinForDay(forecastListForDay);
             if (weatherMaxMinForDay == null) {
                 continue;
             }
-            WeatherIdsForDay weatherIdsForTheDay = getWeatherIdForDay(weatherList.get(dayInYear), weatherMaxMinForDay);
-            result.add(new WeatherForecastPerDay(dayCounter, weatherIdsForTheDay, weatherMaxMinForDay, getWeatherIconId(weatherIdsForTheDay.mainWeatherId, weatherList.get(dayInYear)), dayInYearForList, yearForList));
+            WeatherIdsForDay weatherIdsForTheDay = getWeatherIdForDay(forecastListForDay, weatherMaxMinForDay);
+            result.add(new WeatherForecastPerDay(dayCounter,
+                    weatherIdsForTheDay,
+                    weatherMaxMinForDay,
+                    getWeatherIconId(weatherIdsForTheDay.mainWeatherId, forecastListForDay),
+                    dayBuckets.getDayOfYear(day),
+                    dayBuckets.getYear(day)));
         }
         return result;
     }
 
-    public static Map<Integer, List<DetailedWeatherForecast>> createWeatherList(WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord) {
-        Map<Integer, List<DetailedWeatherForecast>> weatherList = new HashMap<>();
-        Calendar forecastCalendar = Calendar.getInstance();
-        int maxForecastDay = 0;
-        if ((weatherForecastRecord == null) || (weatherForecastRecord.getCompleteWeatherForecast() == null)) {
-            return weatherList;
-        }
-        for (DetailedWeatherForecast detailedWeatherForecast : weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList()) {
-            forecastCalendar.setTimeInMillis(detailedWeatherForecast.getDateTime() * 1000);
-            int forecastDay = forecastCalendar.get(Calendar.DAY_OF_YEAR);
-            if (maxForecastDay > forecastDay) {
-                forecastDay += 365;
-            }
-            maxForecastDay = forecastDay;
-            if (!weatherList.keySet().contains(forecastDay)) {
-                List<DetailedWeatherForecast> dayForecastList = new ArrayList<>();
-                weatherList.put(forecastDay, dayForecastList);
-            }
-            //appendLog(context, TAG, "preLoadWeather:forecastDay=" + forecastDay + ":detailedWeatherForecast=" + detailedWeatherForecast);
-            weatherList.get(forecastDay).add(detailedWeatherForecast);
-        }
-        return weatherList;
+    /**
+     * Day buckets of the calling thread in the current default time zone, results are valid until the next use.
+     */
+    private static ForecastDayBuckets getDayBuckets() {
+        ForecastDayBuckets dayBuckets = DAY_BUCKETS.get();
+        dayBuckets.setTimeZone(TimeZone.getDefault());
+        return dayBuckets;
     }
 
     public static WeatherIdsForDay getWeatherIdForDay(List<DetailedWeatherForecast> weatherListForDay,
@@ -157,8 +167,9 @@ public class ForecastUtil {
 
     public static WeatherForecastForVoice calculateWeatherVoiceForecast(Context context, Long locationId) {
         final WeatherForecastDbHelper weatherForecastDbHelper = WeatherForecastDbHelper.getInstance(context);
-        WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord = weatherForecastDbHelper.getWeatherForecast(locationId);
-        Map<Integer, List<DetailedWeatherForecast>> weatherListForOneDay = getOneDayForecast(weatherForecastRecord);
+        List<DetailedWeatherForecast> wholeDayForecast = weatherForecastDbHelper.getWeatherForecastForFirstDay(
+                locationId, UpdateWeatherService.WEATHER_FORECAST_TYPE);
+        Map<Integer, List<DetailedWeatherForecast>> weatherListForOneDay = getOneDayForecast(wholeDayForecast);
         if (weatherListForOneDay == null) {
             return null;
         }
@@ -264,12 +275,21 @@ public class ForecastUtil {
     }
 
     public static Map<Integer, List<DetailedWeatherForecast>> getOneDayForecast(WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord) {
-        Map<Integer, List<DetailedWeatherForecast>> weatherList = createWeatherList(weatherForecastRecord);
-        if (weatherList.keySet().isEmpty()) {
+        if ((weatherForecastRecord == null) || (weatherForecastRecord.getCompleteWeatherForecast() == null)) {
+            return null;
+        }
+        List<DetailedWeatherForecast> forecastList = weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList();
+        ForecastDayBuckets dayBuckets = getDayBuckets();
+        if (dayBuckets.bucket(forecastList) == 0) {
+            return null;
+        }
+        return getOneDayForecast(forecastList.subList(dayBuckets.getFirstIndex(0), dayBuckets.getEndIndex(0)));
+    }
+
+    public static Map<Integer, List<DetailedWeatherForecast>> getOneDayForecast(List<DetailedWeatherForecast> wholeDayForecast) {
+        if (wholeDayForecast.isEmpty()) {
             return null;
         }
-        Integer firstDayInForecast = Collections.min(weatherList.keySet());
-        List<DetailedWeatherForecast> wholeDayForecast = weatherList.get(firstDayInForecast);
         Map<Integer, List<DetailedWeatherForecast>> oneDayForecastMap = new HashMap<>();
         Calendar forecastCalendar = Calendar.getInstance();
         for (DetailedWeatherForecast detailedWeatherForecast: wholeDayForecast) {
@@ -391,12 +411,12 @@ public class ForecastUtil {
     }
 
     public static class WeatherForecastPerDay {
-        int dayIndex;
-        String iconId;
-        WeatherIdsForDay weatherIds;
-        WeatherMaxMinForDay weatherMaxMinForDay;
-        int dayInYear;
-        int year;
+        public int dayIndex;
+        public String iconId;
+        public WeatherIdsForDay weatherIds;
+        public WeatherMaxMinForDay weatherMaxMinForDay;
+        public int dayInYear;
+        public int year;
 
         public WeatherForecastPerDay(
                 int dayIndex,
@@ -2,13 +2,13 @@ package org.thosp.yourlocalweather.utils;
 
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.view.Display;
@@ -47,21 +47,33 @@ import java.util.Set;
 
 public class GraphUtils {
 
-    private static Map<Integer, Bitmap> combinedGraphs = new HashMap<>();
+    private static final long MAX_COMBINED_GRAPHS_SIZE_IN_BYTES = 32L * 1024 * 1024;
 
-    public static Bitmap getCombinedChart(Context context,
-                                          int widgetId,
-                                          Float heightMultiplier,
-                                          List<DetailedWeatherForecast> weatherForecastList,
-                                          long locationId,
-                                          Locale locale) {
-
-        if (combinedGraphs.get(widgetId) != null) {
-            return combinedGraphs.get(widgetId);
+    private static final ByteSizedLruCache<CombinedGraphKey, Bitmap> combinedGraphs =
+            new ByteSizedLruCache<CombinedGraphKey, Bitmap>(
+                    Math.min(MAX_COMBINED_GRAPHS_SIZE_IN_BYTES, Runtime.getRuntime().maxMemory() / 8)) {
+        @Override
+        protected long sizeOf(Bitmap bitmap) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                return bitmap.getAllocationByteCount();
+            }
+            return bitmap.getByteCount();
         }
+    };
+
+    /**
+     * Key of the graph the widget shows with its current size, theme, units and graph settings.
+     */
+    public static CombinedGraphKey getCombinedGraphKey(Context context,
+                                                       int widgetId,
+                                                       Float heightMultiplier,
+                                                       long forecastVersion,
+                                                       long locationId,
+                                                       Locale locale) {
 
         WidgetSettingsDbHelper widgetSettingsDbHelper = WidgetSettingsDbHelper.getInstance(context);
-        Boolean showLegend = widgetSettingsDbHelper.getParamBoolean(widgetId, "combinedGraphShowLegend");
+        WidgetSettingsDbHelper.WidgetParams widgetParams = widgetSettingsDbHelper.getAllParams(widgetId);
+        Boolean showLegend = widgetParams.getBoolean("combinedGraphShowLegend");
 
         if (showLegend == null) {
             showLegend = true;
@@ -76,6 +88,49 @@ public class GraphUtils {
             height = (int) (width * heightMultiplier);
         }
 
+        return new CombinedGraphKey(widgetId,
+                                    locationId,
+                                    forecastVersion,
+                                    width,
+                                    height,
+                                    AppPreference.getTextColor(context),
+                                    AppPreference.getWidgetBackgroundColor(context),
+                                    AppPreference.getWidgetGraphGridColor(context),
+                                    getCombinedGraphValuesFromSettings(context, widgetSettingsDbHelper, widgetId),
+                                    showLegend,
+                                    locale,
+                                    getGraphUnits(AppSettings.get(context)));
+    }
+
+    private static String getGraphUnits(AppSettings appSettings) {
+        return appSettings.getTemperatureUnits() + "|" +
+                appSettings.getPressureUnits() + "|" +
+                appSettings.getWindUnits() + "|" +
+                appSettings.getRainSnowUnits();
+    }
+
+    public static Bitmap getCachedCombinedChart(CombinedGraphKey combinedGraphKey) {
+        return combinedGraphs.get(combinedGraphKey);
+    }
+
+    /**
+     * Graph rendered last for the widget, regardless of the forecast and settings it was rendered with.
+     */
+    public static Bitmap getLastCombinedChart(final int widgetId) {
+        return combinedGraphs.find(new ByteSizedLruCache.KeyFilter<CombinedGraphKey>() {
+            @Override
+            public boolean matches(CombinedGraphKey key) {
+                return key.widgetId == widgetId;
+            }
+        });
+    }
+
+    public static Bitmap renderCombinedChart(Context context,
+                                             CombinedGraphKey combinedGraphKey,
+                                             List<DetailedWeatherForecast> weatherForecastList) {
+        int width = combinedGraphKey.width;
+        int height = combinedGraphKey.height;
+
         int yAxisValues = 4;
         if (height > 800) {
             yAxisValues += 6;
@@ -86,25 +141,25 @@ public class GraphUtils {
         }
 
         CombinedChart combinedChart = generateCombinedGraph(context,
-                                    null,
-                                                            getCombinedGraphValuesFromSettings(context, widgetSettingsDbHelper, widgetId),
+                                                            null,
+                                                            combinedGraphKey.combinedGraphValuesSet,
                                                             weatherForecastList,
-                                                            locationId,
-                                                            locale,
+                                                            combinedGraphKey.locationId,
+                                                            combinedGraphKey.localeValue,
                                                             18f,
                                                             yAxisValues,
                                                             0,
-                                                            AppPreference.getTextColor(context),
-                                                            AppPreference.getWidgetBackgroundColor(context),
-                                                            AppPreference.getWidgetGraphGridColor(context),
-                                                            showLegend);
+                                                            combinedGraphKey.textColor,
+                                                            combinedGraphKey.backgroundColor,
+                                                            combinedGraphKey.gridColors,
+                                                            combinedGraphKey.showLegend);
 
         combinedChart.setBackgroundColor(ContextCompat.getColor(context,
                 R.color.widget_transparentTheme_colorBackground));
 
         int bitmapHeight = height;
 
-        if (!showLegend) {
+        if (!combinedGraphKey.showLegend) {
             bitmapHeight += 20;
         }
 
@@ -116,7 +171,8 @@ public class GraphUtils {
         Canvas combinedChartCanvas = new Canvas(combinedChartBitmap);
         combinedChart.layout(0, 0, width, height);
         combinedChart.draw(combinedChartCanvas);
-        combinedGraphs.put(widgetId, combinedChartBitmap);
+        invalidateGraphForWidget(combinedGraphKey.widgetId);
+        combinedGraphs.put(combinedGraphKey, combinedChartBitmap);
         return combinedChartBitmap;
     }
 
@@ -216,7 +272,40 @@ public class GraphUtils {
     }
 
     public static void invalidateGraph() {
-        combinedGraphs = new HashMap<>();
+        combinedGraphs.clear();
+    }
+
+    public static void invalidateGraphForWidget(final int widgetId) {
+        combinedGraphs.removeAll(new ByteSizedLruCache.KeyFilter<CombinedGraphKey>() {
+            @Override
+            public boolean matches(CombinedGraphKey key) {
+                return key.widgetId == widgetId;
+            }
+        });
+    }
+
+    /**
+     * Drops the graphs of the location, called when its forecast is saved.
+     */
+    public static void invalidateGraphForLocation(final long locationId) {
+        combinedGraphs.removeAll(new ByteSizedLruCache.KeyFilter<CombinedGraphKey>() {
+            @Override
+            public boolean matches(CombinedGraphKey key) {
+                return key.locationId == locationId;
+            }
+        });
+    }
+
+    /**
+     * Releases cached graphs when the system asks the application to trim memory. Graphs of visible
+     * widgets are rendered again on their next update.
+     */
+    public static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            combinedGraphs.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            combinedGraphs.trimToSize(combinedGraphs.getSizeInBytes() / 2);
+        }
     }
 
     public static CombinedChart generateCombinedGraph(Context context,
@@ -332,8 +421,7 @@ public class GraphUtils {
 
 
         double valueShifter = 0;
-        String temperatureUnitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        String temperatureUnitsFromPreferences = AppSettings.get(context).getTemperatureUnits();
         if (temperatureUnitsFromPreferences.contains("fahrenheit")) {
             if (combinedGraphValues.contains(1)) {
                 valueShifter = 0;
@@ -344,8 +432,7 @@ public class GraphUtils {
         }
 
         double multiplier;
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_PRESSURE_UNITS, "hpa");
+        String unitsFromPreferences = AppSettings.get(context).getPressureUnits();
         switch (unitsFromPreferences) {
             case "inhg": multiplier = 50; break;
             default: multiplier = 1;
@@ -771,4 +858,103 @@ public class GraphUtils {
         }
         return result;
     }
+
+    public static class CombinedGraphKey {
+        private final int widgetId;
+        private final long locationId;
+        private final long forecastVersion;
+        private final int width;
+        private final int height;
+        private final int textColor;
+        private final int backgroundColor;
+        private final int mainGridColor;
+        private final int secondaryGridColor;
+        private final int combinedGraphValues;
+        private final boolean showLegend;
+        private final String locale;
+        private final String units;
+        private final AppPreference.GraphGridColors gridColors;
+        private final Set<Integer> combinedGraphValuesSet;
+        private final Locale localeValue;
+
+        CombinedGraphKey(int widgetId,
+                         long locationId,
+                         long forecastVersion,
+                         int width,
+                         int height,
+                         int textColor,
+                         int backgroundColor,
+                         AppPreference.GraphGridColors gridColors,
+                         Set<Integer> combinedGraphValues,
+                         boolean showLegend,
+                         Locale locale,
+                         String units) {
+            this.widgetId = widgetId;
+            this.locationId = locationId;
+            this.forecastVersion = forecastVersion;
+            this.width = width;
+            this.height = height;
+            this.textColor = textColor;
+            this.backgroundColor = backgroundColor;
+            this.mainGridColor = gridColors.getMainGridColor();
+            this.secondaryGridColor = gridColors.getSecondaryGridColor();
+            int graphValues = 0;
+            for (Integer combinedGraphValue: combinedGraphValues) {
+                graphValues |= 1 << combinedGraphValue;
+            }
+            this.combinedGraphValues = graphValues;
+            this.showLegend = showLegend;
+            this.locale = String.valueOf(locale);
+            this.units = units;
+            this.gridColors = gridColors;
+            this.combinedGraphValuesSet = combinedGraphValues;
+            this.localeValue = locale;
+        }
+
+        public int getWidgetId() {
+            return widgetId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CombinedGraphKey)) {
+                return false;
+            }
+            CombinedGraphKey other = (CombinedGraphKey) o;
+            return (widgetId == other.widgetId) &&
+                    (locationId == other.locationId) &&
+                    (forecastVersion == other.forecastVersion) &&
+                    (width == other.width) &&
+                    (height == other.height) &&
+                    (textColor == other.textColor) &&
+                    (backgroundColor == other.backgroundColor) &&
+                    (mainGridColor == other.mainGridColor) &&
+                    (secondaryGridColor == other.secondaryGridColor) &&
+                    (combinedGraphValues == other.combinedGraphValues) &&
+                    (showLegend == other.showLegend) &&
+                    locale.equals(other.locale) &&
+                    units.equals(other.units);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = widgetId;
+            result = 31 * result + (int) (locationId ^ (locationId >>> 32));
+            result = 31 * result + (int) (forecastVersion ^ (forecastVersion >>> 32));
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + textColor;
+            result = 31 * result + backgroundColor;
+            result = 31 * result + mainGridColor;
+            result = 31 * result + secondaryGridColor;
+            result = 31 * result + combinedGraphValues;
+            result = 31 * result + (showLegend ? 1 : 0);
+            result = 31 * result + locale.hashCode();
+            result = 31 * result + units.hashCode();
+            return result;
+        }
+    }
 }
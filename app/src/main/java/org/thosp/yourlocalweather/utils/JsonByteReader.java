@@ -0,0 +1,422 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.json.JSONException;
+
+import java.nio.charset.Charset;
+
+/**
+ * Pull reader over a UTF-8 encoded JSON byte array, modelled after android.util.JsonReader.
+ * Names can be matched against pre-encoded options without creating Strings.
+ */
+public class JsonByteReader {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final byte[] data;
+    private final int limit;
+    private int pos;
+
+    public JsonByteReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public JsonByteReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public static byte[][] options(String... names) {
+        byte[][] result = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = names[i].getBytes(UTF_8);
+        }
+        return result;
+    }
+
+    public Token peek() throws JSONException {
+        if (!skipSeparators()) {
+            return Token.END_DOCUMENT;
+        }
+        switch (data[pos]) {
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '"': return Token.STRING;
+            case 't':
+            case 'f': return Token.BOOLEAN;
+            case 'n': return Token.NULL;
+            default: return Token.NUMBER;
+        }
+    }
+
+    public void beginObject() throws JSONException {
+        consume('{');
+    }
+
+    public void endObject() throws JSONException {
+        consume('}');
+    }
+
+    public void beginArray() throws JSONException {
+        consume('[');
+    }
+
+    public void endArray() throws JSONException {
+        consume(']');
+    }
+
+    public boolean hasNext() throws JSONException {
+        if (!skipSeparators()) {
+            return false;
+        }
+        byte current = data[pos];
+        return (current != '}') && (current != ']');
+    }
+
+    public String nextName() throws JSONException {
+        return nextString();
+    }
+
+    /**
+     * Consumes the next name and returns its index in options, or -1 when it is not one of them.
+     */
+    public int selectName(byte[][] options) throws JSONException {
+        int start = stringStart();
+        int end = start;
+        boolean escaped = false;
+        while (end < limit && data[end] != '"') {
+            if (data[end] == '\\') {
+                escaped = true;
+                end++;
+            }
+            end++;
+        }
+        if (end >= limit) {
+            throw syntaxError("Unterminated name");
+        }
+        pos = end + 1;
+        if (escaped) {
+            String name = decodeString(start, end);
+            for (int i = 0; i < options.length; i++) {
+                if (name.equals(new String(options[i], UTF_8))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int length = end - start;
+        for (int i = 0; i < options.length; i++) {
+            byte[] option = options[i];
+            if (option.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && option[j] == data[start + j]) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String nextString() throws JSONException {
+        Token token = peek();
+        if (token == Token.NUMBER || token == Token.BOOLEAN) {
+            int start = pos;
+            int end = scanLiteral();
+            return new String(data, start, end - start, UTF_8);
+        }
+        int start = stringStart();
+        int end = start;
+        boolean escaped = false;
+        while (end < limit && data[end] != '"') {
+            if (data[end] == '\\') {
+                escaped = true;
+                end++;
+            }
+            end++;
+        }
+        if (end >= limit) {
+            throw syntaxError("Unterminated string");
+        }
+        pos = end + 1;
+        if (escaped) {
+            return decodeString(start, end);
+        }
+        return new String(data, start, end - start, UTF_8);
+    }
+
+    public boolean nextBoolean() throws JSONException {
+        if (peek() != Token.BOOLEAN) {
+            throw syntaxError("Expected a boolean");
+        }
+        boolean result = data[pos] == 't';
+        scanLiteral();
+        return result;
+    }
+
+    public void nextNull() throws JSONException {
+        if (peek() != Token.NULL) {
+            throw syntaxError("Expected null");
+        }
+        scanLiteral();
+    }
+
+    public double nextDouble() throws JSONException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            try {
+                return Double.parseDouble(nextString());
+            } catch (NumberFormatException nfe) {
+                throw syntaxError("Expected a double");
+            }
+        }
+        if (token != Token.NUMBER) {
+            throw syntaxError("Expected a number but was " + token);
+        }
+        int start = pos;
+        int cursor = pos;
+        boolean negative = false;
+        if (data[cursor] == '-') {
+            negative = true;
+            cursor++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        while (cursor < limit && isDigit(data[cursor])) {
+            mantissa = mantissa * 10 + (data[cursor] - '0');
+            digits++;
+            cursor++;
+        }
+        if (cursor < limit && data[cursor] == '.') {
+            cursor++;
+            while (cursor < limit && isDigit(data[cursor])) {
+                mantissa = mantissa * 10 + (data[cursor] - '0');
+                digits++;
+                exponent--;
+                cursor++;
+            }
+        }
+        if (cursor < limit && (data[cursor] == 'e' || data[cursor] == 'E')) {
+            cursor++;
+            boolean negativeExponent = false;
+            if (cursor < limit && (data[cursor] == '-' || data[cursor] == '+')) {
+                negativeExponent = data[cursor] == '-';
+                cursor++;
+            }
+            int explicitExponent = 0;
+            while (cursor < limit && isDigit(data[cursor])) {
+                explicitExponent = explicitExponent * 10 + (data[cursor] - '0');
+                cursor++;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (cursor == start || (negative && cursor == start + 1)) {
+            throw syntaxError("Expected a number");
+        }
+        pos = cursor;
+        if (digits <= 18 && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(data, start, cursor - start, UTF_8));
+        } catch (NumberFormatException nfe) {
+            throw syntaxError("Expected a double");
+        }
+    }
+
+    public long nextLong() throws JSONException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            int cursor = pos;
+            boolean negative = false;
+            if (data[cursor] == '-') {
+                negative = true;
+                cursor++;
+            }
+            int digitsStart = cursor;
+            long value = 0;
+            while (cursor < limit && isDigit(data[cursor])) {
+                value = value * 10 + (data[cursor] - '0');
+                cursor++;
+            }
+            boolean integral = cursor > digitsStart
+                    && (cursor - digitsStart) <= 18
+                    && (cursor >= limit || (data[cursor] != '.' && data[cursor] != 'e' && data[cursor] != 'E'));
+            if (integral) {
+                pos = cursor;
+                return negative ? -value : value;
+            }
+        }
+        return (long) nextDouble();
+    }
+
+    public int nextInt() throws JSONException {
+        return (int) nextLong();
+    }
+
+    public void skipValue() throws JSONException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    depth++;
+                    pos++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    pos++;
+                    break;
+                case STRING:
+                    skipString();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    scanLiteral();
+            }
+        } while (depth > 0);
+    }
+
+    private void skipString() throws JSONException {
+        int cursor = stringStart();
+        while (cursor < limit && data[cursor] != '"') {
+            if (data[cursor] == '\\') {
+                cursor++;
+            }
+            cursor++;
+        }
+        if (cursor >= limit) {
+            throw syntaxError("Unterminated string");
+        }
+        pos = cursor + 1;
+    }
+
+    private int scanLiteral() {
+        int cursor = pos;
+        while (cursor < limit) {
+            byte current = data[cursor];
+            if (current == ',' || current == ':' || current == '}' || current == ']'
+                    || current == ' ' || current == '\n' || current == '\r' || current == '\t') {
+                break;
+            }
+            cursor++;
+        }
+        pos = cursor;
+        return cursor;
+    }
+
+    private int stringStart() throws JSONException {
+        if (!skipSeparators() || data[pos] != '"') {
+            throw syntaxError("Expected a string");
+        }
+        return pos + 1;
+    }
+
+    private void consume(char expected) throws JSONException {
+        if (!skipSeparators() || data[pos] != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private boolean skipSeparators() {
+        while (pos < limit) {
+            byte current = data[pos];
+            if (current == ' ' || current == '\n' || current == '\r' || current == '\t'
+                    || current == ',' || current == ':') {
+                pos++;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String decodeString(int start, int end) throws JSONException {
+        StringBuilder result = new StringBuilder(end - start);
+        int segmentStart = start;
+        int cursor = start;
+        while (cursor < end) {
+            if (data[cursor] != '\\') {
+                cursor++;
+                continue;
+            }
+            result.append(new String(data, segmentStart, cursor - segmentStart, UTF_8));
+            cursor++;
+            if (cursor >= end) {
+                throw syntaxError("Unterminated escape sequence");
+            }
+            byte escaped = data[cursor++];
+            switch (escaped) {
+                case 'n': result.append('\n'); break;
+                case 't': result.append('\t'); break;
+                case 'r': result.append('\r'); break;
+                case 'b': result.append('\b'); break;
+                case 'f': result.append('\f'); break;
+                case 'u':
+                    if (cursor + 4 > end) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    int codeUnit = 0;
+                    for (int i = 0; i < 4; i++) {
+                        codeUnit = (codeUnit << 4) + hexValue(data[cursor++]);
+                    }
+                    result.append((char) codeUnit);
+                    break;
+                default:
+                    result.append((char) escaped);
+            }
+            segmentStart = cursor;
+        }
+        result.append(new String(data, segmentStart, end - segmentStart, UTF_8));
+        return result.toString();
+    }
+
+    private int hexValue(byte value) throws JSONException {
+        if (value >= '0' && value <= '9') {
+            return value - '0';
+        } else if (value >= 'a' && value <= 'f') {
+            return value - 'a' + 10;
+        } else if (value >= 'A' && value <= 'F') {
+            return value - 'A' + 10;
+        }
+        throw syntaxError("Invalid escape sequence");
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at position " + pos);
+    }
+}
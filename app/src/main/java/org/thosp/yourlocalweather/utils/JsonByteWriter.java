@@ -0,0 +1,233 @@
+package org.thosp.yourlocalweather.utils;
+
+import java.util.Arrays;
+
+/**
+ * Streaming writer of compact UTF-8 encoded JSON into a buffer that is kept between documents, the
+ * counterpart of JsonByteReader. Strings are escaped the same way as by org.json on Android, so the output
+ * is identical to JSONObject.toString() of a tree with the same content and insertion order.
+ */
+public class JsonByteWriter {
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final int MAX_DEPTH = 32;
+
+    private byte[] buffer;
+    private int count;
+    // whether the current object or array already has an element, indexed by the nesting depth
+    private final boolean[] nonEmpty = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonByteWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Starts a new document reusing the buffer.
+     */
+    public void reset() {
+        count = 0;
+        depth = 0;
+        afterName = false;
+    }
+
+    public JsonByteWriter beginObject() {
+        return open('{');
+    }
+
+    public JsonByteWriter endObject() {
+        return close('}');
+    }
+
+    public JsonByteWriter beginArray() {
+        return open('[');
+    }
+
+    public JsonByteWriter endArray() {
+        return close(']');
+    }
+
+    public JsonByteWriter name(String name) {
+        beforeValue();
+        writeString(name);
+        ensureCapacity(1);
+        buffer[count++] = ':';
+        afterName = true;
+        return this;
+    }
+
+    public JsonByteWriter value(String value) {
+        beforeValue();
+        if (value == null) {
+            writeBytes(NULL);
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonByteWriter value(long value) {
+        beforeValue();
+        if (value == Long.MIN_VALUE) {
+            writeAscii(String.valueOf(value));
+            return this;
+        }
+        if (value < 0) {
+            ensureCapacity(1);
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        count += digits;
+        return this;
+    }
+
+    public JsonByteWriter value(boolean value) {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the bytes of the document written since the last reset.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    private JsonByteWriter open(char bracket) {
+        beforeValue();
+        ensureCapacity(1);
+        buffer[count++] = (byte) bracket;
+        nonEmpty[++depth] = false;
+        return this;
+    }
+
+    private JsonByteWriter close(char bracket) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) bracket;
+        depth--;
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (nonEmpty[depth]) {
+                ensureCapacity(1);
+                buffer[count++] = ',';
+            }
+            nonEmpty[depth] = true;
+        }
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        ensureCapacity(length + 2);
+        buffer[count++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    writeEscaped((byte) c);
+                    break;
+                case '\t':
+                    writeEscaped((byte) 't');
+                    break;
+                case '\b':
+                    writeEscaped((byte) 'b');
+                    break;
+                case '\n':
+                    writeEscaped((byte) 'n');
+                    break;
+                case '\r':
+                    writeEscaped((byte) 'r');
+                    break;
+                case '\f':
+                    writeEscaped((byte) 'f');
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        ensureCapacity(6);
+                        buffer[count++] = '\\';
+                        buffer[count++] = 'u';
+                        buffer[count++] = '0';
+                        buffer[count++] = '0';
+                        buffer[count++] = HEX_DIGITS[(c >> 4) & 0xf];
+                        buffer[count++] = HEX_DIGITS[c & 0xf];
+                    } else if (c < 0x80) {
+                        ensureCapacity(1);
+                        buffer[count++] = (byte) c;
+                    } else if (c < 0x800) {
+                        ensureCapacity(2);
+                        buffer[count++] = (byte) (0xc0 | (c >> 6));
+                        buffer[count++] = (byte) (0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        ensureCapacity(4);
+                        buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+                        buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                        buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                        buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        // unpaired surrogate, replaced like by the UTF-8 encoder of String
+                        ensureCapacity(1);
+                        buffer[count++] = '?';
+                    } else {
+                        ensureCapacity(3);
+                        buffer[count++] = (byte) (0xe0 | (c >> 12));
+                        buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                        buffer[count++] = (byte) (0x80 | (c & 0x3f));
+                    }
+            }
+        }
+        ensureCapacity(1);
+        buffer[count++] = '"';
+    }
+
+    private void writeEscaped(byte escaped) {
+        ensureCapacity(2);
+        buffer[count++] = '\\';
+        buffer[count++] = escaped;
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[count++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        if (count + additionalBytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + additionalBytes));
+        }
+    }
+}
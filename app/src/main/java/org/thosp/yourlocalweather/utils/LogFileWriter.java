@@ -0,0 +1,211 @@
+package org.thosp.yourlocalweather.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer of LogToFile. Callers only put records into the ring buffer, the writer thread formats
+ * them, appends them in batches to the log file it keeps open and recreates the file when it is older
+ * than logFileHoursOfLasting.
+ */
+class LogFileWriter implements Runnable {
+
+    private static final String TAG = "LogFileWriter";
+
+    private static final int BUFFER_CAPACITY = 4096;
+    private static final int MAX_RECORDS_IN_BATCH = 512;
+    private static final long BATCH_INTERVAL_IN_NS = 500L * 1000000;
+    private static final long MILLIS_IN_HOUR = 3600000;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final LogRingBuffer buffer = new LogRingBuffer(BUFFER_CAPACITY);
+    private final SimpleDateFormat dateFormatter = new SimpleDateFormat(LogToFile.TIME_DATE_PATTERN, new Locale("en"));
+    private final Date date = new Date();
+    private final StringBuilder batch = new StringBuilder(16384);
+    private volatile Thread writerThread;
+
+    private FileChannel channel;
+    private String openedPathname;
+    private long logFileCreated;
+    private long formattedSecond = -1;
+    private String formattedSecondPrefix;
+    private long reportedDropped;
+
+    public void append(String tag, Throwable throwable, String[] texts) {
+        if (writerThread == null) {
+            startWriterThread();
+        }
+        if (!buffer.offer(System.currentTimeMillis(), tag, throwable, texts)) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private synchronized void startWriterThread() {
+        if (writerThread != null) {
+            return;
+        }
+        Thread thread = new Thread(this, TAG);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        writerThread = thread;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            if (buffer.isEmpty()) {
+                LockSupport.parkNanos(this, BATCH_INTERVAL_IN_NS);
+                continue;
+            }
+            try {
+                writeBatch();
+            } catch (Exception e) {
+                Log.e(TAG, "Log records not written", e);
+                closeLogFile();
+            }
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        batch.setLength(0);
+        int records = 0;
+        LogRingBuffer.Record record;
+        while ((records < MAX_RECORDS_IN_BATCH) && ((record = buffer.poll()) != null)) {
+            try {
+                formatRecord(record);
+            } finally {
+                buffer.release(record);
+            }
+            records++;
+        }
+        long dropped = buffer.getDropped();
+        if (dropped != reportedDropped) {
+            batch.append("LogToFile dropped records: ").append(dropped - reportedDropped).append(LINE_SEPARATOR);
+            reportedDropped = dropped;
+        }
+        String pathname = LogToFile.logFilePathname;
+        if ((pathname == null) || pathname.isEmpty()) {
+            closeLogFile();
+            return;
+        }
+        openLogFile(pathname, System.currentTimeMillis());
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(CHARSET));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void formatRecord(LogRingBuffer.Record record) {
+        appendTimestamp(record.timestamp);
+        batch.append(" ");
+        batch.append(record.tag);
+        batch.append(" - ");
+        if (record.texts != null) {
+            for (String text: record.texts) {
+                batch.append(text);
+            }
+        }
+        if (record.throwable != null) {
+            batch.append("\n");
+            batch.append(record.throwable.getMessage());
+            for (StackTraceElement ste: record.throwable.getStackTrace()) {
+                batch.append(LINE_SEPARATOR);
+                batch.append(ste.toString());
+            }
+        }
+        batch.append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Formats only the first record of every second with the date formatter, the following ones reuse
+     * the prefix and append the milliseconds.
+     */
+    private void appendTimestamp(long timestamp) {
+        long second = timestamp / 1000;
+        if (second != formattedSecond) {
+            date.setTime(second * 1000);
+            String formatted = dateFormatter.format(date);
+            formattedSecondPrefix = formatted.substring(0, formatted.length() - 3);
+            formattedSecond = second;
+        }
+        batch.append(formattedSecondPrefix);
+        int millis = (int) (timestamp - (second * 1000));
+        if (millis < 100) {
+            batch.append('0');
+        }
+        if (millis < 10) {
+            batch.append('0');
+        }
+        batch.append(millis);
+    }
+
+    private void openLogFile(String pathname, long now) throws IOException {
+        File logFile = new File(pathname);
+        if ((channel != null) && (!pathname.equals(openedPathname) || !logFile.exists())) {
+            closeLogFile();
+        }
+        if (channel == null) {
+            logFileCreated = logFile.exists() ? readLogFileCreated(logFile) : -1;
+            if (logFileCreated < 0) {
+                logFileCreated = now;
+            }
+        }
+        if (now >= logFileCreated + (LogToFile.logFileHoursOfLasting * MILLIS_IN_HOUR)) {
+            closeLogFile();
+            logFile.delete();
+            logFileCreated = now;
+        }
+        if (channel == null) {
+            channel = new FileOutputStream(logFile, true).getChannel();
+            openedPathname = pathname;
+        }
+    }
+
+    private long readLogFileCreated(File logFile) {
+        char[] logFileDateCreatedChars = new char[LogToFile.TIME_DATE_PATTERN.length()];
+        FileReader logFileReader = null;
+        try {
+            logFileReader = new FileReader(logFile);
+            if (logFileReader.read(logFileDateCreatedChars) < logFileDateCreatedChars.length) {
+                return -1;
+            }
+            return dateFormatter.parse(new String(logFileDateCreatedChars)).getTime();
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            if (logFileReader != null) {
+                try {
+                    logFileReader.close();
+                } catch (IOException ex) {
+
+                }
+            }
+        }
+    }
+
+    private void closeLogFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Log file not closed", e);
+        }
+        channel = null;
+        openedPathname = null;
+    }
+}
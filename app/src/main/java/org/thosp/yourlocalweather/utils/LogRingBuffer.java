@@ -0,0 +1,94 @@
+package org.thosp.yourlocalweather.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue of log records for many producers and one consumer. Slots are preallocated,
+ * producers claim a slot by CAS on the tail and publish it through the slot sequence. When the buffer is
+ * full the record is dropped and counted, so producers never wait for the consumer.
+ */
+public class LogRingBuffer {
+
+    public static class Record {
+        private volatile long sequence;
+        long timestamp;
+        String tag;
+        Throwable throwable;
+        String[] texts;
+
+        Record(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private final Record[] records;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head;
+
+    public LogRingBuffer(int capacity) {
+        if ((capacity < 2) || (Integer.bitCount(capacity) != 1)) {
+            throw new IllegalArgumentException("Capacity has to be a power of two: " + capacity);
+        }
+        records = new Record[capacity];
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new Record(i);
+        }
+        mask = capacity - 1;
+    }
+
+    public boolean offer(long timestamp, String tag, Throwable throwable, String[] texts) {
+        long position = tail.get();
+        Record record;
+        while (true) {
+            record = records[(int) position & mask];
+            long difference = record.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        record.timestamp = timestamp;
+        record.tag = tag;
+        record.throwable = throwable;
+        record.texts = texts;
+        record.sequence = position + 1;
+        return true;
+    }
+
+    /**
+     * Next published record or null. The record belongs to the consumer until release is called, only
+     * one thread may poll.
+     */
+    public Record poll() {
+        Record record = records[(int) head & mask];
+        if (record.sequence != head + 1) {
+            return null;
+        }
+        return record;
+    }
+
+    public void release(Record record) {
+        record.tag = null;
+        record.throwable = null;
+        record.texts = null;
+        record.sequence = head + records.length;
+        head++;
+    }
+
+    public boolean isEmpty() {
+        return records[(int) head & mask].sequence != head + 1;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
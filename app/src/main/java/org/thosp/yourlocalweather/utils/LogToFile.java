@@ -13,7 +13,6 @@ import android.os.Messenger;
 import android.os.PowerManager;
 import android.preference.PreferenceManager;
 import android.telephony.CellLocation;
-import android.util.Log;
 import android.widget.Switch;
 
 import org.thosp.yourlocalweather.SettingsActivity;
@@ -23,12 +22,9 @@ import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 import org.thosp.yourlocalweather.service.Cell;
 import org.thosp.yourlocalweather.service.WeatherByVoiceRequestDataHolder;
 import org.thosp.yourlocalweather.service.WeatherRequestDataHolder;
+import org.thosp.yourlocalweather.service.WeatherRequestScheduler;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -40,15 +36,25 @@ public class LogToFile {
 
     private static final String TAG = LogToFile.class.getName();
 
-    private static final String TIME_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    static final String TIME_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
 
-    public static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat(TIME_DATE_PATTERN, new Locale("en"));
+    private static final long PREFERENCES_CHECK_INTERVAL_IN_MS = 5 * 60000;
 
-    public static String logFilePathname;
-    public static Boolean logToFileEnabled;
-    public static int logFileHoursOfLasting;
-    private static Calendar logFileAtTheEndOfLive;
-    private static Calendar nextCheckPreferencesCheck;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(TIME_DATE_PATTERN, new Locale("en"));
+        }
+    };
+
+    private static final LogFileWriter logFileWriter = new LogFileWriter();
+
+    public static volatile String logFilePathname;
+    public static volatile Boolean logToFileEnabled;
+    public static volatile int logFileHoursOfLasting;
+    private static volatile long nextCheckPreferencesCheck;
 
     public static void appendLogWithParams(Context context, String tag, String text, List<String> params) {
         if (!logToFileEnabled || (logFilePathname == null)) {
@@ -62,53 +68,6 @@ public class LogToFile {
         appendLog(context, tag, text, paramDescription.toString());
     }
 
-    public static void appendLogSensorsCheck(Context context,
-                                             String tag,
-                                             String reasonText,
-                                             float currentLength,
-                                             double countedLength,
-                                             double countedAcc,
-                                             float dT) {
-        checkPreferences(context);
-        if (!logToFileEnabled || (logFilePathname == null)) {
-            return;
-        }
-        appendLog(context, tag, reasonText, ", currentLength = ", String.format("%.8f", currentLength),
-                ":counted length = ", String.format("%.8f", countedLength), ":countedAcc = ",
-                String.format("%.8f", countedAcc),
-                ", dT = ", String.format("%.8f", dT));
-    }
-
-    public static void appendLogSensorsEnd(Context context,
-                                           String tag,
-                                           float absCurrentLength,
-                                           float currentLengthLowPassed,
-                                           long nowInMillis,
-                                           long lastUpdatedPosition,
-                                           boolean nowIsBeforeTheLastUpdatedAndTimeSpan,
-                                           boolean currentLengthIsUnderLimit,
-                                           boolean nowIsBeforeTheLastUpdatedAndFastTimeSpan,
-                                           boolean currentLengthIsUnderFastLimit,
-                                           boolean autolocationForSensorEventAddressFound,
-                                           boolean nowIsBeforeTheLastUpdatedAndTimeSpanNoLocation,
-                                           boolean currentLengthIsUnderNoLocationLimit) {
-        checkPreferences(context);
-        if (!logToFileEnabled || (logFilePathname == null)) {
-            return;
-        }
-        appendLog(context, tag, "end currentLength = ", String.format("%.8f", absCurrentLength),
-                ", currentLengthLowPassed = ", String.format("%.8f", currentLengthLowPassed),
-                ", lastUpdate=", String.valueOf(nowInMillis), ", lastUpdatePosition=", String.valueOf(lastUpdatedPosition),
-                ", nowIsBeforeTheLastUpdatedAndTimeSpan=", String.valueOf(nowIsBeforeTheLastUpdatedAndTimeSpan),
-                ", currentLengthIsUnderLimit=", String.valueOf(currentLengthIsUnderLimit),
-                ", nowIsBeforeTheLastUpdatedAndFastTimeSpan=", String.valueOf(nowIsBeforeTheLastUpdatedAndFastTimeSpan),
-                ", currentLengthIsUnderFastLimit=", String.valueOf(currentLengthIsUnderFastLimit),
-                ", autolocationForSensorEventAddressFound=", String.valueOf(autolocationForSensorEventAddressFound),
-                ", nowIsBeforeTheLastUpdatedAndTimeSpanNoLocation=", String.valueOf(nowIsBeforeTheLastUpdatedAndTimeSpanNoLocation),
-                ", currentLengthIsUnderNoLocationLimit=", String.valueOf(currentLengthIsUnderNoLocationLimit)
-        );
-    }
-
     public static void appendLog(Context context, String tag, String text1, Sensor value1, String text2, float value2, String text3, int value3) {
         checkPreferences(context);
         if (!logToFileEnabled || (logFilePathname == null)) {
@@ -279,6 +238,14 @@ public class LogToFile {
         appendLog(context, tag, text1, (value1 != null)? String.valueOf(value1.size()) : "null");
     }
 
+    public static void appendLog(Context context, String tag, String text1, WeatherRequestScheduler value1) {
+        checkPreferences(context);
+        if (!logToFileEnabled || (logFilePathname == null)) {
+            return;
+        }
+        appendLog(context, tag, text1, (value1 != null)? value1.toString() : "null");
+    }
+
     public static void appendLog(Context context, String tag, String text1, List value1) {
         checkPreferences(context);
         if (!logToFileEnabled || (logFilePathname == null)) {
@@ -561,7 +528,7 @@ public class LogToFile {
         if (!logToFileEnabled || (logFilePathname == null)) {
             return;
         }
-        appendLog(context, tag, text1, DATE_FORMATTER.format(new Date(value1)));
+        appendLog(context, tag, text1, DATE_FORMATTER.get().format(new Date(value1)));
     }
 
     public static void appendLog(Context context, String tag, String text1, long value1) {
@@ -580,6 +547,14 @@ public class LogToFile {
         appendLog(context, tag, text1, String.valueOf(value1));
     }
 
+    public static void appendLog(Context context, String tag, String text1, byte[] value1) {
+        checkPreferences(context);
+        if (!logToFileEnabled || (logFilePathname == null)) {
+            return;
+        }
+        appendLog(context, tag, text1, (value1 != null)? new String(value1, UTF_8) : "null");
+    }
+
     public static void appendLog(Context context, String tag, String... texts) {
         appendLog(context, tag, null, texts);
     }
@@ -593,96 +568,20 @@ public class LogToFile {
         if (!logToFileEnabled || (logFilePathname == null)) {
             return;
         }
-        File logFile = new File(logFilePathname);
-        Date now = new Date();
-        try {
-            if (logFile.exists()) {
-                if (logFileAtTheEndOfLive == null) {
-                    boolean succeeded = initFileLogging(logFile);
-                    if (!succeeded) {
-                        createNewLogFile(logFile, now);
-                    }
-                } else if(Calendar.getInstance().after(logFileAtTheEndOfLive)) {
-                    logFile.delete();
-                    createNewLogFile(logFile, now);
-                }
-            } else {
-                createNewLogFile(logFile, now);
-            }
-            BufferedWriter buf = new BufferedWriter(new FileWriter(logFile, true));
-            buf.append(DATE_FORMATTER.format(now));
-            buf.append(" ");
-            buf.append(tag);
-            buf.append(" - ");
-            if (texts != null) {
-                for (String text: texts) {
-                    buf.append(text);
-                }
-            }
-            if (throwable != null) {
-                buf.append("\n");
-                buf.append(throwable.getMessage());
-                for (StackTraceElement ste: throwable.getStackTrace()) {
-                    buf.newLine();
-                    buf.append(ste.toString());
-                }
-            }
-            buf.newLine();
-            buf.close();
-        } catch (IOException e) {
-            Log.e(TAG, e.getMessage());
-        }
-    }
-
-    private static boolean initFileLogging(File logFile) {
-        char[] logFileDateCreatedBytes = new char[TIME_DATE_PATTERN.length()];
-        Date logFileDateCreated;
-        FileReader logFileReader = null;
-        try {
-            logFileReader = new FileReader(logFile);
-            logFileReader.read(logFileDateCreatedBytes);
-            logFileDateCreated = DATE_FORMATTER.parse(new String(logFileDateCreatedBytes));
-        } catch (Exception e) {
-            return false;
-        } finally {
-            if (logFileReader != null) {
-                try {
-                    logFileReader.close();
-                } catch (IOException ex) {
-
-                }
-            }
-        }
-        initEndOfLive(logFileDateCreated);
-        return true;
-    }
-
-    private static void initEndOfLive(Date logFileDateCreated) {
-        logFileAtTheEndOfLive = Calendar.getInstance();
-        logFileAtTheEndOfLive.setTime(logFileDateCreated);
-        logFileAtTheEndOfLive.add(Calendar.HOUR_OF_DAY, logFileHoursOfLasting);
-    }
-
-    private static void createNewLogFile(File logFile, Date dateOfCreation) throws IOException {
-        logFile.createNewFile();
-        initEndOfLive(dateOfCreation);
+        logFileWriter.append(tag, throwable, texts);
     }
 
     private static void checkPreferences(Context context) {
-        if (nextCheckPreferencesCheck != null) {
-            Calendar now = Calendar.getInstance();
-            if (nextCheckPreferencesCheck.after(now)) {
-                return;
-            }
+        long now = System.currentTimeMillis();
+        if (nextCheckPreferencesCheck > now) {
+            return;
         }
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
-
         if (logToFileEnabled == null) {
+            SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
             logFilePathname = sharedPreferences.getString(SettingsActivity.KEY_DEBUG_FILE,"");
             logToFileEnabled = sharedPreferences.getBoolean(SettingsActivity.KEY_DEBUG_TO_FILE, false);
             logFileHoursOfLasting = Integer.valueOf(sharedPreferences.getString(SettingsActivity.KEY_DEBUG_FILE_LASTING_HOURS, "24"));
         }
-        nextCheckPreferencesCheck = Calendar.getInstance();
-        nextCheckPreferencesCheck.add(Calendar.MINUTE, 5);
+        nextCheckPreferencesCheck = now + PREFERENCES_CHECK_INTERVAL_IN_MS;
     }
 }
@@ -1,25 +1,22 @@
 package org.thosp.yourlocalweather.utils;
 
 import android.content.Context;
-import android.preference.PreferenceManager;
 
 import org.thosp.yourlocalweather.R;
 import org.thosp.yourlocalweather.model.CurrentWeatherDbHelper;
 import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
 import org.thosp.yourlocalweather.model.Weather;
+import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 
 import java.lang.reflect.Field;
-import java.util.Calendar;
 import java.util.Locale;
+import java.util.TimeZone;
 
 import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
 
 public class TemperatureUtil {
 
     private static final String TAG = "TemperatureUtil";
-    private static double SOLAR_CONSTANT = 1395; // solar constant (w/m2)
-    private static double transmissionCoefficientClearDay = 0.81;
-    private static double transmissionCoefficientCloudy = 0.62;
 
     public static float getApparentTemperature(double dryBulbTemperature,
                                                int humidity,
@@ -36,31 +33,27 @@ public class TemperatureUtil {
         return (float)apparentTemperature;
     }
 
+    /**
+     * @param timestamp time of the measurement in milliseconds
+     */
     public static float getApparentTemperatureWithSolarIrradiation(double dryBulbTemperature,
                                                                    int humidity,
                                                                    double windSpeed,
                                                                    int cloudiness,
                                                                    double latitude,
                                                                    long timestamp) {
-        double e = (humidity / 100f) * 6.105 * Math.exp((17.27*dryBulbTemperature / (237.7 + dryBulbTemperature)));
-        double cosOfZenithAngle = getCosOfZenithAngle(Math.toRadians(latitude), timestamp);
-        double secOfZenithAngle = 1/cosOfZenithAngle;
-        double transmissionCoefficient = transmissionCoefficientClearDay -
-                (transmissionCoefficientClearDay - transmissionCoefficientCloudy) * (cloudiness/100f);
-        double calculatedIrradiation = 0;
-        if (cosOfZenithAngle > 0) {
-            calculatedIrradiation = (SOLAR_CONSTANT * cosOfZenithAngle*Math.pow(transmissionCoefficient, secOfZenithAngle))/10;
-        }
-        double apparentTemperature = dryBulbTemperature + (0.348 * e) - (0.70 * windSpeed) + ((0.70 * calculatedIrradiation)/(windSpeed + 10)) - 4.25;
-        return (float)apparentTemperature;
+        return ApparentTemperatures.getApparentTemperature(dryBulbTemperature, humidity, windSpeed, cloudiness,
+                latitude, timestamp, TimeZone.getDefault());
     }
 
-    private static double getCosOfZenithAngle(double latitude, long timestamp) {
-        Calendar measuredTime = Calendar.getInstance();
-        measuredTime.setTimeInMillis(timestamp);
-        double declination = Math.toRadians(-23.44 * Math.cos(Math.toRadians((360f/365f) * (9 + measuredTime.get(Calendar.DAY_OF_YEAR)))));
-        double hourAngle = ((12 * 60) - (60 * measuredTime.get(Calendar.HOUR_OF_DAY) + measuredTime.get(Calendar.MINUTE))) * 0.25;
-        return Math.sin(latitude)*Math.sin(declination) + (Math.cos(latitude) * Math.cos(declination) * Math.cos(Math.toRadians(hourAngle)));
+    /**
+     * Apparent temperatures of all entries of the stored forecast, see ApparentTemperatures.
+     */
+    public static float[] getApparentTemperatures(WeatherForecastDbHelper.WeatherForecastRecord weatherForecastRecord,
+                                                  double latitude) {
+        return ApparentTemperatures.getApparentTemperatures(weatherForecastRecord.getCompleteWeatherForecast(),
+                weatherForecastRecord.getForecastVersion(),
+                latitude);
     }
 
     public static float getCanadianStandardTemperature(double dryBulbTemperature, double windSpeed) {
@@ -72,8 +65,7 @@ public class TemperatureUtil {
         if (weather == null) {
             return null;
         }
-        String temperatureTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_TYPE, "measured_only");
+        String temperatureTypeFromPreferences = AppSettings.get(context).getTemperatureType();
         if ("measured_only".equals(temperatureTypeFromPreferences) || "appearance_only".equals(temperatureTypeFromPreferences)) {
             return null;
         }
@@ -94,13 +86,11 @@ public class TemperatureUtil {
         if (weather == null) {
             return null;
         }
-        String temperatureTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_TYPE, "measured_only");
+        String temperatureTypeFromPreferences = AppSettings.get(context).getTemperatureType();
         if ("measured_only".equals(temperatureTypeFromPreferences) || "appearance_only".equals(temperatureTypeFromPreferences)) {
             return null;
         }
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
         String apparentSign = "";
         double value = weather.getTemperature();
         if ("measured_appearance_primary_measured".equals(temperatureTypeFromPreferences)) {
@@ -113,7 +103,7 @@ public class TemperatureUtil {
                     latitude,
                     timestamp);
         }
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        if (temperatureInFahrenheit) {
             double fahrenheitValue = (value * 1.8f) + 32;
             return apparentSign + String.format(locale, "%d",
                     Math.round(fahrenheitValue)) + getTemperatureUnit(context);
@@ -128,9 +118,8 @@ public class TemperatureUtil {
     }
 
     public static String getMeasuredTemperatureWithUnit(Context context, double weatherTemperature, String apparentSign, Locale locale) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
+        if (temperatureInFahrenheit) {
             double fahrenheitValue = (weatherTemperature * 1.8f) + 32;
             return apparentSign + String.format(locale, "%d",
                     Math.round(fahrenheitValue)) + getTemperatureUnit(context);
@@ -145,8 +134,7 @@ public class TemperatureUtil {
         if (weather == null) {
             return null;
         }
-        String temperatureTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_TYPE, "measured_only");
+        String temperatureTypeFromPreferences = AppSettings.get(context).getTemperatureType();
         String apparentSign = "";
         double value = weather.getTemperature();
         if ("appearance_only".equals(temperatureTypeFromPreferences) ||
@@ -167,12 +155,11 @@ public class TemperatureUtil {
         if (weather == null) {
             return null;
         }
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
         double humidityLogarithm = Math.log(weather.getHumidity() / 100.0) / Math.log(Math.E);
         double dewPointPart = humidityLogarithm + ((17.67 * weather.getTemperature())/(243.5 + weather.getTemperature()));
         double dewPoint = (243.5 * dewPointPart) / (17.67 - dewPointPart);
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        if (temperatureInFahrenheit) {
             double fahrenheitValue = (dewPoint * 1.8f) + 32;
             return String.format(locale, "%.1f",
                     fahrenheitValue) + getTemperatureUnit(context);
@@ -186,14 +173,13 @@ public class TemperatureUtil {
         if (weather == null) {
             return null;
         }
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
         String apparentSign = "";
         double value = weather.getTemperature();
         if (value > 0) {
             apparentSign += "+";
         }
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        if (temperatureInFahrenheit) {
             double fahrenheitValue = (value * 1.8f) + 32;
             return apparentSign + String.format(locale, "%.1f",
                     fahrenheitValue) + getTemperatureUnit(context);
@@ -212,21 +198,29 @@ public class TemperatureUtil {
         if (weather == null) {
             return null;
         }
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
-        String apparentSign = "";
-        double value = TemperatureUtil.getApparentTemperatureWithSolarIrradiation(
+        return getForecastedApparentTemperatureWithUnit(
+                context,
+                TemperatureUtil.getApparentTemperatureWithSolarIrradiation(
                     weather.getTemperature(),
                     weather.getHumidity(),
                     weather.getWindSpeed(),
                     weather.getCloudiness(),
                     latitude,
-                    weather.getDateTime()
-                );
+                    weather.getDateTime() * 1000
+                ),
+                locale);
+    }
+
+    /**
+     * @param value apparent temperature in celsius, as returned by getApparentTemperatures
+     */
+    public static String getForecastedApparentTemperatureWithUnit(Context context, double value, Locale locale) {
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
+        String apparentSign = "";
         if (value > 0) {
             apparentSign += "+";
         }
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        if (temperatureInFahrenheit) {
             double fahrenheitValue = (value * 1.8f) + 32;
             return apparentSign + String.format(locale, "%d",
                     Math.round(fahrenheitValue)) + getTemperatureUnit(context);
@@ -237,9 +231,8 @@ public class TemperatureUtil {
     }
 
     public static String getTemperatureUnit(Context context) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
+        if (temperatureInFahrenheit) {
             return context.getString(R.string.temperature_unit_fahrenheit);
         } else {
             return context.getString(R.string.temperature_unit_celsius);
@@ -247,9 +240,8 @@ public class TemperatureUtil {
     }
 
     public static double getTemperatureInPreferredUnit(Context context, double inputValue) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
+        if (temperatureInFahrenheit) {
             return (inputValue * 1.8d) + 32;
         } else {
             return inputValue;
@@ -260,10 +252,9 @@ public class TemperatureUtil {
         if (weather == null) {
             return 0;
         }
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
         double value = getTemperatureInCelsius(context, weather);
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        if (temperatureInFahrenheit) {
             return (value * 1.8d) + 32;
         } else {
             return value;
@@ -274,10 +265,9 @@ public class TemperatureUtil {
         if (weather == null) {
             return 0;
         }
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_UNITS, "celsius");
+        boolean temperatureInFahrenheit = AppSettings.get(context).isTemperatureInFahrenheit();
         double value = getTemperatureInCelsius(context, weather);
-        if (unitsFromPreferences.contains("fahrenheit") ) {
+        if (temperatureInFahrenheit) {
             return (value * 1.8d) + 32;
         } else {
             return value;
@@ -288,8 +278,7 @@ public class TemperatureUtil {
         if (weather == null) {
             return 0;
         }
-        String temperatureTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_TYPE, "measured_only");
+        String temperatureTypeFromPreferences = AppSettings.get(context).getTemperatureType();
         double value = weather.getTemperature();
         if ("appearance_only".equals(temperatureTypeFromPreferences) ||
                 ("measured_appearance_primary_appearance".equals(temperatureTypeFromPreferences))) {
@@ -305,8 +294,7 @@ public class TemperatureUtil {
         if (weather == null) {
             return 0;
         }
-        String temperatureTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_TEMPERATURE_TYPE, "measured_only");
+        String temperatureTypeFromPreferences = AppSettings.get(context).getTemperatureType();
         double value = weather.getTemperature();
         if ("appearance_only".equals(temperatureTypeFromPreferences) ||
                 ("measured_appearance_primary_appearance".equals(temperatureTypeFromPreferences))) {
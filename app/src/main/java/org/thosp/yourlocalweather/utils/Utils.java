@@ -29,6 +29,7 @@ import org.thosp.yourlocalweather.model.Location;
 import org.thosp.yourlocalweather.model.LocationsDbHelper;
 import org.thosp.yourlocalweather.model.Weather;
 import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
+import org.thosp.yourlocalweather.service.OwmResponseCache;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -590,11 +591,15 @@ public class Utils {
                                             final String license) throws MalformedURLException {
         String url;
         if (ApiKeys.isWeatherForecastFeaturesFree(context)) {
+            // only responses of the free API are shared, so only their coordinates are snapped to the grid
+            WeatherRequestGrid weatherRequestGrid = AppSettings.get(context).getWeatherRequestGrid();
+            String latitude = String.valueOf(weatherRequestGrid.getCellLatitude(location.getLatitude())).replace(",", ".");
+            String longitude = String.valueOf(weatherRequestGrid.getCellLongitude(location.getLatitude(), location.getLongitude())).replace(",", ".");
             url = Uri.parse(endpoint)
                     .buildUpon()
                     .appendQueryParameter("appid", ApiKeys.getOpenweathermapApiKey(context))
-                    .appendQueryParameter("lat", String.valueOf(location.getLatitude()).replace(",", "."))
-                    .appendQueryParameter("lon", String.valueOf(location.getLongitude()).replace(",", "."))
+                    .appendQueryParameter("lat", latitude)
+                    .appendQueryParameter("lon", longitude)
                     .appendQueryParameter("units", units)
                     .appendQueryParameter("lang", OWMLanguages.getOwmLanguage(lang))
                     .build()
@@ -614,6 +619,24 @@ public class Utils {
         appendLog(context, TAG, url);
         return new URL(url);
     }
+
+    /**
+     * Key of the request built by getOwmUrl for the free API, without the api key and with the coordinates
+     * of the weather request grid cell, so locations in one cell get the same key. The app locale is used
+     * instead of the OWM language as the parsed weather depends on it.
+     */
+    public static String getOwmRequestKey(Context context,
+                                          String endpoint,
+                                          Location location,
+                                          String units,
+                                          String lang) {
+        WeatherRequestGrid weatherRequestGrid = AppSettings.get(context).getWeatherRequestGrid();
+        return OwmResponseCache.getRequestKey(endpoint,
+                weatherRequestGrid.getCellLatitude(location.getLatitude()),
+                weatherRequestGrid.getCellLongitude(location.getLatitude(), location.getLongitude()),
+                units,
+                lang);
+    }
     
     public static void getAndWriteAddressFromGeocoder(Geocoder geocoder,
                                                       Address address,
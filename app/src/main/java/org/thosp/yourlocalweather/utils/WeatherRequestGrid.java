@@ -0,0 +1,59 @@
+package org.thosp.yourlocalweather.utils;
+
+/**
+ * Snaps coordinates of weather requests to the center of a grid cell, so that locations lying close to each
+ * other ask OWM for the same point and can share one response. Cells are cellSizeInMeters high, the width
+ * in degrees of longitude grows towards the poles so that every ring of cells tiles the full circle.
+ * A grid with cell size 0 keeps the coordinates as they are.
+ */
+public class WeatherRequestGrid {
+
+    private static final double METERS_PER_DEGREE_OF_LATITUDE = 111320;
+    private static final double COORDINATE_PRECISION = 10000;
+
+    private final int cellSizeInMeters;
+    private final double cellHeightInDegrees;
+
+    public WeatherRequestGrid(int cellSizeInMeters) {
+        this.cellSizeInMeters = Math.max(0, cellSizeInMeters);
+        this.cellHeightInDegrees = this.cellSizeInMeters / METERS_PER_DEGREE_OF_LATITUDE;
+    }
+
+    public int getCellSizeInMeters() {
+        return cellSizeInMeters;
+    }
+
+    public boolean isEnabled() {
+        return cellSizeInMeters > 0;
+    }
+
+    public double getCellLatitude(double latitude) {
+        if (!isEnabled()) {
+            return latitude;
+        }
+        return round(getCellCenterLatitude(latitude));
+    }
+
+    public double getCellLongitude(double latitude, double longitude) {
+        if (!isEnabled()) {
+            return longitude;
+        }
+        double centerLatitude = getCellCenterLatitude(latitude);
+        double cellWidthInDegrees = cellHeightInDegrees / Math.cos(Math.toRadians(centerLatitude));
+        int cellsInRing = (int) Math.max(1, Math.floor(360 / cellWidthInDegrees));
+        cellWidthInDegrees = 360.0 / cellsInRing;
+        long cell = (long) Math.floor((longitude + 180) / cellWidthInDegrees);
+        cell = ((cell % cellsInRing) + cellsInRing) % cellsInRing;
+        return round(-180 + ((cell + 0.5) * cellWidthInDegrees));
+    }
+
+    private double getCellCenterLatitude(double latitude) {
+        long cell = (long) Math.floor((latitude + 90) / cellHeightInDegrees);
+        double centerLatitude = -90 + ((cell + 0.5) * cellHeightInDegrees);
+        return Math.max(-90, Math.min(90, centerLatitude));
+    }
+
+    private static double round(double coordinate) {
+        return Math.round(coordinate * COORDINATE_PRECISION) / COORDINATE_PRECISION;
+    }
+}
@@ -2,8 +2,6 @@ package org.thosp.yourlocalweather.utils;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
-import android.appwidget.AppWidgetManager;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
@@ -21,14 +19,7 @@ import org.thosp.yourlocalweather.model.LocationsDbHelper;
 import org.thosp.yourlocalweather.model.Weather;
 import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 import org.thosp.yourlocalweather.model.WidgetSettingsDbHelper;
-import org.thosp.yourlocalweather.widget.ExtLocationWidgetProvider;
-import org.thosp.yourlocalweather.widget.ExtLocationWithForecastGraphWidgetProvider;
-import org.thosp.yourlocalweather.widget.ExtLocationWithForecastWidgetProvider;
-import org.thosp.yourlocalweather.widget.ExtLocationWithGraphWidgetProvider;
-import org.thosp.yourlocalweather.widget.LessWidgetProvider;
-import org.thosp.yourlocalweather.widget.MoreWidgetProvider;
-import org.thosp.yourlocalweather.widget.WeatherForecastWidgetProvider;
-import org.thosp.yourlocalweather.widget.WeatherGraphWidgetProvider;
+import org.thosp.yourlocalweather.widget.WidgetRegistry;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -729,25 +720,15 @@ public class WidgetUtils {
         }
     }
 
-    private static void updateWidgetForType(Context context, Class<?> widgetProvider) {
-        AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
-        Intent intentToUpdate = new Intent(context, widgetProvider);
-        ComponentName widgetComponent = new ComponentName(context, widgetProvider);
-        int[] widgetIds = widgetManager.getAppWidgetIds(widgetComponent);
-        intentToUpdate.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
-        intentToUpdate.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, widgetIds);
-        context.sendBroadcast(intentToUpdate);
+    public static void updateWidgets(Context context) {
+        WidgetRegistry.getInstance(context).requestUpdateOfAllWidgets();
     }
 
-    public static void updateWidgets(Context context) {
-        updateWidgetForType(context, LessWidgetProvider.class);
-        updateWidgetForType(context, MoreWidgetProvider.class);
-        updateWidgetForType(context, ExtLocationWidgetProvider.class);
-        updateWidgetForType(context, ExtLocationWithForecastWidgetProvider.class);
-        updateWidgetForType(context, WeatherForecastWidgetProvider.class);
-        updateWidgetForType(context, ExtLocationWithGraphWidgetProvider.class);
-        updateWidgetForType(context, WeatherGraphWidgetProvider.class);
-        updateWidgetForType(context, ExtLocationWithForecastGraphWidgetProvider.class);
+    /**
+     * Updates only the widgets showing the location.
+     */
+    public static void updateWidgets(Context context, long locationId) {
+        WidgetRegistry.getInstance(context).requestUpdate(locationId);
     }
 
     public static void startBackgroundService(Context context, Intent intent) {
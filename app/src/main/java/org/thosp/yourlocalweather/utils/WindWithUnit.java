@@ -1,7 +1,6 @@
 package org.thosp.yourlocalweather.utils;
 
 import android.content.Context;
-import android.preference.PreferenceManager;
 
 import org.thosp.yourlocalweather.R;
 
@@ -20,8 +19,7 @@ public class WindWithUnit implements Serializable {
         this.windDirection = windDirection;
         this.context = context;
         this.pressureLocale = locale;
-        directionTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_DIRECTION, "abbreviation");
+        directionTypeFromPreferences = AppSettings.get(context).getWindDirectionType();
     }
 
     public WindWithUnit(Context context, double windSpeed, String windUnit, double windDirection, Locale locale) {
@@ -30,8 +28,7 @@ public class WindWithUnit implements Serializable {
         this.windDirection = windDirection;
         this.context = context;
         this.pressureLocale = locale;
-        directionTypeFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_DIRECTION, "abbreviation");
+        directionTypeFromPreferences = AppSettings.get(context).getWindDirectionType();
     }
 
     public String getWindUnit() {
@@ -47,8 +44,7 @@ public class WindWithUnit implements Serializable {
     }
 
     public String getWindSpeed(int decimalPlaces) {
-        String unitsFromPreferences = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                Constants.KEY_PREF_WIND_UNITS, "m_per_second");
+        String unitsFromPreferences = AppSettings.get(context).getWindUnits();
         if (unitsFromPreferences.contains("beaufort")) {
             decimalPlaces = 0;
         }
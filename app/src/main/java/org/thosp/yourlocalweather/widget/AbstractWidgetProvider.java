@@ -109,7 +109,10 @@ public abstract class AbstractWidgetProvider extends AppWidgetProvider {
             }
         }
         if (widgetId == null) {
-            int[] widgetIds = widgetManager.getAppWidgetIds(widgetComponent);
+            int[] widgetIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+            if (widgetIds == null) {
+                widgetIds = widgetManager.getAppWidgetIds(widgetComponent);
+            }
             if (widgetIds.length == 0) {
                 return;
             }
@@ -136,13 +139,19 @@ public abstract class AbstractWidgetProvider extends AppWidgetProvider {
         }
         switch (intent.getAction()) {
             case "org.thosp.yourlocalweather.action.WEATHER_UPDATE_RESULT":
-            case "android.appwidget.action.APPWIDGET_UPDATE":
                 if (!servicesStarted) {
                     onEnabled(context);
                     servicesStarted = true;
                 }
                 onUpdate(context, widgetManager, new int[] {widgetId});
                 break;
+            case "android.appwidget.action.APPWIDGET_UPDATE":
+                // AppWidgetProvider.onReceive has already called onUpdate for the widgets of the intent
+                if (!servicesStarted) {
+                    onEnabled(context);
+                    servicesStarted = true;
+                }
+                break;
             case Intent.ACTION_LOCALE_CHANGED:
             case Constants.ACTION_APPWIDGET_THEME_CHANGED:
             case Constants.ACTION_APPWIDGET_SETTINGS_SHOW_CONTROLS:
@@ -170,7 +179,7 @@ public abstract class AbstractWidgetProvider extends AppWidgetProvider {
             context.startActivity(activityIntent);
         } else if (intent.getAction().startsWith(Constants.ACTION_APPWIDGET_CHANGE_LOCATION)) {
             changeLocation(widgetId, locationsDbHelper, widgetSettingsDbHelper);
-            GraphUtils.invalidateGraph();
+            GraphUtils.invalidateGraphForWidget(widgetId);
             onUpdate(context, widgetManager, new int[]{widgetId});
         } else if (intent.getAction().startsWith(Constants.ACTION_FORCED_APPWIDGET_UPDATE)) {
             if (!WidgetRefreshIconService.isRotationActive) {
@@ -185,6 +194,7 @@ public abstract class AbstractWidgetProvider extends AppWidgetProvider {
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
         appendLog(context, TAG, "onUpdate:start");
         super.onUpdate(context, appWidgetManager, appWidgetIds);
+        WidgetRegistry.getInstance(context).invalidateIfUnknown(appWidgetIds);
 
         ComponentName componentName = new ComponentName(context, getWidgetClass());
         int[] appWidgetIdsForWidget = appWidgetManager.getAppWidgetIds(componentName);
@@ -201,38 +211,46 @@ public abstract class AbstractWidgetProvider extends AppWidgetProvider {
                 continue;
             }
 
-            RemoteViews remoteViews = new RemoteViews(context.getPackageName(),
-                    getWidgetLayout());
-
-            if (ExtLocationWidgetProvider.class.equals(getWidgetClass())) {
-                ExtLocationWidgetProvider.setWidgetTheme(context, remoteViews);
-            } else if (MoreWidgetProvider.class.equals(getWidgetClass())) {
-                MoreWidgetProvider.setWidgetTheme(context, remoteViews);
-            } else if (LessWidgetProvider.class.equals(getWidgetClass())) {
-                LessWidgetProvider.setWidgetTheme(context, remoteViews);
-            } else if (ExtLocationWithForecastWidgetProvider.class.equals(getWidgetClass())) {
-                ExtLocationWithForecastWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
-            } else if (WeatherForecastWidgetProvider.class.equals(getWidgetClass())) {
-                WeatherForecastWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
-            } else if (ExtLocationWithGraphWidgetProvider.class.equals(getWidgetClass())) {
-                ExtLocationWithGraphWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
-            } else if (WeatherGraphWidgetProvider.class.equals(getWidgetClass())) {
-                WeatherGraphWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
-            } else if (ExtLocationWithForecastGraphWidgetProvider.class.equals(getWidgetClass())) {
-                ExtLocationWithForecastGraphWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
-            }
-            setWidgetIntents(context, remoteViews, getWidgetClass(), appWidgetId);
-            preLoadWeather(context, remoteViews, appWidgetId);
-
-            try {
-                appWidgetManager.updateAppWidget(appWidgetId, remoteViews);
-            } catch (Exception e) {
-                appendLog(context, TAG, e.getMessage(), e);
-            }
+            updateWidget(context, appWidgetManager, appWidgetId);
         }
         appendLog(context, TAG, "onUpdate:end");
     }
 
+    /**
+     * Renders the widget and hands the views to the widget manager, used by onUpdate and by WidgetRegistry
+     * to update the widgets of an updated location without a broadcast.
+     */
+    void updateWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
+        RemoteViews remoteViews = new RemoteViews(context.getPackageName(),
+                getWidgetLayout());
+
+        if (ExtLocationWidgetProvider.class.equals(getWidgetClass())) {
+            ExtLocationWidgetProvider.setWidgetTheme(context, remoteViews);
+        } else if (MoreWidgetProvider.class.equals(getWidgetClass())) {
+            MoreWidgetProvider.setWidgetTheme(context, remoteViews);
+        } else if (LessWidgetProvider.class.equals(getWidgetClass())) {
+            LessWidgetProvider.setWidgetTheme(context, remoteViews);
+        } else if (ExtLocationWithForecastWidgetProvider.class.equals(getWidgetClass())) {
+            ExtLocationWithForecastWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
+        } else if (WeatherForecastWidgetProvider.class.equals(getWidgetClass())) {
+            WeatherForecastWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
+        } else if (ExtLocationWithGraphWidgetProvider.class.equals(getWidgetClass())) {
+            ExtLocationWithGraphWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
+        } else if (WeatherGraphWidgetProvider.class.equals(getWidgetClass())) {
+            WeatherGraphWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
+        } else if (ExtLocationWithForecastGraphWidgetProvider.class.equals(getWidgetClass())) {
+            ExtLocationWithForecastGraphWidgetProvider.setWidgetTheme(context, remoteViews, appWidgetId);
+        }
+        setWidgetIntents(context, remoteViews, getWidgetClass(), appWidgetId);
+        preLoadWeather(context, remoteViews, appWidgetId);
+
+        try {
+            appWidgetManager.updateAppWidget(appWidgetId, remoteViews);
+        } catch (Exception e) {
+            appendLog(context, TAG, e.getMessage(), e);
+        }
+    }
+
     @Override
     public void onDeleted(Context context, int[] appWidgetIds) {
         super.onDeleted(context, appWidgetIds);
@@ -240,6 +258,7 @@ public abstract class AbstractWidgetProvider extends AppWidgetProvider {
         for (int widgetId: appWidgetIds) {
             widgetSettingsDbHelper.deleteRecordFromTable(widgetId);
         }
+        WidgetRegistry.getInstance(context).invalidate();
         unbindCurrentWeatherService(context);
         unbindLocationUpdateService(context);
     }
@@ -13,7 +13,6 @@ import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 import org.thosp.yourlocalweather.model.WidgetSettingsDbHelper;
 import org.thosp.yourlocalweather.service.UpdateWeatherService;
 import org.thosp.yourlocalweather.utils.AppPreference;
-import org.thosp.yourlocalweather.utils.GraphUtils;
 import org.thosp.yourlocalweather.utils.TemperatureUtil;
 import org.thosp.yourlocalweather.utils.Utils;
 import org.thosp.yourlocalweather.utils.WidgetUtils;
@@ -148,9 +147,15 @@ public class ExtLocationWithForecastGraphWidgetProvider extends AbstractWidgetPr
                     R.id.widget_ext_loc_forecast_graph_3x3_forecast_5_widget_temperatures);
 
             if (weatherForecastRecord != null) {
-                remoteViews.setImageViewBitmap(R.id.widget_ext_loc_forecast_graph_3x3_widget_combined_chart,
-                        GraphUtils.getCombinedChart(context, appWidgetId,
-                                0.4f, weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList(), currentLocation.getId(), currentLocation.getLocale()));
+                GraphRenderWorker.getInstance(context).setCombinedChart(remoteViews,
+                        getWidgetLayout(),
+                        R.id.widget_ext_loc_forecast_graph_3x3_widget_combined_chart,
+                        appWidgetId,
+                        0.4f,
+                        weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList(),
+                        weatherForecastRecord.getForecastVersion(),
+                        currentLocation.getId(),
+                        currentLocation.getLocale());
             }
         } catch (Exception e) {
             appendLog(context, TAG, "preLoadWeather:error updating weather forecast", e);
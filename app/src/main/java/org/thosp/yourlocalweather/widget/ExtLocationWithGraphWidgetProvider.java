@@ -15,7 +15,6 @@ import org.thosp.yourlocalweather.model.WidgetSettingsDbHelper;
 import org.thosp.yourlocalweather.service.UpdateWeatherService;
 import org.thosp.yourlocalweather.utils.AppPreference;
 import org.thosp.yourlocalweather.utils.Constants;
-import org.thosp.yourlocalweather.utils.GraphUtils;
 import org.thosp.yourlocalweather.utils.TemperatureUtil;
 import org.thosp.yourlocalweather.utils.Utils;
 import org.thosp.yourlocalweather.utils.WidgetUtils;
@@ -38,7 +37,6 @@ public class ExtLocationWithGraphWidgetProvider extends AbstractWidgetProvider {
         super.onReceive(context, intent);
         if (intent.getAction().equals("android.appwidget.action.APPWIDGET_UPDATE_OPTIONS") ||
                 intent.getAction().equals(Constants.ACTION_APPWIDGET_CHANGE_GRAPH_SCALE)) {
-            GraphUtils.invalidateGraph();
             refreshWidgetValues(context);
         }
     }
@@ -134,9 +132,15 @@ public class ExtLocationWithGraphWidgetProvider extends AbstractWidgetProvider {
             if (location != null) {
                 weatherForecastRecord = weatherForecastDbHelper.getWeatherForecast(currentLocation.getId());
                 if (weatherForecastRecord != null) {
-                    remoteViews.setImageViewBitmap(R.id.widget_ext_loc_graph_3x3_widget_combined_chart,
-                            GraphUtils.getCombinedChart(context, appWidgetId,
-                                    0.2f, weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList(), currentLocation.getId(), currentLocation.getLocale()));
+                    GraphRenderWorker.getInstance(context).setCombinedChart(remoteViews,
+                            getWidgetLayout(),
+                            R.id.widget_ext_loc_graph_3x3_widget_combined_chart,
+                            appWidgetId,
+                            0.2f,
+                            weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList(),
+                            weatherForecastRecord.getForecastVersion(),
+                            currentLocation.getId(),
+                            currentLocation.getLocale());
                 }
             }
         } catch (Exception e) {
@@ -0,0 +1,146 @@
+package org.thosp.yourlocalweather.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.widget.RemoteViews;
+
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+import org.thosp.yourlocalweather.utils.GraphUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
+
+/**
+ * Renders widget graphs on a background thread. The widget update sets the cached graph when it matches
+ * the current forecast and settings, otherwise the last graph of the widget, and the fresh graph is sent
+ * with partiallyUpdateAppWidget once it is rendered. Pending renders of one widget are merged into the latest.
+ */
+public class GraphRenderWorker {
+
+    private static final String TAG = "GraphRenderWorker";
+
+    private static GraphRenderWorker instance;
+
+    private final Context context;
+    private final Handler renderHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<Integer, RenderRequest> pendingRequests = new HashMap<>();
+
+    public synchronized static GraphRenderWorker getInstance(Context ctx) {
+        if (instance == null) {
+            instance = new GraphRenderWorker(ctx.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private GraphRenderWorker(Context context) {
+        this.context = context;
+        HandlerThread renderThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+    }
+
+    public void setCombinedChart(RemoteViews remoteViews,
+                                 int widgetLayoutId,
+                                 int chartViewId,
+                                 int widgetId,
+                                 Float heightMultiplier,
+                                 List<DetailedWeatherForecast> weatherForecastList,
+                                 long forecastVersion,
+                                 long locationId,
+                                 Locale locale) {
+        GraphUtils.CombinedGraphKey combinedGraphKey = GraphUtils.getCombinedGraphKey(context,
+                widgetId,
+                heightMultiplier,
+                forecastVersion,
+                locationId,
+                locale);
+        Bitmap combinedChart = GraphUtils.getCachedCombinedChart(combinedGraphKey);
+        if (combinedChart != null) {
+            remoteViews.setImageViewBitmap(chartViewId, combinedChart);
+            return;
+        }
+        Bitmap lastCombinedChart = GraphUtils.getLastCombinedChart(widgetId);
+        if (lastCombinedChart != null) {
+            remoteViews.setImageViewBitmap(chartViewId, lastCombinedChart);
+        }
+        submit(new RenderRequest(widgetLayoutId, chartViewId, combinedGraphKey, weatherForecastList));
+    }
+
+    private void submit(RenderRequest renderRequest) {
+        final int widgetId = renderRequest.combinedGraphKey.getWidgetId();
+        synchronized (pendingRequests) {
+            boolean renderScheduled = pendingRequests.containsKey(widgetId);
+            pendingRequests.put(widgetId, renderRequest);
+            if (renderScheduled) {
+                return;
+            }
+        }
+        renderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                render(widgetId);
+            }
+        });
+    }
+
+    private void render(final int widgetId) {
+        RenderRequest renderRequest;
+        synchronized (pendingRequests) {
+            renderRequest = pendingRequests.remove(widgetId);
+        }
+        if (renderRequest == null) {
+            return;
+        }
+        Bitmap combinedChart = GraphUtils.getCachedCombinedChart(renderRequest.combinedGraphKey);
+        if (combinedChart == null) {
+            try {
+                combinedChart = GraphUtils.renderCombinedChart(context,
+                        renderRequest.combinedGraphKey,
+                        renderRequest.weatherForecastList);
+            } catch (Exception e) {
+                appendLog(context, TAG, "Graph not rendered:", e);
+                return;
+            }
+        }
+        final RemoteViews remoteViews = new RemoteViews(context.getPackageName(), renderRequest.widgetLayoutId);
+        remoteViews.setImageViewBitmap(renderRequest.chartViewId, combinedChart);
+        // posted to the main thread so that it is applied after the full update of the running onUpdate
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AppWidgetManager.getInstance(context).partiallyUpdateAppWidget(widgetId, remoteViews);
+                } catch (Exception e) {
+                    appendLog(context, TAG, "Graph not sent to widget:", e);
+                }
+            }
+        });
+    }
+
+    private static class RenderRequest {
+        private final int widgetLayoutId;
+        private final int chartViewId;
+        private final GraphUtils.CombinedGraphKey combinedGraphKey;
+        private final List<DetailedWeatherForecast> weatherForecastList;
+
+        RenderRequest(int widgetLayoutId,
+                      int chartViewId,
+                      GraphUtils.CombinedGraphKey combinedGraphKey,
+                      List<DetailedWeatherForecast> weatherForecastList) {
+            this.widgetLayoutId = widgetLayoutId;
+            this.chartViewId = chartViewId;
+            this.combinedGraphKey = combinedGraphKey;
+            this.weatherForecastList = weatherForecastList;
+        }
+    }
+}
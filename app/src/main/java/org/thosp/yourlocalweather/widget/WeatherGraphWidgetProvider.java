@@ -12,7 +12,6 @@ import org.thosp.yourlocalweather.model.WeatherForecastDbHelper;
 import org.thosp.yourlocalweather.model.WidgetSettingsDbHelper;
 import org.thosp.yourlocalweather.utils.AppPreference;
 import org.thosp.yourlocalweather.utils.Constants;
-import org.thosp.yourlocalweather.utils.GraphUtils;
 import org.thosp.yourlocalweather.utils.Utils;
 
 import java.util.ArrayList;
@@ -30,7 +29,6 @@ public class WeatherGraphWidgetProvider extends AbstractWidgetProvider {
         super.onReceive(context, intent);
         if (intent.getAction().equals("android.appwidget.action.APPWIDGET_UPDATE_OPTIONS") ||
                 intent.getAction().equals(Constants.ACTION_APPWIDGET_CHANGE_GRAPH_SCALE)) {
-            GraphUtils.invalidateGraph();
             refreshWidgetValues(context);
         }
     }
@@ -67,9 +65,15 @@ public class WeatherGraphWidgetProvider extends AbstractWidgetProvider {
             if (location != null) {
                 weatherForecastRecord = weatherForecastDbHelper.getWeatherForecast(currentLocation.getId());
                 if (weatherForecastRecord != null) {
-                    remoteViews.setImageViewBitmap(R.id.widget_weather_graph_1x3_widget_combined_chart,
-                            GraphUtils.getCombinedChart(context, appWidgetId,null,
-                                    weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList(), currentLocation.getId(), currentLocation.getLocale()));
+                    GraphRenderWorker.getInstance(context).setCombinedChart(remoteViews,
+                            getWidgetLayout(),
+                            R.id.widget_weather_graph_1x3_widget_combined_chart,
+                            appWidgetId,
+                            null,
+                            weatherForecastRecord.getCompleteWeatherForecast().getWeatherForecastList(),
+                            weatherForecastRecord.getForecastVersion(),
+                            currentLocation.getId(),
+                            currentLocation.getLocale());
                 }
             }
         } catch (Exception e) {
@@ -0,0 +1,265 @@
+package org.thosp.yourlocalweather.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.thosp.yourlocalweather.model.Location;
+import org.thosp.yourlocalweather.model.LocationsDbHelper;
+import org.thosp.yourlocalweather.model.WidgetSettingsDbHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.thosp.yourlocalweather.utils.LogToFile.appendLog;
+
+/**
+ * Knows which widgets show which location and updates only the widgets of the updated locations. Requests
+ * arriving within UPDATE_WINDOW_IN_MS are merged, the widgets are then rendered by their provider and handed
+ * to the AppWidgetManager one by one, without an APPWIDGET_UPDATE broadcast per provider.
+ */
+public class WidgetRegistry {
+
+    private static final String TAG = "WidgetRegistry";
+
+    private static final long UPDATE_WINDOW_IN_MS = 300;
+
+    public static final Class<?>[] WIDGET_PROVIDERS = {
+            LessWidgetProvider.class,
+            MoreWidgetProvider.class,
+            ExtLocationWidgetProvider.class,
+            ExtLocationWithForecastWidgetProvider.class,
+            WeatherForecastWidgetProvider.class,
+            ExtLocationWithGraphWidgetProvider.class,
+            WeatherGraphWidgetProvider.class,
+            ExtLocationWithForecastGraphWidgetProvider.class
+    };
+
+    private static WidgetRegistry instance;
+
+    private final Context context;
+    private Handler mainHandler;
+    private final Set<Long> pendingLocationIds = new HashSet<>();
+    private boolean pendingUpdateOfAllWidgets;
+    private boolean updateScheduled;
+
+    private Map<Integer, Class<?>> widgetProviders;
+    private Map<Long, List<Integer>> widgetIdsByLocationId;
+    private List<Integer> widgetIdsWithDefaultLocation;
+    private long widgetSettingsVersion = -1;
+
+    public synchronized static WidgetRegistry getInstance(Context ctx) {
+        if (instance == null) {
+            instance = new WidgetRegistry(ctx.getApplicationContext());
+        }
+        return instance;
+    }
+
+    WidgetRegistry(Context context) {
+        this.context = context;
+    }
+
+    public void requestUpdate(long locationId) {
+        synchronized (pendingLocationIds) {
+            pendingLocationIds.add(locationId);
+            scheduleUpdate();
+        }
+    }
+
+    public void requestUpdateOfAllWidgets() {
+        synchronized (pendingLocationIds) {
+            pendingUpdateOfAllWidgets = true;
+            scheduleUpdate();
+        }
+    }
+
+    /**
+     * Rebuilds the registry on the next use when the widgets are not known yet.
+     */
+    public synchronized void invalidateIfUnknown(int[] widgetIds) {
+        if (widgetProviders == null) {
+            return;
+        }
+        for (int widgetId: widgetIds) {
+            if (!widgetProviders.containsKey(widgetId)) {
+                widgetProviders = null;
+                return;
+            }
+        }
+    }
+
+    public synchronized void invalidate() {
+        widgetProviders = null;
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled) {
+            return;
+        }
+        updateScheduled = true;
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        mainHandler.postDelayed(sendUpdates, UPDATE_WINDOW_IN_MS);
+    }
+
+    private final Runnable sendUpdates = new Runnable() {
+        @Override
+        public void run() {
+            Set<Long> locationIds;
+            boolean updateOfAllWidgets;
+            synchronized (pendingLocationIds) {
+                updateScheduled = false;
+                locationIds = new HashSet<>(pendingLocationIds);
+                pendingLocationIds.clear();
+                updateOfAllWidgets = pendingUpdateOfAllWidgets;
+                pendingUpdateOfAllWidgets = false;
+            }
+            try {
+                if (updateOfAllWidgets) {
+                    for (Class<?> widgetProvider: WIDGET_PROVIDERS) {
+                        updateWidgets(widgetProvider, null);
+                    }
+                } else {
+                    sendUpdates(locationIds);
+                }
+            } catch (Exception e) {
+                appendLog(context, TAG, "Widgets not updated:", e);
+            }
+        }
+    };
+
+    private void sendUpdates(Set<Long> locationIds) {
+        Map<Class<?>, int[]> widgetIdsByProvider;
+        synchronized (this) {
+            refreshIfNeeded();
+            Long defaultLocationId = null;
+            if (!widgetIdsWithDefaultLocation.isEmpty()) {
+                defaultLocationId = getDefaultLocationId();
+            }
+            widgetIdsByProvider = getWidgetIdsByProvider(locationIds, defaultLocationId);
+        }
+        for (Map.Entry<Class<?>, int[]> providerWidgetIds: widgetIdsByProvider.entrySet()) {
+            updateWidgets(providerWidgetIds.getKey(), providerWidgetIds.getValue());
+        }
+        appendLog(context, TAG, "updated locations:", locationIds.size(), ", widget providers:", widgetIdsByProvider.size());
+    }
+
+    /**
+     * Widgets showing one of the locations, grouped by their provider.
+     * @param defaultLocationId location shown by the widgets without locationId setting, null when unknown
+     */
+    synchronized Map<Class<?>, int[]> getWidgetIdsByProvider(Set<Long> locationIds, Long defaultLocationId) {
+        Map<Class<?>, List<Integer>> widgetIdsOfProviders = new HashMap<>();
+        for (Long locationId: locationIds) {
+            List<Integer> widgetIds = new ArrayList<>();
+            List<Integer> widgetIdsOfLocation = widgetIdsByLocationId.get(locationId);
+            if (widgetIdsOfLocation != null) {
+                widgetIds.addAll(widgetIdsOfLocation);
+            }
+            if (locationId.equals(defaultLocationId)) {
+                widgetIds.addAll(widgetIdsWithDefaultLocation);
+            }
+            for (Integer widgetId: widgetIds) {
+                Class<?> widgetProvider = widgetProviders.get(widgetId);
+                List<Integer> providerWidgetIds = widgetIdsOfProviders.get(widgetProvider);
+                if (providerWidgetIds == null) {
+                    providerWidgetIds = new ArrayList<>();
+                    widgetIdsOfProviders.put(widgetProvider, providerWidgetIds);
+                }
+                if (!providerWidgetIds.contains(widgetId)) {
+                    providerWidgetIds.add(widgetId);
+                }
+            }
+        }
+        Map<Class<?>, int[]> widgetIdsByProvider = new HashMap<>();
+        for (Map.Entry<Class<?>, List<Integer>> providerWidgetIds: widgetIdsOfProviders.entrySet()) {
+            int[] widgetIds = new int[providerWidgetIds.getValue().size()];
+            for (int i = 0; i < widgetIds.length; i++) {
+                widgetIds[i] = providerWidgetIds.getValue().get(i);
+            }
+            widgetIdsByProvider.put(providerWidgetIds.getKey(), widgetIds);
+        }
+        return widgetIdsByProvider;
+    }
+
+    private void updateWidgets(Class<?> widgetProvider, int[] widgetIds) {
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+        if (widgetIds == null) {
+            widgetIds = widgetManager.getAppWidgetIds(new ComponentName(context, widgetProvider));
+        }
+        if (widgetIds.length == 0) {
+            return;
+        }
+        AbstractWidgetProvider provider;
+        try {
+            provider = (AbstractWidgetProvider) widgetProvider.newInstance();
+        } catch (Exception e) {
+            appendLog(context, TAG, "Widget provider not created:", e);
+            return;
+        }
+        for (int widgetId: widgetIds) {
+            provider.updateWidget(context, widgetManager, widgetId);
+        }
+    }
+
+    private void refreshIfNeeded() {
+        WidgetSettingsDbHelper widgetSettingsDbHelper = WidgetSettingsDbHelper.getInstance(context);
+        long currentWidgetSettingsVersion = widgetSettingsDbHelper.getVersion();
+        if ((widgetProviders != null) && (widgetSettingsVersion == currentWidgetSettingsVersion)) {
+            return;
+        }
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+        Map<Integer, Class<?>> currentWidgetProviders = new HashMap<>();
+        Map<Integer, Long> widgetLocationIds = new HashMap<>();
+        for (Class<?> widgetProvider: WIDGET_PROVIDERS) {
+            for (int widgetId: widgetManager.getAppWidgetIds(new ComponentName(context, widgetProvider))) {
+                currentWidgetProviders.put(widgetId, widgetProvider);
+                widgetLocationIds.put(widgetId, widgetSettingsDbHelper.getParamLong(widgetId, "locationId"));
+            }
+        }
+        setWidgets(currentWidgetProviders, widgetLocationIds);
+        widgetSettingsVersion = currentWidgetSettingsVersion;
+    }
+
+    /**
+     * Indexes the widgets by the location they show.
+     * @param widgetLocationIds locationId setting of the widgets, null for widgets showing the default location
+     */
+    synchronized void setWidgets(Map<Integer, Class<?>> currentWidgetProviders, Map<Integer, Long> widgetLocationIds) {
+        widgetProviders = currentWidgetProviders;
+        widgetIdsByLocationId = new HashMap<>();
+        widgetIdsWithDefaultLocation = new ArrayList<>();
+        for (Integer widgetId: currentWidgetProviders.keySet()) {
+            Long locationId = widgetLocationIds.get(widgetId);
+            if (locationId == null) {
+                widgetIdsWithDefaultLocation.add(widgetId);
+                continue;
+            }
+            List<Integer> widgetIds = widgetIdsByLocationId.get(locationId);
+            if (widgetIds == null) {
+                widgetIds = new ArrayList<>();
+                widgetIdsByLocationId.put(locationId, widgetIds);
+            }
+            widgetIds.add(widgetId);
+        }
+    }
+
+    /**
+     * Location shown by widgets without locationId setting, the same one the widget providers fall back to.
+     */
+    private Long getDefaultLocationId() {
+        LocationsDbHelper locationsDbHelper = LocationsDbHelper.getInstance(context);
+        Location location = locationsDbHelper.getLocationByOrderId(0);
+        if ((location == null) || !location.isEnabled()) {
+            location = locationsDbHelper.getLocationByOrderId(1);
+        }
+        return (location != null) ? location.getId() : null;
+    }
+}
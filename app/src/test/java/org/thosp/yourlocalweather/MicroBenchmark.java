@@ -0,0 +1,89 @@
+package org.thosp.yourlocalweather;
+
+import org.junit.Assume;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal timing and allocation probe for JVM unit benchmarks. Allocated bytes are only
+ * reported on HotSpot based JVMs, elsewhere they are -1. Benchmarks are skipped unless the
+ * unit tests run with the benchmarks system property, set by ./gradlew test -Pbenchmarks.
+ */
+public class MicroBenchmark {
+
+    public static final String ENABLED_PROPERTY = "benchmarks";
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final double nanosPerOperation;
+        public final double bytesPerOperation;
+
+        Result(String name, double nanosPerOperation, double bytesPerOperation) {
+            this.name = name;
+            this.nanosPerOperation = nanosPerOperation;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %12.0f ns/op %12.0f B/op", name, nanosPerOperation, bytesPerOperation);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks run with -D" + ENABLED_PROPERTY + "=true", isEnabled());
+    }
+
+    public static Result measure(String name, int warmupIterations, int iterations, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            operation.run();
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        double bytesPerOperation = (allocatedBefore < 0) ? -1 : (double) (allocatedAfter - allocatedBefore) / iterations;
+        return new Result(name, (double) elapsed / iterations, bytesPerOperation);
+    }
+
+    public static byte[] readResource(String name) throws IOException {
+        InputStream inputStream = MicroBenchmark.class.getClassLoader().getResourceAsStream(name);
+        if (inputStream == null) {
+            throw new IOException("Resource not found: " + name);
+        }
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,125 @@
+package org.thosp.yourlocalweather;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+import org.thosp.yourlocalweather.model.WeatherCondition;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WeatherJSONStreamParserTest {
+
+    private static final double DELTA = 0.000001;
+
+    private byte[] forecastResponse;
+    private byte[] longForecastResponse;
+
+    @Before
+    public void setup() throws Exception {
+        forecastResponse = MicroBenchmark.readResource("owm/forecast.json");
+        longForecastResponse = MicroBenchmark.readResource("owm/forecast_daily.json");
+    }
+
+    @Test
+    public void weatherForecastIsSameAsFromDomParser() throws Exception {
+        //when
+        CompleteWeatherForecast expected = WeatherJSONParser.getWeatherForecast(new String(forecastResponse, "UTF-8"));
+        CompleteWeatherForecast result = WeatherJSONStreamParser.getWeatherForecast(forecastResponse);
+
+        //then
+        assertEquals(40, result.getWeatherForecastList().size());
+        assertSameForecasts(expected, result);
+    }
+
+    @Test
+    public void longWeatherForecastIsSameAsFromDomParser() throws Exception {
+        //when
+        CompleteWeatherForecast expected = WeatherJSONParser.getLongWeatherForecast(new String(longForecastResponse, "UTF-8"));
+        CompleteWeatherForecast result = WeatherJSONStreamParser.getLongWeatherForecast(longForecastResponse);
+
+        //then
+        assertEquals(16, result.getWeatherForecastList().size());
+        assertSameForecasts(expected, result);
+    }
+
+    @Test
+    public void serverResultIsUnwrapped() throws Exception {
+        //given
+        byte[] serverResult = "{\"result\":\"OK\",\"token\":\"abc\",\"owm\":\"{\\\"list\\\":[]}\"}".getBytes("UTF-8");
+
+        //when
+        WeatherJSONParser.JSONParseResult result = WeatherJSONStreamParser.parseServerResult(serverResult);
+
+        //then
+        assertEquals("abc", result.getToken());
+        assertEquals("{\"list\":[]}", result.getOwmResponse());
+    }
+
+    @Test
+    public void benchmarkAgainstDomParser() throws Exception {
+        MicroBenchmark.assumeEnabled();
+        final String longForecastResponseTxt = new String(longForecastResponse, "UTF-8");
+
+        MicroBenchmark.Result dom = MicroBenchmark.measure("WeatherJSONParser.getWeatherForecast", 200, 1000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        WeatherJSONParser.getWeatherForecast(new String(forecastResponse, "UTF-8"));
+                    }
+                });
+        MicroBenchmark.Result streaming = MicroBenchmark.measure("WeatherJSONStreamParser.getWeatherForecast", 200, 1000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        WeatherJSONStreamParser.getWeatherForecast(forecastResponse);
+                    }
+                });
+        MicroBenchmark.measure("WeatherJSONParser.getLongWeatherForecast", 200, 1000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        WeatherJSONParser.getLongWeatherForecast(longForecastResponseTxt);
+                    }
+                });
+        MicroBenchmark.measure("WeatherJSONStreamParser.getLongWeatherForecast", 200, 1000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        WeatherJSONStreamParser.getLongWeatherForecast(longForecastResponse);
+                    }
+                });
+
+        if (dom.bytesPerOperation > 0) {
+            assertTrue(dom + " / " + streaming, streaming.bytesPerOperation < dom.bytesPerOperation);
+        }
+    }
+
+    private void assertSameForecasts(CompleteWeatherForecast expected, CompleteWeatherForecast result) {
+        List<DetailedWeatherForecast> expectedList = expected.getWeatherForecastList();
+        List<DetailedWeatherForecast> resultList = result.getWeatherForecastList();
+        assertEquals(expectedList.size(), resultList.size());
+        for (int i = 0; i < expectedList.size(); i++) {
+            DetailedWeatherForecast expectedItem = expectedList.get(i);
+            DetailedWeatherForecast resultItem = resultList.get(i);
+            assertEquals(expectedItem.getDateTime(), resultItem.getDateTime());
+            assertEquals(expectedItem.getTemperature(), resultItem.getTemperature(), DELTA);
+            assertEquals(expectedItem.getTemperatureMin(), resultItem.getTemperatureMin(), DELTA);
+            assertEquals(expectedItem.getTemperatureMax(), resultItem.getTemperatureMax(), DELTA);
+            assertEquals(expectedItem.getPressure(), resultItem.getPressure(), DELTA);
+            assertEquals(expectedItem.getHumidity(), resultItem.getHumidity());
+            assertEquals(expectedItem.getWindSpeed(), resultItem.getWindSpeed(), DELTA);
+            assertEquals(expectedItem.getWindDegree(), resultItem.getWindDegree(), DELTA);
+            assertEquals(expectedItem.getCloudiness(), resultItem.getCloudiness());
+            assertEquals(expectedItem.getRain(), resultItem.getRain(), DELTA);
+            assertEquals(expectedItem.getSnow(), resultItem.getSnow(), DELTA);
+            WeatherCondition expectedCondition = expectedItem.getFirstWeatherCondition();
+            WeatherCondition resultCondition = resultItem.getFirstWeatherCondition();
+            assertEquals(expectedCondition.getWeatherId(), resultCondition.getWeatherId());
+            assertEquals(expectedCondition.getIcon(), resultCondition.getIcon());
+            assertEquals(expectedCondition.getDescription(), resultCondition.getDescription());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.thosp.yourlocalweather.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DbRecordCacheTest {
+
+    @Test
+    public void cachedRecordIsReturnedUntilInvalidated() {
+        //given
+        DbRecordCache<String> cache = new DbRecordCache<>(4);
+        long key = DbRecordCache.getKey(1, 1);
+        cache.put(key, "record", cache.getVersion());
+
+        //when
+        String cachedRecord = cache.get(key);
+        cache.invalidate(key);
+
+        //then
+        assertEquals("record", cachedRecord);
+        assertNull(cache.get(key));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void recordReadBeforeWriteIsNotCached() {
+        //given the read starts, then a write of another record invalidates while it runs
+        DbRecordCache<String> cache = new DbRecordCache<>(4);
+        long key = DbRecordCache.getKey(1, 1);
+        long versionOfRead = cache.getVersion();
+        cache.invalidate(DbRecordCache.getKey(2, 1));
+
+        //when
+        cache.put(key, "stale record", versionOfRead);
+
+        //then
+        assertNull(cache.get(key));
+        cache.put(key, "record", cache.getVersion());
+        assertEquals("record", cache.get(key));
+    }
+
+    @Test
+    public void leastRecentlyUsedRecordIsEvicted() {
+        //given
+        DbRecordCache<String> cache = new DbRecordCache<>(2);
+        long firstKey = DbRecordCache.getKey(1, 1);
+        long secondKey = DbRecordCache.getKey(2, 1);
+        long thirdKey = DbRecordCache.getKey(3, 1);
+        cache.put(firstKey, "first", cache.getVersion());
+        cache.put(secondKey, "second", cache.getVersion());
+
+        //when
+        cache.get(firstKey);
+        cache.put(thirdKey, "third", cache.getVersion());
+
+        //then
+        assertEquals("first", cache.get(firstKey));
+        assertNull(cache.get(secondKey));
+        assertEquals("third", cache.get(thirdKey));
+    }
+
+    @Test
+    public void invalidateAllDropsEveryRecord() {
+        //given
+        DbRecordCache<String> cache = new DbRecordCache<>(4);
+        long weatherKey = DbRecordCache.getKey(1, 1);
+        long forecastKey = DbRecordCache.getKey(1, 2);
+        cache.put(weatherKey, "weather", cache.getVersion());
+        cache.put(forecastKey, "forecast", cache.getVersion());
+
+        //when
+        cache.invalidateAll();
+
+        //then
+        assertNotEquals(weatherKey, forecastKey);
+        assertNull(cache.get(weatherKey));
+        assertNull(cache.get(forecastKey));
+    }
+}
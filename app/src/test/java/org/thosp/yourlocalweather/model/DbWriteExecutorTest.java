@@ -0,0 +1,214 @@
+package org.thosp.yourlocalweather.model;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thosp.yourlocalweather.utils.LogToFile;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DbWriteExecutorTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ScheduledExecutorService scheduledExecutor;
+    private DbWriteExecutor dbWriteExecutor;
+    private SQLiteOpenHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setup() {
+        LogToFile.logToFileEnabled = false;
+        scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        dbWriteExecutor = new DbWriteExecutor(null, scheduledExecutor, DIRECT_EXECUTOR);
+        dbHelper = mock(SQLiteOpenHelper.class);
+        db = mock(SQLiteDatabase.class);
+        when(dbHelper.getWritableDatabase()).thenReturn(db);
+    }
+
+    @After
+    public void tearDown() {
+        scheduledExecutor.shutdownNow();
+    }
+
+    @Test
+    public void failedWriteIsLeftOutOfCommittedTransaction() throws Exception {
+        //given
+        RecordingWrite firstWrite = new RecordingWrite(null);
+        RecordingWrite failingWrite = new RecordingWrite(new SQLiteException("constraint failed"));
+        RecordingWrite lastWrite = new RecordingWrite(null);
+        dbWriteExecutor.submit(dbHelper, "first", firstWrite);
+        dbWriteExecutor.submit(dbHelper, "failing", failingWrite);
+        dbWriteExecutor.submit(dbHelper, "last", lastWrite);
+
+        //when
+        boolean committed = awaitPendingWrites();
+
+        //then
+        assertFalse(committed);
+        assertTrue(firstWrite.committed);
+        assertTrue(lastWrite.committed);
+        assertFalse(failingWrite.committed);
+        assertSame(failingWrite.exception, failingWrite.failure);
+        assertEquals(2, firstWrite.writes);
+        assertEquals(1, lastWrite.writes);
+        verify(db, times(2)).beginTransaction();
+        verify(db, times(1)).setTransactionSuccessful();
+        verify(db, times(2)).endTransaction();
+    }
+
+    @Test
+    public void writesOfUnwritableDatabaseFail() throws Exception {
+        //given
+        when(dbHelper.getWritableDatabase()).thenThrow(new SQLiteException("unable to open database file"));
+        RecordingWrite write = new RecordingWrite(null);
+        dbWriteExecutor.submit(dbHelper, "write", write);
+
+        //when
+        boolean committed = awaitPendingWrites();
+
+        //then
+        assertFalse(committed);
+        assertFalse(write.committed);
+        assertNotNull(write.failure);
+        assertEquals(0, write.writes);
+    }
+
+    @Test
+    public void failedCommitFailsAllWritesOfTransaction() throws Exception {
+        //given
+        doThrow(new SQLiteException("disk is full")).when(db).endTransaction();
+        RecordingWrite firstWrite = new RecordingWrite(null);
+        RecordingWrite secondWrite = new RecordingWrite(null);
+        dbWriteExecutor.submit(dbHelper, "first", firstWrite);
+        dbWriteExecutor.submit(dbHelper, "second", secondWrite);
+
+        //when
+        boolean committed = awaitPendingWrites();
+
+        //then
+        assertFalse(committed);
+        assertFalse(firstWrite.committed);
+        assertFalse(secondWrite.committed);
+        assertNotNull(firstWrite.failure);
+        assertNotNull(secondWrite.failure);
+    }
+
+    @Test
+    public void failureIsNotReportedToLaterCallbacks() throws Exception {
+        //given
+        dbWriteExecutor.submit(dbHelper, "failing", new RecordingWrite(new SQLiteException("constraint failed")));
+        assertFalse(awaitPendingWrites());
+        RecordingWrite write = new RecordingWrite(null);
+        dbWriteExecutor.submit(dbHelper, "write", write);
+
+        //when
+        boolean committed = awaitPendingWrites();
+
+        //then
+        assertTrue(committed);
+        assertTrue(write.committed);
+    }
+
+    @Test
+    public void pendingWriteWithSameKeyIsReplaced() throws Exception {
+        //given
+        RecordingWrite replacedWrite = new RecordingWrite(null);
+        RecordingWrite write = new RecordingWrite(null);
+        dbWriteExecutor.submit(dbHelper, "key", replacedWrite);
+        dbWriteExecutor.submit(dbHelper, "key", write);
+
+        //when
+        boolean committed = awaitPendingWrites();
+
+        //then the replaced write is not run, but is committed with the write replacing it
+        assertTrue(committed);
+        assertEquals(0, replacedWrite.writes);
+        assertTrue(replacedWrite.committed);
+        assertEquals(1, write.writes);
+        assertTrue(write.committed);
+    }
+
+    @Test
+    public void replacedWriteFailsWithWriteReplacingIt() throws Exception {
+        //given
+        RecordingWrite replacedWrite = new RecordingWrite(null);
+        RecordingWrite write = new RecordingWrite(new SQLiteException("constraint failed"));
+        dbWriteExecutor.submit(dbHelper, "key", replacedWrite);
+        dbWriteExecutor.submit(dbHelper, "key", write);
+
+        //when
+        boolean committed = awaitPendingWrites();
+
+        //then
+        assertFalse(committed);
+        assertEquals(0, replacedWrite.writes);
+        assertFalse(replacedWrite.committed);
+        assertSame(write.failure, replacedWrite.failure);
+        assertNotNull(write.failure);
+    }
+
+    private boolean awaitPendingWrites() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] committed = new boolean[1];
+        dbWriteExecutor.executeAfterPendingWrites(new Runnable() {
+            @Override
+            public void run() {
+                committed[0] = true;
+                latch.countDown();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return committed[0];
+    }
+
+    private static class RecordingWrite extends DbWriteExecutor.DbWrite {
+        private final RuntimeException exception;
+        private volatile int writes;
+        private volatile boolean committed;
+        private volatile Exception failure;
+
+        RecordingWrite(RuntimeException exception) {
+            this.exception = exception;
+        }
+
+        @Override
+        public void write(SQLiteDatabase db) {
+            writes++;
+            if (exception != null) {
+                throw exception;
+            }
+        }
+
+        @Override
+        public void onCommitted() {
+            committed = true;
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            failure = e;
+        }
+    }
+}
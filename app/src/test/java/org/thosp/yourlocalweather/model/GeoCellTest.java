@@ -0,0 +1,242 @@
+package org.thosp.yourlocalweather.model;
+
+import org.junit.Test;
+import org.thosp.yourlocalweather.MicroBenchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoCellTest {
+
+    private static final double LOOKUP_RADIUS_IN_METERS = 11;
+
+    @Test
+    public void nearbyPointsShareCell() throws Exception {
+        assertEquals(GeoCell.getCell(52.52001, 13.40495), GeoCell.getCell(52.52009, 13.40499));
+        assertNotEquals(GeoCell.getCell(52.5201, 13.40495), GeoCell.getCell(52.5191, 13.40495));
+    }
+
+    @Test
+    public void cellsInRadiusCoverAllPointsInRadius() throws Exception {
+        //given
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            double latitude = -80 + (160 * random.nextDouble());
+            double longitude = -180 + (360 * random.nextDouble());
+            double radius = 5 + (200 * random.nextDouble());
+            double bearing = 2 * Math.PI * random.nextDouble();
+            double distance = radius * random.nextDouble();
+            double otherLatitude = latitude + Math.toDegrees(distance * Math.cos(bearing) / 6371008.8);
+            double otherLongitude = longitude + Math.toDegrees(distance * Math.sin(bearing) / 6371008.8) /
+                    Math.cos(Math.toRadians(latitude));
+            if (otherLongitude >= 180) {
+                otherLongitude -= 360;
+            } else if (otherLongitude < -180) {
+                otherLongitude += 360;
+            }
+
+            //when
+            long[] cells = GeoCell.getCellsInRadius(latitude, longitude, radius);
+
+            //then
+            long otherCell = GeoCell.getCell(otherLatitude, otherLongitude);
+            boolean found = false;
+            for (long cell: cells) {
+                found |= (cell == otherCell);
+            }
+            assertTrue("Point at " + distance + "m not covered", found);
+        }
+    }
+
+    @Test
+    public void cellsInRadiusWrapAroundAntimeridian() throws Exception {
+        //when
+        long[] cells = GeoCell.getCellsInRadius(0.0005, 179.9999, 50);
+
+        //then
+        long cellOverAntimeridian = GeoCell.getCell(0.0005, -179.9999);
+        boolean found = false;
+        for (long cell: cells) {
+            found |= (cell == cellOverAntimeridian);
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void truncatedLookupKeepsCellsNearestToCenter() throws Exception {
+        //given a radius covering far more cells than a lookup holds
+        double latitude = 52.52001;
+        double longitude = 13.40495;
+
+        //when
+        long[] cells = GeoCell.getCellsInRadius(latitude, longitude, 5000);
+
+        //then
+        assertEquals(GeoCell.MAX_CELLS_IN_LOOKUP, cells.length);
+        assertEquals(GeoCell.getCell(latitude, longitude), cells[0]);
+        long[] sortedCells = cells.clone();
+        Arrays.sort(sortedCells);
+        for (int i = 1; i < sortedCells.length; i++) {
+            assertNotEquals(sortedCells[i - 1], sortedCells[i]);
+        }
+        for (double[] offset: new double[][] {{0.001, 0}, {-0.001, 0}, {0, 0.001}, {0, -0.001}, {0.001, 0.001}}) {
+            long neighbourCell = GeoCell.getCell(latitude + offset[0], longitude + offset[1]);
+            boolean found = false;
+            for (long cell: cells) {
+                found |= (cell == neighbourCell);
+            }
+            assertTrue(found);
+        }
+    }
+
+    @Test
+    public void centerCellIsAlwaysInLookup() throws Exception {
+        //given
+        Random random = new Random(7);
+
+        for (int i = 0; i < 1000; i++) {
+            double latitude = -89 + (178 * random.nextDouble());
+            double longitude = -180 + (360 * random.nextDouble());
+            double radius = 1 + (20000 * random.nextDouble());
+
+            //when
+            long[] cells = GeoCell.getCellsInRadius(latitude, longitude, radius);
+
+            //then
+            assertEquals(GeoCell.getCell(latitude, longitude), cells[0]);
+        }
+    }
+
+    @Test
+    public void distanceOfOneDegreeOfLatitude() throws Exception {
+        assertEquals(111195, GeoCell.distanceInMeters(10, 20, 11, 20), 10);
+        assertEquals(0, GeoCell.distanceInMeters(10, 20, 10, 20), 0);
+    }
+
+    @Test
+    public void cellIndexFindsRowsOfTableScan() throws Exception {
+        for (int size: new int[] {1000, 10000, 50000}) {
+            lookup(size, false);
+        }
+    }
+
+    @Test
+    public void benchmarkLookupAgainstTableScan() throws Exception {
+        MicroBenchmark.assumeEnabled();
+        for (int size: new int[] {1000, 10000, 50000}) {
+            lookup(size, true);
+        }
+    }
+
+    private void lookup(int size, boolean benchmark) throws Exception {
+        final Random random = new Random(size);
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = 48 + (6 * random.nextDouble());
+            longitudes[i] = 9 + (10 * random.nextDouble());
+        }
+        final long[] sortedCells = new long[size];
+        final int[] sortedRows = new int[size];
+        Long[][] cellsAndRows = new Long[size][];
+        for (int i = 0; i < size; i++) {
+            cellsAndRows[i] = new Long[] {GeoCell.getCell(latitudes[i], longitudes[i]), (long) i};
+        }
+        Arrays.sort(cellsAndRows, new Comparator<Long[]>() {
+            @Override
+            public int compare(Long[] first, Long[] second) {
+                return first[0].compareTo(second[0]);
+            }
+        });
+        for (int i = 0; i < size; i++) {
+            sortedCells[i] = cellsAndRows[i][0];
+            sortedRows[i] = cellsAndRows[i][1].intValue();
+        }
+        final double[][] queries = new double[64][];
+        for (int i = 0; i < queries.length; i++) {
+            int row = random.nextInt(size);
+            queries[i] = (i % 2 == 0)
+                    ? new double[] {latitudes[row] + 0.00003, longitudes[row] - 0.00003}
+                    : new double[] {48 + (6 * random.nextDouble()), 9 + (10 * random.nextDouble())};
+        }
+        for (double[] query: queries) {
+            assertEquals(scan(latitudes, longitudes, query[0], query[1]),
+                    indexLookup(sortedCells, sortedRows, latitudes, longitudes, query[0], query[1]));
+        }
+        if (!benchmark) {
+            return;
+        }
+
+        MicroBenchmark.Result scanResult = MicroBenchmark.measure("Geocoding cache scan, rows=" + size, 1, 5,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        for (double[] query: queries) {
+                            scan(latitudes, longitudes, query[0], query[1]);
+                        }
+                    }
+                });
+        MicroBenchmark.Result indexResult = MicroBenchmark.measure("Geocoding cache cell index, rows=" + size, 1, 5,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        for (double[] query: queries) {
+                            indexLookup(sortedCells, sortedRows, latitudes, longitudes, query[0], query[1]);
+                        }
+                    }
+                });
+        assertTrue(scanResult + " / " + indexResult, indexResult.nanosPerOperation < scanResult.nanosPerOperation);
+    }
+
+    private static int scan(double[] latitudes, double[] longitudes, double latitude, double longitude) {
+        int nearest = -1;
+        double nearestDistance = LOOKUP_RADIUS_IN_METERS;
+        for (int i = 0; i < latitudes.length; i++) {
+            double distance = GeoCell.distanceInMeters(latitude, longitude, latitudes[i], longitudes[i]);
+            if (isNearer(distance, i, nearestDistance, nearest)) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private static int indexLookup(long[] sortedCells,
+                                   int[] sortedRows,
+                                   double[] latitudes,
+                                   double[] longitudes,
+                                   double latitude,
+                                   double longitude) {
+        int nearest = -1;
+        double nearestDistance = LOOKUP_RADIUS_IN_METERS;
+        for (long cell: GeoCell.getCellsInRadius(latitude, longitude, nearestDistance)) {
+            int position = Arrays.binarySearch(sortedCells, cell);
+            if (position < 0) {
+                continue;
+            }
+            while ((position > 0) && (sortedCells[position - 1] == cell)) {
+                position--;
+            }
+            for (; (position < sortedCells.length) && (sortedCells[position] == cell); position++) {
+                int row = sortedRows[position];
+                double distance = GeoCell.distanceInMeters(latitude, longitude, latitudes[row], longitudes[row]);
+                if (isNearer(distance, row, nearestDistance, nearest)) {
+                    nearestDistance = distance;
+                    nearest = row;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private static boolean isNearer(double distance, int row, double nearestDistance, int nearest) {
+        if (distance != nearestDistance) {
+            return distance < nearestDistance;
+        }
+        return (nearest == -1) || (row < nearest);
+    }
+}
@@ -0,0 +1,300 @@
+package org.thosp.yourlocalweather.model;
+
+import org.junit.Test;
+import org.thosp.yourlocalweather.MicroBenchmark;
+import org.thosp.yourlocalweather.WeatherJSONStreamParser;
+import org.thosp.yourlocalweather.utils.ForecastUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class WeatherBinaryCodecTest {
+
+    private static final double DELTA = 0.0005;
+
+    @Test
+    public void weatherForecastRoundTrip() throws Exception {
+        //given
+        CompleteWeatherForecast forecast = WeatherJSONStreamParser.getWeatherForecast(
+                MicroBenchmark.readResource("owm/forecast.json"));
+
+        //when
+        byte[] encoded = WeatherBinaryCodec.encodeCompleteWeatherForecast(forecast);
+        CompleteWeatherForecast result = WeatherBinaryCodec.decodeCompleteWeatherForecast(encoded);
+
+        //then
+        assertTrue(WeatherBinaryCodec.isCompleteWeatherForecast(encoded));
+        assertFalse(WeatherBinaryCodec.isWeather(encoded));
+        assertSameForecasts(forecast, result);
+        assertTrue("Encoded size " + encoded.length, encoded.length < 40 * 32);
+    }
+
+    @Test
+    public void longWeatherForecastRoundTrip() throws Exception {
+        //given
+        CompleteWeatherForecast forecast = WeatherJSONStreamParser.getLongWeatherForecast(
+                MicroBenchmark.readResource("owm/forecast_daily.json"));
+
+        //when
+        CompleteWeatherForecast result = WeatherBinaryCodec.decodeCompleteWeatherForecast(
+                WeatherBinaryCodec.encodeCompleteWeatherForecast(forecast));
+
+        //then
+        assertSameForecasts(forecast, result);
+    }
+
+    @Test
+    public void valuesAreQuantizedToThousandths() throws Exception {
+        //given
+        DetailedWeatherForecast detailedWeatherForecast = new DetailedWeatherForecast();
+        detailedWeatherForecast.setDateTime(1577523600);
+        detailedWeatherForecast.setTemperature(-12.34567);
+        detailedWeatherForecast.setRain(0.0625);
+        detailedWeatherForecast.addWeatherCondition(500, null, "light rain");
+        CompleteWeatherForecast forecast = new CompleteWeatherForecast();
+        forecast.addDetailedWeatherForecast(detailedWeatherForecast);
+
+        //when
+        DetailedWeatherForecast result = WeatherBinaryCodec.decodeCompleteWeatherForecast(
+                WeatherBinaryCodec.encodeCompleteWeatherForecast(forecast)).getWeatherForecastList().get(0);
+
+        //then
+        assertEquals(-12.346, result.getTemperature(), 0);
+        assertEquals(0.063, result.getRain(), 0);
+        assertNull(result.getFirstWeatherCondition().getIcon());
+        assertEquals("light rain", result.getFirstWeatherCondition().getDescription());
+    }
+
+    @Test
+    public void weatherRoundTrip() throws Exception {
+        //given
+        Weather weather = new Weather();
+        weather.setTemperature(-3.75f);
+        weather.setLon(13.404954f);
+        weather.setLat(52.520008f);
+        weather.setWindSpeed(4.1f);
+        weather.setWindDirection(230f);
+        weather.setPressure(1012.5f);
+        weather.setHumidity(81);
+        weather.setClouds(90);
+        weather.setSunrise(1577516800);
+        weather.setSunset(1577545800);
+        weather.addCurrentWeather(804, "Überwiegend bewölkt", "04n");
+
+        //when
+        byte[] encoded = WeatherBinaryCodec.encodeWeather(weather);
+        Weather result = WeatherBinaryCodec.decodeWeather(encoded);
+
+        //then
+        assertTrue(WeatherBinaryCodec.isWeather(encoded));
+        assertEquals(weather.getTemperature(), result.getTemperature(), 0);
+        assertEquals(weather.getLon(), result.getLon(), 0);
+        assertEquals(weather.getLat(), result.getLat(), 0);
+        assertEquals(weather.getWindSpeed(), result.getWindSpeed(), 0);
+        assertEquals(weather.getWindDirection(), result.getWindDirection(), 0);
+        assertEquals(weather.getPressure(), result.getPressure(), 0);
+        assertEquals(weather.getHumidity(), result.getHumidity());
+        assertEquals(weather.getClouds(), result.getClouds());
+        assertEquals(weather.getSunrise(), result.getSunrise());
+        assertEquals(weather.getSunset(), result.getSunset());
+        assertEquals(1, result.getCurrentWeathers().size());
+        assertEquals(Integer.valueOf(804), result.getCurrentWeathers().get(0).getWeatherId());
+        assertEquals("Überwiegend bewölkt", result.getCurrentWeathers().get(0).getDescription());
+        assertEquals("04n", result.getCurrentWeathers().get(0).getIdIcon());
+    }
+
+    @Test
+    public void missingWeatherIdsRoundTrip() throws Exception {
+        //given
+        Weather weather = new Weather();
+        weather.addCurrentWeather(null, "clear sky", "01d");
+        DetailedWeatherForecast detailedWeatherForecast = new DetailedWeatherForecast();
+        detailedWeatherForecast.setDateTime(1577523600);
+        detailedWeatherForecast.addWeatherCondition(null, "01d", "clear sky");
+        detailedWeatherForecast.addWeatherCondition(500, "10d", "light rain");
+        CompleteWeatherForecast forecast = new CompleteWeatherForecast();
+        forecast.addDetailedWeatherForecast(detailedWeatherForecast);
+
+        //when
+        Weather weatherResult = WeatherBinaryCodec.decodeWeather(WeatherBinaryCodec.encodeWeather(weather));
+        List<WeatherCondition> weatherConditions = WeatherBinaryCodec.decodeCompleteWeatherForecast(
+                WeatherBinaryCodec.encodeCompleteWeatherForecast(forecast)).getWeatherForecastList().get(0).getWeatherConditions();
+
+        //then
+        assertNull(weatherResult.getCurrentWeathers().get(0).getWeatherId());
+        assertEquals("clear sky", weatherResult.getCurrentWeathers().get(0).getDescription());
+        assertEquals(2, weatherConditions.size());
+        assertNull(weatherConditions.get(0).getWeatherId());
+        assertEquals(Integer.valueOf(500), weatherConditions.get(1).getWeatherId());
+    }
+
+    @Test
+    public void weatherConditionsRoundTrip() throws Exception {
+        //given
+        DetailedWeatherForecast detailedWeatherForecast = new DetailedWeatherForecast();
+        detailedWeatherForecast.addWeatherCondition(500, "10d", "light rain");
+        detailedWeatherForecast.addWeatherCondition(null, null, "mist");
+        DetailedWeatherForecast result = new DetailedWeatherForecast();
+
+        //when
+        byte[] encoded = WeatherBinaryCodec.encodeWeatherConditions(detailedWeatherForecast.getWeatherConditions());
+        WeatherBinaryCodec.decodeWeatherConditions(encoded, result);
+
+        //then
+        List<WeatherCondition> weatherConditions = result.getWeatherConditions();
+        assertFalse(WeatherBinaryCodec.isCompleteWeatherForecast(encoded));
+        assertEquals(2, weatherConditions.size());
+        assertEquals(Integer.valueOf(500), weatherConditions.get(0).getWeatherId());
+        assertEquals("10d", weatherConditions.get(0).getIcon());
+        assertEquals("light rain", weatherConditions.get(0).getDescription());
+        assertNull(weatherConditions.get(1).getWeatherId());
+        assertNull(weatherConditions.get(1).getIcon());
+        assertEquals("mist", weatherConditions.get(1).getDescription());
+    }
+
+    @Test
+    public void firstVersionBlobIsDecoded() throws Exception {
+        //given a weather of version 1 with zero values and the condition 800 "a" without icon
+        byte[] encoded = {'Y', 'W', 'C', 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, (byte) 0xC0, 0x0C, 2, 'a', 0};
+
+        //when
+        Weather result = WeatherBinaryCodec.decodeWeather(encoded);
+
+        //then
+        assertEquals(1, result.getCurrentWeathers().size());
+        assertEquals(Integer.valueOf(800), result.getCurrentWeathers().get(0).getWeatherId());
+        assertEquals("a", result.getCurrentWeathers().get(0).getDescription());
+        assertNull(result.getCurrentWeathers().get(0).getIdIcon());
+    }
+
+    @Test
+    public void parcelBlobsAreNotDetectedAsEncoded() throws Exception {
+        //given typed list size of a marshalled forecast and a marshalled float temperature
+        byte[] parcelForecast = {40, 0, 0, 0, 16, 0, 0, 0};
+        byte[] parcelWeather = {0, -128, -120, 67, 0, 0, 0, 0};
+
+        //then
+        assertFalse(WeatherBinaryCodec.isCompleteWeatherForecast(parcelForecast));
+        assertFalse(WeatherBinaryCodec.isWeather(parcelWeather));
+        assertFalse(WeatherBinaryCodec.isWeather(new byte[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedBlobIsRejected() throws Exception {
+        //given
+        CompleteWeatherForecast forecast = WeatherJSONStreamParser.getWeatherForecast(
+                MicroBenchmark.readResource("owm/forecast.json"));
+        byte[] encoded = WeatherBinaryCodec.encodeCompleteWeatherForecast(forecast);
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+        //when
+        WeatherBinaryCodec.decodeCompleteWeatherForecast(truncated);
+    }
+
+    @Test
+    public void weatherForDaysRoundTrip() throws Exception {
+        //given
+        CompleteWeatherForecast forecast = WeatherJSONStreamParser.getWeatherForecast(
+                MicroBenchmark.readResource("owm/forecast.json"));
+        Set<ForecastUtil.WeatherForecastPerDay> weatherForDays = ForecastUtil.calculateWeatherForDays(forecast);
+
+        //when
+        Set<ForecastUtil.WeatherForecastPerDay> result = WeatherBinaryCodec.decodeWeatherForDays(
+                WeatherBinaryCodec.encodeWeatherForDays(weatherForDays, 1, "Europe/Berlin"), 1, "Europe/Berlin");
+
+        //then
+        assertFalse(weatherForDays.isEmpty());
+        assertEquals(weatherForDays.size(), result.size());
+        Map<Integer, ForecastUtil.WeatherForecastPerDay> resultByIndex = new HashMap<>();
+        for (ForecastUtil.WeatherForecastPerDay resultDay: result) {
+            resultByIndex.put(resultDay.dayIndex, resultDay);
+        }
+        for (ForecastUtil.WeatherForecastPerDay expectedDay: weatherForDays) {
+            ForecastUtil.WeatherForecastPerDay resultDay = resultByIndex.get(expectedDay.dayIndex);
+            assertEquals(expectedDay.dayInYear, resultDay.dayInYear);
+            assertEquals(expectedDay.year, resultDay.year);
+            assertEquals(expectedDay.iconId, resultDay.iconId);
+            assertEquals(expectedDay.weatherIds.mainWeatherId, resultDay.weatherIds.mainWeatherId);
+            assertEquals(expectedDay.weatherIds.warningWeatherId, resultDay.weatherIds.warningWeatherId);
+            assertEquals(expectedDay.weatherIds.mainWeatherDescriptionsFromOwm, resultDay.weatherIds.mainWeatherDescriptionsFromOwm);
+            assertEquals(expectedDay.weatherMaxMinForDay.dayOfYear, resultDay.weatherMaxMinForDay.dayOfYear);
+            assertEquals(expectedDay.weatherMaxMinForDay.maxTemp, resultDay.weatherMaxMinForDay.maxTemp, 0);
+            assertEquals(expectedDay.weatherMaxMinForDay.minTemp, resultDay.weatherMaxMinForDay.minTemp, 0);
+            assertEquals(expectedDay.weatherMaxMinForDay.maxRain, resultDay.weatherMaxMinForDay.maxRain, 0);
+            assertEquals(expectedDay.weatherMaxMinForDay.maxRainTime, resultDay.weatherMaxMinForDay.maxRainTime);
+            assertEquals(expectedDay.weatherMaxMinForDay.windDegree, resultDay.weatherMaxMinForDay.windDegree, 0);
+        }
+    }
+
+    @Test
+    public void staleWeatherForDaysAreNotDecoded() throws Exception {
+        //given
+        CompleteWeatherForecast forecast = WeatherJSONStreamParser.getWeatherForecast(
+                MicroBenchmark.readResource("owm/forecast.json"));
+        byte[] encoded = WeatherBinaryCodec.encodeWeatherForDays(
+                ForecastUtil.calculateWeatherForDays(forecast), 1, "Europe/Berlin");
+
+        //then
+        assertNull(WeatherBinaryCodec.decodeWeatherForDays(encoded, 2, "Europe/Berlin"));
+        assertNull(WeatherBinaryCodec.decodeWeatherForDays(encoded, 1, "America/New_York"));
+        assertNull(WeatherBinaryCodec.decodeWeatherForDays(null, 1, "Europe/Berlin"));
+        assertNull(WeatherBinaryCodec.decodeWeatherForDays(
+                WeatherBinaryCodec.encodeCompleteWeatherForecast(forecast), 1, "Europe/Berlin"));
+    }
+
+    @Test
+    public void benchmarkDecode() throws Exception {
+        MicroBenchmark.assumeEnabled();
+        final byte[] response = MicroBenchmark.readResource("owm/forecast.json");
+        final byte[] encoded = WeatherBinaryCodec.encodeCompleteWeatherForecast(
+                WeatherJSONStreamParser.getWeatherForecast(response));
+
+        MicroBenchmark.Result parseResult = MicroBenchmark.measure("WeatherJSONStreamParser.getWeatherForecast", 200, 2000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        WeatherJSONStreamParser.getWeatherForecast(response);
+                    }
+                });
+        MicroBenchmark.Result decodeResult = MicroBenchmark.measure("WeatherBinaryCodec.decodeCompleteWeatherForecast", 200, 2000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        WeatherBinaryCodec.decodeCompleteWeatherForecast(encoded);
+                    }
+                });
+
+        assertTrue(parseResult + " / " + decodeResult, decodeResult.nanosPerOperation < parseResult.nanosPerOperation);
+    }
+
+    private void assertSameForecasts(CompleteWeatherForecast expected, CompleteWeatherForecast result) {
+        List<DetailedWeatherForecast> expectedList = expected.getWeatherForecastList();
+        List<DetailedWeatherForecast> resultList = result.getWeatherForecastList();
+        assertEquals(expectedList.size(), resultList.size());
+        for (int i = 0; i < expectedList.size(); i++) {
+            DetailedWeatherForecast expectedItem = expectedList.get(i);
+            DetailedWeatherForecast resultItem = resultList.get(i);
+            assertEquals(expectedItem.getDateTime(), resultItem.getDateTime());
+            assertEquals(expectedItem.getTemperature(), resultItem.getTemperature(), DELTA);
+            assertEquals(expectedItem.getTemperatureMin(), resultItem.getTemperatureMin(), DELTA);
+            assertEquals(expectedItem.getTemperatureMax(), resultItem.getTemperatureMax(), DELTA);
+            assertEquals(expectedItem.getPressure(), resultItem.getPressure(), DELTA);
+            assertEquals(expectedItem.getHumidity(), resultItem.getHumidity());
+            assertEquals(expectedItem.getWindSpeed(), resultItem.getWindSpeed(), DELTA);
+            assertEquals(expectedItem.getWindDegree(), resultItem.getWindDegree(), DELTA);
+            assertEquals(expectedItem.getCloudiness(), resultItem.getCloudiness());
+            assertEquals(expectedItem.getRain(), resultItem.getRain(), DELTA);
+            assertEquals(expectedItem.getSnow(), resultItem.getSnow(), DELTA);
+            WeatherCondition expectedCondition = expectedItem.getFirstWeatherCondition();
+            WeatherCondition resultCondition = resultItem.getFirstWeatherCondition();
+            assertEquals(expectedCondition.getWeatherId(), resultCondition.getWeatherId());
+            assertEquals(expectedCondition.getIcon(), resultCondition.getIcon());
+            assertEquals(expectedCondition.getDescription(), resultCondition.getDescription());
+        }
+    }
+}
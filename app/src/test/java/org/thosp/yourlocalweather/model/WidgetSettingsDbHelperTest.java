@@ -0,0 +1,255 @@
+package org.thosp.yourlocalweather.model;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class WidgetSettingsDbHelperTest {
+
+    private static final int WIDGET_ID = 7;
+    private static final int OTHER_WIDGET_ID = 8;
+
+    private MockedConstruction<ContentValues> contentValuesConstruction;
+    private FakeDatabase database;
+
+    @Before
+    public void setup() {
+        final Map<Object, Map<String, Object>> contentValues = new IdentityHashMap<>();
+        contentValuesConstruction = mockConstruction(ContentValues.class, withSettings().defaultAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                Map<String, Object> values = contentValues.get(invocation.getMock());
+                if (values == null) {
+                    values = new HashMap<>();
+                    contentValues.put(invocation.getMock(), values);
+                }
+                if ("put".equals(invocation.getMethod().getName())) {
+                    values.put((String) invocation.getArgument(0), invocation.getArgument(1));
+                    return null;
+                }
+                if ("valueSet".equals(invocation.getMethod().getName())) {
+                    return values.entrySet();
+                }
+                return null;
+            }
+        }));
+        database = new FakeDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        contentValuesConstruction.close();
+    }
+
+    @Test
+    public void savedParamsAreReloadedFromDatabase() {
+        //given
+        WidgetSettingsDbHelper widgetSettingsDbHelper = database.createHelper();
+        widgetSettingsDbHelper.saveParamLong(WIDGET_ID, "locationId", 3);
+        widgetSettingsDbHelper.saveParamString(WIDGET_ID, "forecastDaysCount", "5");
+        widgetSettingsDbHelper.saveParamBoolean(WIDGET_ID, "combinedGraphShowLegend", false);
+        widgetSettingsDbHelper.saveParamLong(WIDGET_ID, "locationId", 4);
+
+        //when
+        WidgetSettingsDbHelper.WidgetParams reloadedParams = database.createHelper().getAllParams(WIDGET_ID);
+
+        //then the second save of locationId has updated its row
+        assertEquals(3, database.rows.size());
+        assertEquals(Long.valueOf(4), reloadedParams.getLong("locationId"));
+        assertEquals("5", reloadedParams.getString("forecastDaysCount"));
+        assertEquals(Boolean.FALSE, reloadedParams.getBoolean("combinedGraphShowLegend"));
+        assertEquals(Long.valueOf(4), widgetSettingsDbHelper.getParamLong(WIDGET_ID, "locationId"));
+    }
+
+    @Test
+    public void paramsNotStoredAreNotVisible() {
+        //given
+        WidgetSettingsDbHelper widgetSettingsDbHelper = database.createHelper();
+        widgetSettingsDbHelper.saveParamLong(WIDGET_ID, "locationId", 3);
+        long version = widgetSettingsDbHelper.getVersion();
+        database.failInserts = true;
+
+        //when
+        widgetSettingsDbHelper.saveParamLong(WIDGET_ID, "locationId", 5);
+        widgetSettingsDbHelper.saveParamString(OTHER_WIDGET_ID, "forecastDaysCount", "5");
+
+        //then
+        assertEquals(Long.valueOf(5), widgetSettingsDbHelper.getParamLong(WIDGET_ID, "locationId"));
+        assertNull(widgetSettingsDbHelper.getParamString(OTHER_WIDGET_ID, "forecastDaysCount"));
+        assertFalse(widgetSettingsDbHelper.getAllParams(OTHER_WIDGET_ID).contains("forecastDaysCount"));
+        assertNull(database.createHelper().getParamString(OTHER_WIDGET_ID, "forecastDaysCount"));
+        assertEquals(version + 1, widgetSettingsDbHelper.getVersion());
+    }
+
+    @Test
+    public void deletedWidgetHasNoParams() {
+        //given
+        WidgetSettingsDbHelper widgetSettingsDbHelper = database.createHelper();
+        widgetSettingsDbHelper.saveParamLong(WIDGET_ID, "locationId", 3);
+        widgetSettingsDbHelper.saveParamLong(OTHER_WIDGET_ID, "locationId", 4);
+
+        //when
+        widgetSettingsDbHelper.deleteRecordFromTable(WIDGET_ID);
+
+        //then
+        assertNull(widgetSettingsDbHelper.getParamLong(WIDGET_ID, "locationId"));
+        assertNull(database.createHelper().getParamLong(WIDGET_ID, "locationId"));
+        assertEquals(Long.valueOf(4), database.createHelper().getParamLong(OTHER_WIDGET_ID, "locationId"));
+    }
+
+    /**
+     * Widget settings table kept in memory. Rows changed in a transaction are kept only when the transaction
+     * is marked successful, inserts return -1 while failInserts is set, like SQLiteDatabase.insert on errors.
+     */
+    private static class FakeDatabase {
+        private List<Map<String, Object>> rows = new ArrayList<>();
+        private List<Map<String, Object>> rowsBeforeTransaction;
+        private boolean transactionSuccessful;
+        private boolean failInserts;
+        private long nextId = 1;
+
+        WidgetSettingsDbHelper createHelper() {
+            SQLiteDatabase db = mock(SQLiteDatabase.class, new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) {
+                    return FakeDatabase.this.answer(invocation);
+                }
+            });
+            WidgetSettingsDbHelper widgetSettingsDbHelper = mock(WidgetSettingsDbHelper.class, CALLS_REAL_METHODS);
+            doReturn(db).when(widgetSettingsDbHelper).getWritableDatabase();
+            doReturn(db).when(widgetSettingsDbHelper).getReadableDatabase();
+            return widgetSettingsDbHelper;
+        }
+
+        private Object answer(InvocationOnMock invocation) {
+            switch (invocation.getMethod().getName()) {
+                case "beginTransaction":
+                    rowsBeforeTransaction = copy(rows);
+                    transactionSuccessful = false;
+                    return null;
+                case "setTransactionSuccessful":
+                    transactionSuccessful = true;
+                    return null;
+                case "endTransaction":
+                    if (!transactionSuccessful) {
+                        rows = rowsBeforeTransaction;
+                    }
+                    rowsBeforeTransaction = null;
+                    return null;
+                case "update":
+                    return update(getValues(invocation.getArgument(1)), (String[]) invocation.getArgument(3));
+                case "insert":
+                    return insert(getValues(invocation.getArgument(2)));
+                case "delete":
+                    return delete((String[]) invocation.getArgument(2));
+                case "query":
+                    return query((String[]) invocation.getArgument(1));
+                default:
+                    throw new UnsupportedOperationException(invocation.getMethod().getName());
+            }
+        }
+
+        private int update(Map<String, Object> values, String[] whereArgs) {
+            int updatedRows = 0;
+            for (Map<String, Object> row: rows) {
+                if (whereArgs[0].equals(String.valueOf(row.get(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID)))
+                        && whereArgs[1].equals(row.get(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_PARAM_NAME))) {
+                    row.putAll(values);
+                    updatedRows++;
+                }
+            }
+            return updatedRows;
+        }
+
+        private long insert(Map<String, Object> values) {
+            if (failInserts) {
+                return -1;
+            }
+            Map<String, Object> row = new HashMap<>(values);
+            row.put(WidgetSettingsContract.WidgetSettings._ID, nextId);
+            rows.add(row);
+            return nextId++;
+        }
+
+        private int delete(String[] whereArgs) {
+            List<Map<String, Object>> remainingRows = new ArrayList<>();
+            for (Map<String, Object> row: rows) {
+                if (!whereArgs[0].equals(String.valueOf(row.get(WidgetSettingsContract.WidgetSettings.COLUMN_NAME_WIDGET_ID)))) {
+                    remainingRows.add(row);
+                }
+            }
+            int deletedRows = rows.size() - remainingRows.size();
+            rows = remainingRows;
+            return deletedRows;
+        }
+
+        private Cursor query(final String[] columns) {
+            final List<Map<String, Object>> result = copy(rows);
+            final int[] position = {-1};
+            return mock(Cursor.class, new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) {
+                    switch (invocation.getMethod().getName()) {
+                        case "getColumnIndexOrThrow":
+                            return Arrays.asList(columns).indexOf((String) invocation.getArgument(0));
+                        case "moveToNext":
+                            position[0]++;
+                            return position[0] < result.size();
+                        case "isNull":
+                            return getValue(invocation) == null;
+                        case "getInt":
+                            return ((Number) getValue(invocation)).intValue();
+                        case "getLong":
+                            return ((Number) getValue(invocation)).longValue();
+                        case "getString":
+                            Object value = getValue(invocation);
+                            return (value != null) ? String.valueOf(value) : null;
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(invocation.getMethod().getName());
+                    }
+                }
+
+                private Object getValue(InvocationOnMock invocation) {
+                    return result.get(position[0]).get(columns[(Integer) invocation.getArgument(0)]);
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Map<String, Object> getValues(Object contentValues) {
+            Map<String, Object> values = new HashMap<>();
+            for (Object value: ((ContentValues) contentValues).valueSet()) {
+                Map.Entry<String, Object> entry = (Map.Entry<String, Object>) value;
+                values.put(entry.getKey(), entry.getValue());
+            }
+            return values;
+        }
+
+        private static List<Map<String, Object>> copy(List<Map<String, Object>> rows) {
+            List<Map<String, Object>> copiedRows = new ArrayList<>();
+            for (Map<String, Object> row: rows) {
+                copiedRows.add(new HashMap<>(row));
+            }
+            return copiedRows;
+        }
+    }
+}
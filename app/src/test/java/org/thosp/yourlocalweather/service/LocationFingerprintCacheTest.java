@@ -0,0 +1,135 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class LocationFingerprintCacheTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private static final List<String> HOME_WIFIS = Arrays.asList(
+            "00:11:22:33:44:01", "00:11:22:33:44:02", "00:11:22:33:44:03", "00:11:22:33:44:04", "00:11:22:33:44:05");
+
+    private File file;
+    private LocationFingerprintCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        file = File.createTempFile("fingerprints", "");
+        file.delete();
+        cache = new LocationFingerprintCache(null, file, DIRECT_EXECUTOR, 3);
+    }
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+    @Test
+    public void findsLocationOfSimilarWifiScan() throws Exception {
+        //given
+        cache.put(LocationFingerprintCache.createFingerprint(null, HOME_WIFIS), 52.52, 13.405, 20, 1000);
+
+        //when one network disappeared, another one appeared and BSSIDs are reported in upper case
+        List<String> scan = new ArrayList<>(Arrays.asList(
+                "00:11:22:33:44:01", "00:11:22:33:44:02", "00:11:22:33:44:03", "00:11:22:33:44:04", "00:AA:22:33:44:09"));
+        scan.set(0, scan.get(0).toUpperCase());
+        LocationFingerprintCache.CachedLocation location = cache.find(LocationFingerprintCache.createFingerprint(null, scan), 2000);
+
+        //then
+        assertNotNull(location);
+        assertEquals(52.52, location.getLatitude(), 0);
+        assertEquals(13.405, location.getLongitude(), 0);
+        assertEquals(20, location.getAccuracy(), 0);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void missesWhenWifiSetsDiffer() throws Exception {
+        //given
+        cache.put(LocationFingerprintCache.createFingerprint(null, HOME_WIFIS), 52.52, 13.405, 20, 1000);
+
+        //when
+        List<String> scan = Arrays.asList("00:11:22:33:44:01", "00:11:22:33:44:02", "00:AA:22:33:44:07", "00:AA:22:33:44:08");
+        LocationFingerprintCache.CachedLocation location = cache.find(LocationFingerprintCache.createFingerprint(null, scan), 2000);
+
+        //then
+        assertNull(location);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void matchesScanWithoutWifiByCells() throws Exception {
+        //given
+        List<Cell> cells = Arrays.asList(createCell(1001), createCell(1002));
+        cache.put(LocationFingerprintCache.createFingerprint(cells, null), 48.1, 11.5, 1500, 1000);
+        cache.put(LocationFingerprintCache.createFingerprint(cells, HOME_WIFIS), 52.52, 13.405, 20, 1000);
+
+        //when
+        LocationFingerprintCache.CachedLocation location = cache.find(LocationFingerprintCache.createFingerprint(
+                Arrays.asList(createCell(1002)), null), 2000);
+
+        //then Wi-Fi based location is not given to a scan located by a cell only
+        assertNotNull(location);
+        assertEquals(48.1, location.getLatitude(), 0);
+        assertNull(cache.find(LocationFingerprintCache.createFingerprint(Arrays.asList(createCell(1003)), null), 2000));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFingerprint() throws Exception {
+        //given
+        cache.put(LocationFingerprintCache.createFingerprint(null, HOME_WIFIS), 1, 1, 20, 1000);
+        cache.put(LocationFingerprintCache.createFingerprint(null, Arrays.asList("a", "b")), 2, 2, 20, 2000);
+        cache.put(LocationFingerprintCache.createFingerprint(null, Arrays.asList("c", "d")), 3, 3, 20, 3000);
+        cache.find(LocationFingerprintCache.createFingerprint(null, HOME_WIFIS), 4000);
+
+        //when
+        cache.put(LocationFingerprintCache.createFingerprint(null, Arrays.asList("e", "f")), 4, 4, 20, 5000);
+
+        //then
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.find(LocationFingerprintCache.createFingerprint(null, HOME_WIFIS), 6000));
+        assertNull(cache.find(LocationFingerprintCache.createFingerprint(null, Arrays.asList("a", "b")), 6000));
+    }
+
+    @Test
+    public void readsFingerprintsWrittenByPreviousInstance() throws Exception {
+        //given
+        cache.put(LocationFingerprintCache.createFingerprint(Arrays.asList(createCell(1001)), HOME_WIFIS), 52.52, 13.405, 20, 1000);
+
+        //when
+        LocationFingerprintCache reopenedCache = new LocationFingerprintCache(null, file, DIRECT_EXECUTOR, 3);
+
+        //then
+        LocationFingerprintCache.CachedLocation location = reopenedCache.find(
+                LocationFingerprintCache.createFingerprint(null, HOME_WIFIS), 2000);
+        assertNotNull(location);
+        assertEquals(13.405, location.getLongitude(), 0);
+    }
+
+    private static Cell createCell(int cellId) {
+        Cell cell = new Cell();
+        cell.mcc = 262;
+        cell.mnc = 1;
+        cell.area = 40100;
+        cell.cellId = cellId;
+        return cell;
+    }
+}
@@ -0,0 +1,157 @@
+package org.thosp.yourlocalweather.service;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.thosp.yourlocalweather.utils.JsonByteReader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MlsGeolocateJsonTest {
+
+    @Test
+    public void writesRequestAsJsonObjectTreeDid() throws Exception {
+        //given
+        MlsGeolocateJson geolocateJson = new MlsGeolocateJson();
+        JsonObjectRequest jsonObjectRequest = new JsonObjectRequest("gsm");
+        jsonObjectRequest.putCellTower("lte", 262, 1, 40100, 1001, -85, 12, 55);
+        jsonObjectRequest.putCellTower("gsm", 262, 1, 40100, 1002, -90, -1, 11);
+        jsonObjectRequest.putWifiAccessPoint("00:11:22:33:44:55", 2437, 6, -60);
+        jsonObjectRequest.putWifiAccessPoint("00:11:22:33:44:66", -1, -1, -70);
+
+        //when
+        geolocateJson.beginRequest("gsm");
+        geolocateJson.writeCellTower("lte", 262, 1, 40100, 1001, -85, 12, 55);
+        geolocateJson.writeCellTower("gsm", 262, 1, 40100, 1002, -90, -1, 11);
+        geolocateJson.beginWifiAccessPoints();
+        geolocateJson.writeWifiAccessPoint("00:11:22:33:44:55", 2437, 6, -60);
+        geolocateJson.writeWifiAccessPoint("00:11:22:33:44:66", -1, -1, -70);
+        byte[] request = geolocateJson.endRequest();
+
+        //then
+        assertArrayEquals(jsonObjectRequest.toBytes(), request);
+    }
+
+    @Test
+    public void reusesBufferForNextRequest() throws Exception {
+        //given
+        MlsGeolocateJson geolocateJson = new MlsGeolocateJson();
+        geolocateJson.beginRequest("lte");
+        geolocateJson.writeCellTower("lte", 262, 2, 100, 7, -100, -1, 40);
+        geolocateJson.beginWifiAccessPoints();
+        geolocateJson.endRequest();
+        JsonObjectRequest jsonObjectRequest = new JsonObjectRequest(null);
+        jsonObjectRequest.putWifiAccessPoint(null, 5180, 36, -75);
+        jsonObjectRequest.putWifiAccessPoint("aa:bb:cc:dd:ee:ff", 5180, 36, -80);
+
+        //when the radio type was removed and the access point has no BSSID
+        geolocateJson.beginRequest(null);
+        geolocateJson.beginWifiAccessPoints();
+        geolocateJson.writeWifiAccessPoint(null, 5180, 36, -75);
+        geolocateJson.writeWifiAccessPoint("aa:bb:cc:dd:ee:ff", 5180, 36, -80);
+        byte[] request = geolocateJson.endRequest();
+
+        //then
+        assertArrayEquals(jsonObjectRequest.toBytes(), request);
+    }
+
+    @Test
+    public void readsLocationOfResponse() throws Exception {
+        //given
+        byte[] response = ("{\"location\": {\"lat\": 52.5200066, \"lng\": 13.404954}, " +
+                "\"accuracy\": 25.5, \"fallback\": \"lacf\"}").getBytes(JsonByteReader.UTF_8);
+
+        //when
+        double[] location = MlsGeolocateJson.readLocation(response);
+
+        //then
+        assertEquals(52.5200066, location[0], 0);
+        assertEquals(13.404954, location[1], 0);
+        assertEquals(25.5, location[2], 0);
+    }
+
+    @Test(expected = JSONException.class)
+    public void failsWhenAccuracyIsMissing() throws Exception {
+        MlsGeolocateJson.readLocation("{\"location\":{\"lat\":1.5,\"lng\":2}}".getBytes(JsonByteReader.UTF_8));
+    }
+
+    /**
+     * Request built with JSONObject the way MozillaLocationService built it before.
+     */
+    private static class JsonObjectRequest {
+        private final JSONObject jsonObject = new OrderedJSONObject();
+        private final JSONArray cellTowers = new JSONArray();
+        private final JSONArray wifiAccessPoints = new JSONArray();
+
+        JsonObjectRequest(String radioType) throws JSONException {
+            jsonObject.put("radioType", radioType);
+        }
+
+        void putCellTower(String radioType,
+                          int mobileCountryCode,
+                          int mobileNetworkCode,
+                          int locationAreaCode,
+                          int cellId,
+                          int signalStrength,
+                          int psc,
+                          int asu) throws JSONException {
+            JSONObject cellTower = new OrderedJSONObject();
+            cellTower.put("radioType", radioType);
+            cellTower.put("mobileCountryCode", mobileCountryCode);
+            cellTower.put("mobileNetworkCode", mobileNetworkCode);
+            cellTower.put("locationAreaCode", locationAreaCode);
+            cellTower.put("cellId", cellId);
+            cellTower.put("signalStrength", signalStrength);
+            if (psc != -1)
+                cellTower.put("psc", psc);
+            cellTower.put("asu", asu);
+            cellTowers.put(cellTower);
+        }
+
+        void putWifiAccessPoint(String macAddress, int frequency, int channel, int signalStrength) throws JSONException {
+            JSONObject wifiAccessPoint = new OrderedJSONObject();
+            wifiAccessPoint.put("macAddress", macAddress);
+            if (frequency != -1) wifiAccessPoint.put("channel", channel);
+            if (frequency != -1)
+                wifiAccessPoint.put("frequency", frequency);
+            wifiAccessPoint.put("signalStrength", signalStrength);
+            wifiAccessPoints.put(wifiAccessPoint);
+        }
+
+        byte[] toBytes() throws JSONException {
+            jsonObject.put("cellTowers", cellTowers);
+            jsonObject.put("wifiAccessPoints", wifiAccessPoints);
+            jsonObject.put("fallbacks", new OrderedJSONObject().put("lacf", true).put("ipf", false));
+            return jsonObject.toString().getBytes(JsonByteReader.UTF_8);
+        }
+    }
+
+    /**
+     * JSONObject writing its keys in insertion order like the one of Android does,
+     * the org.json of the unit tests keeps them in a HashMap.
+     */
+    private static class OrderedJSONObject extends JSONObject {
+        private final Map<String, Object> orderedValues = new LinkedHashMap<>();
+
+        @Override
+        public JSONObject put(String key, Object value) throws JSONException {
+            super.put(key, value);
+            if (value != null) {
+                orderedValues.put(key, value);
+            } else {
+                orderedValues.remove(key);
+            }
+            return this;
+        }
+
+        @Override
+        protected Set<Map.Entry<String, Object>> entrySet() {
+            return orderedValues.entrySet();
+        }
+    }
+}
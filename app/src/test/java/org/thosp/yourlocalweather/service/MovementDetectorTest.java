@@ -0,0 +1,147 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MovementDetectorTest {
+
+    private static final long START_TIME_IN_MS = 1600000000000L;
+    private static final long SAMPLE_PERIOD_IN_NS = 200000000L;
+    private static final float ACCELEROMETER_RESOLUTION = 0.0096f;
+
+    @Test
+    public void deskTraceNeverLooksUpLastUpdate() throws Exception {
+        //given 30 minutes lying on a desk, last update with address an hour ago
+        CountingTimeSource timeSource = new CountingTimeSource(START_TIME_IN_MS - 3600000);
+        AccelerometerMovementDetector detector = createAccelerometerDetector(timeSource);
+
+        //when
+        int updates = replay(detector, timeSource, createTrace(30 * 60 * 5, 0.02f, 0), true);
+
+        //then
+        assertEquals(0, updates);
+        assertEquals(0, timeSource.lookups);
+    }
+
+    @Test
+    public void walkingTraceUpdatesOutdatedLocationAndAgainAfterFastTimeSpan() throws Exception {
+        //given 10 minutes of walking, last update 20 minutes ago
+        CountingTimeSource timeSource = new CountingTimeSource(START_TIME_IN_MS - 20 * 60000);
+        AccelerometerMovementDetector detector = createAccelerometerDetector(timeSource);
+
+        //when
+        int updates = replay(detector, timeSource, createTrace(10 * 60 * 5, 0.02f, 3f), true);
+
+        //then the first update right away, the second over the fast limit 5 minutes later, a lookup per 10 s
+        assertEquals(2, updates);
+        assertTrue("Looked up " + timeSource.lookups + " times", timeSource.lookups <= 62);
+    }
+
+    @Test
+    public void walkingTraceLooksUpRecentUpdateAtMostEveryTenSeconds() throws Exception {
+        //given 2 minutes of walking, last update a minute ago
+        CountingTimeSource timeSource = new CountingTimeSource(START_TIME_IN_MS - 60000);
+        AccelerometerMovementDetector detector = createAccelerometerDetector(timeSource);
+
+        //when
+        int updates = replay(detector, timeSource, createTrace(2 * 60 * 5, 0.02f, 3f), false);
+
+        //then
+        assertEquals(0, updates);
+        assertTrue("Looked up " + timeSource.lookups + " times", timeSource.lookups > 0);
+        assertTrue("Looked up " + timeSource.lookups + " times", timeSource.lookups <= 12);
+    }
+
+    @Test
+    public void gravityIsNoMovementAfterLocationUpdate() throws Exception {
+        //given a phone lying still without an address, the location updated 10 minutes ago and measured again
+        CountingTimeSource timeSource = new CountingTimeSource(START_TIME_IN_MS - 600000);
+        AccelerometerMovementDetector detector = createAccelerometerDetector(timeSource);
+        detector.clearMeasuredLength();
+
+        //when
+        int updates = replay(detector, timeSource, createTrace(60 * 5, 0, 0), false);
+
+        //then a filter starting from zero gravity counts the 9.81 m/s2 of gravity as movement and updates
+        assertEquals(0, updates);
+    }
+
+    @Test
+    public void significantMotionUpdatesWhenLastUpdateIsOlderThanFiveMinutes() throws Exception {
+        //given
+        float[][] trigger = {{1f}};
+        CountingTimeSource recentTimeSource = new CountingTimeSource(START_TIME_IN_MS - 120000);
+        CountingTimeSource outdatedTimeSource = new CountingTimeSource(START_TIME_IN_MS - 600000);
+
+        //when
+        int recentUpdates = replay(new SignificantMotionDetector(recentTimeSource), recentTimeSource, trigger, false);
+        int outdatedUpdates = replay(new SignificantMotionDetector(outdatedTimeSource), outdatedTimeSource, trigger, false);
+
+        //then
+        assertEquals(0, recentUpdates);
+        assertEquals(1, outdatedUpdates);
+    }
+
+    private static AccelerometerMovementDetector createAccelerometerDetector(CountingTimeSource timeSource) {
+        AccelerometerMovementDetector detector = new AccelerometerMovementDetector(timeSource);
+        detector.setSensorResolution(ACCELEROMETER_RESOLUTION);
+        return detector;
+    }
+
+    /**
+     * Replays the samples taken every 200 ms, the location is updated like SensorLocationUpdater does.
+     */
+    private static int replay(MovementDetector detector,
+                              CountingTimeSource timeSource,
+                              float[][] samples,
+                              boolean addressFound) {
+        int updates = 0;
+        for (int i = 0; i < samples.length; i++) {
+            long timestamp = 1000000000L + (i * SAMPLE_PERIOD_IN_NS);
+            long now = START_TIME_IN_MS + (i * SAMPLE_PERIOD_IN_NS / 1000000);
+            if (detector.onSensorChanged(timestamp, samples[i], now, addressFound)) {
+                assertNotNull(detector.getDecisionDescription());
+                updates++;
+                timeSource.lastLocationUpdateTime = now;
+                detector.clearMeasuredLength();
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Gravity along z with noise and a vertical swing of 2 steps per second of the given amplitude.
+     */
+    private static float[][] createTrace(int count, float noise, float stepAmplitude) {
+        Random random = new Random(42);
+        float[][] samples = new float[count][];
+        for (int i = 0; i < count; i++) {
+            double time = i * SAMPLE_PERIOD_IN_NS / 1000000000.0;
+            float swing = (float) (stepAmplitude * Math.sin(2 * Math.PI * 2.3 * time));
+            samples[i] = new float[] {
+                    (float) (random.nextGaussian() * noise),
+                    (float) (random.nextGaussian() * noise) + (swing / 3),
+                    9.81f + (float) (random.nextGaussian() * noise) + swing
+            };
+        }
+        return samples;
+    }
+
+    private static class CountingTimeSource implements MovementDetector.LocationUpdateTimeSource {
+        private long lastLocationUpdateTime;
+        private int lookups;
+
+        CountingTimeSource(long lastLocationUpdateTime) {
+            this.lastLocationUpdateTime = lastLocationUpdateTime;
+        }
+
+        @Override
+        public long getLastLocationUpdateTime() {
+            lookups++;
+            return lastLocationUpdateTime;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class OwmResponseCacheTest {
+
+    private static final String KEY = OwmResponseCache.getRequestKey(
+            "https://api.openweathermap.org/data/2.5/forecast", 52.52, 13.405, "metric", "de");
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private File directory;
+    private OwmResponseCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        directory = File.createTempFile("owm", "");
+        directory.delete();
+        cache = new OwmResponseCache(null, directory, DIRECT_EXECUTOR);
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void normalizesRequestKeyByRoundedCoordinates() throws Exception {
+        //when
+        String key = OwmResponseCache.getRequestKey("https://api.openweathermap.org/data/2.5/weather",
+                52.520008, -0.00001, "metric", "en");
+
+        //then
+        assertEquals("https://api.openweathermap.org/data/2.5/weather?lat=52.5200&lon=0.0000&units=metric&lang=en", key);
+        assertEquals(key, OwmResponseCache.getRequestKey("https://api.openweathermap.org/data/2.5/weather",
+                52.52004, 0.00004, "metric", "en"));
+        assertEquals("-13.4051", OwmResponseCache.roundCoordinate(-13.40506));
+    }
+
+    @Test
+    public void keepsStoredLocationsWhileBodyIsUnchanged() throws Exception {
+        //given
+        String bodyHash = cache.put(KEY, "\"etag1\"", null, "{\"cod\":\"200\"}".getBytes("UTF-8"));
+        cache.markStored(KEY, 1, bodyHash);
+
+        //when
+        String revalidatedBodyHash = cache.put(KEY, "\"etag2\"", "Mon, 18 Oct 2021 10:00:00 GMT", "{\"cod\":\"200\"}".getBytes("UTF-8"));
+
+        //then
+        assertEquals(bodyHash, revalidatedBodyHash);
+        assertTrue(cache.isStored(KEY, 1, revalidatedBodyHash));
+        assertFalse(cache.isStored(KEY, 2, revalidatedBodyHash));
+        assertEquals("\"etag2\"", cache.get(KEY).getETag());
+        assertEquals("Mon, 18 Oct 2021 10:00:00 GMT", cache.get(KEY).getLastModified());
+    }
+
+    @Test
+    public void forgetsStoredLocationsWhenBodyChanges() throws Exception {
+        //given
+        String oldBodyHash = cache.put(KEY, "\"etag1\"", null, "{\"temp\":1}".getBytes("UTF-8"));
+        cache.markStored(KEY, 1, oldBodyHash);
+
+        //when
+        String newBodyHash = cache.put(KEY, "\"etag2\"", null, "{\"temp\":2}".getBytes("UTF-8"));
+        cache.markStored(KEY, 2, oldBodyHash);
+
+        //then
+        assertNotEquals(oldBodyHash, newBodyHash);
+        assertFalse(cache.isStored(KEY, 1, newBodyHash));
+        assertFalse(cache.isStored(KEY, 2, newBodyHash));
+        assertArrayEquals("{\"temp\":2}".getBytes("UTF-8"), getBody(cache, KEY));
+    }
+
+    @Test
+    public void forgetsStoredBodyWhenLocationStoresOtherRequest() throws Exception {
+        //given the auto location moves from A to B and back to A, whose response did not change
+        String otherKey = OwmResponseCache.getRequestKey(
+                "https://api.openweathermap.org/data/2.5/forecast", 48.1374, 11.5755, "metric", "de");
+        String bodyHashOfA = cache.put(KEY, "\"etagA\"", null, "{\"temp\":1}".getBytes("UTF-8"));
+        cache.markStored(KEY, 0, bodyHashOfA);
+        String bodyHashOfB = cache.put(otherKey, "\"etagB\"", null, "{\"temp\":2}".getBytes("UTF-8"));
+        cache.markStored(otherKey, 0, bodyHashOfB);
+
+        //when
+        String revalidatedBodyHashOfA = cache.put(KEY, "\"etagA\"", null, "{\"temp\":1}".getBytes("UTF-8"));
+
+        //then the DB holds the weather of B, so A has to be stored again
+        assertEquals(bodyHashOfA, revalidatedBodyHashOfA);
+        assertFalse(cache.isStored(KEY, 0, revalidatedBodyHashOfA));
+        assertTrue(cache.isStored(otherKey, 0, bodyHashOfB));
+        assertFalse(new OwmResponseCache(null, directory, DIRECT_EXECUTOR).isStored(KEY, 0, bodyHashOfA));
+    }
+
+    @Test
+    public void keepsStoredBodiesOfEndpointsApart() throws Exception {
+        //given
+        String weatherKey = OwmResponseCache.getRequestKey(
+                "https://api.openweathermap.org/data/2.5/weather", 52.52, 13.405, "metric", "de");
+        String forecastBodyHash = cache.put(KEY, null, null, "{\"list\":[]}".getBytes("UTF-8"));
+        String weatherBodyHash = cache.put(weatherKey, null, null, "{\"temp\":1}".getBytes("UTF-8"));
+
+        //when
+        cache.markStored(KEY, 1, forecastBodyHash);
+        cache.markStored(weatherKey, 1, weatherBodyHash);
+
+        //then
+        assertTrue(cache.isStored(KEY, 1, forecastBodyHash));
+        assertTrue(cache.isStored(weatherKey, 1, weatherBodyHash));
+    }
+
+    @Test
+    public void readsEntriesWrittenByPreviousInstance() throws Exception {
+        //given
+        byte[] body = "{\"list\":[]}".getBytes("UTF-8");
+        String bodyHash = cache.put(KEY, null, "Mon, 18 Oct 2021 10:00:00 GMT", body);
+        cache.markStored(KEY, 7, bodyHash);
+
+        //when
+        OwmResponseCache reopenedCache = new OwmResponseCache(null, directory, DIRECT_EXECUTOR);
+
+        //then
+        assertNull(reopenedCache.get(KEY).getETag());
+        assertEquals("Mon, 18 Oct 2021 10:00:00 GMT", reopenedCache.get(KEY).getLastModified());
+        assertTrue(reopenedCache.isStored(KEY, 7, bodyHash));
+        assertArrayEquals(body, getBody(reopenedCache, KEY));
+    }
+
+    @Test
+    public void dropsEntryWhenBodyOnDiskDoesNotMatch() throws Exception {
+        //given
+        cache.put(KEY, "\"etag1\"", null, "{\"temp\":1}".getBytes("UTF-8"));
+        for (File file: directory.listFiles()) {
+            if (file.getName().endsWith(".body")) {
+                overwrite(file, "{\"temp\":".getBytes("UTF-8"));
+            }
+        }
+
+        //when
+        byte[] body = getBody(cache, KEY);
+
+        //then next request is sent without validators
+        assertNull(body);
+        assertNull(cache.get(KEY));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void sharesOnlyFreshResponses() throws Exception {
+        //given
+        byte[] body = "{\"temp\":1}".getBytes("UTF-8");
+        cache.put(KEY, "\"etag1\"", null, body);
+
+        //then
+        assertArrayEquals(body, getFreshBody(cache, KEY, 60000));
+        Thread.sleep(5);
+        assertNull(getFreshBody(cache, KEY, 1));
+        assertNotNull(cache.get(KEY));
+    }
+
+    @Test
+    public void readsBodyOnlyAfterItIsWritten() throws Exception {
+        //given
+        QueuedExecutor diskExecutor = new QueuedExecutor();
+        OwmResponseCache queuedCache = new OwmResponseCache(null, directory, diskExecutor);
+        byte[] body = "{\"temp\":1}".getBytes("UTF-8");
+        queuedCache.put(KEY, "\"etag1\"", null, body);
+        final byte[][] freshBody = new byte[1][];
+        queuedCache.getFreshBody(KEY, 60000, new OwmResponseCache.BodyCallback() {
+            @Override
+            public void onBody(byte[] body) {
+                freshBody[0] = body;
+            }
+        });
+
+        //when
+        diskExecutor.runAll();
+
+        //then the fresh entry is not dropped as its body was not on disk yet
+        assertArrayEquals(body, freshBody[0]);
+        assertNotNull(queuedCache.get(KEY));
+    }
+
+    @Test
+    public void sharesParsedResultOfSameBody() throws Exception {
+        //given
+        String bodyHash = cache.put(KEY, null, null, "{\"temp\":1}".getBytes("UTF-8"));
+        Object parsedResponse = new Object();
+        cache.putParsed(KEY, bodyHash, parsedResponse);
+
+        //when
+        String newBodyHash = cache.put(KEY, null, null, "{\"temp\":2}".getBytes("UTF-8"));
+
+        //then
+        assertSame(parsedResponse, cache.getParsed(KEY, bodyHash));
+        assertNull(cache.getParsed(KEY, newBodyHash));
+    }
+
+    private static byte[] getBody(OwmResponseCache cache, String key) {
+        final byte[][] body = new byte[1][];
+        cache.getBody(key, new OwmResponseCache.BodyCallback() {
+            @Override
+            public void onBody(byte[] cachedBody) {
+                body[0] = cachedBody;
+            }
+        });
+        return body[0];
+    }
+
+    private static byte[] getFreshBody(OwmResponseCache cache, String key, long maxAgeInMs) {
+        final byte[][] body = new byte[1][];
+        cache.getFreshBody(key, maxAgeInMs, new OwmResponseCache.BodyCallback() {
+            @Override
+            public void onBody(byte[] cachedBody) {
+                body[0] = cachedBody;
+            }
+        });
+        return body[0];
+    }
+
+    private static void overwrite(File file, byte[] content) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static class QueuedExecutor implements Executor {
+        private final Queue<Runnable> tasks = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.add(runnable);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.thosp.yourlocalweather.service;
+
+import org.thosp.yourlocalweather.MicroBenchmark;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Accelerometer trace of the test resources in sensors/, replayed into a MovementDetector the way
+ * SensorLocationUpdater feeds it: the location is updated and the measured length cleared on every decision
+ * to update. Lines hold the elapsed time in ms and x, y, z in m/s2, lines starting with # are comments.
+ * The shipped traces are synthetic, generated to resemble each situation rather than recorded on a device.
+ */
+public class SensorTrace {
+
+    public static final String[] REFERENCE_TRACES = {"walking", "driving", "desk", "pocket"};
+
+    static final long START_TIME_IN_MS = 1600000000000L;
+    private static final long BOOT_TIME_IN_NS = 3600000000000L;
+
+    private final String name;
+    private final long[] timestamps;
+    private final float[] values;
+    private final float[] event = new float[3];
+
+    private long lastLocationUpdateTime;
+    private int lookups;
+
+    private final MovementDetector.LocationUpdateTimeSource locationUpdateTimeSource =
+            new MovementDetector.LocationUpdateTimeSource() {
+        @Override
+        public long getLastLocationUpdateTime() {
+            lookups++;
+            return lastLocationUpdateTime;
+        }
+    };
+
+    SensorTrace(String name, long[] timestamps, float[] values) {
+        this.name = name;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public static SensorTrace load(String name) throws IOException {
+        String[] lines = new String(MicroBenchmark.readResource("sensors/" + name + ".txt"), Charset.forName("UTF-8"))
+                .split("\n");
+        long[] timestamps = new long[lines.length];
+        float[] values = new float[lines.length * 3];
+        int count = 0;
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(" ");
+            if (fields.length != 4) {
+                throw new IOException("Invalid line in trace " + name + ": " + line);
+            }
+            timestamps[count] = BOOT_TIME_IN_NS + (Long.parseLong(fields[0]) * 1000000);
+            values[count * 3] = Float.parseFloat(fields[1]);
+            values[(count * 3) + 1] = Float.parseFloat(fields[2]);
+            values[(count * 3) + 2] = Float.parseFloat(fields[3]);
+            count++;
+        }
+        long[] traceTimestamps = new long[count];
+        float[] traceValues = new float[count * 3];
+        System.arraycopy(timestamps, 0, traceTimestamps, 0, count);
+        System.arraycopy(values, 0, traceValues, 0, count * 3);
+        return new SensorTrace(name, traceTimestamps, traceValues);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Source of the last location update time of the replay, to create the detector with.
+     */
+    public MovementDetector.LocationUpdateTimeSource getLocationUpdateTimeSource() {
+        return locationUpdateTimeSource;
+    }
+
+    /**
+     * Number of lookups of the last location update time during the last replay.
+     */
+    public int getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Replays the whole trace and returns the number of location updates.
+     * @param lastLocationUpdateAgo time of the last location update before the start of the trace in ms
+     */
+    public int replay(MovementDetector detector, long lastLocationUpdateAgo, boolean addressFound) {
+        lastLocationUpdateTime = START_TIME_IN_MS - lastLocationUpdateAgo;
+        lookups = 0;
+        int updates = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            long now = START_TIME_IN_MS + ((timestamps[i] - timestamps[0]) / 1000000);
+            event[0] = values[i * 3];
+            event[1] = values[(i * 3) + 1];
+            event[2] = values[(i * 3) + 2];
+            if (detector.onSensorChanged(timestamps[i], event, now, addressFound)) {
+                updates++;
+                lastLocationUpdateTime = now;
+                detector.clearMeasuredLength();
+            }
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,79 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.Test;
+import org.thosp.yourlocalweather.MicroBenchmark;
+
+import static org.junit.Assert.*;
+
+public class SensorTraceReplayTest {
+
+    private static final long LAST_UPDATE_AGO = 20 * 60000;
+    private static final float ACCELEROMETER_RESOLUTION = 0.0096f;
+
+    @Test
+    public void stationaryTracesDoNotUpdateLocation() throws Exception {
+        //given
+        SensorTrace deskTrace = SensorTrace.load("desk");
+        SensorTrace pocketTrace = SensorTrace.load("pocket");
+
+        //when
+        int deskUpdatesWithAddress = deskTrace.replay(createDetector(deskTrace), LAST_UPDATE_AGO, true);
+        int deskUpdatesWithoutAddress = deskTrace.replay(createDetector(deskTrace), LAST_UPDATE_AGO, false);
+        int pocketUpdatesWithAddress = pocketTrace.replay(createDetector(pocketTrace), LAST_UPDATE_AGO, true);
+
+        //then, without an address, fidgeting in the pocket passes the low limit and updates on purpose
+        assertEquals(0, deskUpdatesWithAddress);
+        assertEquals(0, deskUpdatesWithoutAddress);
+        assertEquals(0, pocketUpdatesWithAddress);
+    }
+
+    @Test
+    public void movingTracesUpdateLocation() throws Exception {
+        for (String traceName : new String[] {"walking", "driving"}) {
+            //given
+            SensorTrace trace = SensorTrace.load(traceName);
+
+            //when
+            int updates = trace.replay(createDetector(trace), LAST_UPDATE_AGO, true);
+
+            //then
+            assertTrue(traceName + " updated " + updates + " times", updates >= 1);
+        }
+    }
+
+    @Test
+    public void benchmarkReferenceTraces() throws Exception {
+        MicroBenchmark.assumeEnabled();
+        for (String traceName : SensorTrace.REFERENCE_TRACES) {
+            final SensorTrace trace = SensorTrace.load(traceName);
+            final AccelerometerMovementDetector detector = createDetector(trace);
+            int updatesWithoutAddress = trace.replay(detector, LAST_UPDATE_AGO, false);
+            detector.reset();
+            int updates = trace.replay(detector, LAST_UPDATE_AGO, true);
+            int lookups = trace.getLookups();
+
+            MicroBenchmark.Result result = MicroBenchmark.measure("Replay of " + traceName, 50, 500,
+                    new MicroBenchmark.Operation() {
+                        @Override
+                        public void run() throws Exception {
+                            detector.reset();
+                            trace.replay(detector, LAST_UPDATE_AGO, true);
+                        }
+                    });
+            double eventsPerSecond = trace.size() * 1000000000.0 / result.nanosPerOperation;
+            double bytesPerEvent = result.bytesPerOperation / trace.size();
+            String summary = String.format(
+                    "%-10s %6d events %12.0f events/s %8.2f B/event %3d updates (%d without address) %4d lookups",
+                    traceName, trace.size(), eventsPerSecond, bytesPerEvent, updates, updatesWithoutAddress, lookups);
+            if (result.bytesPerOperation >= 0) {
+                assertTrue(summary, bytesPerEvent < 1);
+            }
+        }
+    }
+
+    private static AccelerometerMovementDetector createDetector(SensorTrace trace) {
+        AccelerometerMovementDetector detector = new AccelerometerMovementDetector(trace.getLocationUpdateTimeSource());
+        detector.setSensorResolution(ACCELEROMETER_RESOLUTION);
+        return detector;
+    }
+}
@@ -0,0 +1,108 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.thosp.yourlocalweather.service.UpdateWeatherService.START_CURRENT_WEATHER_UPDATE;
+import static org.thosp.yourlocalweather.service.UpdateWeatherService.START_WEATHER_FORECAST_UPDATE;
+
+public class WeatherRequestSchedulerTest {
+
+    @Test
+    public void handsOutDueRequestsBeforeDeferredOnes() throws Exception {
+        //given
+        long now = System.currentTimeMillis();
+        WeatherRequestScheduler scheduler = new WeatherRequestScheduler();
+        WeatherRequestDataHolder deferredRequest = new WeatherRequestDataHolder(1, null, START_CURRENT_WEATHER_UPDATE);
+        deferredRequest.setRetryTime(now + 60000);
+        scheduler.add(deferredRequest);
+        scheduler.add(new WeatherRequestDataHolder(2, null, START_CURRENT_WEATHER_UPDATE));
+
+        //when
+        boolean due = scheduler.moveDueRequestToHead(now);
+
+        //then
+        assertTrue(due);
+        assertEquals(2, scheduler.peek().getLocationId());
+        assertEquals(1, scheduler.count(START_CURRENT_WEATHER_UPDATE, START_WEATHER_FORECAST_UPDATE));
+        assertEquals(1, scheduler.pollAll(START_CURRENT_WEATHER_UPDATE).size());
+        assertFalse(scheduler.moveDueRequestToHead(now));
+        assertEquals(now + 60000, scheduler.getNextRequestTime());
+    }
+
+    @Test
+    public void forcedUpdateDoesNotWaitForRetry() throws Exception {
+        //given
+        WeatherRequestScheduler scheduler = new WeatherRequestScheduler();
+        WeatherRequestDataHolder deferredRequest = new WeatherRequestDataHolder(1, null, START_CURRENT_WEATHER_UPDATE);
+        deferredRequest.setRetryTime(System.currentTimeMillis() + 60000);
+        scheduler.add(deferredRequest);
+
+        //when
+        scheduler.add(new WeatherRequestDataHolder(1, null, true, START_CURRENT_WEATHER_UPDATE));
+
+        //then
+        assertTrue(scheduler.moveDueRequestToHead(System.currentTimeMillis()));
+        assertEquals(1, scheduler.size());
+    }
+
+    @Test
+    public void forcedUpdateIsNotMergedIntoRequestInProgress() throws Exception {
+        //given
+        WeatherRequestScheduler scheduler = new WeatherRequestScheduler();
+        scheduler.add(new WeatherRequestDataHolder(1, null, START_CURRENT_WEATHER_UPDATE));
+        WeatherRequestDataHolder requestInProgress = scheduler.startHeadRequest();
+
+        //when
+        boolean queued = scheduler.add(new WeatherRequestDataHolder(1, null, true, START_CURRENT_WEATHER_UPDATE));
+        WeatherRequestDataHolder finishedRequest = scheduler.poll();
+
+        //then
+        assertTrue(queued);
+        assertSame(requestInProgress, finishedRequest);
+        assertFalse(finishedRequest.isForceUpdate());
+        assertEquals(1, scheduler.size());
+        assertTrue(scheduler.peek().isForceUpdate());
+    }
+
+    @Test
+    public void forcedUpdateAddedWhileInProgressOverridesRetryOfRequeuedRequest() throws Exception {
+        //given
+        long now = System.currentTimeMillis();
+        WeatherRequestScheduler scheduler = new WeatherRequestScheduler();
+        scheduler.add(new WeatherRequestDataHolder(1, null, START_CURRENT_WEATHER_UPDATE));
+        scheduler.add(new WeatherRequestDataHolder(2, null, START_CURRENT_WEATHER_UPDATE));
+        WeatherRequestDataHolder requestInProgress = scheduler.startHeadRequest();
+        scheduler.add(new WeatherRequestDataHolder(1, null, true, START_CURRENT_WEATHER_UPDATE));
+
+        //when the request in progress fails and is deferred
+        requestInProgress.increaseAttempts();
+        requestInProgress.setRetryTime(now + 60000);
+        WeatherRequestDataHolder requeuedRequest = scheduler.requeueRequestInProgress();
+
+        //then
+        assertSame(requestInProgress, requeuedRequest);
+        assertEquals(2, scheduler.size());
+        assertTrue(requeuedRequest.isForceUpdate());
+        assertEquals(1, requeuedRequest.getAttempts());
+        assertTrue(requeuedRequest.isDue(now));
+        assertEquals(2, scheduler.count(START_CURRENT_WEATHER_UPDATE));
+    }
+
+    @Test
+    public void requestForOtherLocationIsQueuedWhileInProgress() throws Exception {
+        //given
+        WeatherRequestScheduler scheduler = new WeatherRequestScheduler();
+        scheduler.add(new WeatherRequestDataHolder(1, null, START_CURRENT_WEATHER_UPDATE));
+        scheduler.startHeadRequest();
+
+        //when
+        scheduler.add(new WeatherRequestDataHolder(2, null, START_CURRENT_WEATHER_UPDATE));
+
+        //then
+        assertEquals(1, scheduler.peek().getLocationId());
+        assertEquals(1, scheduler.poll().getLocationId());
+        assertEquals(2, scheduler.poll().getLocationId());
+        assertTrue(scheduler.isEmpty());
+    }
+}
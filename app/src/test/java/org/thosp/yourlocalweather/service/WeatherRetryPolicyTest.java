@@ -0,0 +1,86 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WeatherRetryPolicyTest {
+
+    @Test
+    public void doublesDelayWithJitterUntilRetriesAreUsedUp() throws Exception {
+        //given
+        WeatherRetryPolicy retryPolicy = new WeatherRetryPolicy(new Random(42));
+
+        //when
+        long firstDelay = retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_TIMEOUT, 0, 0);
+        long secondDelay = retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_TIMEOUT, 1, 0);
+        long thirdDelay = retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_TIMEOUT, 2, 0);
+
+        //then
+        assertTrue(firstDelay >= 7500 && firstDelay <= 15000);
+        assertTrue(secondDelay >= 15000 && secondDelay <= 30000);
+        assertTrue(thirdDelay >= 30000 && thirdDelay <= 60000);
+        assertEquals(WeatherRetryPolicy.NO_RETRY, retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_TIMEOUT, 3, 0));
+    }
+
+    @Test
+    public void spreadsRequestsFailingTogether() throws Exception {
+        //given
+        WeatherRetryPolicy retryPolicy = new WeatherRetryPolicy(new Random(7));
+
+        //when
+        long minDelay = Long.MAX_VALUE;
+        long maxDelay = 0;
+        for (int i = 0; i < 100; i++) {
+            long delay = retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_OFFLINE, 0, 0);
+            minDelay = Math.min(minDelay, delay);
+            maxDelay = Math.max(maxDelay, delay);
+        }
+
+        //then
+        assertTrue(minDelay >= 10000);
+        assertTrue(maxDelay <= 20000);
+        assertTrue(maxDelay - minDelay > 5000);
+    }
+
+    @Test
+    public void neverRetriesBeforeRetryAfter() throws Exception {
+        //given
+        WeatherRetryPolicy retryPolicy = new WeatherRetryPolicy(new Random(1));
+
+        //when
+        long delay = retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_RATE_LIMITED, 0, 600000);
+
+        //then
+        assertEquals(600000, delay);
+        assertEquals(WeatherRetryPolicy.NO_RETRY,
+                retryPolicy.getRetryDelayInMs(WeatherRetryPolicy.FAILURE_NOT_RETRYABLE, 0, 600000));
+    }
+
+    @Test
+    public void parsesRetryAfterInSecondsAndAsDate() throws Exception {
+        //given
+        long now = 1634551200000L; // Mon, 18 Oct 2021 10:00:00 GMT
+
+        //then
+        assertEquals(120000, WeatherRetryPolicy.parseRetryAfter("120", now));
+        assertEquals(90000, WeatherRetryPolicy.parseRetryAfter("Mon, 18 Oct 2021 10:01:30 GMT", now));
+        assertEquals(0, WeatherRetryPolicy.parseRetryAfter("Mon, 18 Oct 2021 09:00:00 GMT", now));
+        assertEquals(0, WeatherRetryPolicy.parseRetryAfter("soon", now));
+        assertEquals(0, WeatherRetryPolicy.parseRetryAfter(null, now));
+    }
+
+    @Test
+    public void classifiesFailures() throws Exception {
+        assertEquals(WeatherRetryPolicy.FAILURE_RATE_LIMITED, WeatherRetryPolicy.getFailureClass(429, null));
+        assertEquals(WeatherRetryPolicy.FAILURE_UNAUTHORIZED, WeatherRetryPolicy.getFailureClass(401, null));
+        assertEquals(WeatherRetryPolicy.FAILURE_TIMEOUT, WeatherRetryPolicy.getFailureClass(503, null));
+        assertEquals(WeatherRetryPolicy.FAILURE_TIMEOUT, WeatherRetryPolicy.getFailureClass(0, new SocketTimeoutException()));
+        assertEquals(WeatherRetryPolicy.FAILURE_OFFLINE, WeatherRetryPolicy.getFailureClass(0, new UnknownHostException()));
+        assertEquals(WeatherRetryPolicy.FAILURE_NOT_RETRYABLE, WeatherRetryPolicy.getFailureClass(404, null));
+    }
+}
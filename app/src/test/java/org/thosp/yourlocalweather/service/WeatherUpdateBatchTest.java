@@ -0,0 +1,137 @@
+package org.thosp.yourlocalweather.service;
+
+import org.junit.Test;
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
+import org.thosp.yourlocalweather.model.Location;
+import org.thosp.yourlocalweather.model.Weather;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.thosp.yourlocalweather.service.UpdateWeatherService.START_CURRENT_WEATHER_UPDATE;
+
+public class WeatherUpdateBatchTest {
+
+    private static final String BERLIN_KEY = OwmResponseCache.getRequestKey(
+            "https://api.openweathermap.org/data/2.5/weather", 52.5126, 13.3765, "metric", "de");
+    private static final String POTSDAM_KEY = OwmResponseCache.getRequestKey(
+            "https://api.openweathermap.org/data/2.5/weather", 52.3951, 13.0641, "metric", "de");
+
+    @Test
+    public void sharesRequestOfLocationsWithSameKey() throws Exception {
+        //given
+        WeatherUpdateBatch batch = new WeatherUpdateBatch();
+        batch.addRequest(createLocation(1), createUpdateRequest(1), true, BERLIN_KEY);
+        batch.addRequest(createLocation(2), createUpdateRequest(2), true, POTSDAM_KEY);
+        batch.addRequest(createLocation(3), createUpdateRequest(3), true, BERLIN_KEY);
+
+        //when
+        WeatherUpdateBatch.Entry firstRequest = batch.nextPendingRequest();
+        WeatherUpdateBatch.Entry secondRequest = batch.nextPendingRequest();
+
+        //then
+        assertEquals(3, batch.size());
+        assertEquals(2, batch.getRequestCount());
+        assertFalse(batch.hasPendingRequest());
+        List<WeatherUpdateBatch.Entry> entriesOfRequest = firstRequest.getEntriesOfRequest();
+        assertEquals(2, entriesOfRequest.size());
+        assertEquals(1L, (long) entriesOfRequest.get(0).getLocation().getId());
+        assertEquals(3L, (long) entriesOfRequest.get(1).getLocation().getId());
+        assertEquals(1, secondRequest.getEntriesOfRequest().size());
+    }
+
+    @Test
+    public void completesWhenSharedRequestsAreCompleted() throws Exception {
+        //given
+        WeatherUpdateBatch batch = new WeatherUpdateBatch();
+        batch.addRequest(createLocation(1), createUpdateRequest(1), false, BERLIN_KEY);
+        batch.addRequest(createLocation(3), createUpdateRequest(3), false, BERLIN_KEY);
+        batch.nextPendingRequest();
+
+        //when
+        batch.requestCompleted();
+
+        //then
+        assertTrue(batch.isCompleted());
+        assertEquals(0, batch.getRequestsInFlight());
+    }
+
+    @Test
+    public void mergesRequestsOfSameLocationAndType() throws Exception {
+        //given
+        WeatherUpdateBatch batch = new WeatherUpdateBatch();
+        batch.addRequest(createLocation(1), createUpdateRequest(1), true, BERLIN_KEY);
+
+        //when
+        boolean forcedRequestAdded = batch.addRequest(createLocation(1),
+                new WeatherRequestDataHolder(1, null, true, START_CURRENT_WEATHER_UPDATE), true, BERLIN_KEY);
+        boolean forecastRequestAdded = batch.addRequest(createLocation(1), createUpdateRequest(1), false, null);
+
+        //then
+        assertFalse(forcedRequestAdded);
+        assertTrue(forecastRequestAdded);
+        assertEquals(2, batch.size());
+        assertEquals(2, batch.getRequestCount());
+        assertTrue(batch.hasCurrentWeatherRequests());
+        assertTrue(batch.hasWeatherForecastRequests());
+        WeatherUpdateBatch.Entry currentWeatherEntry = batch.nextPendingRequest();
+        assertTrue(currentWeatherEntry.isCurrentWeather());
+        assertTrue(currentWeatherEntry.getUpdateRequest().isForceUpdate());
+    }
+
+    @Test
+    public void completesOnlyWhenEveryRequestIsCompleted() throws Exception {
+        //given
+        WeatherUpdateBatch batch = new WeatherUpdateBatch();
+        batch.addRequest(createLocation(1), createUpdateRequest(1), true, BERLIN_KEY);
+        batch.addRequest(createLocation(2), createUpdateRequest(2), true, POTSDAM_KEY);
+        batch.nextPendingRequest();
+        batch.nextPendingRequest();
+
+        //when
+        batch.requestCompleted();
+
+        //then
+        assertFalse(batch.isCompleted());
+        assertEquals(1, batch.getRequestsInFlight());
+        batch.requestCompleted();
+        assertTrue(batch.isCompleted());
+    }
+
+    @Test
+    public void storesOnlyChangedResults() throws Exception {
+        //given
+        WeatherUpdateBatch batch = new WeatherUpdateBatch();
+        batch.addRequest(createLocation(1), createUpdateRequest(1), true, null);
+        batch.addRequest(createLocation(2), createUpdateRequest(2), true, null);
+        batch.addRequest(createLocation(3), createUpdateRequest(3), true, null);
+        batch.addRequest(createLocation(1), createUpdateRequest(1), false, null);
+        WeatherUpdateBatch.Entry changedWeather = batch.nextPendingRequest();
+        WeatherUpdateBatch.Entry unchangedWeather = batch.nextPendingRequest();
+        WeatherUpdateBatch.Entry failedWeather = batch.nextPendingRequest();
+        WeatherUpdateBatch.Entry changedForecast = batch.nextPendingRequest();
+
+        //when
+        Weather weather = new Weather();
+        changedWeather.setWeather(weather);
+        unchangedWeather.setUnchanged(new Weather());
+        CompleteWeatherForecast completeWeatherForecast = new CompleteWeatherForecast();
+        changedForecast.setCompleteWeatherForecast(completeWeatherForecast);
+
+        //then the unchanged weather only needs its update time saved
+        assertEquals(1, batch.getWeathers().size());
+        assertSame(weather, batch.getWeathers().get(1L));
+        assertEquals(1, batch.getWeatherForecasts().size());
+        assertSame(completeWeatherForecast, batch.getWeatherForecasts().get(1L));
+        assertTrue(unchangedWeather.isSucceeded());
+        assertFalse(failedWeather.isSucceeded());
+    }
+
+    private static Location createLocation(long id) {
+        return new Location(id, (int) id, null, "de", 13.0, 52.0, 100, null, 0, true, true, null);
+    }
+
+    private static WeatherRequestDataHolder createUpdateRequest(long locationId) {
+        return new WeatherRequestDataHolder(locationId, null, START_CURRENT_WEATHER_UPDATE);
+    }
+}
@@ -0,0 +1,79 @@
+package org.thosp.yourlocalweather.utils;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AppSettingsTest {
+
+    @Test
+    public void snapshotIsRebuiltWhenPreferenceChanges() {
+        //given
+        SharedPreferences preferences = createPreferences();
+        when(preferences.getString(eq(Constants.KEY_PREF_TEMPERATURE_UNITS), anyString())).thenReturn("celsius");
+        when(preferences.getString(eq(Constants.KEY_PREF_WIND_UNITS), anyString())).thenReturn("m_per_second");
+        AppSettings settings = AppSettings.init(preferences);
+        ArgumentCaptor<SharedPreferences.OnSharedPreferenceChangeListener> listener =
+                ArgumentCaptor.forClass(SharedPreferences.OnSharedPreferenceChangeListener.class);
+        verify(preferences).registerOnSharedPreferenceChangeListener(listener.capture());
+
+        //when
+        when(preferences.getString(eq(Constants.KEY_PREF_TEMPERATURE_UNITS), anyString())).thenReturn("fahrenheit");
+        when(preferences.getString(eq(Constants.KEY_PREF_WIND_UNITS), anyString())).thenReturn("knots");
+        listener.getValue().onSharedPreferenceChanged(preferences, Constants.KEY_PREF_WIND_UNITS);
+        AppSettings changedSettings = AppSettings.get(null);
+
+        //then the snapshot taken before stays as it was
+        assertFalse(settings.isTemperatureInFahrenheit());
+        assertEquals("m_per_second", settings.getWindUnits());
+        assertTrue(changedSettings.isTemperatureInFahrenheit());
+        assertEquals("knots", changedSettings.getWindUnits());
+    }
+
+    @Test
+    public void defaultsAreUsedForMissingPreferences() {
+        //given
+        SharedPreferences preferences = createPreferences();
+
+        //when
+        AppSettings settings = AppSettings.init(preferences);
+
+        //then
+        assertEquals("celsius", settings.getTemperatureUnits());
+        assertEquals("hpa", settings.getPressureUnits());
+        assertEquals("mm", settings.getRainSnowUnits());
+        assertEquals("abbreviation", settings.getWindDirectionType());
+        assertEquals(3600000L, settings.getLocationUpdatePeriodInMs());
+    }
+
+    /**
+     * Preferences returning the passed default of every key.
+     */
+    private static SharedPreferences createPreferences() {
+        SharedPreferences preferences = mock(SharedPreferences.class);
+        when(preferences.getString(anyString(), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return invocation.getArgument(1);
+            }
+        });
+        when(preferences.getBoolean(anyString(), anyBoolean())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return invocation.getArgument(1);
+            }
+        });
+        return preferences;
+    }
+}
@@ -0,0 +1,186 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Test;
+import org.thosp.yourlocalweather.MicroBenchmark;
+import org.thosp.yourlocalweather.model.CompleteWeatherForecast;
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ApparentTemperaturesTest {
+
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    @Test
+    public void matchesCalendarFormulaOverDaylightSavingChanges() throws Exception {
+        //given 3 hourly entries from 2021-03-27 00:00 UTC over the switch to CEST, at 17 minutes past
+        List<DetailedWeatherForecast> forecasts = createForecasts(1616803200L + 17 * 60, 3 * 3600, 40);
+
+        //when
+        float[] temperatures = ApparentTemperatures.getApparentTemperatures(forecasts, 52.52, BERLIN, null);
+
+        //then
+        assertEquals(40, temperatures.length);
+        assertSameAsReference(forecasts, 52.52, BERLIN, temperatures);
+    }
+
+    @Test
+    public void matchesCalendarFormulaOverNewYearOfLeapYear() throws Exception {
+        //given hourly entries from 2020-12-30 00:00 UTC
+        List<DetailedWeatherForecast> forecasts = createForecasts(1609286400L, 3600, 72);
+
+        //when
+        float[] temperatures = ApparentTemperatures.getApparentTemperatures(forecasts, -33.87, NEW_YORK, null);
+
+        //then
+        assertSameAsReference(forecasts, -33.87, NEW_YORK, temperatures);
+    }
+
+    @Test
+    public void calculatesDayOfYear() throws Exception {
+        assertEquals(1, ApparentTemperatures.getDayOfYear(0));
+        assertEquals(60, ApparentTemperatures.getDayOfYear(18321));
+        assertEquals(61, ApparentTemperatures.getDayOfYear(18322));
+        assertEquals(366, ApparentTemperatures.getDayOfYear(18627));
+        assertEquals(1, ApparentTemperatures.getDayOfYear(18628));
+        assertEquals(60, ApparentTemperatures.getDayOfYear(18687));
+        assertEquals(365, ApparentTemperatures.getDayOfYear(-1));
+    }
+
+    @Test
+    public void reusesGivenArray() throws Exception {
+        //given
+        List<DetailedWeatherForecast> forecasts = createForecasts(1616803200L, 3 * 3600, 16);
+        float[] result = new float[40];
+
+        //when
+        float[] temperatures = ApparentTemperatures.getApparentTemperatures(forecasts, 52.52, BERLIN, result);
+
+        //then
+        assertSame(result, temperatures);
+        assertEquals(referenceApparentTemperature(forecasts.get(15), 52.52, BERLIN), temperatures[15], 0);
+    }
+
+    @Test
+    public void cachesTemperaturesOfStoredForecastVersion() throws Exception {
+        //given forecasts decoded twice from the same stored data
+        CompleteWeatherForecast forecast = createCompleteWeatherForecast(16);
+        CompleteWeatherForecast decodedAgain = createCompleteWeatherForecast(16);
+        CompleteWeatherForecast changedForecast = createCompleteWeatherForecast(17);
+        float[] temperatures = ApparentTemperatures.getApparentTemperatures(forecast, 1, 52.52);
+
+        //when
+        float[] cachedTemperatures = ApparentTemperatures.getApparentTemperatures(decodedAgain, 1, 52.52);
+        float[] otherLatitudeTemperatures = ApparentTemperatures.getApparentTemperatures(forecast, 1, 48.14);
+        float[] changedTemperatures = ApparentTemperatures.getApparentTemperatures(changedForecast, 2, 48.14);
+
+        //then
+        assertSame(temperatures, cachedTemperatures);
+        assertNotSame(temperatures, otherLatitudeTemperatures);
+        assertEquals(16, otherLatitudeTemperatures.length);
+        assertEquals(17, changedTemperatures.length);
+        assertEquals(otherLatitudeTemperatures[15], changedTemperatures[15], 0);
+    }
+
+    @Test
+    public void benchmarkApparentTemperatures() throws Exception {
+        MicroBenchmark.assumeEnabled();
+        benchmark(40);
+        benchmark(16);
+    }
+
+    private static void benchmark(int entries) throws Exception {
+        final List<DetailedWeatherForecast> forecasts = createForecasts(1616803200L, 3 * 3600, entries);
+        final TimeZone timeZone = TimeZone.getDefault();
+        final float[] result = new float[entries];
+
+        MicroBenchmark.Result calendarResult = MicroBenchmark.measure("Calendar apparent temperature x" + entries, 2000, 20000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        for (int i = 0; i < forecasts.size(); i++) {
+                            result[i] = referenceApparentTemperature(forecasts.get(i), 52.52, timeZone);
+                        }
+                    }
+                });
+        MicroBenchmark.Result batchResult = MicroBenchmark.measure("ApparentTemperatures x" + entries, 2000, 20000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        ApparentTemperatures.getApparentTemperatures(forecasts, 52.52, timeZone, result);
+                    }
+                });
+        if (batchResult.bytesPerOperation >= 0) {
+            assertTrue(batchResult.toString(), batchResult.bytesPerOperation < 1);
+            assertTrue(calendarResult + " / " + batchResult, calendarResult.bytesPerOperation > batchResult.bytesPerOperation);
+        }
+    }
+
+    private static void assertSameAsReference(List<DetailedWeatherForecast> forecasts,
+                                              double latitude,
+                                              TimeZone timeZone,
+                                              float[] temperatures) {
+        for (int i = 0; i < forecasts.size(); i++) {
+            DetailedWeatherForecast weather = forecasts.get(i);
+            assertEquals("Entry " + i, referenceApparentTemperature(weather, latitude, timeZone), temperatures[i], 0);
+            assertEquals("Entry " + i, temperatures[i], ApparentTemperatures.getApparentTemperature(
+                    weather.getTemperature(),
+                    weather.getHumidity(),
+                    weather.getWindSpeed(),
+                    weather.getCloudiness(),
+                    latitude,
+                    weather.getDateTime() * 1000,
+                    timeZone), 0);
+        }
+    }
+
+    private static CompleteWeatherForecast createCompleteWeatherForecast(int count) {
+        CompleteWeatherForecast forecast = new CompleteWeatherForecast();
+        for (DetailedWeatherForecast detailedWeatherForecast : createForecasts(1616803200L, 3 * 3600, count)) {
+            forecast.addDetailedWeatherForecast(detailedWeatherForecast);
+        }
+        return forecast;
+    }
+
+    private static List<DetailedWeatherForecast> createForecasts(long firstDateTime, long step, int count) {
+        List<DetailedWeatherForecast> forecasts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DetailedWeatherForecast detailedWeatherForecast = new DetailedWeatherForecast();
+            detailedWeatherForecast.setDateTime(firstDateTime + (i * step));
+            detailedWeatherForecast.setTemperature(-5 + (i % 30));
+            detailedWeatherForecast.setHumidity(40 + (i % 50));
+            detailedWeatherForecast.setWindSpeed((i % 12) * 0.7);
+            detailedWeatherForecast.setCloudiness((i * 13) % 101);
+            forecasts.add(detailedWeatherForecast);
+        }
+        return forecasts;
+    }
+
+    /**
+     * Calculation of TemperatureUtil before the batch API, kept as the reference and the benchmark baseline.
+     */
+    private static float referenceApparentTemperature(DetailedWeatherForecast weather, double latitude, TimeZone timeZone) {
+        double dryBulbTemperature = weather.getTemperature();
+        double windSpeed = weather.getWindSpeed();
+        double e = (weather.getHumidity() / 100f) * 6.105 * Math.exp((17.27*dryBulbTemperature / (237.7 + dryBulbTemperature)));
+        Calendar measuredTime = Calendar.getInstance(timeZone);
+        measuredTime.setTimeInMillis(weather.getDateTime() * 1000);
+        double latitudeInRadians = Math.toRadians(latitude);
+        double declination = Math.toRadians(-23.44 * Math.cos(Math.toRadians((360f/365f) * (9 + measuredTime.get(Calendar.DAY_OF_YEAR)))));
+        double hourAngle = ((12 * 60) - (60 * measuredTime.get(Calendar.HOUR_OF_DAY) + measuredTime.get(Calendar.MINUTE))) * 0.25;
+        double cosOfZenithAngle = Math.sin(latitudeInRadians)*Math.sin(declination) + (Math.cos(latitudeInRadians) * Math.cos(declination) * Math.cos(Math.toRadians(hourAngle)));
+        double secOfZenithAngle = 1/cosOfZenithAngle;
+        double transmissionCoefficient = 0.81 - (0.81 - 0.62) * (weather.getCloudiness()/100f);
+        double calculatedIrradiation = 0;
+        if (cosOfZenithAngle > 0) {
+            calculatedIrradiation = (1395 * cosOfZenithAngle*Math.pow(transmissionCoefficient, secOfZenithAngle))/10;
+        }
+        return (float) (dryBulbTemperature + (0.348 * e) - (0.70 * windSpeed) + ((0.70 * calculatedIrradiation)/(windSpeed + 10)) - 4.25);
+    }
+}
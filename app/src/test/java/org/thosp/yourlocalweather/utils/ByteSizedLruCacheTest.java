@@ -0,0 +1,130 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteSizedLruCacheTest {
+
+    private ByteSizedLruCache<String, byte[]> cache;
+
+    @Before
+    public void setup() {
+        cache = new ByteSizedLruCache<String, byte[]>(100) {
+            @Override
+            protected long sizeOf(byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByBytes() throws Exception {
+        //given
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");
+
+        //when
+        cache.put("c", new byte[40]);
+
+        //then
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getSizeInBytes());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void replacingValueUpdatesSize() throws Exception {
+        //given
+        cache.put("a", new byte[40]);
+
+        //when
+        cache.put("a", new byte[10]);
+
+        //then
+        assertEquals(10, cache.getSizeInBytes());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void valueBiggerThanCacheIsNotStored() throws Exception {
+        //given
+        cache.put("a", new byte[40]);
+
+        //when
+        cache.put("b", new byte[101]);
+
+        //then
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(40, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void removesEntriesMatchingFilter() throws Exception {
+        //given
+        cache.put("widget1:location1", new byte[10]);
+        cache.put("widget2:location1", new byte[20]);
+        cache.put("widget3:location2", new byte[30]);
+
+        //when
+        int removed = cache.removeAll(new ByteSizedLruCache.KeyFilter<String>() {
+            @Override
+            public boolean matches(String key) {
+                return key.endsWith(":location1");
+            }
+        });
+
+        //then
+        assertEquals(2, removed);
+        assertEquals(30, cache.getSizeInBytes());
+        assertNotNull(cache.get("widget3:location2"));
+    }
+
+    @Test
+    public void findsEntryWithoutUsingIt() throws Exception {
+        //given
+        cache.put("widget1:version1", new byte[40]);
+        cache.put("widget2:version1", new byte[40]);
+
+        //when
+        byte[] found = cache.find(new ByteSizedLruCache.KeyFilter<String>() {
+            @Override
+            public boolean matches(String key) {
+                return key.startsWith("widget1:");
+            }
+        });
+        cache.put("widget3:version1", new byte[40]);
+
+        //then the found entry is still the least recently used one
+        assertEquals(40, found.length);
+        assertNull(cache.get("widget1:version1"));
+        assertNotNull(cache.get("widget2:version1"));
+    }
+
+    @Test
+    public void trimsToRequestedSize() throws Exception {
+        //given
+        cache.put("a", new byte[30]);
+        cache.put("b", new byte[30]);
+        cache.put("c", new byte[30]);
+
+        //when
+        cache.trimToSize(45);
+
+        //then
+        assertEquals(30, cache.getSizeInBytes());
+        assertNotNull(cache.get("c"));
+
+        //when
+        cache.clear();
+
+        //then
+        assertEquals(0, cache.getSizeInBytes());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,87 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CombinedGraphKeyTest {
+
+    private static final AppPreference.GraphGridColors GRID_COLORS = new AppPreference.GraphGridColors(0xff333333, 0xff999999);
+
+    @Test
+    public void keysOfSameGraphAreEqual() {
+        //given
+        GraphUtils.CombinedGraphKey key = createKey(1, 100, 400, new HashSet<>(Arrays.asList(0, 2)));
+
+        //when
+        GraphUtils.CombinedGraphKey sameKey = createKey(1, 100, 400, new HashSet<>(Arrays.asList(2, 0)));
+
+        //then
+        assertEquals(key, sameKey);
+        assertEquals(key.hashCode(), sameKey.hashCode());
+    }
+
+    @Test
+    public void forecastVersionAndSizeArePartOfKey() {
+        //given
+        Set<Integer> combinedGraphValues = new HashSet<>(Arrays.asList(0, 2));
+        GraphUtils.CombinedGraphKey key = createKey(1, 100, 400, combinedGraphValues);
+
+        //when
+        GraphUtils.CombinedGraphKey otherForecast = createKey(1, 101, 400, combinedGraphValues);
+        GraphUtils.CombinedGraphKey otherSize = createKey(1, 100, 500, combinedGraphValues);
+        GraphUtils.CombinedGraphKey otherValues = createKey(1, 100, 400, new HashSet<>(Arrays.asList(0)));
+        GraphUtils.CombinedGraphKey otherWidget = createKey(2, 100, 400, combinedGraphValues);
+
+        //then
+        assertNotEquals(key, otherForecast);
+        assertNotEquals(key, otherSize);
+        assertNotEquals(key, otherValues);
+        assertNotEquals(key, otherWidget);
+        assertEquals(1, otherForecast.getWidgetId());
+    }
+
+    @Test
+    public void unitsArePartOfKey() {
+        //given
+        Set<Integer> combinedGraphValues = new HashSet<>(Arrays.asList(0, 2));
+        GraphUtils.CombinedGraphKey key = createKey(1, 100, 400, combinedGraphValues);
+
+        //when
+        GraphUtils.CombinedGraphKey otherUnits = createKey(1, 100, 400, combinedGraphValues, "fahrenheit|hpa|m_per_sec|mm");
+
+        //then
+        assertNotEquals(key, otherUnits);
+    }
+
+    private static GraphUtils.CombinedGraphKey createKey(int widgetId,
+                                                        long forecastVersion,
+                                                        int width,
+                                                        Set<Integer> combinedGraphValues) {
+        return createKey(widgetId, forecastVersion, width, combinedGraphValues, "celsius|hpa|m_per_sec|mm");
+    }
+
+    private static GraphUtils.CombinedGraphKey createKey(int widgetId,
+                                                        long forecastVersion,
+                                                        int width,
+                                                        Set<Integer> combinedGraphValues,
+                                                        String units) {
+        return new GraphUtils.CombinedGraphKey(widgetId,
+                5,
+                forecastVersion,
+                width,
+                300,
+                0xffffffff,
+                0xff000000,
+                GRID_COLORS,
+                combinedGraphValues,
+                true,
+                Locale.GERMANY,
+                units);
+    }
+}
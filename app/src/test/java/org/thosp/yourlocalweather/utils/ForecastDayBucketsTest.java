@@ -0,0 +1,174 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Test;
+import org.thosp.yourlocalweather.MicroBenchmark;
+import org.thosp.yourlocalweather.model.DetailedWeatherForecast;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ForecastDayBucketsTest {
+
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    @Test
+    public void splitsDaysAtLocalMidnightWhenClocksGoForward() throws Exception {
+        //given 3 hourly entries from 2021-03-27 00:00 UTC, Berlin switches to CEST on 2021-03-28 at 01:00 UTC
+        List<DetailedWeatherForecast> forecasts = createForecasts(1616803200L, 3 * 3600, 24);
+        ForecastDayBuckets dayBuckets = new ForecastDayBuckets(BERLIN);
+
+        //when
+        int days = dayBuckets.bucket(forecasts);
+
+        //then 28th starts at 23:00 UTC of the 27th and lasts 23 hours until 22:00 UTC of the 28th
+        assertEquals(3, days);
+        assertDay(dayBuckets, 0, 2021, 86, 0, 8);
+        assertDay(dayBuckets, 1, 2021, 87, 8, 16);
+        assertDay(dayBuckets, 2, 2021, 88, 16, 24);
+        assertEquals(1616886000L, dayBuckets.getDayStart(1));
+        assertEquals(1616968800L, dayBuckets.getDayStart(2));
+    }
+
+    @Test
+    public void splitsDaysAtLocalMidnightWhenClocksGoBack() throws Exception {
+        //given hourly entries from 2020-10-31 12:00 UTC, New York switches to EST on 2020-11-01 at 06:00 UTC
+        List<DetailedWeatherForecast> forecasts = createForecasts(1604145600L, 3600, 48);
+        ForecastDayBuckets dayBuckets = new ForecastDayBuckets(NEW_YORK);
+
+        //when
+        int days = dayBuckets.bucket(forecasts);
+
+        //then 1st of November lasts 25 hours, from 04:00 UTC to 05:00 UTC of the next day
+        assertEquals(3, days);
+        assertDay(dayBuckets, 0, 2020, 305, 0, 16);
+        assertDay(dayBuckets, 1, 2020, 306, 16, 41);
+        assertDay(dayBuckets, 2, 2020, 307, 41, 48);
+    }
+
+    @Test
+    public void keepsLastDayOfLeapYearApartFromNewYear() throws Exception {
+        //given 3 hourly entries from 2020-12-30 00:00 UTC
+        List<DetailedWeatherForecast> forecasts = createForecasts(1609286400L, 3 * 3600, 32);
+        ForecastDayBuckets dayBuckets = new ForecastDayBuckets(TimeZone.getTimeZone("UTC"));
+
+        //when
+        int days = dayBuckets.bucket(forecasts);
+
+        //then
+        assertEquals(4, days);
+        assertDay(dayBuckets, 0, 2020, 365, 0, 8);
+        assertDay(dayBuckets, 1, 2020, 366, 8, 16);
+        assertDay(dayBuckets, 2, 2021, 1, 16, 24);
+        assertDay(dayBuckets, 3, 2021, 2, 24, 32);
+    }
+
+    @Test
+    public void reusesBucketsForLaterForecastsAndOtherTimeZones() throws Exception {
+        //given
+        ForecastDayBuckets dayBuckets = new ForecastDayBuckets(BERLIN);
+        dayBuckets.bucket(createForecasts(1616803200L, 3 * 3600, 40));
+
+        //when 40 days later in New York
+        dayBuckets.setTimeZone(NEW_YORK);
+        int days = dayBuckets.bucket(createForecasts(1616803200L + (40 * 86400L), 3 * 3600, 8));
+
+        //then 2021-05-06 00:00 UTC is still the 5th in New York
+        assertEquals(2, days);
+        assertDay(dayBuckets, 0, 2021, 125, 0, 2);
+        assertDay(dayBuckets, 1, 2021, 126, 2, 8);
+        assertEquals(0, dayBuckets.bucket(new ArrayList<DetailedWeatherForecast>()));
+    }
+
+    @Test
+    public void groupsUnsortedForecastsAsListed() throws Exception {
+        //given
+        List<DetailedWeatherForecast> forecasts = createForecasts(1616803200L, 86400, 3);
+        forecasts.add(forecasts.get(0));
+        ForecastDayBuckets dayBuckets = new ForecastDayBuckets(BERLIN);
+
+        //when
+        int days = dayBuckets.bucket(forecasts);
+
+        //then the entry of the first day listed last gets a range of its own
+        assertEquals(4, days);
+        assertDay(dayBuckets, 2, 2021, 88, 2, 3);
+        assertDay(dayBuckets, 3, 2021, 86, 3, 4);
+    }
+
+    @Test
+    public void benchmarkBucketing() throws Exception {
+        MicroBenchmark.assumeEnabled();
+        final List<DetailedWeatherForecast> forecasts = createForecasts(1609286400L, 3 * 3600, 40);
+        final ForecastDayBuckets dayBuckets = new ForecastDayBuckets(TimeZone.getDefault());
+
+        MicroBenchmark.Result calendarResult = MicroBenchmark.measure("Calendar DAY_OF_YEAR map", 2000, 20000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        createWeatherListByDayOfYear(forecasts);
+                    }
+                });
+        MicroBenchmark.Result bucketsResult = MicroBenchmark.measure("ForecastDayBuckets.bucket", 2000, 20000,
+                new MicroBenchmark.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        dayBuckets.bucket(forecasts);
+                    }
+                });
+        if (bucketsResult.bytesPerOperation >= 0) {
+            assertTrue(bucketsResult.toString(), bucketsResult.bytesPerOperation < 1);
+            assertTrue(calendarResult + " / " + bucketsResult, calendarResult.bytesPerOperation > bucketsResult.bytesPerOperation);
+        }
+    }
+
+    private static void assertDay(ForecastDayBuckets dayBuckets,
+                                  int day,
+                                  int year,
+                                  int dayOfYear,
+                                  int firstIndex,
+                                  int endIndex) {
+        assertEquals(year, dayBuckets.getYear(day));
+        assertEquals(dayOfYear, dayBuckets.getDayOfYear(day));
+        assertEquals(firstIndex, dayBuckets.getFirstIndex(day));
+        assertEquals(endIndex, dayBuckets.getEndIndex(day));
+    }
+
+    private static List<DetailedWeatherForecast> createForecasts(long firstDateTime, long step, int count) {
+        List<DetailedWeatherForecast> forecasts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DetailedWeatherForecast detailedWeatherForecast = new DetailedWeatherForecast();
+            detailedWeatherForecast.setDateTime(firstDateTime + (i * step));
+            forecasts.add(detailedWeatherForecast);
+        }
+        return forecasts;
+    }
+
+    /**
+     * Day grouping used by ForecastUtil before the day buckets, kept as the benchmark baseline.
+     */
+    private static Map<Integer, List<DetailedWeatherForecast>> createWeatherListByDayOfYear(List<DetailedWeatherForecast> forecasts) {
+        Map<Integer, List<DetailedWeatherForecast>> weatherList = new HashMap<>();
+        Calendar forecastCalendar = Calendar.getInstance();
+        int maxForecastDay = 0;
+        for (DetailedWeatherForecast detailedWeatherForecast : forecasts) {
+            forecastCalendar.setTimeInMillis(detailedWeatherForecast.getDateTime() * 1000);
+            int forecastDay = forecastCalendar.get(Calendar.DAY_OF_YEAR);
+            if (maxForecastDay > forecastDay) {
+                forecastDay += 365;
+            }
+            maxForecastDay = forecastDay;
+            if (!weatherList.keySet().contains(forecastDay)) {
+                weatherList.put(forecastDay, new ArrayList<DetailedWeatherForecast>());
+            }
+            weatherList.get(forecastDay).add(detailedWeatherForecast);
+        }
+        return weatherList;
+    }
+}
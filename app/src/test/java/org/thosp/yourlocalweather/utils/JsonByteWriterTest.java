@@ -0,0 +1,44 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonByteWriterTest {
+
+    @Test
+    public void escapesStringsAsOrgJsonOnAndroid() throws Exception {
+        //given
+        JsonByteWriter writer = new JsonByteWriter(4);
+
+        //when
+        writer.beginArray()
+                .value("a/b\"c\\d\n\t\u0001")
+                .value("\u00e9\u20ac\ud83d\ude00")
+                .value((String) null)
+                .endArray();
+
+        //then
+        assertArrayEquals("[\"a\\/b\\\"c\\\\d\\n\\t\\u0001\",\"\u00e9\u20ac\ud83d\ude00\",null]".getBytes(JsonByteReader.UTF_8),
+                writer.toByteArray());
+    }
+
+    @Test
+    public void writesNumbersAndNestedValues() throws Exception {
+        //given
+        JsonByteWriter writer = new JsonByteWriter(16);
+
+        //when
+        writer.beginObject()
+                .name("min").value(Long.MIN_VALUE)
+                .name("zero").value(0)
+                .name("list").beginArray().value(-7).beginObject().endObject().value(true).endArray()
+                .name("max").value(Integer.MAX_VALUE)
+                .endObject();
+
+        //then
+        assertEquals("{\"min\":-9223372036854775808,\"zero\":0,\"list\":[-7,{},true],\"max\":2147483647}",
+                new String(writer.toByteArray(), JsonByteReader.UTF_8));
+        assertEquals(writer.size(), writer.toByteArray().length);
+    }
+}
@@ -0,0 +1,106 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LogRingBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityHasToBePowerOfTwo() throws Exception {
+        new LogRingBuffer(1000);
+    }
+
+    @Test
+    public void recordsArePolledInOrder() throws Exception {
+        //given
+        LogRingBuffer buffer = new LogRingBuffer(4);
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.offer(i, "tag", null, new String[] {"text" + i}));
+            LogRingBuffer.Record record = buffer.poll();
+            assertEquals(i, record.timestamp);
+            assertEquals("text" + i, record.texts[0]);
+            buffer.release(record);
+        }
+
+        //then
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void fullBufferDropsRecords() throws Exception {
+        //given
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i, "tag", null, null));
+        }
+
+        //when
+        boolean offered = buffer.offer(4, "tag", null, null);
+
+        //then
+        assertFalse(offered);
+        assertEquals(1, buffer.getDropped());
+        LogRingBuffer.Record record = buffer.poll();
+        assertEquals(0, record.timestamp);
+        buffer.release(record);
+        assertTrue(buffer.offer(5, "tag", null, null));
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingButDropped() throws Exception {
+        //given
+        final LogRingBuffer buffer = new LogRingBuffer(256);
+        final int producers = 4;
+        final int recordsPerProducer = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < recordsPerProducer; i++) {
+                        buffer.offer(i, String.valueOf(producer), null, null);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        //when
+        start.countDown();
+        long[] lastTimestamps = new long[producers];
+        Arrays.fill(lastTimestamps, -1);
+        long polled = 0;
+        boolean producing = true;
+        while (producing || !buffer.isEmpty()) {
+            producing = false;
+            for (Thread thread: threads) {
+                producing |= thread.isAlive();
+            }
+            LogRingBuffer.Record record;
+            while ((record = buffer.poll()) != null) {
+                int producer = Integer.parseInt(record.tag);
+                assertTrue(record.timestamp > lastTimestamps[producer]);
+                lastTimestamps[producer] = record.timestamp;
+                buffer.release(record);
+                polled++;
+            }
+        }
+
+        //then
+        assertEquals(producers * recordsPerProducer, polled + buffer.getDropped());
+    }
+}
@@ -0,0 +1,66 @@
+package org.thosp.yourlocalweather.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeatherRequestGridTest {
+
+    @Test
+    public void keepsCoordinatesWhenDisabled() throws Exception {
+        //given
+        WeatherRequestGrid weatherRequestGrid = new WeatherRequestGrid(0);
+
+        //then
+        assertFalse(weatherRequestGrid.isEnabled());
+        assertEquals(52.520008, weatherRequestGrid.getCellLatitude(52.520008), 0);
+        assertEquals(13.404954, weatherRequestGrid.getCellLongitude(52.520008, 13.404954), 0);
+    }
+
+    @Test
+    public void snapsNearbyLocationsToOneCell() throws Exception {
+        //given two points in Berlin about 400 m apart
+        WeatherRequestGrid weatherRequestGrid = new WeatherRequestGrid(1000);
+
+        //when
+        double latitude1 = weatherRequestGrid.getCellLatitude(52.5110);
+        double longitude1 = weatherRequestGrid.getCellLongitude(52.5110, 13.3777);
+        double latitude2 = weatherRequestGrid.getCellLatitude(52.5140);
+        double longitude2 = weatherRequestGrid.getCellLongitude(52.5140, 13.3741);
+
+        //then
+        assertEquals(latitude1, latitude2, 0);
+        assertEquals(longitude1, longitude2, 0);
+        assertEquals(52.5110, latitude1, 0.0045);
+        assertEquals(13.3777, longitude1, 0.0075);
+    }
+
+    @Test
+    public void keepsCellsAboutOneSizeWideAwayFromEquator() throws Exception {
+        //given
+        WeatherRequestGrid weatherRequestGrid = new WeatherRequestGrid(1000);
+
+        //when
+        double northernLongitude = weatherRequestGrid.getCellLongitude(70.0001, 25);
+        double nextNorthernLongitude = weatherRequestGrid.getCellLongitude(70.0001, northernLongitude + 0.0263);
+        double equatorialLongitude = weatherRequestGrid.getCellLongitude(0.0001, 25);
+        double nextEquatorialLongitude = weatherRequestGrid.getCellLongitude(0.0001, equatorialLongitude + 0.009);
+
+        //then neighbouring cell centers are about 1000 m apart
+        assertEquals(1000, (nextNorthernLongitude - northernLongitude) * 111320 * Math.cos(Math.toRadians(70)), 10);
+        assertEquals(1000, (nextEquatorialLongitude - equatorialLongitude) * 111320, 10);
+    }
+
+    @Test
+    public void keepsCellsInsideCoordinateRange() throws Exception {
+        //given
+        WeatherRequestGrid weatherRequestGrid = new WeatherRequestGrid(2000);
+
+        //then
+        assertTrue(weatherRequestGrid.getCellLatitude(90) <= 90);
+        assertTrue(weatherRequestGrid.getCellLatitude(-90) >= -90);
+        assertTrue(weatherRequestGrid.getCellLongitude(10, 180) < 180);
+        assertTrue(weatherRequestGrid.getCellLongitude(10, -180) > -180);
+        assertEquals(weatherRequestGrid.getCellLongitude(10, 180), weatherRequestGrid.getCellLongitude(10, -180), 0);
+    }
+}
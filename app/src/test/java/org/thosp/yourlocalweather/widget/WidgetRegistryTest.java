@@ -0,0 +1,91 @@
+package org.thosp.yourlocalweather.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WidgetRegistryTest {
+
+    private static final long DEFAULT_LOCATION_ID = 1;
+    private static final long OTHER_LOCATION_ID = 2;
+    private static final long LOCATION_WITHOUT_WIDGETS_ID = 3;
+
+    private WidgetRegistry widgetRegistry;
+
+    @Before
+    public void setUp() {
+        Map<Integer, Class<?>> widgetProviders = new HashMap<>();
+        Map<Integer, Long> widgetLocationIds = new HashMap<>();
+        widgetProviders.put(10, LessWidgetProvider.class);
+        widgetLocationIds.put(10, OTHER_LOCATION_ID);
+        widgetProviders.put(11, LessWidgetProvider.class);
+        widgetLocationIds.put(11, null);
+        widgetProviders.put(20, MoreWidgetProvider.class);
+        widgetLocationIds.put(20, OTHER_LOCATION_ID);
+        widgetProviders.put(30, WeatherGraphWidgetProvider.class);
+        widgetLocationIds.put(30, DEFAULT_LOCATION_ID);
+        widgetRegistry = new WidgetRegistry(null);
+        widgetRegistry.setWidgets(widgetProviders, widgetLocationIds);
+    }
+
+    @Test
+    public void updatesOnlyWidgetsOfUpdatedLocation() {
+        //when
+        Map<Class<?>, int[]> widgetIds = widgetRegistry.getWidgetIdsByProvider(
+                Collections.singleton(OTHER_LOCATION_ID), DEFAULT_LOCATION_ID);
+
+        //then
+        assertEquals(2, widgetIds.size());
+        assertArrayEquals(new int[] {10}, widgetIds.get(LessWidgetProvider.class));
+        assertArrayEquals(new int[] {20}, widgetIds.get(MoreWidgetProvider.class));
+    }
+
+    @Test
+    public void widgetsWithoutLocationFollowDefaultLocation() {
+        //when
+        Map<Class<?>, int[]> widgetIds = widgetRegistry.getWidgetIdsByProvider(
+                Collections.singleton(DEFAULT_LOCATION_ID), DEFAULT_LOCATION_ID);
+        Map<Class<?>, int[]> widgetIdsOfOtherDefault = widgetRegistry.getWidgetIdsByProvider(
+                Collections.singleton(OTHER_LOCATION_ID), OTHER_LOCATION_ID);
+
+        //then
+        assertArrayEquals(new int[] {11}, widgetIds.get(LessWidgetProvider.class));
+        assertArrayEquals(new int[] {30}, widgetIds.get(WeatherGraphWidgetProvider.class));
+        int[] lessWidgetIds = widgetIdsOfOtherDefault.get(LessWidgetProvider.class);
+        Arrays.sort(lessWidgetIds);
+        assertArrayEquals(new int[] {10, 11}, lessWidgetIds);
+    }
+
+    @Test
+    public void mergedLocationsUpdateEveryWidgetOnce() {
+        //when
+        Map<Class<?>, int[]> widgetIds = widgetRegistry.getWidgetIdsByProvider(
+                new HashSet<>(Arrays.asList(DEFAULT_LOCATION_ID, OTHER_LOCATION_ID, LOCATION_WITHOUT_WIDGETS_ID)),
+                OTHER_LOCATION_ID);
+
+        //then
+        assertEquals(3, widgetIds.size());
+        int[] lessWidgetIds = widgetIds.get(LessWidgetProvider.class);
+        Arrays.sort(lessWidgetIds);
+        assertArrayEquals(new int[] {10, 11}, lessWidgetIds);
+        assertArrayEquals(new int[] {20}, widgetIds.get(MoreWidgetProvider.class));
+        assertArrayEquals(new int[] {30}, widgetIds.get(WeatherGraphWidgetProvider.class));
+    }
+
+    @Test
+    public void locationWithoutWidgetsUpdatesNothing() {
+        //when
+        Map<Class<?>, int[]> widgetIds = widgetRegistry.getWidgetIdsByProvider(
+                Collections.singleton(LOCATION_WITHOUT_WIDGETS_ID), null);
+
+        //then
+        assertTrue(widgetIds.isEmpty());
+    }
+}